@@ -0,0 +1,170 @@
+package bms;
+
+import bms.building.Building;
+import bms.building.BuildingInitialiser;
+import bms.building.Checkpoint;
+import bms.exceptions.FileFormatException;
+import bms.util.TickStatistics;
+import bms.util.TimedItemManager;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Entry point which runs the Building Management System's simulation
+ * without a GUI, for batch runs on machines with no display.
+ * <p>
+ * Rather than elapsing one minute per second as the GUI does, the runner
+ * elapses minutes one after another as fast as it can, and reports how
+ * quickly it did so.
+ */
+public class BatchRunner {
+
+    /**
+     * Prefix of the command line option which writes the final state of the
+     * buildings to a file.
+     */
+    private static final String OUTPUT_OPTION = "--output=";
+
+    /**
+     * Command line option which makes the timed item manager event driven
+     * (see {@link TimedItemManager#setEventDriven(boolean)}).
+     */
+    private static final String EVENT_DRIVEN_OPTION = "--event-driven";
+
+    /**
+     * Command line option which keeps sensor readings outside the heap (see
+     * {@link TimedItemManager#setReadingsOffHeap(boolean)}).
+     */
+    private static final String OFF_HEAP_OPTION = "--off-heap-readings";
+
+    /**
+     * Runs the simulation of a file of buildings for a number of minutes.
+     * <p>
+     * Command line arguments: filename minutes [--output=file]
+     * [--event-driven] [--off-heap-readings]
+     * <p>
+     * where <code>filename</code> is the path of the file containing the
+     * buildings, in any format accepted by
+     * {@link BuildingInitialiser#loadBuildings(String)} or a checkpoint, and
+     * <code>minutes</code> is the number of minutes to simulate. Each minute
+     * is elapsed separately, and once they have all elapsed the rate at
+     * which they were elapsed and percentiles of the time taken by each
+     * minute are printed (see {@link TickStatistics}).
+     * <p>
+     * If the file is a checkpoint (see {@link Checkpoint}), the simulation
+     * carries on from the minute it was saved at, so a run can pick up where
+     * an earlier run which wrote a checkpoint left off.
+     * <p>
+     * If <code>--output</code> is given, the final state of the buildings is
+     * written to the file. A file ending with {@link Checkpoint#FILE_EXTENSION}
+     * is written as a checkpoint, from which the simulation can be resumed;
+     * any other file is written as a save file, in the format given by its
+     * extension (see {@link BuildingInitialiser#saveBuildings(List, String)}).
+     * If <code>--event-driven</code> is given, sensors are only elapsed on
+     * the minutes their readings change. If
+     * <code>--off-heap-readings</code> is given, the sensors' readings are
+     * kept outside the heap.
+     *
+     * @param args command line arguments
+     */
+    public static void main(String[] args) {
+        String output = null;
+        boolean eventDriven = false;
+        boolean offHeap = false;
+        int minutes = -1;
+        if (args.length >= 2) {
+            try {
+                minutes = Integer.parseInt(args[1]);
+            } catch (NumberFormatException e) {
+                minutes = -1;
+            }
+            for (int i = 2; i < args.length; ++i) {
+                if (args[i].startsWith(OUTPUT_OPTION)
+                        && args[i].length() > OUTPUT_OPTION.length()) {
+                    output = args[i].substring(OUTPUT_OPTION.length());
+                } else if (args[i].equals(EVENT_DRIVEN_OPTION)) {
+                    eventDriven = true;
+                } else if (args[i].equals(OFF_HEAP_OPTION)) {
+                    offHeap = true;
+                } else {
+                    minutes = -1;
+                }
+            }
+        }
+        if (minutes < 0) {
+            System.out.println("Usage: filename minutes [" + OUTPUT_OPTION
+                    + "file] [" + EVENT_DRIVEN_OPTION + "] ["
+                    + OFF_HEAP_OPTION + "]");
+            System.exit(1);
+        }
+
+        TimedItemManager manager = TimedItemManager.getInstance();
+        // Before loading, so the readings are never copied into the heap
+        manager.setReadingsOffHeap(offHeap);
+        List<Building> buildings;
+        long startMinute = 0;
+        try {
+            if (Checkpoint.isCheckpointFile(args[0])) {
+                Checkpoint checkpoint = Checkpoint.load(args[0]);
+                buildings = checkpoint.getBuildings();
+                startMinute = checkpoint.getMinutesElapsed();
+            } else {
+                buildings = BuildingInitialiser.loadBuildings(args[0]);
+                System.out.println(
+                        BuildingInitialiser.getLastLoadStatistics());
+            }
+        } catch (IOException | FileFormatException e) {
+            System.err.println("Error loading from file \"" + args[0]
+                    + "\". Stack trace below:");
+            e.printStackTrace();
+            System.exit(1);
+            return;
+        }
+
+        // Releases the readings once the final state has been saved
+        try (manager) {
+            manager.setEventDriven(eventDriven);
+            TickStatistics statistics = run(manager, minutes);
+            manager.synchronise();
+            System.out.println(statistics);
+
+            if (output == null) {
+                return;
+            }
+            try {
+                if (output.endsWith(Checkpoint.FILE_EXTENSION)) {
+                    new Checkpoint(buildings, startMinute + minutes)
+                            .save(output);
+                } else {
+                    BuildingInitialiser.saveBuildings(buildings, output);
+                }
+            } catch (IOException e) {
+                System.err.println("Error saving to file \"" + output
+                        + "\". Stack trace below:");
+                e.printStackTrace();
+                System.exit(1);
+            }
+            System.out.println("Saved final state to \"" + output + "\"");
+        }
+    }
+
+    /**
+     * Elapses the given number of minutes on the given manager, one at a
+     * time, timing each minute.
+     *
+     * @param manager manager whose timed items to elapse
+     * @param minutes number of minutes to elapse
+     * @return statistics of the time taken by each minute
+     * @throws IllegalArgumentException if minutes is negative
+     */
+    public static TickStatistics run(TimedItemManager manager, int minutes) {
+        TickStatistics statistics = new TickStatistics(minutes);
+        for (int i = 0; i < minutes; ++i) {
+            long start = System.nanoTime();
+            manager.elapseOneMinute();
+            statistics.record(System.nanoTime() - start);
+        }
+        return statistics;
+    }
+}
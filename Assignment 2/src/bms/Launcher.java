@@ -1,14 +1,20 @@
 package bms;
 
+import bms.building.Building;
 import bms.building.BuildingInitialiser;
+import bms.building.Checkpoint;
+import bms.building.CheckpointHistory;
+import bms.building.MutationJournal;
 import bms.display.View;
 import bms.display.ViewModel;
 import bms.exceptions.FileFormatException;
+import bms.util.TimedItemManager;
 import javafx.application.Application;
 import javafx.application.Platform;
 import javafx.stage.Stage;
 
 import java.io.IOException;
+import java.util.Arrays;
 import java.util.List;
 
 /**
@@ -17,20 +23,64 @@ import java.util.List;
  */
 public class Launcher extends Application {
 
+    /**
+     * Command line option which loads the floors of each building on demand.
+     */
+    private static final String LAZY_OPTION = "--lazy";
+
+    /**
+     * Command line option which records each change to the buildings in a
+     * journal alongside the file they were loaded from.
+     */
+    private static final String JOURNAL_OPTION = "--journal";
+
+    /**
+     * Prefix of the command line option which sets the memory, in megabytes,
+     * which the simulation's history may use.
+     */
+    private static final String HISTORY_OPTION = "--history-mb=";
+
+    /**
+     * Command line option which keeps sensor readings outside the heap.
+     */
+    private static final String OFF_HEAP_OPTION = "--off-heap-readings";
+
     /**
      * Entry point to the GUI.
      * <p>
-     * Command line arguments: [filename]
+     * Command line arguments: [filename] [--lazy] [--journal]
+     * [--history-mb=megabytes] [--off-heap-readings]
      * <p>
      * where <code>filename</code> is the path of the file containing the
-     * buildings to be displayed by the GUI.
+     * buildings to be displayed by the GUI. If <code>--lazy</code> is given,
+     * the floors of each building are only loaded once they are first
+     * displayed (see {@link BuildingInitialiser#loadBuildingsLazy(String)}).
+     * If <code>--journal</code> is given, changes made in the GUI are recorded
+     * in a journal alongside the file and replayed the next time it is loaded
+     * with the option (see {@link MutationJournal}). The
+     * <code>--history-mb</code> option limits the memory used to keep past
+     * minutes of the simulation, which can be returned to from the GUI (see
+     * {@link CheckpointHistory}). If <code>--off-heap-readings</code> is
+     * given, the sensors' readings are kept outside the heap (see
+     * {@link TimedItemManager#setReadingsOffHeap(boolean)}).
+     * <p>
+     * If the file is a checkpoint, the simulation saved in it is resumed
+     * where it was stopped (see {@link Checkpoint}), and neither of the first
+     * two options applies.
      *
      * @param args command line arguments
      * @ass2_given
      */
     public static void main(String[] args) {
-        if (args.length != 1) {
-            System.out.println("Usage: [filename]");
+        List<String> options = args.length < 1 ? List.of()
+                : Arrays.asList(args).subList(1, args.length);
+        if (args.length < 1 || !options.stream().allMatch(option ->
+                option.equals(LAZY_OPTION) || option.equals(JOURNAL_OPTION)
+                        || option.equals(OFF_HEAP_OPTION)
+                        || getHistoryLimit(option) >= 0)) {
+            System.out.println("Usage: [filename] [" + LAZY_OPTION + "] ["
+                    + JOURNAL_OPTION + "] [" + HISTORY_OPTION + "megabytes] ["
+                    + OFF_HEAP_OPTION + "]");
             System.out.println("You need to add a command line argument to your"
                     + " program in IntelliJ. Go to \"Run > Edit Configurations "
                     + "> Launcher > Program Arguments\" and add your file name "
@@ -49,11 +99,34 @@ public class Launcher extends Application {
     @Override
     public void start(Stage stage) {
         List<String> params = getParameters().getRaw();
+        List<String> options = params.subList(1, params.size());
+        boolean lazy = options.contains(LAZY_OPTION);
+        boolean journalled = options.contains(JOURNAL_OPTION);
+        TimedItemManager.getInstance().setReadingsOffHeap(
+                options.contains(OFF_HEAP_OPTION));
 
         View view;
         try {
-            view = new View(stage, new ViewModel(
-                    BuildingInitialiser.loadBuildings(params.get(0))));
+            ViewModel viewModel;
+            if (Checkpoint.isCheckpointFile(params.get(0))) {
+                viewModel = new ViewModel(Checkpoint.load(params.get(0)));
+            } else {
+                List<Building> buildings = lazy
+                        ? BuildingInitialiser.loadBuildingsLazy(params.get(0))
+                        : BuildingInitialiser.loadBuildings(params.get(0));
+                viewModel = new ViewModel(buildings);
+                if (journalled) {
+                    viewModel.setJournal(
+                            MutationJournal.open(params.get(0), buildings));
+                }
+            }
+            for (String option : options) {
+                long limit = getHistoryLimit(option);
+                if (limit >= 0) {
+                    viewModel.getHistory().setMemoryLimit(limit);
+                }
+            }
+            view = new View(stage, viewModel);
         } catch (IOException | FileFormatException e) {
             System.err.println("Error loading from file \"" + params.get(0)
                     + "\". Stack trace below:");
@@ -65,4 +138,21 @@ public class Launcher extends Application {
 
         view.run();
     }
+
+    /*
+    Returns the history memory limit in bytes given by a command line option,
+    or -1 if the option does not set a valid limit
+     */
+    private static long getHistoryLimit(String option) {
+        if (!option.startsWith(HISTORY_OPTION)) {
+            return -1;
+        }
+        try {
+            long megabytes = Long.parseLong(
+                    option.substring(HISTORY_OPTION.length()));
+            return megabytes < 0 ? -1 : megabytes * 1024 * 1024;
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
 }
@@ -0,0 +1,695 @@
+package bms.building;
+
+import bms.exceptions.DuplicateFloorException;
+import bms.exceptions.DuplicateRoomException;
+import bms.exceptions.FileFormatException;
+import bms.exceptions.FloorTooSmallException;
+import bms.exceptions.InsufficientSpaceException;
+import bms.exceptions.NoFloorBelowException;
+import bms.floor.Floor;
+import bms.floor.MaintenanceSchedule;
+import bms.hazardevaluation.HazardEvaluator;
+import bms.hazardevaluation.RuleBasedHazardEvaluator;
+import bms.hazardevaluation.WeightingBasedHazardEvaluator;
+import bms.room.Room;
+import bms.room.RoomType;
+import bms.sensors.CarbonDioxideSensor;
+import bms.sensors.HazardSensor;
+import bms.sensors.NoiseSensor;
+import bms.sensors.OccupancySensor;
+import bms.sensors.Sensor;
+import bms.sensors.TemperatureSensor;
+import bms.sensors.TimedSensor;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Reads and writes buildings in a compact binary save format, as an
+ * alternative to the text format produced by {@link Building#encode()}.
+ * <p>
+ * A binary save file starts with a magic header which cannot begin a text
+ * save file, followed by a format version byte and the number of buildings.
+ * Each building is then stored as a section prefixed by its length in bytes.
+ * <p>
+ * Within a section, counts, room numbers and sensor readings are stored as
+ * variable length integers (LEB128, zigzag encoded where they may be
+ * negative), room types and hazard evaluator kinds as single byte ordinals,
+ * and floor dimensions and room areas as the raw bits of their values. Unlike
+ * the text format, dimensions and areas are therefore stored exactly.
+ * <p>
+ * Reading a binary save file creates the same buildings, floors, rooms,
+ * sensors, hazard evaluators and maintenance schedules as were written, and
+ * registers timed items just as {@link BuildingInitialiser} does.
+ */
+public class BinaryCodec {
+
+    /**
+     * File extension of binary save files.
+     * <p>
+     * Saving to a file with this extension writes the binary format, see
+     * {@link bms.display.ViewModel#save(String)}. Binary files are recognised
+     * by their header when loading, regardless of their extension.
+     */
+    public static final String FILE_EXTENSION = ".bms";
+
+    /**
+     * Bytes at the start of every binary save file.
+     * <p>
+     * The first byte is not valid at the start of a UTF-8 character, so no
+     * text save file can begin with this header.
+     */
+    private static final byte[] MAGIC = {(byte) 0x89, 'B', 'M', 'S'};
+
+    /**
+     * Version of the binary format written by this codec.
+     */
+    private static final int VERSION = 1;
+
+    /**
+     * Number of bytes used by the length prefix of a building section.
+     */
+    private static final int SECTION_LENGTH_BYTES = Integer.BYTES;
+
+    /*
+    Ordinals of each kind of sensor
+     */
+    private static final int CARBON_DIOXIDE_SENSOR = 0;
+    private static final int NOISE_SENSOR = 1;
+    private static final int OCCUPANCY_SENSOR = 2;
+    private static final int TEMPERATURE_SENSOR = 3;
+
+    /*
+    Ordinals of each kind of hazard evaluator
+     */
+    private static final int NO_EVALUATOR = 0;
+    private static final int RULE_BASED = 1;
+    private static final int WEIGHTING_BASED = 2;
+
+    /**
+     * Returns true if the remaining bytes of the given buffer start with the
+     * binary save file header.
+     *
+     * @param buffer buffer to check
+     * @return true if the buffer contains a binary save file
+     */
+    public static boolean isBinary(ByteBuffer buffer) {
+        if (buffer.remaining() < MAGIC.length) {
+            return false;
+        }
+        for (int i = 0; i < MAGIC.length; ++i) {
+            if (buffer.get(buffer.position() + i) != MAGIC[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns true if the file with the given filename starts with the binary
+     * save file header.
+     *
+     * @param filename path of the file to check
+     * @return true if the file is a binary save file
+     * @throws IOException if the file cannot be read
+     */
+    public static boolean isBinaryFile(String filename) throws IOException {
+        byte[] header = new byte[MAGIC.length];
+        try (InputStream in = Files.newInputStream(Paths.get(filename))) {
+            return in.readNBytes(header, 0, header.length) == header.length
+                    && Arrays.equals(header, MAGIC);
+        }
+    }
+
+    /**
+     * Returns true if the next bytes of the given stream are the binary save
+     * file header. The stream must support marking, and is reset to where
+     * it was before the header was read.
+     *
+     * @param in stream to check
+     * @return true if the stream contains a binary save file
+     * @throws IOException if the stream cannot be read
+     */
+    public static boolean isBinary(InputStream in) throws IOException {
+        byte[] header = new byte[MAGIC.length];
+        in.mark(header.length);
+        int length = in.readNBytes(header, 0, header.length);
+        in.reset();
+        return length == header.length && Arrays.equals(header, MAGIC);
+    }
+
+    /**
+     * Saves the given buildings to the file with the given filename in the
+     * binary format, replacing the file if it already exists.
+     *
+     * @param buildings buildings to save
+     * @param filename path of the file to save to
+     * @throws IOException if the file cannot be written
+     */
+    public static void save(List<Building> buildings, String filename)
+            throws IOException {
+        Files.write(Paths.get(filename), encode(buildings));
+    }
+
+    /**
+     * Returns the binary representation of the given buildings.
+     *
+     * @param buildings buildings to encode
+     * @return bytes of a binary save file containing the buildings
+     */
+    public static byte[] encode(List<Building> buildings) {
+        Output out = new Output();
+        for (byte b : MAGIC) {
+            out.writeByte(b);
+        }
+        out.writeByte(VERSION);
+        out.writeVarint(buildings.size());
+        for (Building building : buildings) {
+            int lengthIndex = out.reserve(SECTION_LENGTH_BYTES);
+            writeBuilding(out, building);
+            out.writeIntAt(lengthIndex,
+                    out.size() - lengthIndex - SECTION_LENGTH_BYTES);
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * Reads the buildings in the binary save file contained in the remaining
+     * bytes of the given buffer.
+     * <p>
+     * The buffer's position is not changed.
+     *
+     * @param buffer buffer containing a binary save file
+     * @return buildings read from the buffer, in the order they were written
+     * @throws FileFormatException if the buffer does not contain a valid
+     *                             binary save file
+     */
+    public static List<Building> decode(ByteBuffer buffer)
+            throws FileFormatException {
+        if (!isBinary(buffer)) {
+            throw new FileFormatException();
+        }
+        // Reading from an array is much faster than from a mapped buffer
+        byte[] bytes = new byte[buffer.remaining()];
+        buffer.duplicate().get(bytes);
+        Input in = new Input(bytes, MAGIC.length, bytes.length);
+        if (in.readByte() != VERSION) {
+            throw new FileFormatException();
+        }
+        int numBuildings = in.readCount();
+        List<Building> buildings = new ArrayList<>();
+        for (int i = 0; i < numBuildings; ++i) {
+            int length = in.readInt();
+            if (length < 0 || length > in.remaining()) {
+                throw new FileFormatException();
+            }
+            Input section = new Input(bytes, in.position,
+                    in.position + length);
+            buildings.add(readBuilding(section));
+            if (section.remaining() != 0) {
+                throw new FileFormatException();
+            }
+            in.position += length;
+        }
+        if (in.remaining() != 0) {
+            throw new FileFormatException();
+        }
+        return buildings;
+    }
+
+    /*
+    Writes a building and all of its floors
+     */
+    private static void writeBuilding(Output out, Building building) {
+        out.writeString(building.getName());
+        List<Floor> floors = building.getFloors();
+        out.writeVarint(floors.size());
+        for (Floor floor : floors) {
+            writeFloor(out, floor);
+        }
+    }
+
+    /*
+    Writes a floor, all of its rooms and its maintenance schedule
+     */
+    static void writeFloor(Output out, Floor floor) {
+        out.writeSignedVarint(floor.getFloorNumber());
+        out.writeDouble(floor.getWidth());
+        out.writeDouble(floor.getLength());
+        List<Room> rooms = floor.getRooms();
+        out.writeVarint(rooms.size());
+        for (Room room : rooms) {
+            writeRoom(out, room);
+        }
+        // A schedule always has at least one room, so zero means no schedule
+        MaintenanceSchedule schedule = floor.getMaintenanceSchedule();
+        if (schedule == null) {
+            out.writeVarint(0);
+            return;
+        }
+        List<Room> roomOrder = schedule.getRoomOrder();
+        out.writeVarint(roomOrder.size());
+        for (Room room : roomOrder) {
+            out.writeSignedVarint(room.getRoomNumber());
+        }
+    }
+
+    /*
+    Writes a room, all of its sensors and its hazard evaluator
+     */
+    static void writeRoom(Output out, Room room) {
+        out.writeSignedVarint(room.getRoomNumber());
+        out.writeByte(room.getType().ordinal());
+        out.writeDouble(room.getArea());
+        List<Sensor> sensors = room.getSensors();
+        out.writeVarint(sensors.size());
+        for (Sensor sensor : sensors) {
+            writeSensor(out, sensor);
+        }
+        writeHazardEvaluator(out, room);
+    }
+
+    /*
+    Writes the kind of a room's hazard evaluator, along with the weightings
+    of a weighting based evaluator
+     */
+    static void writeHazardEvaluator(Output out, Room room) {
+        List<Sensor> sensors = room.getSensors();
+        HazardEvaluator evaluator = room.getHazardEvaluator();
+        if (evaluator instanceof WeightingBasedHazardEvaluator) {
+            // Each weighting is stored against the index of its sensor
+            Map<HazardSensor, Integer> weightings =
+                    ((WeightingBasedHazardEvaluator) evaluator)
+                            .getSensorWeightings();
+            out.writeByte(WEIGHTING_BASED);
+            out.writeVarint(weightings.size());
+            for (Map.Entry<HazardSensor, Integer> entry
+                    : weightings.entrySet()) {
+                out.writeVarint(sensors.indexOf(entry.getKey()));
+                out.writeSignedVarint(entry.getValue());
+            }
+        } else if (evaluator instanceof RuleBasedHazardEvaluator) {
+            out.writeByte(RULE_BASED);
+        } else {
+            out.writeByte(NO_EVALUATOR);
+        }
+    }
+
+    /*
+    Writes a sensor and its readings
+     */
+    static void writeSensor(Output out, Sensor sensor) {
+        if (sensor instanceof CarbonDioxideSensor) {
+            out.writeByte(CARBON_DIOXIDE_SENSOR);
+        } else if (sensor instanceof NoiseSensor) {
+            out.writeByte(NOISE_SENSOR);
+        } else if (sensor instanceof OccupancySensor) {
+            out.writeByte(OCCUPANCY_SENSOR);
+        } else if (sensor instanceof TemperatureSensor) {
+            out.writeByte(TEMPERATURE_SENSOR);
+        } else {
+            throw new IllegalArgumentException("Cannot encode sensor of type "
+                    + sensor.getClass().getSimpleName());
+        }
+
+        TimedSensor timedSensor = (TimedSensor) sensor;
+        int[] readings = timedSensor.getSensorReadings();
+        out.writeVarint(readings.length);
+        for (int reading : readings) {
+            out.writeVarint(reading);
+        }
+        if (!(sensor instanceof TemperatureSensor)) {
+            out.writeVarint(timedSensor.getUpdateFrequency());
+        }
+        if (sensor instanceof CarbonDioxideSensor) {
+            CarbonDioxideSensor carbonDioxideSensor =
+                    (CarbonDioxideSensor) sensor;
+            out.writeSignedVarint(carbonDioxideSensor.getIdealValue());
+            out.writeSignedVarint(carbonDioxideSensor.getVariationLimit());
+        } else if (sensor instanceof OccupancySensor) {
+            out.writeSignedVarint(((OccupancySensor) sensor).getCapacity());
+        }
+    }
+
+    /*
+    Reads a building and all of its floors
+     */
+    private static Building readBuilding(Input in)
+            throws FileFormatException {
+        Building building = new Building(in.readString());
+        int numFloors = in.readCount();
+        for (int i = 0; i < numFloors; ++i) {
+            try {
+                building.addFloor(readFloor(in));
+            } catch (IllegalArgumentException | DuplicateFloorException
+                    | NoFloorBelowException | FloorTooSmallException e) {
+                throw new FileFormatException();
+            }
+        }
+        return building;
+    }
+
+    /*
+    Reads a floor, all of its rooms and its maintenance schedule
+     */
+    static Floor readFloor(Input in)
+            throws FileFormatException {
+        int floorNumber = in.readSignedVarint();
+        double width = in.readDouble();
+        double length = in.readDouble();
+        Floor floor = new Floor(floorNumber, width, length);
+        int numRooms = in.readCount();
+        for (int i = 0; i < numRooms; ++i) {
+            try {
+                floor.addRoom(readRoom(in));
+            } catch (DuplicateRoomException | InsufficientSpaceException
+                    | IllegalArgumentException e) {
+                throw new FileFormatException();
+            }
+        }
+        int scheduleLength = in.readCount();
+        if (scheduleLength > 0) {
+            List<Integer> roomNumbers = new ArrayList<>();
+            for (int i = 0; i < scheduleLength; ++i) {
+                roomNumbers.add(in.readSignedVarint());
+            }
+            BuildingInitialiser.setMaintenanceSchedule(floor, roomNumbers);
+        }
+        return floor;
+    }
+
+    /*
+    Reads a room, all of its sensors and its hazard evaluator
+     */
+    static Room readRoom(Input in)
+            throws FileFormatException {
+        int roomNumber = in.readSignedVarint();
+        int typeOrdinal = in.readByte();
+        if (typeOrdinal >= RoomType.values().length) {
+            throw new FileFormatException();
+        }
+        RoomType type = RoomType.values()[typeOrdinal];
+        double area = in.readDouble();
+        Room room = new Room(roomNumber, type, area);
+
+        int numSensors = in.readCount();
+        List<Sensor> sensors = new ArrayList<>();
+        for (int i = 0; i < numSensors; ++i) {
+            sensors.add(readSensor(in));
+        }
+        BuildingInitialiser.addSensors(room, sensors);
+        readHazardEvaluator(in, room);
+        return room;
+    }
+
+    /*
+    Reads a hazard evaluator and sets it as the room's evaluator, over the
+    room's current sensors
+     */
+    static void readHazardEvaluator(Input in, Room room)
+            throws FileFormatException {
+        int evaluatorKind = in.readByte();
+        if (evaluatorKind == WEIGHTING_BASED) {
+            room.setHazardEvaluator(readWeightingBasedEvaluator(in,
+                    room.getSensors()));
+        } else if (evaluatorKind == RULE_BASED) {
+            List<HazardSensor> hazardSensors = new ArrayList<>();
+            for (Sensor sensor : room.getSensors()) {
+                hazardSensors.add((HazardSensor) sensor);
+            }
+            room.setHazardEvaluator(
+                    new RuleBasedHazardEvaluator(hazardSensors));
+        } else if (evaluatorKind != NO_EVALUATOR) {
+            throw new FileFormatException();
+        }
+    }
+
+    /*
+    Reads the weightings of a weighting based hazard evaluator over the given
+    sensors of a room
+     */
+    private static WeightingBasedHazardEvaluator readWeightingBasedEvaluator(
+            Input in, List<Sensor> sensors) throws FileFormatException {
+        int numWeightings = in.readCount();
+        Map<HazardSensor, Integer> weightings = new LinkedHashMap<>();
+        for (int i = 0; i < numWeightings; ++i) {
+            int sensorIndex = in.readCount();
+            if (sensorIndex >= sensors.size()) {
+                throw new FileFormatException();
+            }
+            weightings.put((HazardSensor) sensors.get(sensorIndex),
+                    in.readSignedVarint());
+        }
+        try {
+            return new WeightingBasedHazardEvaluator(weightings);
+        } catch (IllegalArgumentException e) {
+            throw new FileFormatException();
+        }
+    }
+
+    /*
+    Reads a sensor and its readings
+     */
+    static Sensor readSensor(Input in)
+            throws FileFormatException {
+        int kind = in.readByte();
+        if (kind > TEMPERATURE_SENSOR) {
+            throw new FileFormatException();
+        }
+        int readingCount = in.readCount();
+        // Each reading takes at least one byte, so a count beyond the bytes
+        // left is corrupt, and allocating for it could run out of memory
+        if (readingCount > in.remaining()) {
+            throw new FileFormatException();
+        }
+        int[] readings = new int[readingCount];
+        for (int i = 0; i < readings.length; ++i) {
+            readings[i] = in.readVarint();
+        }
+        try {
+            if (kind == TEMPERATURE_SENSOR) {
+                return new TemperatureSensor(readings);
+            }
+            int updateFrequency = in.readVarint();
+            if (kind == CARBON_DIOXIDE_SENSOR) {
+                int idealValue = in.readSignedVarint();
+                int variationLimit = in.readSignedVarint();
+                return new CarbonDioxideSensor(readings, updateFrequency,
+                        idealValue, variationLimit);
+            } else if (kind == OCCUPANCY_SENSOR) {
+                int capacity = in.readSignedVarint();
+                return new OccupancySensor(readings, updateFrequency,
+                        capacity);
+            }
+            return new NoiseSensor(readings, updateFrequency);
+        } catch (IllegalArgumentException e) {
+            throw new FileFormatException();
+        }
+    }
+
+    /*
+    Growable byte array to which a binary save file is written
+     */
+    static class Output {
+
+        private byte[] bytes = new byte[4096];
+        private int size = 0;
+
+        int size() {
+            return size;
+        }
+
+        byte[] toByteArray() {
+            return Arrays.copyOf(bytes, size);
+        }
+
+        private void ensureCapacity(int extra) {
+            if (size + extra > bytes.length) {
+                bytes = Arrays.copyOf(bytes,
+                        Math.max(bytes.length * 2, size + extra));
+            }
+        }
+
+        void writeByte(int value) {
+            ensureCapacity(1);
+            bytes[size++] = (byte) value;
+        }
+
+        /*
+        Leaves space for the given number of bytes to be written later,
+        returning the index of the space
+         */
+        int reserve(int length) {
+            ensureCapacity(length);
+            int index = size;
+            size += length;
+            return index;
+        }
+
+        void writeIntAt(int index, int value) {
+            for (int i = 0; i < Integer.BYTES; ++i) {
+                bytes[index + i] = (byte) (value >>> (24 - 8 * i));
+            }
+        }
+
+        /*
+        Writes an int as an unsigned LEB128 varint, seven bits per byte
+         */
+        void writeVarint(int value) {
+            ensureCapacity(5);
+            while ((value & ~0x7F) != 0) {
+                bytes[size++] = (byte) ((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            bytes[size++] = (byte) value;
+        }
+
+        /*
+        Writes an int as a zigzag varint, so small negative values stay short
+         */
+        void writeSignedVarint(int value) {
+            writeVarint((value << 1) ^ (value >> 31));
+        }
+
+        void writeBytes(byte[] values) {
+            ensureCapacity(values.length);
+            System.arraycopy(values, 0, bytes, size, values.length);
+            size += values.length;
+        }
+
+        void writeLong(long value) {
+            ensureCapacity(Long.BYTES);
+            for (int i = 0; i < Long.BYTES; ++i) {
+                bytes[size++] = (byte) (value >>> (56 - 8 * i));
+            }
+        }
+
+        void writeDouble(double value) {
+            writeLong(Double.doubleToLongBits(value));
+        }
+
+        void writeString(String value) {
+            byte[] encoded = value.getBytes(StandardCharsets.UTF_8);
+            writeVarint(encoded.length);
+            ensureCapacity(encoded.length);
+            System.arraycopy(encoded, 0, bytes, size, encoded.length);
+            size += encoded.length;
+        }
+    }
+
+    /*
+    Reads values from a range of a byte array, throwing a FileFormatException
+    if a value extends past the end of the range
+     */
+    static class Input {
+
+        private final byte[] bytes;
+        private int position;
+        private final int limit;
+
+        Input(byte[] bytes, int position, int limit) {
+            this.bytes = bytes;
+            this.position = position;
+            this.limit = limit;
+        }
+
+        int remaining() {
+            return limit - position;
+        }
+
+        int readByte() throws FileFormatException {
+            if (position >= limit) {
+                throw new FileFormatException();
+            }
+            return bytes[position++] & 0xFF;
+        }
+
+        long readBigEndian(int length) throws FileFormatException {
+            if (remaining() < length) {
+                throw new FileFormatException();
+            }
+            long value = 0;
+            for (int i = 0; i < length; ++i) {
+                value = (value << 8) | (bytes[position++] & 0xFF);
+            }
+            return value;
+        }
+
+        int readInt() throws FileFormatException {
+            return (int) readBigEndian(Integer.BYTES);
+        }
+
+        int readVarint() throws FileFormatException {
+            // Skip the bounds check on each byte when a whole varint fits
+            if (limit - position >= 5) {
+                int index = position;
+                int value = 0;
+                int shift = 0;
+                byte b;
+                do {
+                    b = bytes[index++];
+                    value |= (b & 0x7F) << shift;
+                    shift += 7;
+                } while (b < 0 && shift < 35);
+                if (b < 0) {
+                    throw new FileFormatException();
+                }
+                position = index;
+                return value;
+            }
+            int value = 0;
+            for (int shift = 0; shift < 35; shift += 7) {
+                int b = readByte();
+                value |= (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    return value;
+                }
+            }
+            throw new FileFormatException();
+        }
+
+        int readSignedVarint() throws FileFormatException {
+            int value = readVarint();
+            return (value >>> 1) ^ -(value & 1);
+        }
+
+        /*
+        Reads a varint which must be a non-negative count or index
+         */
+        int readCount() throws FileFormatException {
+            int count = readVarint();
+            if (count < 0) {
+                throw new FileFormatException();
+            }
+            return count;
+        }
+
+        long readLong() throws FileFormatException {
+            return readBigEndian(Long.BYTES);
+        }
+
+        double readDouble() throws FileFormatException {
+            return Double.longBitsToDouble(readLong());
+        }
+
+        String readString() throws FileFormatException {
+            int length = readCount();
+            if (length > remaining()) {
+                throw new FileFormatException();
+            }
+            String value = new String(bytes, position, length,
+                    StandardCharsets.UTF_8);
+            position += length;
+            return value;
+        }
+    }
+}
@@ -1,6 +1,7 @@
 package bms.building;
 
 import bms.exceptions.DuplicateFloorException;
+import bms.exceptions.FileFormatException;
 import bms.exceptions.FireDrillException;
 import bms.exceptions.FloorTooSmallException;
 import bms.exceptions.NoFloorBelowException;
@@ -9,6 +10,7 @@ import bms.room.RoomType;
 import bms.util.Encodable;
 import bms.util.FireDrill;
 
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -34,6 +36,12 @@ public class Building implements FireDrill, Encodable {
      */
     private List<Floor> floors;
 
+    /**
+     * Creates this building's floors when they are first used, or null if
+     * the floors have already been created.
+     */
+    private volatile FloorLoader floorLoader;
+
     /**
      * Creates a new empty building with no rooms.
      *
@@ -45,6 +53,22 @@ public class Building implements FireDrill, Encodable {
         this.floors = new ArrayList<>();
     }
 
+    /**
+     * Creates a new building whose floors are created by the given loader the
+     * first time they are used.
+     * <p>
+     * Until then, the building holds no floors, rooms or sensors in memory.
+     * If the loader fails, every method which uses the building's floors
+     * throws an IllegalStateException.
+     *
+     * @param name name of this building, eg. "General Purpose South"
+     * @param floorLoader loader which creates this building's floors
+     */
+    public Building(String name, FloorLoader floorLoader) {
+        this(name);
+        this.floorLoader = floorLoader;
+    }
+
     /**
      * Returns the name of the building.
      *
@@ -65,9 +89,46 @@ public class Building implements FireDrill, Encodable {
      * @ass1
      */
     public List<Floor> getFloors() {
+        loadFloors();
         return new ArrayList<>(this.floors);
     }
 
+    /**
+     * Returns whether this building's floors have been created, which is
+     * always true unless the building was created with a {@link FloorLoader}
+     * and its floors have not been used yet.
+     *
+     * @return true if this building's floors are in memory, false otherwise
+     */
+    public boolean floorsLoaded() {
+        return floorLoader == null;
+    }
+
+    /*
+    Creates this building's floors using its floor loader, if they have not
+    been created already. Threads which use the building at the same time
+    wait for one of them to create the floors, so they are only created once.
+     */
+    private void loadFloors() {
+        if (floorLoader == null) {
+            return;
+        }
+        synchronized (this) {
+            FloorLoader loader = floorLoader;
+            if (loader == null) {
+                return;
+            }
+            try {
+                floors.addAll(loader.loadFloors());
+            } catch (FileFormatException e) {
+                throw new IllegalStateException("Could not load the floors "
+                        + "of building \"" + name + "\"", e);
+            }
+            // Publishes the floors to threads which then see no loader
+            floorLoader = null;
+        }
+    }
+
     /**
      * Searches for the floor with the specified floor number.
      * <p>
@@ -79,6 +140,7 @@ public class Building implements FireDrill, Encodable {
      * @ass1
      */
     public Floor getFloorByNumber(int floorNumber) {
+        loadFloors();
         for (Floor floor : this.floors) {
             if (floor.getFloorNumber() == floorNumber) {
                 return floor;
@@ -205,6 +267,7 @@ public class Building implements FireDrill, Encodable {
      * @ass1
      */
     public void fireDrill(RoomType roomType) throws FireDrillException {
+        loadFloors();
         if (this.floors.size() < 1) {
             throw new FireDrillException("Cannot conduct fire drill because "
                     + "there are no floors in the building yet!");
@@ -233,6 +296,7 @@ public class Building implements FireDrill, Encodable {
      * @ass1
      */
     public void cancelFireDrill() {
+        loadFloors();
         for (Floor floor : this.floors) {
             floor.cancelFireDrill();
         }
@@ -287,6 +351,7 @@ public class Building implements FireDrill, Encodable {
      */
     @Override
     public String toString() {
+        loadFloors();
         return String.format("Building: name=\"%s\", floors=%d",
                 this.name, this.floors.size());
     }
@@ -295,11 +360,24 @@ public class Building implements FireDrill, Encodable {
      * @return encoded string representation of this building
      */
     public String encode() {
-        String output = name + System.lineSeparator() + getFloors().size() +
-                        System.lineSeparator();
-        for (Floor floor : getFloors()) {
-            output += floor.encode() + System.lineSeparator();
+        return Encodable.encodeToString(this);
+    }
+
+    /**
+     * Appends the encoded representation of this building, and all of its
+     * floors, to the given appendable.
+     *
+     * @param out appendable to which to append this building's representation
+     * @throws IOException if appending to the appendable fails
+     */
+    @Override
+    public void encodeTo(Appendable out) throws IOException {
+        List<Floor> floors = getFloors();
+        out.append(name).append(System.lineSeparator())
+                .append(String.valueOf(floors.size()));
+        for (Floor floor : floors) {
+            out.append(System.lineSeparator());
+            floor.encodeTo(out);
         }
-        return output.stripTrailing();
     }
 }
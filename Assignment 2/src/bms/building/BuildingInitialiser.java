@@ -7,10 +7,39 @@ import bms.hazardevaluation.WeightingBasedHazardEvaluator;
 import bms.room.Room;
 import bms.room.RoomType;
 import bms.sensors.*;
+import bms.util.TimedItem;
+import bms.util.TimedItemManager;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
 import java.io.BufferedReader;
-import java.io.FileReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.FileInputStream;
+import java.io.FilterInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
 import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.function.DoubleConsumer;
 import java.util.stream.Collectors;
 
 /**
@@ -19,8 +48,34 @@ import java.util.stream.Collectors;
  */
 public class BuildingInitialiser {
 
+    /**
+     * Character set of save files in the text format. Every loader decodes
+     * text with it, whether the file is read through a reader or parsed
+     * from its mapped bytes, so they all give the same building names
+     * whatever the platform's default character set.
+     */
+    static final Charset CHARSET = StandardCharsets.UTF_8;
+
+    /**
+     * Throughput statistics of the most recent successful load, or null if no
+     * file has been loaded.
+     */
+    private static volatile LoadStatistics lastLoadStatistics;
+
     /**
      * Loads a list of buildings from a save file with the given filename.
+     * <p>
+     * The file is streamed in a single pass; blank lines are rejected as they
+     * are read rather than by a separate scan of the whole file.
+     * <p>
+     * Binary save files written by {@link BinaryCodec} are recognised by their
+     * header, and are decoded rather than parsed. This is also the case for
+     * every other method which loads buildings from a file.
+     * <p>
+     * Save files compressed with any {@link Compression}, in either format,
+     * are likewise recognised by their header and decompressed as they are
+     * streamed. The load statistics then count the compressed bytes read.
+     *
      * @param filename path of the file from which to load a list of buildings
      * @return a list containing all the buildings loaded from the file
      * @throws IOException if an IOException is encountered when calling any
@@ -30,54 +85,616 @@ public class BuildingInitialiser {
      */
     public static List<Building> loadBuildings(String filename)
             throws IOException, FileFormatException {
+        Compression compression = Compression.detectFile(filename);
+        if (compression == Compression.NONE
+                && BinaryCodec.isBinaryFile(filename)) {
+            return loadBinary(filename);
+        }
+        long startTime = System.nanoTime();
+        List<Building> buildingList;
+
+        try (CountingInputStream input =
+                     new CountingInputStream(new FileInputStream(filename));
+             InputStream decompressed = decompress(input, compression);
+             SaveFileReader reader = new SaveFileReader(
+                     new InputStreamReader(decompressed, CHARSET))) {
+            if (compression != Compression.NONE
+                    && BinaryCodec.isBinary(decompressed)) {
+                buildingList = BinaryCodec.decode(
+                        ByteBuffer.wrap(decompressed.readAllBytes()));
+                lastLoadStatistics = createStatistics(buildingList, 0,
+                        input.getByteCount(), startTime);
+                return buildingList;
+            }
+            buildingList = readBuildings(reader);
+            lastLoadStatistics = createStatistics(buildingList,
+                    reader.getLineCount(), input.getByteCount(), startTime);
+        }
+        return buildingList;
+    }
+
+    /**
+     * Loads a list of buildings from a save file with the given filename by
+     * mapping the file into memory and parsing it directly from its bytes.
+     * <p>
+     * This produces the same buildings as {@link #loadBuildings(String)} and
+     * rejects the same files, but avoids creating a String for every line
+     * and field, which dominates load time for sensors with long lists of
+     * readings. Files too large to be mapped in one piece, and compressed
+     * files, which cannot be parsed in place, are loaded with
+     * {@link #loadBuildings(String)} instead.
+     *
+     * @param filename path of the file from which to load a list of buildings
+     * @return a list containing all the buildings loaded from the file
+     * @throws IOException if an IOException is encountered when calling any
+     *                     IO methods
+     * @throws FileFormatException if the file format of the given file is
+     *                             invalid
+     */
+    public static List<Building> loadBuildingsMapped(String filename)
+            throws IOException, FileFormatException {
+        long startTime = System.nanoTime();
+        List<Building> buildingList;
+
+        try (FileChannel channel = FileChannel.open(Paths.get(filename),
+                StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE) {
+                return loadBuildings(filename);
+            }
+            MappedByteBuffer buffer = channel.map(
+                    FileChannel.MapMode.READ_ONLY, 0, size);
+            if (Compression.detect(buffer) != Compression.NONE) {
+                return loadBuildings(filename);
+            }
+            if (BinaryCodec.isBinary(buffer)) {
+                return decodeBinary(buffer, startTime);
+            }
+            MappedBuildingParser parser = new MappedBuildingParser(buffer);
+            buildingList = parser.readBuildings();
+            lastLoadStatistics = createStatistics(buildingList,
+                    parser.getLineCount(), size, startTime);
+        }
+        return buildingList;
+    }
+
+    /**
+     * Loads a list of buildings from a save file with the given filename,
+     * parsing the buildings in parallel on the common fork/join pool.
+     *
+     * @param filename path of the file from which to load a list of buildings
+     * @return a list containing all the buildings loaded from the file
+     * @throws IOException if an IOException is encountered when calling any
+     *                     IO methods
+     * @throws FileFormatException if the file format of the given file is
+     *                             invalid
+     * @see #loadBuildingsParallel(String, ForkJoinPool)
+     */
+    public static List<Building> loadBuildingsParallel(String filename)
+            throws IOException, FileFormatException {
+        return loadBuildingsParallel(filename, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Loads a list of buildings from a save file with the given filename,
+     * parsing the buildings in parallel on the given pool.
+     * <p>
+     * Each building in a save file is an independent block of lines. The
+     * mapped file is first scanned to find where each block starts, which
+     * only requires the floor, room and sensor counts to be parsed. Each
+     * block is then parsed as a separate task, as in
+     * {@link #loadBuildingsMapped(String)}.
+     * <p>
+     * The buildings are returned in the order they appear in the file, and
+     * the timed items they create are registered with the
+     * {@link TimedItemManager} in that same order once every building has
+     * been parsed. Files are accepted and rejected exactly as by
+     * {@link #loadBuildings(String)}; if any building is invalid, none of the
+     * timed items created by the load are registered. Compressed files are
+     * loaded with {@link #loadBuildings(String)} instead.
+     *
+     * @param filename path of the file from which to load a list of buildings
+     * @param pool pool on which to parse the buildings
+     * @return a list containing all the buildings loaded from the file
+     * @throws IOException if an IOException is encountered when calling any
+     *                     IO methods
+     * @throws FileFormatException if the file format of the given file is
+     *                             invalid
+     */
+    public static List<Building> loadBuildingsParallel(String filename,
+            ForkJoinPool pool) throws IOException, FileFormatException {
+        long startTime = System.nanoTime();
         List<Building> buildingList = new ArrayList<>();
-        String buildingName;
-        String line;
-        int numFloors;
+        List<ParsedBuilding> parsedBuildings = new ArrayList<>();
+        long lineCount = 0;
+
+        try (FileChannel channel = FileChannel.open(Paths.get(filename),
+                StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE) {
+                return loadBuildings(filename);
+            }
+            MappedByteBuffer buffer = channel.map(
+                    FileChannel.MapMode.READ_ONLY, 0, size);
+            if (Compression.detect(buffer) != Compression.NONE) {
+                return loadBuildings(filename);
+            }
+            if (BinaryCodec.isBinary(buffer)) {
+                return decodeBinary(buffer, startTime);
+            }
+
+            // Find the start of each building, plus the end of the last one
+            List<Integer> boundaries = new ArrayList<>();
+            MappedBuildingParser scanner = new MappedBuildingParser(buffer);
+            boundaries.add(scanner.getPosition());
+            while (scanner.getPosition() < buffer.limit()) {
+                scanner.skipBuilding();
+                boundaries.add(scanner.getPosition());
+            }
+
+            List<ForkJoinTask<ParsedBuilding>> tasks = new ArrayList<>();
+            for (int i = 0; i < boundaries.size() - 1; ++i) {
+                int start = boundaries.get(i);
+                int end = boundaries.get(i + 1);
+                tasks.add(pool.submit(
+                        () -> parseBuilding(buffer, start, end)));
+            }
+            try {
+                for (ForkJoinTask<ParsedBuilding> task : tasks) {
+                    ParsedBuilding parsed = joinParse(task);
+                    buildingList.add(parsed.building);
+                    parsedBuildings.add(parsed);
+                    lineCount += parsed.lineCount;
+                }
+            } finally {
+                // Stop parsing the remaining buildings if any of them failed
+                for (ForkJoinTask<ParsedBuilding> task : tasks) {
+                    task.cancel(false);
+                }
+            }
+            TimedItemManager manager = TimedItemManager.getCurrent();
+            synchronized (manager) {
+                for (ParsedBuilding parsed : parsedBuildings) {
+                    manager.registerTimedItems(parsed.building,
+                            parsed.timedItems);
+                }
+            }
+            lastLoadStatistics = createStatistics(buildingList, lineCount,
+                    size, startTime);
+        }
+        return buildingList;
+    }
+
+    /*
+    Parses the building between the given indices of the buffer, deferring
+    the registration of the timed items it creates. A format error is
+    returned rather than thrown, as the pool would otherwise wrap it in an
+    unchecked exception.
+     */
+    private static ParsedBuilding parseBuilding(ByteBuffer buffer, int start,
+            int end) {
+        MappedBuildingParser parser =
+                new MappedBuildingParser(buffer, start, end);
+        TimedItemManager manager = TimedItemManager.getCurrent();
         Building building;
+        List<TimedItem> timedItems;
 
+        manager.deferRegistrations();
         try {
-            // Read file for empty lines and throw error if empty line detected.
-            BufferedReader emptyReader =
-                    new BufferedReader(new FileReader(filename));
-            while ((line = emptyReader.readLine()) != null) {
-                if (line.length() == 0) {
-                    throw new FileFormatException();
-                }
+            building = parser.readBuilding();
+        } catch (FileFormatException e) {
+            return new ParsedBuilding(e);
+        } finally {
+            timedItems = manager.takeDeferredRegistrations();
+        }
+        // The building must end exactly where the boundary scan found it to
+        if (parser.getPosition() != end) {
+            return new ParsedBuilding(new FileFormatException());
+        }
+        return new ParsedBuilding(building, timedItems, parser.getLineCount());
+    }
+
+    /*
+    Waits for a building to be parsed, rethrowing any exception thrown while
+    parsing it
+     */
+    private static ParsedBuilding joinParse(ForkJoinTask<ParsedBuilding> task)
+            throws IOException, FileFormatException {
+        ParsedBuilding parsed;
+        try {
+            parsed = task.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
             }
-            // Read file for buildings
-            BufferedReader reader =
-                    new BufferedReader(new FileReader(filename));
-            while ((buildingName = reader.readLine()) != null) {
-                try {
-                    numFloors = Integer.parseInt(reader.readLine());
-                    if (numFloors < 0) {
-                        throw new FileFormatException();
+            throw new IllegalStateException(cause);
+        }
+        if (parsed.error != null) {
+            throw parsed.error;
+        }
+        return parsed;
+    }
+
+    /**
+     * Loads a list of buildings from a save file with the given filename,
+     * deferring the creation of each building's floors until they are first
+     * used.
+     * <p>
+     * The mapped file is scanned once to find where each building starts, as
+     * in {@link #loadBuildingsParallel(String, ForkJoinPool)}, but only the
+     * name of each building is kept. The floors, rooms and sensors of a
+     * building are created from the mapped file the first time any method of
+     * the building uses its floors, so the memory used and the time taken to
+     * load depend on which buildings are viewed rather than on the size of
+     * the file.
+     * <p>
+     * When a building's floors are created, its timed items are brought up
+     * to date with the minutes elapsed since the file was loaded before they
+     * are registered with the {@link TimedItemManager} which was current
+     * when the file was loaded, so they are in the same state as if they had
+     * been loaded eagerly.
+     * <p>
+     * Files whose building blocks cannot be found are rejected by this
+     * method. Any other format error within a building is only detected when
+     * its floors are created, in which case methods of that building throw
+     * an IllegalStateException.
+     * <p>
+     * Compressed files cannot be read in place, so they are loaded eagerly
+     * with {@link #loadBuildings(String)} instead.
+     *
+     * @param filename path of the file from which to load a list of buildings
+     * @return a list containing all the buildings in the file, whose floors
+     * have not yet been created
+     * @throws IOException if an IOException is encountered when calling any
+     *                     IO methods
+     * @throws FileFormatException if the file format of the given file is
+     *                             invalid
+     */
+    public static List<Building> loadBuildingsLazy(String filename)
+            throws IOException, FileFormatException {
+        long startTime = System.nanoTime();
+        TimedItemManager manager = TimedItemManager.getCurrent();
+        long loadMinute = manager.getMinutesElapsed();
+        List<Building> buildingList = new ArrayList<>();
+
+        try (FileChannel channel = FileChannel.open(Paths.get(filename),
+                StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE) {
+                return loadBuildings(filename);
+            }
+            MappedByteBuffer buffer = channel.map(
+                    FileChannel.MapMode.READ_ONLY, 0, size);
+            if (Compression.detect(buffer) != Compression.NONE) {
+                return loadBuildings(filename);
+            }
+            if (BinaryCodec.isBinary(buffer)) {
+                return decodeBinary(buffer, startTime);
+            }
+
+            MappedBuildingParser scanner = new MappedBuildingParser(buffer);
+            while (scanner.getPosition() < buffer.limit()) {
+                int start = scanner.getPosition();
+                String name = scanner.skipBuilding();
+                int end = scanner.getPosition();
+                buildingList.add(new Building(name, () -> loadFloors(buffer,
+                        start, end, manager, loadMinute)));
+            }
+            lastLoadStatistics = new LoadStatistics(scanner.getLineCount(),
+                    size, System.nanoTime() - startTime);
+        }
+        return buildingList;
+    }
+
+    /*
+    Creates the floors of the building between the given indices of the
+    buffer, bringing its timed items up to date with the minutes the manager
+    has elapsed since the given minute before registering them with it
+     */
+    private static List<Floor> loadFloors(ByteBuffer buffer, int start,
+            int end, TimedItemManager manager, long loadMinute)
+            throws FileFormatException {
+        ParsedBuilding parsed = parseBuilding(buffer, start, end);
+        if (parsed.error != null) {
+            throw parsed.error;
+        }
+        synchronized (manager) {
+            TimedItemManager.elapseMinutes(parsed.timedItems,
+                    manager.getMinutesElapsed() - loadMinute);
+            manager.registerTimedItems(parsed.building, parsed.timedItems);
+        }
+        return parsed.building.getFloors();
+    }
+
+    /*
+    Loads a list of buildings from a binary save file
+     */
+    private static List<Building> loadBinary(String filename)
+            throws IOException, FileFormatException {
+        long startTime = System.nanoTime();
+        try (FileChannel channel = FileChannel.open(Paths.get(filename),
+                StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE) {
+                throw new IOException("Binary save file is too large to load");
+            }
+            return decodeBinary(channel.map(FileChannel.MapMode.READ_ONLY, 0,
+                    size), startTime);
+        }
+    }
+
+    /*
+    Decodes the buildings in a binary save file, recording the statistics of
+    the load started at the given time
+     */
+    private static List<Building> decodeBinary(ByteBuffer buffer,
+            long startTime) throws FileFormatException {
+        List<Building> buildingList = BinaryCodec.decode(buffer);
+        lastLoadStatistics = createStatistics(buildingList, 0,
+                buffer.remaining(), startTime);
+        return buildingList;
+    }
+
+    /*
+    Holds the sensors of each of the given buildings in a store of the
+    building's own in the current thread's manager, and compresses the
+    readings of its stores where that saves memory, now that the loaded
+    sensors are registered with it. Then creates the statistics of a load
+    started at the given time, including the readings shared within each
+    building's store
+     */
+    private static LoadStatistics createStatistics(List<Building> buildings,
+            long lineCount, long byteCount, long startTime) {
+        TimedItemManager manager = TimedItemManager.getCurrent();
+        manager.separateBuildings(buildings);
+        manager.compressReadingsIfSmaller();
+        return new LoadStatistics(lineCount, byteCount,
+                System.nanoTime() - startTime,
+                manager.getSharedReadingsCount(buildings),
+                manager.getSharedReadingsBytes(buildings),
+                manager.getReadingsCompressionRatio());
+    }
+
+    /*
+    Returns a stream of the decompressed contents of the given stream, which
+    supports marking if the stream is compressed
+     */
+    private static InputStream decompress(InputStream input,
+            Compression compression) throws IOException {
+        if (compression == Compression.NONE) {
+            return input;
+        }
+        return new BufferedInputStream(compression.decompress(input));
+    }
+
+    /**
+     * Returns the throughput statistics of the most recent successful call to
+     * {@link #loadBuildings(String)}, {@link #loadBuildingsMapped(String)},
+     * {@link #loadBuildingsParallel(String)} or
+     * {@link #loadBuildingsLazy(String)}.
+     *
+     * @return statistics of the last load, or null if nothing has been loaded
+     */
+    public static LoadStatistics getLastLoadStatistics() {
+        return lastLoadStatistics;
+    }
+
+    /**
+     * Saves the given buildings to the file with the given filename,
+     * replacing the file if it already exists.
+     * <p>
+     * The file is written under a temporary name beside it, which then
+     * replaces it atomically where the file system allows, so a save which
+     * fails part way leaves the previous file as it was.
+     * <p>
+     * The file contains the encoded representation of each building, joined
+     * by a line separator, unless the filename ends with
+     * {@link BinaryCodec#FILE_EXTENSION}, in which case the binary format of
+     * {@link BinaryCodec} is written instead.
+     * <p>
+     * If the filename then ends with the file extension of a
+     * {@link Compression}, such as "campus.txt.gz" or "campus.bms.deflate",
+     * the file is compressed as it is written, on the calling thread.
+     *
+     * @param buildings buildings to save
+     * @param filename path of the file to save to
+     * @throws IOException if an IOException is encountered when writing to
+     *                     the file
+     */
+    public static void saveBuildings(List<Building> buildings,
+            String filename) throws IOException {
+        saveBuildings(buildings, filename, isBinaryFilename(filename),
+                Compression.forFilename(filename));
+    }
+
+    /**
+     * Saves buildings which were captured earlier with
+     * {@link BinaryCodec#encode(List)} to the file with the given filename,
+     * choosing the format and compression from the filename as
+     * {@link #saveBuildings(List, String)} does.
+     * <p>
+     * Capturing the buildings is much quicker than saving them as text, so
+     * this lets the buildings be saved exactly as they were when captured,
+     * on another thread, while they continue to change. The captured
+     * buildings are never registered with the {@link TimedItemManager}.
+     * <p>
+     * The given progress callback is called on the saving thread with the
+     * fraction of the buildings saved so far, finishing with 1.
+     *
+     * @param capture binary representation of the buildings to save
+     * @param filename path of the file to save to
+     * @param progress callback accepting the fraction of buildings saved
+     * @throws IOException if an IOException is encountered when writing to
+     *                     the file
+     * @throws FileFormatException if the capture is not a valid binary
+     *                             representation of buildings
+     */
+    public static void saveCapturedBuildings(byte[] capture, String filename,
+            DoubleConsumer progress) throws IOException, FileFormatException {
+        saveCapturedBuildings(capture, filename, isBinaryFilename(filename),
+                Compression.forFilename(filename), progress);
+    }
+
+    /*
+    Saves captured buildings to the file in the given format and compression,
+    regardless of the filename's extension
+     */
+    static void saveCapturedBuildings(byte[] capture, String filename,
+            boolean binary, Compression compression, DoubleConsumer progress)
+            throws IOException, FileFormatException {
+        if (binary) {
+            writeAtomically(filename, compression,
+                    output -> output.write(capture));
+            progress.accept(1);
+            return;
+        }
+        TimedItemManager manager = TimedItemManager.getCurrent();
+        List<Building> buildings;
+        manager.deferRegistrations();
+        try {
+            buildings = BinaryCodec.decode(ByteBuffer.wrap(capture));
+        } finally {
+            // The copies must not be simulated alongside the originals
+            manager.takeDeferredRegistrations();
+        }
+        writeBuildings(buildings, filename, false, compression, progress);
+    }
+
+    /*
+    Saves the buildings to the file in the given format and compression,
+    regardless of the filename's extension
+     */
+    static void saveBuildings(List<Building> buildings, String filename,
+            boolean binary, Compression compression) throws IOException {
+        writeBuildings(buildings, filename, binary, compression,
+                fraction -> { });
+    }
+
+    /*
+    Saves the buildings as above, reporting the fraction saved after each
+    building
+     */
+    private static void writeBuildings(List<Building> buildings,
+            String filename, boolean binary, Compression compression,
+            DoubleConsumer progress) throws IOException {
+        writeAtomically(filename, compression, output -> {
+            if (binary) {
+                output.write(BinaryCodec.encode(buildings));
+            } else {
+                // Stream each building straight to the file rather than
+                // joining the whole file into one string first
+                Writer writer = new BufferedWriter(new OutputStreamWriter(
+                        output, CHARSET));
+                for (int i = 0; i < buildings.size(); ++i) {
+                    progress.accept((double) i / buildings.size());
+                    if (i > 0) {
+                        writer.write(System.lineSeparator());
                     }
-                } catch (NumberFormatException e) {
+                    buildings.get(i).encodeTo(writer);
+                }
+                writer.flush();
+            }
+        });
+        progress.accept(1);
+    }
+
+    /*
+    Writes the file with the given filename through the given action,
+    compressing everything written on the writing thread. The file is written
+    beside the target under a temporary name and only then moved over it, so
+    a save which fails or is cut short, for example by the program exiting,
+    leaves any previous file in place
+     */
+    private static void writeAtomically(String filename,
+            Compression compression, SaveAction action) throws IOException {
+        Path temporary = Paths.get(filename + ".tmp");
+        try {
+            try (OutputStream output = openForSaving(temporary, compression)) {
+                action.writeTo(output);
+            }
+            replaceFile(temporary, Paths.get(filename));
+        } catch (IOException | RuntimeException e) {
+            try {
+                Files.deleteIfExists(temporary);
+            } catch (IOException suppressed) {
+                e.addSuppressed(suppressed);
+            }
+            throw e;
+        }
+    }
+
+    /*
+    Opens the file for saving, replacing it if it exists, and compressing
+    everything written to it on the writing thread
+     */
+    private static OutputStream openForSaving(Path path,
+            Compression compression) throws IOException {
+        return compression.compress(new BufferedOutputStream(
+                Files.newOutputStream(path)));
+    }
+
+    /*
+    Moves the source file over the target file, atomically if possible
+     */
+    static void replaceFile(Path source, Path target) throws IOException {
+        try {
+            Files.move(source, target, StandardCopyOption.ATOMIC_MOVE,
+                    StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(source, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /*
+    Returns true if the buildings should be saved to the file in the binary
+    format, based on the filename's extension
+     */
+    private static boolean isBinaryFilename(String filename) {
+        return Compression.removeFileExtension(filename)
+                .endsWith(BinaryCodec.FILE_EXTENSION);
+    }
+
+    /*
+    Reads buildings from the reader until the end of the file is reached
+     */
+    private static List<Building> readBuildings(SaveFileReader reader)
+            throws IOException, FileFormatException {
+        List<Building> buildingList = new ArrayList<>();
+        String buildingName;
+        int numFloors;
+        Building building;
+
+        while ((buildingName = reader.readLine()) != null) {
+            try {
+                numFloors = Integer.parseInt(reader.readRequiredLine());
+                if (numFloors < 0) {
                     throw new FileFormatException();
                 }
+            } catch (NumberFormatException e) {
+                throw new FileFormatException();
+            }
+            try {
+                building = new Building(buildingName);
+            } catch (IllegalArgumentException e) {
+                throw new FileFormatException();
+            }
+            // Add floors to building
+            for (int i = 0; i < numFloors; ++i) {
                 try {
-                    building = new Building(buildingName);
-                } catch (IllegalArgumentException e) {
+                    building.addFloor(readFloor(reader));
+                } catch (IllegalArgumentException | DuplicateFloorException
+                        | NoFloorBelowException |
+                        FloorTooSmallException e) {
                     throw new FileFormatException();
                 }
-                // Add floors to building
-                for (int i = 0; i < numFloors; ++i) {
-                    try {
-                        building.addFloor(readFloor(reader));
-                    } catch (IllegalArgumentException | DuplicateFloorException
-                            | NoFloorBelowException |
-                            FloorTooSmallException e) {
-                        throw new FileFormatException();
-                    } catch (IOException e) {
-                        throw new IOException();
-                    }
-                }
-                buildingList.add(building);
-            } reader.close();
-        } catch (IOException e){
-            throw new IOException();
+            }
+            buildingList.add(building);
         }
         return buildingList;
     }
@@ -93,9 +710,9 @@ public class BuildingInitialiser {
     /*
     Reads the file for a floor and returns it
      */
-    private static Floor readFloor(BufferedReader reader)
+    private static Floor readFloor(SaveFileReader reader)
             throws IOException, FileFormatException {
-        String line = reader.readLine();
+        String line = reader.readRequiredLine();
         String[] lineParts = line.split(":");
         int floorNumber;
         double width;
@@ -131,8 +748,6 @@ public class BuildingInitialiser {
                     InsufficientSpaceException |
                     IllegalArgumentException e) {
                 throw new FileFormatException();
-            } catch (IOException e) {
-                throw new IOException();
             }
         }
         // Handle empty / null maintenance order
@@ -141,38 +756,16 @@ public class BuildingInitialiser {
         }
         // Setup maintenance schedule
         if (lineParts.length == 5) {
+            List<Integer> maintenanceOrder;
             try {
                 // Create room order list while parsing to integer
-                List<Integer> maintenanceOrder =
-                        Arrays.stream(lineParts[4].split(","))
-                                .map(Integer::parseInt)
-                                .collect(Collectors.toList());
-                List<Room> roomOrder = new ArrayList<>();
-                List<Integer> roomNums = new ArrayList<>();
-                // Create list of room numbers and check if all are in
-                // maintenanceOrder list.
-                for (Room room : floor.getRooms()) {
-                    roomNums.add(room.getRoomNumber());
-                }
-                for (int maintNum : maintenanceOrder) {
-                    if (!roomNums.contains(maintNum)) {
-                        throw new FileFormatException();
-                    }
-                }
-                // Add rooms to roomOrder
-                for (int roomNum : maintenanceOrder) {
-                    if (floor.getRoomByNumber(roomNum) != null) {
-                        roomOrder.add(floor.getRoomByNumber(roomNum));
-                    }
-                }
-                try {
-                    floor.createMaintenanceSchedule(roomOrder);
-                } catch (IllegalArgumentException e) {
-                    throw new FileFormatException();
-                }
+                maintenanceOrder = Arrays.stream(lineParts[4].split(","))
+                        .map(Integer::parseInt)
+                        .collect(Collectors.toList());
             } catch (NumberFormatException e) {
                 throw new FileFormatException();
             }
+            setMaintenanceSchedule(floor, maintenanceOrder);
         }
         return floor;
     }
@@ -180,9 +773,9 @@ public class BuildingInitialiser {
     /*
     Reads the file for a room and returns it
      */
-    private static Room roomReader(BufferedReader reader)
+    private static Room roomReader(SaveFileReader reader)
             throws IOException, FileFormatException {
-        String line = reader.readLine();
+        String line = reader.readRequiredLine();
         String[] lineParts = line.split(":");
         int roomNumber;
         double area;
@@ -218,46 +811,26 @@ public class BuildingInitialiser {
         }
         // Separate sensors and their weightings and add to relevant lists
         for (int i = 0; i < numSensors; ++i) {
-            try {
-                Map<Sensor,Integer> sensorWeightMap = sensorReader(reader);
-                for (Map.Entry<Sensor, Integer> entry :
-                        sensorWeightMap.entrySet()) {
-                    Sensor sensor = entry.getKey();
-                    int weighting = entry.getValue();
-                    sensors.add(sensor);
-                    weightings.add(weighting);
-                }
-            } catch (IOException e) {
-                throw new IOException();
-            }
-        }
-        // Add sensors to room
-        for (Sensor sensor : sensors) {
-            try {
-                room.addSensor(sensor);
-            } catch (DuplicateSensorException e) {
-                throw new FileFormatException();
+            Map<Sensor,Integer> sensorWeightMap = sensorReader(reader);
+            for (Map.Entry<Sensor, Integer> entry :
+                    sensorWeightMap.entrySet()) {
+                Sensor sensor = entry.getKey();
+                int weighting = entry.getValue();
+                sensors.add(sensor);
+                weightings.add(weighting);
             }
         }
+        addSensors(room, sensors);
         // Handle null hazardEvaluator
         if (line.endsWith(":")) {
             throw new FileFormatException();
         }
         // Setup hazard evaluator
         if (lineParts.length == 5) {
-            List<HazardSensor> hazardSensors = setHazardList(sensors);
             if (lineParts[4].equals("RuleBased")) {
-                room.setHazardEvaluator(new
-                        RuleBasedHazardEvaluator(hazardSensors));
+                setHazardEvaluator(room, false, sensors, weightings);
             } else if (lineParts[4].equals("WeightingBased")) {
-                Map<HazardSensor,Integer> weightMap =
-                        setWBHazardEvalMap(hazardSensors, sensors, weightings);
-                try {
-                    room.setHazardEvaluator(new
-                            WeightingBasedHazardEvaluator(weightMap));
-                } catch (IllegalArgumentException e) {
-                    throw new FileFormatException();
-                }
+                setHazardEvaluator(room, true, sensors, weightings);
             } else {
                 throw new FileFormatException();
             }
@@ -265,6 +838,74 @@ public class BuildingInitialiser {
         return room;
     }
 
+    /*
+    Creates the floor's maintenance schedule from a list of room numbers,
+    all of which must belong to rooms on the floor
+     */
+    static void setMaintenanceSchedule(Floor floor,
+            List<Integer> maintenanceOrder) throws FileFormatException {
+        List<Room> roomOrder = new ArrayList<>();
+        List<Integer> roomNums = new ArrayList<>();
+        // Create list of room numbers and check if all are in
+        // maintenanceOrder list.
+        for (Room room : floor.getRooms()) {
+            roomNums.add(room.getRoomNumber());
+        }
+        for (int maintNum : maintenanceOrder) {
+            if (!roomNums.contains(maintNum)) {
+                throw new FileFormatException();
+            }
+        }
+        // Add rooms to roomOrder
+        for (int roomNum : maintenanceOrder) {
+            if (floor.getRoomByNumber(roomNum) != null) {
+                roomOrder.add(floor.getRoomByNumber(roomNum));
+            }
+        }
+        try {
+            floor.createMaintenanceSchedule(roomOrder);
+        } catch (IllegalArgumentException e) {
+            throw new FileFormatException();
+        }
+    }
+
+    /*
+    Adds each of the given sensors to the room
+     */
+    static void addSensors(Room room, List<Sensor> sensors)
+            throws FileFormatException {
+        for (Sensor sensor : sensors) {
+            try {
+                room.addSensor(sensor);
+            } catch (DuplicateSensorException e) {
+                throw new FileFormatException();
+            }
+        }
+    }
+
+    /*
+    Sets the room's hazard evaluator over the given sensors, using the
+    sensors' weightings if the evaluator is weighting based
+     */
+    static void setHazardEvaluator(Room room, boolean weightingBased,
+            List<Sensor> sensors, List<Integer> weightings)
+            throws FileFormatException {
+        List<HazardSensor> hazardSensors = setHazardList(sensors);
+        if (!weightingBased) {
+            room.setHazardEvaluator(new
+                    RuleBasedHazardEvaluator(hazardSensors));
+            return;
+        }
+        Map<HazardSensor,Integer> weightMap =
+                setWBHazardEvalMap(hazardSensors, sensors, weightings);
+        try {
+            room.setHazardEvaluator(new
+                    WeightingBasedHazardEvaluator(weightMap));
+        } catch (IllegalArgumentException e) {
+            throw new FileFormatException();
+        }
+    }
+
     /*
     Returns the room type from a given string
      */
@@ -317,9 +958,9 @@ public class BuildingInitialiser {
     This allows for easy identification of sensors which should not be added
     to a weighting based hazard evaluator later.
      */
-    private static Map<Sensor, Integer> sensorReader(BufferedReader reader)
+    private static Map<Sensor, Integer> sensorReader(SaveFileReader reader)
             throws IOException, FileFormatException {
-        String line = reader.readLine();
+        String line = reader.readRequiredLine();
         String[] lineParts = line.split(":");
         int[] sensorReadings;
         Sensor sensor;
@@ -463,4 +1104,132 @@ public class BuildingInitialiser {
         int capacity = getIntegerSplit(lineParts[3]);
         return new OccupancySensor(sensorReadings, updateFrequency, capacity);
     }
-}
\ No newline at end of file
+
+    /*
+    Writes the contents of a file being saved
+     */
+    private interface SaveAction {
+
+        void writeTo(OutputStream output) throws IOException;
+    }
+
+    /*
+    A building parsed on its own, along with the timed items created while
+    parsing it and the number of lines it spans, or the format error which
+    stopped it from being parsed.
+     */
+    private static class ParsedBuilding {
+
+        private final Building building;
+        private final List<TimedItem> timedItems;
+        private final long lineCount;
+        private final FileFormatException error;
+
+        private ParsedBuilding(Building building, List<TimedItem> timedItems,
+                long lineCount) {
+            this.building = building;
+            this.timedItems = timedItems;
+            this.lineCount = lineCount;
+            this.error = null;
+        }
+
+        private ParsedBuilding(FileFormatException error) {
+            this.building = null;
+            this.timedItems = null;
+            this.lineCount = 0;
+            this.error = error;
+        }
+    }
+
+    /*
+    Reads a save file line by line, rejecting blank lines as they are read and
+    keeping count of the number of lines read.
+     */
+    private static class SaveFileReader implements Closeable {
+
+        private final BufferedReader reader;
+        private long lineCount;
+
+        private SaveFileReader(Reader reader) {
+            this.reader = new BufferedReader(reader);
+            this.lineCount = 0;
+        }
+
+        /*
+        Returns the next line, or null if the end of the file has been reached
+         */
+        private String readLine() throws IOException, FileFormatException {
+            String line = reader.readLine();
+            if (line != null) {
+                if (line.length() == 0) {
+                    throw new FileFormatException();
+                }
+                lineCount++;
+            }
+            return line;
+        }
+
+        /*
+        Returns the next line, treating the end of the file as a format error
+         */
+        private String readRequiredLine() throws IOException,
+                FileFormatException {
+            String line = readLine();
+            if (line == null) {
+                throw new FileFormatException();
+            }
+            return line;
+        }
+
+        private long getLineCount() {
+            return lineCount;
+        }
+
+        @Override
+        public void close() throws IOException {
+            reader.close();
+        }
+    }
+
+    /*
+    Input stream that counts the number of bytes read through it.
+     */
+    private static class CountingInputStream extends FilterInputStream {
+
+        private long byteCount;
+
+        private CountingInputStream(InputStream in) {
+            super(in);
+            this.byteCount = 0;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b != -1) {
+                byteCount++;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int count = super.read(b, off, len);
+            if (count > 0) {
+                byteCount += count;
+            }
+            return count;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = super.skip(n);
+            byteCount += skipped;
+            return skipped;
+        }
+
+        private long getByteCount() {
+            return byteCount;
+        }
+    }
+}
@@ -0,0 +1,311 @@
+package bms.building;
+
+import bms.exceptions.FileFormatException;
+import bms.floor.Floor;
+import bms.floor.MaintenanceSchedule;
+import bms.room.Room;
+import bms.sensors.Sensor;
+import bms.sensors.TimedSensor;
+import bms.util.TimedItem;
+import bms.util.TimedItemManager;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A snapshot of the complete state of a simulation, from which it can be
+ * resumed exactly where it was stopped.
+ * <p>
+ * A save file only stores the structure of the buildings, so a simulation
+ * loaded from one starts again from minute zero. A checkpoint also stores the
+ * state which changes as the simulation runs: the time elapsed by each
+ * sensor, from which its current reading follows, the room each maintenance
+ * schedule is on and the time spent on it so far, whether each room has a
+ * fire drill or maintenance ongoing, and the number of minutes the
+ * simulation has run for.
+ * <p>
+ * A checkpoint file starts with a magic header, a format version byte, the
+ * minutes elapsed and the length of the buildings' structure. The structure
+ * follows in the binary save format of {@link BinaryCodec}, and then the
+ * state of every room, sensor and maintenance schedule, in the order they
+ * appear in the structure.
+ */
+public class Checkpoint {
+
+    /**
+     * File extension of checkpoint files.
+     */
+    public static final String FILE_EXTENSION = ".bmc";
+
+    /**
+     * Bytes at the start of every checkpoint file.
+     */
+    private static final byte[] MAGIC = {(byte) 0x89, 'B', 'M', 'C'};
+
+    /**
+     * Version of the checkpoint format written by this class.
+     */
+    private static final int VERSION = 1;
+
+    /**
+     * Number of bytes before the buildings' structure: the magic bytes, the
+     * version, the minutes elapsed and the length of the structure.
+     */
+    private static final int HEADER_BYTES =
+            MAGIC.length + 1 + Long.BYTES + Integer.BYTES;
+
+    /*
+    Bits of the flags stored for each room
+     */
+    private static final int FIRE_DRILL = 1;
+    private static final int MAINTENANCE = 2;
+
+    /**
+     * Buildings whose state is checkpointed.
+     */
+    private final List<Building> buildings;
+
+    /**
+     * Number of minutes the simulation has run for.
+     */
+    private final long minutesElapsed;
+
+    /**
+     * Creates a checkpoint of the given buildings after the simulation has
+     * run for the given number of minutes.
+     * <p>
+     * If the buildings' timed items are elapsed by an event driven
+     * {@link TimedItemManager}, it must be
+     * {@link TimedItemManager#synchronise() synchronised} before the
+     * checkpoint is encoded.
+     *
+     * @param buildings buildings to checkpoint
+     * @param minutesElapsed number of minutes the simulation has run for
+     */
+    public Checkpoint(List<Building> buildings, long minutesElapsed) {
+        this.buildings = buildings;
+        this.minutesElapsed = minutesElapsed;
+    }
+
+    /**
+     * Returns the buildings whose state is checkpointed.
+     *
+     * @return checkpointed buildings
+     */
+    public List<Building> getBuildings() {
+        return buildings;
+    }
+
+    /**
+     * Returns the number of minutes the simulation had run for when it was
+     * checkpointed.
+     *
+     * @return number of minutes elapsed
+     */
+    public long getMinutesElapsed() {
+        return minutesElapsed;
+    }
+
+    /**
+     * Returns true if the file with the given filename is a checkpoint file,
+     * recognised by its magic header.
+     *
+     * @param filename path of the file to check
+     * @return true if the file is a checkpoint
+     * @throws IOException if the file cannot be read
+     */
+    public static boolean isCheckpointFile(String filename)
+            throws IOException {
+        byte[] header = new byte[MAGIC.length];
+        try (InputStream in = Files.newInputStream(Paths.get(filename))) {
+            return in.readNBytes(header, 0, header.length) == header.length
+                    && Arrays.equals(header, MAGIC);
+        }
+    }
+
+    /**
+     * Returns the binary representation of this checkpoint.
+     *
+     * @return bytes of a checkpoint file
+     */
+    public byte[] encode() {
+        byte[] structure = BinaryCodec.encode(buildings);
+        BinaryCodec.Output out = new BinaryCodec.Output();
+        for (byte b : MAGIC) {
+            out.writeByte(b);
+        }
+        out.writeByte(VERSION);
+        out.writeLong(minutesElapsed);
+        int lengthIndex = out.reserve(Integer.BYTES);
+        out.writeIntAt(lengthIndex, structure.length);
+        out.writeBytes(structure);
+        for (Building building : buildings) {
+            for (Floor floor : building.getFloors()) {
+                writeFloorState(out, floor);
+            }
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * Writes this checkpoint to the file with the given filename, replacing
+     * the file if it already exists.
+     *
+     * @param filename path of the file to write to
+     * @throws IOException if the file cannot be written
+     * @see #save(byte[], String)
+     */
+    public void save(String filename) throws IOException {
+        save(encode(), filename);
+    }
+
+    /**
+     * Writes a checkpoint encoded earlier with {@link #encode()} to the file
+     * with the given filename, replacing the file if it already exists.
+     * <p>
+     * Encoding a checkpoint is quick, so this lets a checkpoint be captured
+     * while the simulation is held still and written on another thread. The
+     * file is written under a temporary name beside it, which then replaces
+     * it atomically where the file system allows, so a write which fails
+     * part way leaves the previous file as it was.
+     *
+     * @param encoded bytes of a checkpoint file
+     * @param filename path of the file to write to
+     * @throws IOException if the file cannot be written
+     */
+    public static void save(byte[] encoded, String filename)
+            throws IOException {
+        Path temporary = Paths.get(filename + ".tmp");
+        try {
+            Files.write(temporary, encoded);
+            BuildingInitialiser.replaceFile(temporary, Paths.get(filename));
+        } catch (IOException e) {
+            Files.deleteIfExists(temporary);
+            throw e;
+        }
+    }
+
+    /**
+     * Reads the checkpoint contained in the remaining bytes of the given
+     * buffer, recreating its buildings in the state they were in.
+     * <p>
+     * The timed items of the buildings are registered with the current
+     * thread's {@link TimedItemManager} once their state has been restored.
+     * The buffer's position is not changed.
+     *
+     * @param buffer buffer containing a checkpoint file
+     * @return checkpoint read from the buffer
+     * @throws FileFormatException if the buffer does not contain a valid
+     *                             checkpoint
+     */
+    public static Checkpoint decode(ByteBuffer buffer)
+            throws FileFormatException {
+        byte[] bytes = new byte[buffer.remaining()];
+        buffer.duplicate().get(bytes);
+        if (bytes.length < HEADER_BYTES || !Arrays.equals(bytes, 0,
+                MAGIC.length, MAGIC, 0, MAGIC.length)) {
+            throw new FileFormatException();
+        }
+        BinaryCodec.Input header =
+                new BinaryCodec.Input(bytes, MAGIC.length, HEADER_BYTES);
+        if (header.readByte() != VERSION) {
+            throw new FileFormatException();
+        }
+        long minutesElapsed = header.readLong();
+        int length = header.readInt();
+        if (length < 0 || length > bytes.length - HEADER_BYTES) {
+            throw new FileFormatException();
+        }
+
+        TimedItemManager manager = TimedItemManager.getCurrent();
+        List<Building> buildings;
+        List<TimedItem> timedItems;
+        // Items are registered once restored, so an event driven manager
+        // sees their restored state
+        manager.deferRegistrations();
+        try {
+            buildings = BinaryCodec.decode(
+                    ByteBuffer.wrap(bytes, HEADER_BYTES, length));
+            BinaryCodec.Input in = new BinaryCodec.Input(bytes,
+                    HEADER_BYTES + length, bytes.length);
+            for (Building building : buildings) {
+                for (Floor floor : building.getFloors()) {
+                    readFloorState(in, floor);
+                }
+            }
+            if (in.remaining() != 0) {
+                throw new FileFormatException();
+            }
+        } finally {
+            timedItems = manager.takeDeferredRegistrations();
+        }
+        manager.registerTimedItems(timedItems);
+        manager.separateBuildings(buildings);
+        return new Checkpoint(buildings, minutesElapsed);
+    }
+
+    /**
+     * Reads the checkpoint in the file with the given filename.
+     *
+     * @param filename path of the checkpoint file
+     * @return checkpoint read from the file
+     * @throws IOException if the file cannot be read
+     * @throws FileFormatException if the file is not a valid checkpoint
+     * @see #decode(ByteBuffer)
+     */
+    public static Checkpoint load(String filename)
+            throws IOException, FileFormatException {
+        return decode(ByteBuffer.wrap(
+                Files.readAllBytes(Paths.get(filename))));
+    }
+
+    /*
+    Writes the state of a floor's rooms, sensors and maintenance schedule
+     */
+    private static void writeFloorState(BinaryCodec.Output out, Floor floor) {
+        for (Room room : floor.getRooms()) {
+            int flags = (room.fireDrillOngoing() ? FIRE_DRILL : 0)
+                    | (room.maintenanceOngoing() ? MAINTENANCE : 0);
+            out.writeByte(flags);
+            for (Sensor sensor : room.getSensors()) {
+                out.writeVarint(((TimedSensor) sensor).getTimeElapsed());
+            }
+        }
+        MaintenanceSchedule schedule = floor.getMaintenanceSchedule();
+        if (schedule != null) {
+            out.writeVarint(schedule.getTimeElapsedCurrentRoom());
+        }
+    }
+
+    /*
+    Restores the state of a floor's rooms, sensors and maintenance schedule
+     */
+    private static void readFloorState(BinaryCodec.Input in, Floor floor)
+            throws FileFormatException {
+        try {
+            for (Room room : floor.getRooms()) {
+                int flags = in.readByte();
+                room.setFireDrill((flags & FIRE_DRILL) != 0);
+                room.setMaintenance((flags & MAINTENANCE) != 0);
+                for (Sensor sensor : room.getSensors()) {
+                    ((TimedSensor) sensor).elapseMinutes(in.readCount());
+                }
+            }
+            MaintenanceSchedule schedule = floor.getMaintenanceSchedule();
+            if (schedule != null) {
+                schedule.setTimeElapsedCurrentRoom(in.readCount());
+                if (schedule.getCurrentRoom() == null) {
+                    throw new FileFormatException();
+                }
+            }
+        } catch (IllegalArgumentException e) {
+            throw new FileFormatException();
+        }
+    }
+}
@@ -0,0 +1,491 @@
+package bms.building;
+
+import bms.exceptions.FileFormatException;
+import bms.floor.Floor;
+import bms.floor.MaintenanceSchedule;
+import bms.room.Room;
+import bms.sensors.Sensor;
+import bms.sensors.TimedSensor;
+import bms.util.TimedItem;
+import bms.util.TimedItemManager;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * A history of the running state of a simulation, from which any minute it
+ * has passed through can be rebuilt, so that operators can go back and see
+ * the buildings as they were at that minute.
+ * <p>
+ * Rather than recording every minute, the history keeps compact checkpoints
+ * of the simulation's state every so many minutes (see
+ * {@link #getInterval()}). A checkpoint holds only what changes as the
+ * simulation runs: the fire drill and maintenance flags of each room, the
+ * time elapsed by each sensor, and the time each maintenance schedule has
+ * spent on its current room. Each sensor's time elapsed is stored as an
+ * offset from the checkpoint's minute, which is the same for every
+ * checkpoint of a sensor, so most sensors take a single byte. To rebuild a
+ * minute, the nearest checkpoint at or before it is restored and the timed
+ * items are elapsed forward to the minute.
+ * <p>
+ * Changes which are not made by elapsing time, such as starting or
+ * cancelling a fire drill, cannot be replayed, so a checkpoint is also taken
+ * whenever one is made (see {@link #recordChange(long)}). Changes to the
+ * structure of the buildings invalidate every checkpoint, and the history
+ * then starts again (see {@link #reset(long)}).
+ * <p>
+ * The memory used by the checkpoints is bounded. Once the limit is reached,
+ * every second periodic checkpoint is dropped and the interval between them
+ * doubled, so the history keeps reaching back to where it started at the
+ * cost of more replaying. The oldest checkpoints are only dropped once no
+ * periodic checkpoint is left to thin out.
+ * <p>
+ * Buildings whose floors have not been loaded yet (see
+ * {@link Building#floorsLoaded()}) are not recorded, and are left as they
+ * are when a minute is rebuilt, even if their floors have been loaded since
+ * the checkpoint it is rebuilt from was taken. Only the timed items of the
+ * buildings in that checkpoint are elapsed forward, and the manager's own
+ * count of minutes elapsed is not changed by rebuilding a minute.
+ */
+public class CheckpointHistory {
+
+    /**
+     * Default number of minutes between periodic checkpoints.
+     */
+    public static final int DEFAULT_INTERVAL = 60;
+
+    /**
+     * Default limit on the memory used by the checkpoints, in bytes.
+     */
+    public static final long DEFAULT_MEMORY_LIMIT = 8L * 1024 * 1024;
+
+    /**
+     * Approximate number of bytes used by each checkpoint besides its state.
+     */
+    private static final int CHECKPOINT_OVERHEAD = 64;
+
+    /*
+    Bits of the flags stored for each room
+     */
+    private static final int FIRE_DRILL = 1;
+    private static final int MAINTENANCE = 2;
+
+    /**
+     * Buildings whose state is recorded.
+     */
+    private final List<Building> buildings;
+
+    /**
+     * Manager which elapses the buildings' timed items.
+     */
+    private final TimedItemManager manager;
+
+    /**
+     * Number of minutes between periodic checkpoints when the history
+     * starts.
+     */
+    private final int initialInterval;
+
+    /**
+     * Current number of minutes between periodic checkpoints.
+     */
+    private long interval;
+
+    /**
+     * Limit on the memory used by the checkpoints, in bytes.
+     */
+    private long memoryLimit;
+
+    /**
+     * Approximate memory used by the checkpoints, in bytes.
+     */
+    private long memoryUsed = 0;
+
+    /**
+     * Checkpoints by the minute they were taken after.
+     */
+    private final TreeMap<Long, Snapshot> checkpoints = new TreeMap<>();
+
+    /**
+     * Latest minute which has been recorded.
+     */
+    private long latestMinute = 0;
+
+    /**
+     * Creates an empty history of the given buildings, with the default
+     * interval and memory limit.
+     *
+     * @param buildings buildings whose state to record
+     * @param manager manager which elapses the buildings' timed items
+     * @see #CheckpointHistory(List, TimedItemManager, int, long)
+     */
+    public CheckpointHistory(List<Building> buildings,
+            TimedItemManager manager) {
+        this(buildings, manager, DEFAULT_INTERVAL, DEFAULT_MEMORY_LIMIT);
+    }
+
+    /**
+     * Creates an empty history of the given buildings.
+     * <p>
+     * The history holds no minutes until {@link #reset(long)} is called with
+     * the minute the simulation is at.
+     *
+     * @param buildings buildings whose state to record; changes to the list
+     *                  must be followed by a call to {@link #reset(long)}
+     * @param manager manager which elapses the buildings' timed items
+     * @param interval number of minutes between periodic checkpoints
+     * @param memoryLimit limit on the memory used by the checkpoints, in
+     *                    bytes
+     * @throws IllegalArgumentException if interval is less than one, or
+     *                                  memoryLimit is negative
+     */
+    public CheckpointHistory(List<Building> buildings,
+            TimedItemManager manager, int interval, long memoryLimit) {
+        if (interval < 1) {
+            throw new IllegalArgumentException(
+                    "Checkpoint interval must be at least one minute");
+        }
+        this.buildings = buildings;
+        this.manager = manager;
+        this.initialInterval = interval;
+        this.interval = interval;
+        setMemoryLimit(memoryLimit);
+    }
+
+    /**
+     * Returns the number of minutes between periodic checkpoints, which
+     * grows as checkpoints are thinned out to stay within the memory limit.
+     *
+     * @return current interval between checkpoints in minutes
+     */
+    public long getInterval() {
+        return interval;
+    }
+
+    /**
+     * Returns the limit on the memory used by the checkpoints.
+     *
+     * @return memory limit in bytes
+     */
+    public long getMemoryLimit() {
+        return memoryLimit;
+    }
+
+    /**
+     * Sets the limit on the memory used by the checkpoints, dropping
+     * checkpoints at once if they use more than the new limit.
+     * <p>
+     * The most recent checkpoint is always kept, even if it alone exceeds
+     * the limit.
+     *
+     * @param memoryLimit limit on the memory used by the checkpoints, in
+     *                    bytes
+     * @throws IllegalArgumentException if memoryLimit is negative
+     */
+    public void setMemoryLimit(long memoryLimit) {
+        if (memoryLimit < 0) {
+            throw new IllegalArgumentException(
+                    "Memory limit must not be negative");
+        }
+        this.memoryLimit = memoryLimit;
+        trim();
+    }
+
+    /**
+     * Returns the approximate memory used by the checkpoints.
+     *
+     * @return memory used in bytes
+     */
+    public long getMemoryUsed() {
+        return memoryUsed;
+    }
+
+    /**
+     * Returns the number of checkpoints held.
+     *
+     * @return number of checkpoints
+     */
+    public int getCheckpointCount() {
+        return checkpoints.size();
+    }
+
+    /**
+     * Returns the earliest minute which can be rebuilt.
+     *
+     * @return earliest minute in the history
+     * @throws IllegalStateException if the history has not been started
+     */
+    public long getEarliestMinute() {
+        if (checkpoints.isEmpty()) {
+            throw new IllegalStateException("History has not been started");
+        }
+        return checkpoints.firstKey();
+    }
+
+    /**
+     * Returns the latest minute which can be rebuilt.
+     *
+     * @return latest minute in the history
+     */
+    public long getLatestMinute() {
+        return latestMinute;
+    }
+
+    /**
+     * Records that the simulation has reached the given minute by elapsing
+     * time, taking a periodic checkpoint if one is due.
+     * <p>
+     * Any later minutes left over from before the simulation was taken back
+     * to an earlier minute (see {@link #seek(long)}) are forgotten, as the
+     * simulation has carried on from the earlier minute instead.
+     *
+     * @param minute minute the simulation has reached
+     */
+    public void record(long minute) {
+        discardFrom(minute);
+        latestMinute = minute;
+        if (checkpoints.isEmpty() || minute % interval == 0) {
+            add(minute, false);
+        }
+    }
+
+    /**
+     * Records a change to the state of the buildings which is not made by
+     * elapsing time, such as a fire drill, by taking a checkpoint of the
+     * buildings as they are after the change.
+     * <p>
+     * Any later minutes are forgotten, as they no longer follow from the
+     * changed state.
+     *
+     * @param minute minute of the simulation at which the change was made
+     */
+    public void recordChange(long minute) {
+        discardFrom(minute);
+        latestMinute = minute;
+        add(minute, true);
+    }
+
+    /**
+     * Forgets every recorded minute and starts the history again from the
+     * current state of the buildings at the given minute.
+     * <p>
+     * This must be called whenever the structure of the buildings changes,
+     * such as when floors, rooms or sensors are added.
+     *
+     * @param minute minute the simulation is at
+     */
+    public void reset(long minute) {
+        checkpoints.clear();
+        memoryUsed = 0;
+        interval = initialInterval;
+        latestMinute = minute;
+        add(minute, true);
+    }
+
+    /**
+     * Rebuilds the state the buildings were in at the given minute, by
+     * restoring the nearest checkpoint at or before it and elapsing the
+     * timed items of the buildings recorded in it forward from there.
+     * <p>
+     * Buildings which were not recorded in the checkpoint, because their
+     * floors had not been loaded when it was taken, are left as they are.
+     * <p>
+     * The later minutes in the history are kept, so the simulation can be
+     * moved forward to them again, until it carries on from the rebuilt
+     * minute (see {@link #record(long)}).
+     *
+     * @param minute minute to rebuild
+     * @throws IllegalArgumentException if the minute is before the earliest
+     *                                  or after the latest minute in the
+     *                                  history
+     */
+    public void seek(long minute) {
+        if (checkpoints.isEmpty() || minute < checkpoints.firstKey()
+                || minute > latestMinute) {
+            throw new IllegalArgumentException("Minute " + minute
+                    + " is not in the history");
+        }
+        Map.Entry<Long, Snapshot> checkpoint = checkpoints.floorEntry(minute);
+        // The items of an event driven manager must be up to date before
+        // they are changed, and rescheduled afterwards
+        boolean eventDriven = manager.isEventDriven();
+        manager.setEventDriven(false);
+        try {
+            List<TimedItem> restored =
+                    restore(checkpoint.getValue().state, checkpoint.getKey());
+            // Replaying does not move the manager's clock on
+            TimedItemManager.elapseMinutes(restored,
+                    minute - checkpoint.getKey());
+        } finally {
+            manager.setEventDriven(eventDriven);
+        }
+    }
+
+    /*
+    Forgets every checkpoint taken at or after the given minute
+     */
+    private void discardFrom(long minute) {
+        Map<Long, Snapshot> later = checkpoints.tailMap(minute, true);
+        for (Snapshot snapshot : later.values()) {
+            memoryUsed -= snapshot.size();
+        }
+        later.clear();
+    }
+
+    /*
+    Takes a checkpoint of the buildings at the given minute
+     */
+    private void add(long minute, boolean change) {
+        Snapshot snapshot = new Snapshot(capture(minute), change);
+        checkpoints.put(minute, snapshot);
+        memoryUsed += snapshot.size();
+        trim();
+    }
+
+    /*
+    Drops checkpoints until they fit within the memory limit, always keeping
+    the most recent one
+     */
+    private void trim() {
+        while (memoryUsed > memoryLimit && checkpoints.size() > 1) {
+            if (!thin()) {
+                memoryUsed -= checkpoints.pollFirstEntry().getValue().size();
+            }
+        }
+    }
+
+    /*
+    Doubles the interval between periodic checkpoints, dropping the periodic
+    checkpoints which are no longer on the interval, and returns true if any
+    were dropped
+     */
+    private boolean thin() {
+        long widened = interval * 2;
+        boolean dropped = false;
+        Iterator<Map.Entry<Long, Snapshot>> iterator = checkpoints
+                .tailMap(checkpoints.firstKey(), false).entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<Long, Snapshot> checkpoint = iterator.next();
+            if (!checkpoint.getValue().change
+                    && checkpoint.getKey() % widened != 0
+                    && checkpoint.getKey() != checkpoints.lastKey()) {
+                memoryUsed -= checkpoint.getValue().size();
+                iterator.remove();
+                dropped = true;
+            }
+        }
+        if (dropped) {
+            interval = widened;
+        }
+        return dropped;
+    }
+
+    /*
+    Returns the running state of the buildings at the given minute
+     */
+    private byte[] capture(long minute) {
+        BinaryCodec.Output out = new BinaryCodec.Output();
+        for (Building building : buildings) {
+            if (!building.floorsLoaded()) {
+                out.writeByte(0);
+                continue;
+            }
+            out.writeByte(1);
+            for (Floor floor : building.getFloors()) {
+                for (Room room : floor.getRooms()) {
+                    out.writeByte((room.fireDrillOngoing() ? FIRE_DRILL : 0)
+                            | (room.maintenanceOngoing() ? MAINTENANCE : 0));
+                    for (Sensor sensor : room.getSensors()) {
+                        int timeElapsed =
+                                ((TimedSensor) sensor).getTimeElapsed();
+                        out.writeSignedVarint((int) (minute - timeElapsed));
+                    }
+                }
+                MaintenanceSchedule schedule = floor.getMaintenanceSchedule();
+                if (schedule != null) {
+                    out.writeVarint(schedule.getTimeElapsedCurrentRoom());
+                }
+            }
+        }
+        return out.toByteArray();
+    }
+
+    /*
+    Puts the buildings recorded in the state back into the state captured at
+    the given minute, and returns the timed items of those buildings, each
+    only once
+     */
+    private List<TimedItem> restore(byte[] state, long minute) {
+        BinaryCodec.Input in = new BinaryCodec.Input(state, 0, state.length);
+        Set<TimedItem> seen =
+                Collections.newSetFromMap(new IdentityHashMap<>());
+        List<TimedItem> restored = new ArrayList<>();
+        try {
+            for (Building building : buildings) {
+                if (in.readByte() == 0) {
+                    continue;
+                }
+                for (Floor floor : building.getFloors()) {
+                    restoreFloor(in, floor, minute, seen, restored);
+                }
+            }
+        } catch (FileFormatException e) {
+            throw new IllegalStateException(
+                    "Buildings have changed since the checkpoint was taken");
+        }
+        return restored;
+    }
+
+    /*
+    Puts a floor's rooms, sensors and maintenance schedule back into the
+    state read from the checkpoint, adding its timed items which have not
+    been seen yet to the restored items
+     */
+    private static void restoreFloor(BinaryCodec.Input in, Floor floor,
+            long minute, Set<TimedItem> seen, List<TimedItem> restored)
+            throws FileFormatException {
+        for (Room room : floor.getRooms()) {
+            int flags = in.readByte();
+            room.setFireDrill((flags & FIRE_DRILL) != 0);
+            room.setMaintenance((flags & MAINTENANCE) != 0);
+            for (Sensor sensor : room.getSensors()) {
+                TimedSensor timedSensor = (TimedSensor) sensor;
+                timedSensor.setTimeElapsed(
+                        (int) (minute - in.readSignedVarint()));
+                if (seen.add(timedSensor)) {
+                    restored.add(timedSensor);
+                }
+            }
+        }
+        MaintenanceSchedule schedule = floor.getMaintenanceSchedule();
+        if (schedule != null) {
+            schedule.setTimeElapsedCurrentRoom(in.readCount());
+            restored.add(schedule);
+        }
+    }
+
+    /*
+    Running state of the buildings captured at a minute, and whether it was
+    captured after a change which cannot be replayed
+     */
+    private static class Snapshot {
+
+        private final byte[] state;
+        private final boolean change;
+
+        private Snapshot(byte[] state, boolean change) {
+            this.state = state;
+            this.change = change;
+        }
+
+        private int size() {
+            return state.length + CHECKPOINT_OVERHEAD;
+        }
+    }
+}
@@ -0,0 +1,225 @@
+package bms.building;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Compression which may be applied to a save file, in either the text or
+ * binary format.
+ * <p>
+ * Compressed save files are written when the filename ends with the file
+ * extension of a compression, and are recognised by their leading magic bytes
+ * when loaded, whatever their filename.
+ */
+public enum Compression {
+
+    /**
+     * The save file is not compressed.
+     */
+    NONE(""),
+
+    /**
+     * The save file is compressed in the gzip format.
+     */
+    GZIP(".gz"),
+
+    /**
+     * The save file is compressed in the zlib format, that is, deflate
+     * compressed data preceded by a two byte header.
+     * <p>
+     * Only zlib headers whose second byte is not a printable character are
+     * recognised, so that a text save file whose first building's name
+     * happens to start like a zlib header is not mistaken for one. This
+     * covers the headers written at the fastest, default and best
+     * compression levels.
+     */
+    DEFLATE(".deflate");
+
+    /**
+     * Number of leading bytes needed to recognise a compressed file.
+     */
+    private static final int HEADER_LENGTH = 2;
+
+    /**
+     * Size of the buffers used when compressing and decompressing.
+     */
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    /*
+    Magic bytes at the start of gzip and zlib streams
+     */
+    private static final int GZIP_MAGIC_0 = 0x1f;
+    private static final int GZIP_MAGIC_1 = 0x8b;
+    private static final int ZLIB_DEFLATE_32K = 0x78;
+    private static final int ZLIB_PRESET_DICTIONARY = 0x20;
+
+    /**
+     * File extension which selects the compression when saving.
+     */
+    private final String fileExtension;
+
+    Compression(String fileExtension) {
+        this.fileExtension = fileExtension;
+    }
+
+    /**
+     * Returns the file extension which selects this compression when saving,
+     * or an empty string for {@link #NONE}.
+     *
+     * @return file extension of this compression
+     */
+    public String getFileExtension() {
+        return fileExtension;
+    }
+
+    /**
+     * Returns the compression selected by the extension of the given
+     * filename.
+     *
+     * @param filename path of the file to be saved
+     * @return compression to save the file with
+     */
+    public static Compression forFilename(String filename) {
+        for (Compression compression : values()) {
+            if (compression != NONE
+                    && filename.endsWith(compression.fileExtension)) {
+                return compression;
+            }
+        }
+        return NONE;
+    }
+
+    /**
+     * Returns the given filename with the extension of the compression it
+     * selects removed, for example "campus.bms" for "campus.bms.gz".
+     *
+     * @param filename path of the file to be saved
+     * @return filename without its compression extension
+     */
+    public static String removeFileExtension(String filename) {
+        Compression compression = forFilename(filename);
+        return filename.substring(0,
+                filename.length() - compression.fileExtension.length());
+    }
+
+    /**
+     * Returns the compression of the data starting at the buffer's current
+     * position, recognised by its magic bytes. The buffer's position is not
+     * changed.
+     *
+     * @param buffer buffer containing the start of a save file
+     * @return compression of the save file
+     */
+    public static Compression detect(ByteBuffer buffer) {
+        if (buffer.remaining() < HEADER_LENGTH) {
+            return NONE;
+        }
+        int first = buffer.get(buffer.position()) & 0xff;
+        int second = buffer.get(buffer.position() + 1) & 0xff;
+        if (first == GZIP_MAGIC_0 && second == GZIP_MAGIC_1) {
+            return GZIP;
+        }
+        if (first == ZLIB_DEFLATE_32K && (first * 256 + second) % 31 == 0
+                && (second & ZLIB_PRESET_DICTIONARY) == 0
+                && (second < ' ' || second > '~')) {
+            return DEFLATE;
+        }
+        return NONE;
+    }
+
+    /**
+     * Returns the compression of the file with the given filename,
+     * recognised by its magic bytes.
+     *
+     * @param filename path of the file to check
+     * @return compression of the file
+     * @throws IOException if the file cannot be read
+     */
+    public static Compression detectFile(String filename) throws IOException {
+        byte[] header = new byte[HEADER_LENGTH];
+        try (InputStream in = Files.newInputStream(Paths.get(filename))) {
+            int length = in.readNBytes(header, 0, header.length);
+            return detect(ByteBuffer.wrap(header, 0, length));
+        }
+    }
+
+    /**
+     * Returns a stream which compresses the data written to it with this
+     * compression before writing it to the given stream. Closing the
+     * returned stream finishes the compressed data and closes the given
+     * stream.
+     * <p>
+     * The fastest compression level is used. On save files it is several
+     * times quicker than the default level, for output only slightly larger.
+     *
+     * @param out stream to write the compressed data to
+     * @return stream to write the uncompressed data to
+     * @throws IOException if the compressed data cannot be started
+     */
+    public OutputStream compress(OutputStream out) throws IOException {
+        switch (this) {
+            case GZIP:
+                return new FastGZIPOutputStream(out);
+            case DEFLATE:
+                return new BufferedOutputStream(
+                        new FastDeflaterOutputStream(out), BUFFER_SIZE);
+            default:
+                return out;
+        }
+    }
+
+    /**
+     * Returns a stream which reads the data from the given stream,
+     * decompressing it with this compression. Closing the returned stream
+     * closes the given stream.
+     *
+     * @param in stream containing the compressed data
+     * @return stream of the decompressed data
+     * @throws IOException if the compressed data cannot be read
+     */
+    public InputStream decompress(InputStream in) throws IOException {
+        switch (this) {
+            case GZIP:
+                return new GZIPInputStream(in, BUFFER_SIZE);
+            case DEFLATE:
+                return new InflaterInputStream(
+                        new BufferedInputStream(in, BUFFER_SIZE));
+            default:
+                return in;
+        }
+    }
+
+    /*
+    Gzip output stream which compresses at the fastest level
+     */
+    private static class FastGZIPOutputStream extends GZIPOutputStream {
+
+        private FastGZIPOutputStream(OutputStream out) throws IOException {
+            super(out, BUFFER_SIZE);
+            def.setLevel(Deflater.BEST_SPEED);
+        }
+    }
+
+    /*
+    Zlib output stream which compresses at the fastest level
+     */
+    private static class FastDeflaterOutputStream
+            extends DeflaterOutputStream {
+
+        private FastDeflaterOutputStream(OutputStream out) {
+            super(out);
+            def.setLevel(Deflater.BEST_SPEED);
+        }
+    }
+}
@@ -0,0 +1,22 @@
+package bms.building;
+
+import bms.exceptions.FileFormatException;
+import bms.floor.Floor;
+
+import java.util.List;
+
+/**
+ * Creates the floors of a building whose floors are only created when they
+ * are first used.
+ */
+public interface FloorLoader {
+
+    /**
+     * Creates the floors of a building, along with all of their rooms and
+     * sensors.
+     *
+     * @return the building's floors, in the order they were added
+     * @throws FileFormatException if the saved floors are invalid
+     */
+    List<Floor> loadFloors() throws FileFormatException;
+}
@@ -0,0 +1,193 @@
+package bms.building;
+
+/**
+ * Records how much data was read when loading buildings from a save file,
+ * and how quickly it was read.
+ */
+public class LoadStatistics {
+
+    /**
+     * Number of nanoseconds in one second.
+     */
+    private static final double NANOS_PER_SECOND = 1_000_000_000.0;
+
+    /**
+     * Number of bytes in one megabyte.
+     */
+    private static final double BYTES_PER_MEGABYTE = 1024.0 * 1024.0;
+
+    /**
+     * Number of lines read from the file.
+     */
+    private final long lineCount;
+
+    /**
+     * Number of bytes read from the file.
+     */
+    private final long byteCount;
+
+    /**
+     * Time taken to load the file, in nanoseconds.
+     */
+    private final long elapsedNanos;
+
+    /**
+     * Number of sensors whose readings were shared with an identical
+     * sequence already pooled for their building, rather than pooled again.
+     */
+    private final long sharedReadingArrays;
+
+    /**
+     * Approximate number of bytes saved by sharing pooled readings.
+     */
+    private final long readingBytesSaved;
+
+    /**
+     * Compression ratio of the loaded sensor readings, which is 1 if they
+     * were not compressed.
+     */
+    private final double readingCompressionRatio;
+
+    /**
+     * Creates a new set of load statistics, for a load which shared no sensor
+     * reading arrays.
+     *
+     * @param lineCount number of lines read from the file
+     * @param byteCount number of bytes read from the file
+     * @param elapsedNanos time taken to load the file, in nanoseconds
+     */
+    public LoadStatistics(long lineCount, long byteCount, long elapsedNanos) {
+        this(lineCount, byteCount, elapsedNanos, 0, 0);
+    }
+
+    /**
+     * Creates a new set of load statistics.
+     *
+     * @param lineCount number of lines read from the file
+     * @param byteCount number of bytes read from the file
+     * @param elapsedNanos time taken to load the file, in nanoseconds
+     * @param sharedReadingArrays number of sensors whose readings were
+     *                            shared with an identical pooled sequence
+     * @param readingBytesSaved approximate number of bytes saved by sharing
+     *                          pooled readings
+     */
+    public LoadStatistics(long lineCount, long byteCount, long elapsedNanos,
+            long sharedReadingArrays, long readingBytesSaved) {
+        this(lineCount, byteCount, elapsedNanos, sharedReadingArrays,
+                readingBytesSaved, 1);
+    }
+
+    /**
+     * Creates a new set of load statistics, for a load whose sensor readings
+     * were compressed.
+     *
+     * @param lineCount number of lines read from the file
+     * @param byteCount number of bytes read from the file
+     * @param elapsedNanos time taken to load the file, in nanoseconds
+     * @param sharedReadingArrays number of sensors whose readings were
+     *                            shared with an identical pooled sequence
+     * @param readingBytesSaved approximate number of bytes saved by sharing
+     *                          pooled readings
+     * @param readingCompressionRatio size of the sensor readings held as one
+     *                                int each, divided by their compressed
+     *                                size
+     */
+    public LoadStatistics(long lineCount, long byteCount, long elapsedNanos,
+            long sharedReadingArrays, long readingBytesSaved,
+            double readingCompressionRatio) {
+        this.lineCount = lineCount;
+        this.byteCount = byteCount;
+        this.elapsedNanos = elapsedNanos;
+        this.sharedReadingArrays = sharedReadingArrays;
+        this.readingBytesSaved = readingBytesSaved;
+        this.readingCompressionRatio = readingCompressionRatio;
+    }
+
+    /**
+     * @return number of lines read from the file, which is zero for binary
+     *         save files
+     */
+    public long getLineCount() {
+        return lineCount;
+    }
+
+    /**
+     * @return number of bytes read from the file
+     */
+    public long getByteCount() {
+        return byteCount;
+    }
+
+    /**
+     * @return time taken to load the file, in nanoseconds
+     */
+    public long getElapsedNanos() {
+        return elapsedNanos;
+    }
+
+    /**
+     * @return number of sensors whose readings were shared with an
+     *         identical sequence already pooled for their building (see
+     *         {@link bms.sensors.SensorStore#getSharedReadingsCount()})
+     */
+    public long getSharedReadingArrays() {
+        return sharedReadingArrays;
+    }
+
+    /**
+     * @return approximate number of bytes saved by sharing identical
+     *         sequences of pooled sensor readings
+     */
+    public long getReadingBytesSaved() {
+        return readingBytesSaved;
+    }
+
+    /**
+     * @return size of the sensor readings held as one int each, divided by
+     *         their compressed size, or 1 if they were not compressed
+     */
+    public double getReadingCompressionRatio() {
+        return readingCompressionRatio;
+    }
+
+    /**
+     * @return average number of lines read per second
+     */
+    public double getLinesPerSecond() {
+        if (elapsedNanos <= 0) {
+            return 0;
+        }
+        return lineCount * NANOS_PER_SECOND / elapsedNanos;
+    }
+
+    /**
+     * @return average number of megabytes read per second
+     */
+    public double getMegabytesPerSecond() {
+        if (elapsedNanos <= 0) {
+            return 0;
+        }
+        return (byteCount / BYTES_PER_MEGABYTE) * NANOS_PER_SECOND
+                / elapsedNanos;
+    }
+
+    /**
+     * Returns the human-readable string representation of these statistics.
+     * <p>
+     * For example: "LoadStatistics: lines=120, bytes=4096, time=1.25ms,
+     * lines/s=96000.00, MB/s=3.13, sharedReadings=12, bytesSaved=960,
+     * compression=3.20"
+     *
+     * @return string representation of these statistics
+     */
+    @Override
+    public String toString() {
+        return String.format("LoadStatistics: lines=%d, bytes=%d, "
+                        + "time=%.2fms, lines/s=%.2f, MB/s=%.2f, "
+                        + "sharedReadings=%d, bytesSaved=%d, compression=%.2f",
+                lineCount, byteCount, elapsedNanos / 1_000_000.0,
+                getLinesPerSecond(), getMegabytesPerSecond(),
+                sharedReadingArrays, readingBytesSaved,
+                readingCompressionRatio);
+    }
+}
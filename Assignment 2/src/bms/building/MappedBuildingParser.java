@@ -0,0 +1,676 @@
+package bms.building;
+
+import bms.exceptions.DuplicateFloorException;
+import bms.exceptions.DuplicateRoomException;
+import bms.exceptions.FileFormatException;
+import bms.exceptions.FloorTooSmallException;
+import bms.exceptions.InsufficientSpaceException;
+import bms.exceptions.NoFloorBelowException;
+import bms.floor.Floor;
+import bms.room.Room;
+import bms.room.RoomType;
+import bms.sensors.CarbonDioxideSensor;
+import bms.sensors.NoiseSensor;
+import bms.sensors.OccupancySensor;
+import bms.sensors.Sensor;
+import bms.sensors.TemperatureSensor;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Parses buildings in the save file format directly from the bytes of a
+ * buffer, usually one mapped from the save file.
+ * <p>
+ * Numbers, room types, hazard evaluator names and "@weighting" suffixes are
+ * decoded straight from the buffer, so no String is created for any field
+ * other than a building's name. The buffer is only ever read with absolute
+ * gets, so several parsers may safely share the same buffer.
+ * <p>
+ * The buildings produced, and the inputs rejected with a
+ * FileFormatException, are the same as for
+ * {@link BuildingInitialiser#loadBuildings(String)}.
+ */
+class MappedBuildingParser {
+
+    /**
+     * Maximum number of colon-delimited fields on any line of a save file.
+     */
+    private static final int MAX_FIELDS = 5;
+
+    /**
+     * Largest number of significant digits in a decimal which can be
+     * converted to a double exactly using a single division.
+     */
+    private static final int MAX_EXACT_DIGITS = 15;
+
+    /**
+     * Powers of ten which can be represented exactly as a double.
+     */
+    private static final double[] POWERS_OF_TEN = {
+        1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+        1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+
+    private static final byte[] RULE_BASED = bytes("RuleBased");
+    private static final byte[] WEIGHTING_BASED = bytes("WeightingBased");
+    private static final byte[] CO2_SENSOR = bytes("CarbonDioxideSensor");
+    private static final byte[] NOISE_SENSOR = bytes("NoiseSensor");
+    private static final byte[] OCCUPANCY_SENSOR = bytes("OccupancySensor");
+    private static final byte[] TEMPERATURE_SENSOR =
+            bytes("TemperatureSensor");
+
+    /**
+     * Names of each room type, indexed by the room type's ordinal.
+     */
+    private static final byte[][] ROOM_TYPE_NAMES = roomTypeNames();
+
+    /**
+     * Buffer containing the save file.
+     */
+    private final ByteBuffer buffer;
+
+    /**
+     * Index of the next unread byte in the buffer.
+     */
+    private int position;
+
+    /**
+     * Index one past the last byte that this parser may read.
+     */
+    private final int limit;
+
+    /**
+     * Index of the first byte of the current line.
+     */
+    private int lineStart;
+
+    /**
+     * Index one past the last byte of the current line, excluding the line
+     * terminator.
+     */
+    private int lineEnd;
+
+    /**
+     * Indices of the first colons on the current line.
+     */
+    private final int[] colons;
+
+    /**
+     * Total number of colons on the current line.
+     */
+    private int colonCount;
+
+    /**
+     * Number of lines read so far.
+     */
+    private long lineCount;
+
+    /**
+     * Reusable space for integers parsed from a comma-separated list.
+     */
+    private int[] scratch;
+
+    /**
+     * Creates a parser which reads the bytes of the buffer between its
+     * current position and its limit.
+     *
+     * @param buffer buffer containing buildings in the save file format
+     */
+    MappedBuildingParser(ByteBuffer buffer) {
+        this(buffer, buffer.position(), buffer.limit());
+    }
+
+    /**
+     * Creates a parser which reads the bytes of the buffer between the given
+     * indices.
+     *
+     * @param buffer buffer containing buildings in the save file format
+     * @param start index of the first byte to read
+     * @param end index one past the last byte to read
+     */
+    MappedBuildingParser(ByteBuffer buffer, int start, int end) {
+        this.buffer = buffer;
+        this.position = start;
+        this.limit = end;
+        this.colons = new int[MAX_FIELDS];
+        this.lineCount = 0;
+        this.scratch = new int[64];
+    }
+
+    /**
+     * @return number of lines read so far
+     */
+    long getLineCount() {
+        return lineCount;
+    }
+
+    /**
+     * @return index of the next unread byte in the buffer
+     */
+    int getPosition() {
+        return position;
+    }
+
+    /**
+     * Reads buildings until the end of the parser's range is reached.
+     *
+     * @return buildings in the order they appear in the buffer
+     * @throws FileFormatException if the buildings are not in the save file
+     *                             format
+     */
+    List<Building> readBuildings() throws FileFormatException {
+        List<Building> buildingList = new ArrayList<>();
+        while (position < limit) {
+            buildingList.add(readBuilding());
+        }
+        return buildingList;
+    }
+
+    /**
+     * Reads a building and all of its floors.
+     *
+     * @return the building read
+     * @throws FileFormatException if the building is not in the save file
+     *                             format
+     */
+    Building readBuilding() throws FileFormatException {
+        nextLine();
+        Building building = new Building(decode(lineStart, lineEnd));
+        nextLine();
+        int numFloors = parseInt(lineStart, lineEnd);
+        if (numFloors < 0) {
+            throw new FileFormatException();
+        }
+        for (int i = 0; i < numFloors; ++i) {
+            try {
+                building.addFloor(readFloor());
+            } catch (IllegalArgumentException | DuplicateFloorException
+                    | NoFloorBelowException | FloorTooSmallException e) {
+                throw new FileFormatException();
+            }
+        }
+        return building;
+    }
+
+    /**
+     * Moves past the next building without creating any of its floors, rooms
+     * or sensors.
+     * <p>
+     * Only the floor, room and sensor counts are parsed, which is enough to
+     * find where the building ends. Any malformed line which would prevent
+     * the end of the building from being found causes a FileFormatException,
+     * just as it would when reading the building.
+     *
+     * @return name of the building skipped
+     * @throws FileFormatException if the end of the building cannot be found
+     */
+    String skipBuilding() throws FileFormatException {
+        nextLine();
+        String name = decode(lineStart, lineEnd);
+        nextLine();
+        int numFloors = parseInt(lineStart, lineEnd);
+        if (numFloors < 0) {
+            throw new FileFormatException();
+        }
+        for (int i = 0; i < numFloors; ++i) {
+            nextLine();
+            int numRooms = parseCount();
+            for (int j = 0; j < numRooms; ++j) {
+                nextLine();
+                int numSensors = parseCount();
+                for (int k = 0; k < numSensors; ++k) {
+                    nextLine();
+                }
+            }
+        }
+        return name;
+    }
+
+    /*
+    Parses the number of rooms or sensors on a floor or room line
+     */
+    private int parseCount() throws FileFormatException {
+        requireColons(3, 4);
+        int count = parseInt(fieldStart(3), fieldEnd(3));
+        if (count < 0) {
+            throw new FileFormatException();
+        }
+        return count;
+    }
+
+    /**
+     * Reads a floor and all of its rooms.
+     *
+     * @return the floor read
+     * @throws FileFormatException if the floor is not in the save file format
+     */
+    Floor readFloor() throws FileFormatException {
+        nextLine();
+        requireColons(3, 4);
+        // A floor with a maintenance schedule must name at least one room
+        if (endsWith(':')) {
+            throw new FileFormatException();
+        }
+        int floorNumber = parseInt(fieldStart(0), fieldEnd(0));
+        double width = parseDouble(fieldStart(1), fieldEnd(1));
+        double length = parseDouble(fieldStart(2), fieldEnd(2));
+        int numRooms = parseInt(fieldStart(3), fieldEnd(3));
+        if (numRooms < 0) {
+            throw new FileFormatException();
+        }
+        int[] maintenanceOrder = null;
+        if (colonCount == 4) {
+            maintenanceOrder = Arrays.copyOf(scratch,
+                    parseIntList(fieldStart(4), fieldEnd(4)));
+        }
+
+        Floor floor = new Floor(floorNumber, width, length);
+        for (int i = 0; i < numRooms; ++i) {
+            try {
+                floor.addRoom(readRoom());
+            } catch (DuplicateRoomException | InsufficientSpaceException
+                    | IllegalArgumentException e) {
+                throw new FileFormatException();
+            }
+        }
+        if (maintenanceOrder != null) {
+            List<Integer> roomNumbers = new ArrayList<>();
+            for (int roomNumber : maintenanceOrder) {
+                roomNumbers.add(roomNumber);
+            }
+            BuildingInitialiser.setMaintenanceSchedule(floor, roomNumbers);
+        }
+        return floor;
+    }
+
+    /*
+    Reads a room and all of its sensors
+     */
+    private Room readRoom() throws FileFormatException {
+        nextLine();
+        requireColons(3, 4);
+        // A room with a hazard evaluator must name its type
+        if (endsWith(':')) {
+            throw new FileFormatException();
+        }
+        int roomNumber = parseInt(fieldStart(0), fieldEnd(0));
+        RoomType roomType = parseRoomType(fieldStart(1), fieldEnd(1));
+        double area = parseDouble(fieldStart(2), fieldEnd(2));
+        int numSensors = parseInt(fieldStart(3), fieldEnd(3));
+        if (numSensors < 0) {
+            throw new FileFormatException();
+        }
+        boolean hasEvaluator = colonCount == 4;
+        boolean weightingBased = false;
+        if (hasEvaluator) {
+            if (fieldEquals(fieldStart(4), fieldEnd(4), WEIGHTING_BASED)) {
+                weightingBased = true;
+            } else if (!fieldEquals(fieldStart(4), fieldEnd(4),
+                    RULE_BASED)) {
+                throw new FileFormatException();
+            }
+        }
+
+        Room room = new Room(roomNumber, roomType, area);
+        List<Sensor> sensors = new ArrayList<>();
+        List<Integer> weightings = new ArrayList<>();
+        for (int i = 0; i < numSensors; ++i) {
+            sensors.add(readSensor(weightings));
+        }
+        BuildingInitialiser.addSensors(room, sensors);
+        if (hasEvaluator) {
+            BuildingInitialiser.setHazardEvaluator(room, weightingBased,
+                    sensors, weightings);
+        }
+        return room;
+    }
+
+    /*
+    Reads a sensor, adding its weighting (or -1 if it has none) to the given
+    list of weightings
+     */
+    private Sensor readSensor(List<Integer> weightings)
+            throws FileFormatException {
+        nextLine();
+        requireColons(1, 4);
+        // Handle null weightings
+        if (endsWith('@')) {
+            throw new FileFormatException();
+        }
+        int typeEnd = fieldEnd(0);
+        int readingsStart = fieldStart(1);
+        int readingsEnd = fieldEnd(1);
+        int readingsWeight = indexOf('@', readingsStart, readingsEnd);
+        int readingsWeighting = -1;
+        if (readingsWeight >= 0) {
+            readingsWeighting = parseWeighting(readingsWeight, readingsEnd);
+            readingsEnd = readingsWeight;
+        }
+        int[] readings = parseReadings(readingsStart, readingsEnd);
+        Sensor sensor;
+
+        try {
+            if (fieldEquals(lineStart, typeEnd, CO2_SENSOR)) {
+                requireColons(4);
+                int valueEnd = valueEnd(4);
+                sensor = new CarbonDioxideSensor(readings,
+                        parseInt(fieldStart(2), fieldEnd(2)),
+                        parseInt(fieldStart(3), fieldEnd(3)),
+                        parseInt(fieldStart(4), valueEnd));
+                weightings.add(parseWeighting(valueEnd, fieldEnd(4)));
+            } else if (fieldEquals(lineStart, typeEnd, NOISE_SENSOR)) {
+                requireColons(2);
+                int valueEnd = valueEnd(2);
+                sensor = new NoiseSensor(readings,
+                        parseInt(fieldStart(2), valueEnd));
+                weightings.add(parseWeighting(valueEnd, fieldEnd(2)));
+            } else if (fieldEquals(lineStart, typeEnd, OCCUPANCY_SENSOR)) {
+                requireColons(3);
+                int valueEnd = valueEnd(3);
+                sensor = new OccupancySensor(readings,
+                        parseInt(fieldStart(2), fieldEnd(2)),
+                        parseInt(fieldStart(3), valueEnd));
+                weightings.add(parseWeighting(valueEnd, fieldEnd(3)));
+            } else if (fieldEquals(lineStart, typeEnd, TEMPERATURE_SENSOR)) {
+                requireColons(1);
+                sensor = new TemperatureSensor(readings);
+                weightings.add(readingsWeighting);
+            } else {
+                throw new FileFormatException();
+            }
+        } catch (IllegalArgumentException e) {
+            throw new FileFormatException();
+        }
+        return sensor;
+    }
+
+    /*
+    Moves to the next line, which must exist and must not be blank, recording
+    the positions of the colons on the line as it is scanned
+     */
+    private void nextLine() throws FileFormatException {
+        if (position >= limit) {
+            throw new FileFormatException();
+        }
+        int i = position;
+        byte b = 0;
+        colonCount = 0;
+        while (i < limit) {
+            b = buffer.get(i);
+            if (b == '\n' || b == '\r') {
+                break;
+            }
+            if (b == ':') {
+                if (colonCount < MAX_FIELDS) {
+                    colons[colonCount] = i;
+                }
+                colonCount++;
+            }
+            i++;
+        }
+        if (i == position) {
+            throw new FileFormatException();
+        }
+        lineStart = position;
+        lineEnd = i;
+        if (i < limit) {
+            // Treat "\r\n" as a single line terminator
+            if (b == '\r' && i + 1 < limit && buffer.get(i + 1) == '\n') {
+                i++;
+            }
+            i++;
+        }
+        position = i;
+        lineCount++;
+    }
+
+    /*
+    Checks that the current line contains between min and max colons
+    (inclusive)
+     */
+    private void requireColons(int min, int max) throws FileFormatException {
+        if (colonCount < min || colonCount > max) {
+            throw new FileFormatException();
+        }
+    }
+
+    /*
+    Checks that the current line contains exactly the given number of colons
+     */
+    private void requireColons(int count) throws FileFormatException {
+        requireColons(count, count);
+    }
+
+    private int fieldStart(int field) {
+        return field == 0 ? lineStart : colons[field - 1] + 1;
+    }
+
+    private int fieldEnd(int field) {
+        return field < colonCount ? colons[field] : lineEnd;
+    }
+
+    /*
+    Returns the end of the value in a field of the form "value[@weighting]"
+     */
+    private int valueEnd(int field) {
+        int at = indexOf('@', fieldStart(field), fieldEnd(field));
+        return at < 0 ? fieldEnd(field) : at;
+    }
+
+    /*
+    Parses the weighting following the '@' at the given index, where the
+    weighting ends at the next '@' or the given end index; returns -1 if
+    there is no '@' (i.e. at == end)
+     */
+    private int parseWeighting(int at, int end) throws FileFormatException {
+        if (at >= end) {
+            return -1;
+        }
+        int weightEnd = indexOf('@', at + 1, end);
+        return parseInt(at + 1, weightEnd < 0 ? end : weightEnd);
+    }
+
+    private boolean endsWith(char c) {
+        return lineEnd > lineStart && buffer.get(lineEnd - 1) == c;
+    }
+
+    private int indexOf(char c, int start, int end) {
+        for (int i = start; i < end; ++i) {
+            if (buffer.get(i) == c) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private boolean fieldEquals(int start, int end, byte[] expected) {
+        if (end - start != expected.length) {
+            return false;
+        }
+        for (int i = 0; i < expected.length; ++i) {
+            if (buffer.get(start + i) != expected[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private RoomType parseRoomType(int start, int end)
+            throws FileFormatException {
+        for (RoomType roomType : RoomType.values()) {
+            if (fieldEquals(start, end, ROOM_TYPE_NAMES[roomType.ordinal()])) {
+                return roomType;
+            }
+        }
+        throw new FileFormatException();
+    }
+
+    /*
+    Parses a comma-separated list of sensor readings into the scratch space,
+    returning a new array of the readings
+     */
+    private int[] parseReadings(int start, int end)
+            throws FileFormatException {
+        int count = parseIntList(start, end);
+        if (count == 0) {
+            return new int[0];
+        }
+        return Arrays.copyOf(scratch, count);
+    }
+
+    /*
+    Parses a comma-separated list of integers into the scratch space,
+    returning how many there are; as with String.split(), trailing empty
+    elements are ignored
+     */
+    private int parseIntList(int start, int end) throws FileFormatException {
+        while (end > start && buffer.get(end - 1) == ',') {
+            end--;
+        }
+        if (end == start) {
+            return 0;
+        }
+        int count = 0;
+        int valueStart = start;
+        for (int i = start; i <= end; ++i) {
+            if (i == end || buffer.get(i) == ',') {
+                if (count == scratch.length) {
+                    scratch = Arrays.copyOf(scratch, count * 2);
+                }
+                scratch[count++] = parseInt(valueStart, i);
+                valueStart = i + 1;
+            }
+        }
+        return count;
+    }
+
+    /*
+    Parses an integer in the same format accepted by Integer.parseInt()
+     */
+    private int parseInt(int start, int end) throws FileFormatException {
+        if (start >= end) {
+            throw new FileFormatException();
+        }
+        boolean negative = false;
+        int i = start;
+        byte first = buffer.get(i);
+        if (first == '-' || first == '+') {
+            negative = first == '-';
+            i++;
+            if (i == end) {
+                throw new FileFormatException();
+            }
+        }
+        long value = 0;
+        long bound = negative ? -(long) Integer.MIN_VALUE : Integer.MAX_VALUE;
+        for (; i < end; ++i) {
+            byte b = buffer.get(i);
+            if (b < '0' || b > '9') {
+                if (b < 0) {
+                    // Non-ASCII digits are rare enough to decode the slow way
+                    return parseIntSlowly(start, end);
+                }
+                throw new FileFormatException();
+            }
+            value = value * 10 + (b - '0');
+            if (value > bound) {
+                throw new FileFormatException();
+            }
+        }
+        return (int) (negative ? -value : value);
+    }
+
+    private int parseIntSlowly(int start, int end)
+            throws FileFormatException {
+        try {
+            return Integer.parseInt(decode(start, end));
+        } catch (NumberFormatException e) {
+            throw new FileFormatException();
+        }
+    }
+
+    /*
+    Parses a double in the same format accepted by Double.parseDouble().
+    Plain decimals with few enough digits are converted exactly using a
+    single division; anything else is decoded the slow way.
+     */
+    private double parseDouble(int start, int end)
+            throws FileFormatException {
+        int i = start;
+        boolean negative = false;
+        if (i < end && (buffer.get(i) == '-' || buffer.get(i) == '+')) {
+            negative = buffer.get(i) == '-';
+            i++;
+        }
+        long mantissa = 0;
+        int digits = 0;
+        int fractionDigits = 0;
+        boolean seenPoint = false;
+        for (; i < end; ++i) {
+            byte b = buffer.get(i);
+            if (b >= '0' && b <= '9') {
+                if (mantissa != 0 || b != '0') {
+                    digits++;
+                }
+                mantissa = mantissa * 10 + (b - '0');
+                if (seenPoint) {
+                    fractionDigits++;
+                }
+            } else if (b == '.' && !seenPoint) {
+                seenPoint = true;
+            } else {
+                return parseDoubleSlowly(start, end);
+            }
+            if (digits > MAX_EXACT_DIGITS
+                    || fractionDigits >= POWERS_OF_TEN.length) {
+                return parseDoubleSlowly(start, end);
+            }
+        }
+        // Require at least one digit, as "", "." and "-" are not numbers
+        int signLength = negative || (end > start && buffer.get(start) == '+')
+                ? 1 : 0;
+        if (end - start - signLength - (seenPoint ? 1 : 0) == 0) {
+            throw new FileFormatException();
+        }
+        double value = mantissa / POWERS_OF_TEN[fractionDigits];
+        return negative ? -value : value;
+    }
+
+    private double parseDoubleSlowly(int start, int end)
+            throws FileFormatException {
+        try {
+            return Double.parseDouble(decode(start, end));
+        } catch (NumberFormatException e) {
+            throw new FileFormatException();
+        }
+    }
+
+    /*
+    Decodes the bytes between the given indices in the character set of
+    save files
+     */
+    private String decode(int start, int end) {
+        byte[] bytes = new byte[end - start];
+        for (int i = 0; i < bytes.length; ++i) {
+            bytes[i] = buffer.get(start + i);
+        }
+        return new String(bytes, BuildingInitialiser.CHARSET);
+    }
+
+    private static byte[] bytes(String s) {
+        return s.getBytes(StandardCharsets.US_ASCII);
+    }
+
+    private static byte[][] roomTypeNames() {
+        RoomType[] roomTypes = RoomType.values();
+        byte[][] names = new byte[roomTypes.length][];
+        for (RoomType roomType : roomTypes) {
+            names[roomType.ordinal()] = bytes(roomType.name());
+        }
+        return names;
+    }
+}
@@ -0,0 +1,614 @@
+package bms.building;
+
+import bms.exceptions.DuplicateFloorException;
+import bms.exceptions.DuplicateRoomException;
+import bms.exceptions.DuplicateSensorException;
+import bms.exceptions.FileFormatException;
+import bms.exceptions.FloorTooSmallException;
+import bms.exceptions.InsufficientSpaceException;
+import bms.exceptions.NoFloorBelowException;
+import bms.floor.Floor;
+import bms.room.Room;
+import bms.sensors.Sensor;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * An append-only journal of the changes made to a list of buildings since
+ * they were last saved to a snapshot file.
+ * <p>
+ * Each change, such as adding a room or renovating a floor, is appended to
+ * the journal as a small binary record as soon as it is made, so the cost of
+ * saving a change depends on the size of the change rather than the size of
+ * the campus. The journal is stored alongside its snapshot, in a file named
+ * after the snapshot with {@link #FILE_EXTENSION} appended.
+ * <p>
+ * When the journal is opened, the changes it contains are replayed on top of
+ * the buildings loaded from the snapshot. Compacting the journal writes a
+ * fresh snapshot containing every change and then empties the journal.
+ * <p>
+ * The buildings can be captured for compaction (see
+ * {@link #capture(List)}) and the snapshot written on another thread, while
+ * further changes are recorded. A compaction only replaces the snapshot if
+ * no change has been recorded since its capture was taken, as the snapshot
+ * would not contain it.
+ * <p>
+ * The journal's header identifies the snapshot it applies to by the
+ * snapshot's size and checksum. If compaction is interrupted after the new
+ * snapshot is written but before the journal is emptied, the journal no
+ * longer matches the snapshot and is discarded when it is next opened, as
+ * the snapshot already contains its changes. A partially written record at
+ * the end of the journal is likewise discarded.
+ * <p>
+ * Only changes which are stored in save files are journalled. Fire drills,
+ * for example, are not.
+ */
+public class MutationJournal implements Closeable {
+
+    /**
+     * Extension appended to a snapshot's filename to name its journal.
+     */
+    public static final String FILE_EXTENSION = ".journal";
+
+    /**
+     * Number of records after which {@link #needsCompaction()} returns true.
+     */
+    public static final int COMPACTION_THRESHOLD = 256;
+
+    /**
+     * Bytes at the start of every journal file.
+     */
+    private static final byte[] MAGIC = {(byte) 0x89, 'B', 'M', 'J'};
+
+    /**
+     * Version of the journal format written by this class.
+     */
+    private static final int VERSION = 1;
+
+    /**
+     * Number of bytes in the journal header: the magic bytes, the version,
+     * and the size and checksum of the snapshot.
+     */
+    private static final int HEADER_BYTES = MAGIC.length + 1 + Long.BYTES
+            + Long.BYTES;
+
+    /**
+     * Number of bytes used by the length prefix of each record.
+     */
+    private static final int RECORD_LENGTH_BYTES = Integer.BYTES;
+
+    /*
+    Kinds of record
+     */
+    private static final int ADD_BUILDING = 0;
+    private static final int ADD_FLOOR = 1;
+    private static final int ADD_ROOM = 2;
+    private static final int ADD_SENSOR = 3;
+    private static final int RENOVATE_FLOOR = 4;
+    private static final int SET_MAINTENANCE_SCHEDULE = 5;
+    private static final int SET_HAZARD_EVALUATOR = 6;
+
+    /**
+     * Path of the snapshot to which the journal applies.
+     */
+    private final Path snapshotPath;
+
+    /**
+     * Path of the journal file.
+     */
+    private final Path journalPath;
+
+    /**
+     * Whether the snapshot is written in the binary format.
+     */
+    private final boolean binary;
+
+    /**
+     * Compression applied to the snapshot.
+     */
+    private final Compression compression;
+
+    /**
+     * Channel to which records are appended.
+     */
+    private FileChannel channel;
+
+    /**
+     * Number of records in the journal.
+     */
+    private int recordCount;
+
+    /**
+     * Number of records appended since the journal was opened, which
+     * identifies the records a capture of the buildings contains.
+     */
+    private long recordsAppended;
+
+    private MutationJournal(Path snapshotPath, boolean binary,
+            Compression compression) {
+        this.snapshotPath = snapshotPath;
+        this.journalPath = Paths.get(snapshotPath + FILE_EXTENSION);
+        this.binary = binary;
+        this.compression = compression;
+        this.recordCount = 0;
+    }
+
+    /**
+     * Opens the journal of the snapshot with the given filename, replaying
+     * the changes it contains on the given buildings, which must have just
+     * been loaded from the snapshot.
+     * <p>
+     * If the snapshot has no journal, an empty journal is created.
+     *
+     * @param snapshotFilename path of the snapshot file
+     * @param buildings buildings loaded from the snapshot
+     * @return the snapshot's journal, ready for further changes to be
+     * recorded
+     * @throws IOException if the journal or snapshot cannot be read, or the
+     *                     journal cannot be written
+     * @throws FileFormatException if the journal is not a valid journal, or
+     *                             its changes cannot be applied to the
+     *                             buildings
+     */
+    public static MutationJournal open(String snapshotFilename,
+            List<Building> buildings) throws IOException, FileFormatException {
+        Path snapshotPath = Paths.get(snapshotFilename);
+        Compression compression = Compression.detectFile(snapshotFilename);
+        boolean binary;
+        try (InputStream in = new BufferedInputStream(compression.decompress(
+                Files.newInputStream(snapshotPath)))) {
+            binary = BinaryCodec.isBinary(in);
+        }
+        MutationJournal journal = new MutationJournal(snapshotPath, binary,
+                compression);
+        ByteBuffer header = createHeader(snapshotPath);
+
+        if (Files.exists(journal.journalPath)) {
+            byte[] bytes = Files.readAllBytes(journal.journalPath);
+            if (bytes.length < HEADER_BYTES || !Arrays.equals(
+                    Arrays.copyOf(bytes, MAGIC.length), MAGIC)) {
+                throw new FileFormatException();
+            }
+            if (Arrays.equals(Arrays.copyOf(bytes, HEADER_BYTES),
+                    header.array())) {
+                int end = journal.replay(bytes, buildings);
+                journal.channel = FileChannel.open(journal.journalPath,
+                        StandardOpenOption.WRITE);
+                // Discard a record which was only partly written
+                journal.channel.truncate(end);
+                journal.channel.position(end);
+                return journal;
+            }
+        }
+        // The journal is missing, or belongs to an older snapshot
+        journal.reset(header);
+        return journal;
+    }
+
+    /**
+     * Records that a building has been added to the end of the list of
+     * buildings.
+     *
+     * @param building building which was added
+     * @throws IOException if the record cannot be written
+     */
+    public void recordAddBuilding(Building building) throws IOException {
+        BinaryCodec.Output out = startRecord(ADD_BUILDING);
+        out.writeString(building.getName());
+        append(out);
+    }
+
+    /**
+     * Records that a new, empty floor has been added to a building.
+     *
+     * @param buildingIndex index of the building in the list of buildings
+     * @param floor floor which was added
+     * @throws IOException if the record cannot be written
+     */
+    public void recordAddFloor(int buildingIndex, Floor floor)
+            throws IOException {
+        BinaryCodec.Output out = startRecord(ADD_FLOOR);
+        out.writeVarint(buildingIndex);
+        BinaryCodec.writeFloor(out, floor);
+        append(out);
+    }
+
+    /**
+     * Records that a new, empty room has been added to a floor.
+     *
+     * @param buildingIndex index of the building in the list of buildings
+     * @param floorNumber number of the floor to which the room was added
+     * @param room room which was added
+     * @throws IOException if the record cannot be written
+     */
+    public void recordAddRoom(int buildingIndex, int floorNumber, Room room)
+            throws IOException {
+        BinaryCodec.Output out = startRecord(ADD_ROOM);
+        out.writeVarint(buildingIndex);
+        out.writeSignedVarint(floorNumber);
+        BinaryCodec.writeRoom(out, room);
+        append(out);
+    }
+
+    /**
+     * Records that a sensor has been added to a room.
+     *
+     * @param buildingIndex index of the building in the list of buildings
+     * @param floorNumber number of the floor containing the room
+     * @param roomNumber number of the room to which the sensor was added
+     * @param sensor sensor which was added
+     * @throws IOException if the record cannot be written
+     */
+    public void recordAddSensor(int buildingIndex, int floorNumber,
+            int roomNumber, Sensor sensor) throws IOException {
+        BinaryCodec.Output out = startRecord(ADD_SENSOR);
+        out.writeVarint(buildingIndex);
+        out.writeSignedVarint(floorNumber);
+        out.writeSignedVarint(roomNumber);
+        BinaryCodec.writeSensor(out, sensor);
+        append(out);
+    }
+
+    /**
+     * Records that a floor has been renovated to the given dimensions.
+     *
+     * @param buildingIndex index of the building in the list of buildings
+     * @param floorNumber number of the floor which was renovated
+     * @param width new width of the floor
+     * @param length new length of the floor
+     * @throws IOException if the record cannot be written
+     */
+    public void recordRenovateFloor(int buildingIndex, int floorNumber,
+            double width, double length) throws IOException {
+        BinaryCodec.Output out = startRecord(RENOVATE_FLOOR);
+        out.writeVarint(buildingIndex);
+        out.writeSignedVarint(floorNumber);
+        out.writeDouble(width);
+        out.writeDouble(length);
+        append(out);
+    }
+
+    /**
+     * Records that a floor has been given its current maintenance schedule.
+     *
+     * @param buildingIndex index of the building in the list of buildings
+     * @param floor floor whose maintenance schedule was created
+     * @throws IOException if the record cannot be written
+     */
+    public void recordMaintenanceSchedule(int buildingIndex, Floor floor)
+            throws IOException {
+        List<Room> roomOrder = floor.getMaintenanceSchedule().getRoomOrder();
+        BinaryCodec.Output out = startRecord(SET_MAINTENANCE_SCHEDULE);
+        out.writeVarint(buildingIndex);
+        out.writeSignedVarint(floor.getFloorNumber());
+        out.writeVarint(roomOrder.size());
+        for (Room room : roomOrder) {
+            out.writeSignedVarint(room.getRoomNumber());
+        }
+        append(out);
+    }
+
+    /**
+     * Records that a room has been given its current hazard evaluator.
+     *
+     * @param buildingIndex index of the building in the list of buildings
+     * @param floorNumber number of the floor containing the room
+     * @param room room whose hazard evaluator was set
+     * @throws IOException if the record cannot be written
+     */
+    public void recordHazardEvaluator(int buildingIndex, int floorNumber,
+            Room room) throws IOException {
+        BinaryCodec.Output out = startRecord(SET_HAZARD_EVALUATOR);
+        out.writeVarint(buildingIndex);
+        out.writeSignedVarint(floorNumber);
+        out.writeSignedVarint(room.getRoomNumber());
+        BinaryCodec.writeHazardEvaluator(out, room);
+        append(out);
+    }
+
+    /**
+     * Returns the number of changes recorded in the journal since it was last
+     * compacted, including those which were replayed when it was opened.
+     *
+     * @return number of records in the journal
+     */
+    public int getRecordCount() {
+        return recordCount;
+    }
+
+    /**
+     * Returns true if the journal has grown large enough that it should be
+     * compacted, see {@link #COMPACTION_THRESHOLD}.
+     *
+     * @return true if the journal should be compacted
+     */
+    public boolean needsCompaction() {
+        return recordCount >= COMPACTION_THRESHOLD;
+    }
+
+    /**
+     * Folds the journal into its snapshot by saving the given buildings as a
+     * new snapshot, in the same format and with the same compression as the
+     * existing snapshot, and then emptying the journal.
+     * <p>
+     * This is the same as compacting a capture of the buildings taken now
+     * (see {@link #compact(Capture)}).
+     *
+     * @param buildings current buildings, including every recorded change
+     * @throws IOException if the snapshot or journal cannot be written
+     */
+    public void compact(List<Building> buildings) throws IOException {
+        compact(capture(buildings));
+    }
+
+    /**
+     * Captures the given buildings, along with the changes recorded so far,
+     * to be compacted into the snapshot later, possibly on another thread.
+     * <p>
+     * Capturing the buildings is much quicker than saving them, so the
+     * buildings only need to be left unchanged while this is called.
+     *
+     * @param buildings current buildings, including every recorded change
+     * @return capture of the buildings for {@link #compact(Capture)}
+     */
+    public synchronized Capture capture(List<Building> buildings) {
+        return new Capture(BinaryCodec.encode(buildings), recordsAppended);
+    }
+
+    /**
+     * Folds the journal into its snapshot by saving the captured buildings
+     * as a new snapshot, in the same format and with the same compression as
+     * the existing snapshot, and then emptying the journal.
+     * <p>
+     * The snapshot is written while changes continue to be recorded. If any
+     * change has been recorded since the capture was taken, the new
+     * snapshot is discarded and the journal left as it is, to be compacted
+     * from a later capture.
+     * <p>
+     * The new snapshot replaces the old one atomically where the file system
+     * allows it, so an interrupted compaction leaves either the old snapshot
+     * and its journal, or the new snapshot.
+     *
+     * @param capture buildings captured with {@link #capture(List)}
+     * @return true if the journal was compacted, or false if changes were
+     * recorded after the capture was taken
+     * @throws IOException if the snapshot or journal cannot be written
+     */
+    public boolean compact(Capture capture) throws IOException {
+        Path temporary = Paths.get(snapshotPath + ".tmp");
+        try {
+            BuildingInitialiser.saveCapturedBuildings(capture.buildings,
+                    temporary.toString(), binary, compression,
+                    fraction -> { });
+        } catch (FileFormatException e) {
+            throw new IllegalStateException(
+                    "Captured buildings could not be decoded");
+        }
+        try (FileChannel snapshot = FileChannel.open(temporary,
+                StandardOpenOption.WRITE)) {
+            snapshot.force(true);
+        }
+        // Checksum the new snapshot before holding up further changes
+        ByteBuffer header = createHeader(temporary);
+        synchronized (this) {
+            if (recordsAppended != capture.recordsAppended) {
+                Files.deleteIfExists(temporary);
+                return false;
+            }
+            BuildingInitialiser.replaceFile(temporary, snapshotPath);
+            reset(header);
+        }
+        return true;
+    }
+
+    /**
+     * Closes the journal. Changes recorded so far remain in the journal file.
+     *
+     * @throws IOException if the journal file cannot be closed
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if (channel != null) {
+            channel.close();
+        }
+    }
+
+    /*
+    Creates the journal header for the current contents of the given
+    snapshot file
+     */
+    private static ByteBuffer createHeader(Path snapshotPath)
+            throws IOException {
+        CRC32 checksum = new CRC32();
+        long size;
+        try (FileChannel snapshot = FileChannel.open(snapshotPath,
+                StandardOpenOption.READ)) {
+            size = snapshot.size();
+            // Checksum the snapshot in pieces small enough to be mapped
+            for (long position = 0; position < size;
+                    position += Integer.MAX_VALUE) {
+                MappedByteBuffer piece = snapshot.map(
+                        FileChannel.MapMode.READ_ONLY, position,
+                        Math.min(Integer.MAX_VALUE, size - position));
+                checksum.update(piece);
+            }
+        }
+        ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+        header.put(MAGIC).put((byte) VERSION).putLong(size)
+                .putLong(checksum.getValue());
+        header.flip();
+        return header;
+    }
+
+    /*
+    Replaces the journal with an empty journal with the given header
+     */
+    private void reset(ByteBuffer header) throws IOException {
+        close();
+        Path temporary = Paths.get(journalPath + ".tmp");
+        try (FileChannel journal = FileChannel.open(temporary,
+                StandardOpenOption.WRITE, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            writeFully(journal, header.duplicate());
+            journal.force(true);
+        }
+        BuildingInitialiser.replaceFile(temporary, journalPath);
+        channel = FileChannel.open(journalPath, StandardOpenOption.WRITE);
+        channel.position(channel.size());
+        recordCount = 0;
+    }
+
+    /*
+    Starts a record of the given kind, leaving space for its length
+     */
+    private static BinaryCodec.Output startRecord(int kind) {
+        BinaryCodec.Output out = new BinaryCodec.Output();
+        out.reserve(RECORD_LENGTH_BYTES);
+        out.writeByte(kind);
+        return out;
+    }
+
+    /*
+    Fills in the record's length and appends it to the journal
+     */
+    private synchronized void append(BinaryCodec.Output out)
+            throws IOException {
+        out.writeIntAt(0, out.size() - RECORD_LENGTH_BYTES);
+        // Counted even if writing fails, as part of it may have been written
+        recordsAppended++;
+        writeFully(channel, ByteBuffer.wrap(out.toByteArray()));
+        channel.force(false);
+        recordCount++;
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer)
+            throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    /*
+    Applies each complete record in the journal to the buildings, returning
+    the index just past the last complete record
+     */
+    private int replay(byte[] bytes, List<Building> buildings)
+            throws FileFormatException {
+        int position = HEADER_BYTES;
+        while (bytes.length - position >= RECORD_LENGTH_BYTES) {
+            int length = new BinaryCodec.Input(bytes, position,
+                    bytes.length).readInt();
+            int start = position + RECORD_LENGTH_BYTES;
+            if (length <= 0 || length > bytes.length - start) {
+                break;
+            }
+            BinaryCodec.Input in = new BinaryCodec.Input(bytes, start,
+                    start + length);
+            apply(in, buildings);
+            if (in.remaining() != 0) {
+                throw new FileFormatException();
+            }
+            position = start + length;
+            recordCount++;
+        }
+        return position;
+    }
+
+    /*
+    Applies a single record to the buildings
+     */
+    private static void apply(BinaryCodec.Input in, List<Building> buildings)
+            throws FileFormatException {
+        int kind = in.readByte();
+        if (kind == ADD_BUILDING) {
+            buildings.add(new Building(in.readString()));
+            return;
+        }
+        Building building = getBuilding(in, buildings);
+        try {
+            if (kind == ADD_FLOOR) {
+                building.addFloor(BinaryCodec.readFloor(in));
+                return;
+            }
+            int floorNumber = in.readSignedVarint();
+            Floor floor = building.getFloorByNumber(floorNumber);
+            if (floor == null) {
+                throw new FileFormatException();
+            }
+            if (kind == ADD_ROOM) {
+                floor.addRoom(BinaryCodec.readRoom(in));
+            } else if (kind == RENOVATE_FLOOR) {
+                double width = in.readDouble();
+                double length = in.readDouble();
+                building.renovateFloor(floorNumber, width, length);
+            } else if (kind == SET_MAINTENANCE_SCHEDULE) {
+                int numRooms = in.readCount();
+                List<Integer> roomNumbers = new ArrayList<>();
+                for (int i = 0; i < numRooms; ++i) {
+                    roomNumbers.add(in.readSignedVarint());
+                }
+                BuildingInitialiser.setMaintenanceSchedule(floor,
+                        roomNumbers);
+            } else if (kind == ADD_SENSOR) {
+                Room room = getRoom(in, floor);
+                room.addSensor(BinaryCodec.readSensor(in));
+            } else if (kind == SET_HAZARD_EVALUATOR) {
+                BinaryCodec.readHazardEvaluator(in, getRoom(in, floor));
+            } else {
+                throw new FileFormatException();
+            }
+        } catch (IllegalArgumentException | DuplicateFloorException
+                | NoFloorBelowException | FloorTooSmallException
+                | DuplicateRoomException | InsufficientSpaceException
+                | DuplicateSensorException e) {
+            throw new FileFormatException();
+        }
+    }
+
+    private static Building getBuilding(BinaryCodec.Input in,
+            List<Building> buildings) throws FileFormatException {
+        int index = in.readCount();
+        if (index >= buildings.size()) {
+            throw new FileFormatException();
+        }
+        return buildings.get(index);
+    }
+
+    private static Room getRoom(BinaryCodec.Input in, Floor floor)
+            throws FileFormatException {
+        Room room = floor.getRoomByNumber(in.readSignedVarint());
+        if (room == null) {
+            throw new FileFormatException();
+        }
+        return room;
+    }
+
+    /**
+     * Buildings captured to be compacted into the snapshot, along with the
+     * number of changes recorded when they were captured.
+     */
+    public static final class Capture {
+
+        private final byte[] buildings;
+        private final long recordsAppended;
+
+        private Capture(byte[] buildings, long recordsAppended) {
+            this.buildings = buildings;
+            this.recordsAppended = recordsAppended;
+        }
+    }
+}
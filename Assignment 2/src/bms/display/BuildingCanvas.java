@@ -13,6 +13,7 @@ import javafx.scene.paint.Color;
 import javafx.scene.text.Font;
 
 import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.Map;
 import java.util.StringJoiner;
 
@@ -41,6 +42,49 @@ public class BuildingCanvas extends Canvas {
 
     }
 
+    // State of a room which changes as the simulation runs, copied so that
+    // the room can be drawn without holding the simulation lock
+    private static class RoomSnapshot {
+
+        // Hazard level of the room, or -1 if it has no hazard evaluator
+        private final int hazardLevel;
+        // Text drawn inside the room
+        private final String description;
+
+        public RoomSnapshot(Room room) {
+            this.hazardLevel = room.getHazardEvaluator() == null ? -1
+                    : room.getHazardEvaluator().evaluateHazardLevel();
+
+            StringJoiner joiner = new StringJoiner(System.lineSeparator());
+            joiner.add("Room #" + room.getRoomNumber());
+            joiner.add(room.getType().toString());
+            joiner.add(room.evaluateRoomState().toString());
+            Sensor tempSensor = room.getSensor("TemperatureSensor");
+            if (tempSensor != null) {
+                joiner.add(String.format("%d°C",
+                        tempSensor.getCurrentReading()));
+            }
+            Sensor noiseSensor = room.getSensor("NoiseSensor");
+            if (noiseSensor != null) {
+                joiner.add(String.format("%ddB",
+                        noiseSensor.getCurrentReading()));
+            }
+            Sensor co2Sensor = room.getSensor("CarbonDioxideSensor");
+            if (co2Sensor != null) {
+                joiner.add(String.format("%dppm",
+                        co2Sensor.getCurrentReading()));
+            }
+            OccupancySensor occupancySensor =
+                    (OccupancySensor) room.getSensor("OccupancySensor");
+            if (occupancySensor != null) {
+                joiner.add(String.format("%d/%d",
+                        occupancySensor.getCurrentReading(),
+                        occupancySensor.getCapacity()));
+            }
+            this.description = joiner.toString();
+        }
+    }
+
     // Height of a floor in the building
     private static final int FLOOR_HEIGHT = 110;
 
@@ -55,6 +99,9 @@ public class BuildingCanvas extends Canvas {
     // Mapping of clickable regions to rooms
     private Map<ClickableRegion, Room> drawnRooms;
 
+    // State of each room when last captured, by identity
+    private Map<Room, RoomSnapshot> roomSnapshots;
+
     // Last pressed X and Y coordinates
     private double pressedX;
     private double pressedY;
@@ -69,6 +116,7 @@ public class BuildingCanvas extends Canvas {
     public BuildingCanvas(ViewModel viewModel, Building building) {
         this.drawnFloors = new HashMap<>();
         this.drawnRooms = new HashMap<>();
+        this.roomSnapshots = new IdentityHashMap<>();
         this.viewModel = viewModel;
         this.building = building;
 
@@ -114,6 +162,28 @@ public class BuildingCanvas extends Canvas {
     }
 
     /**
+     * Copies the state of the building's rooms which changes as the
+     * simulation runs, such as their sensors' readings, for
+     * {@link #draw()} to draw from.
+     * <p>
+     * Must be called while holding the simulation lock. Drawing then only
+     * reads the copy, so the lock can be released before the canvas is
+     * drawn, and the simulation keeps running while it is.
+     */
+    public void capture() {
+        Map<Room, RoomSnapshot> snapshots = new IdentityHashMap<>();
+        for (Floor floor : building.getFloors()) {
+            for (Room room : floor.getRooms()) {
+                snapshots.put(room, new RoomSnapshot(room));
+            }
+        }
+        this.roomSnapshots = snapshots;
+    }
+
+    /**
+     * Draws the building, with the state of its rooms as it was when last
+     * {@link #capture() captured}.
+     *
      * @ass2_given
      */
     public void draw() {
@@ -195,6 +265,11 @@ public class BuildingCanvas extends Canvas {
             double roomOriginX = floorOriginX;
             for (int j = 0; j < numRooms; ++j) {
                 Room room = floor.getRooms().get(j);
+                RoomSnapshot snapshot = this.roomSnapshots.get(room);
+                if (snapshot == null) {
+                    // Added since the last capture
+                    snapshot = new RoomSnapshot(room);
+                }
                 double roomArea = room.getArea();
                 double roomDrawWidth = roomArea / floor.calculateArea() * floorDrawWidth;
 
@@ -218,9 +293,8 @@ public class BuildingCanvas extends Canvas {
                         FLOOR_HEIGHT - 2 * roomPadding), room);
 
                 // Draw a coloured rectangle to represent the hazard level
-                if (room.getHazardEvaluator() != null) {
-                    double hazardPct = room.getHazardEvaluator()
-                            .evaluateHazardLevel() / 100.0;
+                if (snapshot.hazardLevel >= 0) {
+                    double hazardPct = snapshot.hazardLevel / 100.0;
                     double fullHeight = FLOOR_HEIGHT - 2 * roomPadding;
                     double height = hazardPct * fullHeight;
                     gc.setFill(Color.ORANGE);
@@ -230,37 +304,12 @@ public class BuildingCanvas extends Canvas {
                     gc.strokeLine(x + 5.5, y, x + 5.5, y + FLOOR_HEIGHT - 2 * roomPadding);
                 }
 
-                StringJoiner joiner = new StringJoiner(System.lineSeparator());
-                joiner.add("Room #" + room.getRoomNumber());
-                joiner.add(room.getType().toString());
-                joiner.add(room.evaluateRoomState().toString());
-                Sensor tempSensor = room.getSensor("TemperatureSensor");
-                if (tempSensor != null) {
-                    joiner.add(String.format("%d°C",
-                            tempSensor.getCurrentReading()));
-                }
-                Sensor noiseSensor = room.getSensor("NoiseSensor");
-                if (noiseSensor != null) {
-                    joiner.add(String.format("%ddB",
-                            noiseSensor.getCurrentReading()));
-                }
-                Sensor co2Sensor = room.getSensor("CarbonDioxideSensor");
-                if (co2Sensor != null) {
-                    joiner.add(String.format("%dppm",
-                            co2Sensor.getCurrentReading()));
-                }
-                OccupancySensor occupancySensor = (OccupancySensor) room.getSensor("OccupancySensor");
-                if (occupancySensor != null) {
-                    joiner.add(String.format("%d/%d",
-                            occupancySensor.getCurrentReading(),
-                            occupancySensor.getCapacity()));
-                }
-                String roomDescription = joiner.toString();
+                String roomDescription = snapshot.description;
 
                 gc.setFill(Color.BLACK);
                 gc.setTextBaseline(VPos.TOP);
                 x = this.xOffset + roomOriginX + roomPadding + 2
-                        + (room.getHazardEvaluator() == null ? 0 : 6);
+                        + (snapshot.hazardLevel < 0 ? 0 : 6);
                 y = this.yOffset + floorOriginY + roomPadding + 2;
                 gc.setFont(Font.font("monospace"));
                 gc.fillText(roomDescription, x, y);
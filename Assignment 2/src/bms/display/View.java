@@ -6,7 +6,10 @@ import bms.room.Room;
 import bms.room.RoomType;
 import bms.sensors.OccupancySensor;
 import bms.sensors.Sensor;
+import bms.util.SimulationLoop;
 import bms.util.StudyRoomRecommender;
+import bms.util.TickEvent;
+import bms.util.TickMetrics;
 import javafx.animation.AnimationTimer;
 import javafx.beans.property.ReadOnlyDoubleProperty;
 import javafx.beans.value.ChangeListener;
@@ -31,8 +34,9 @@ import javafx.scene.shape.Rectangle;
 import javafx.scene.text.Font;
 import javafx.stage.Stage;
 
-import java.io.IOException;
 import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Lock;
 import java.util.stream.Collectors;
 
 /**
@@ -51,23 +55,36 @@ public class View {
     private static final double INFO_BOX_WIDTH = 200;
     private static final double BUTTON_PANE_WIDTH = 150;
 
+    // Speeds the simulation can be run at, in minutes per second
+    private static final String[] SPEED_NAMES = {"1x", "10x", "60x", "600x",
+            "Max"};
+    private static final double[] SPEEDS = {SimulationLoop.REAL_TIME, 10, 60,
+            600, SimulationLoop.MAX_SPEED};
+
+    // Longest a frame waits for the simulation to finish a minute before it
+    // is skipped
+    private static final long FRAME_LOCK_WAIT_MILLIS = 5;
+
     private Stage stage;
     private VBox mainWindow;
     private Pane structurePane;
     private TabPane tabPane;
     private ViewModel viewModel;
 
+    // Measures each update of the display, readable over JMX
+    private final TickMetrics updateMetrics = new TickMetrics("View.update");
+
     // Queue of key presses
     private LinkedList<KeyCode> input;
 
-    private long lastNanoTime = 0;
-
     /**
      * @ass2_given
      */
     public View(Stage stage, ViewModel viewModel) {
         this.stage = stage;
         this.viewModel = viewModel;
+        updateMetrics.setProfilingInterval(0);
+        updateMetrics.register();
         this.input = new LinkedList<>();
 
         stage.setTitle("Building Management System");
@@ -406,7 +423,7 @@ public class View {
 
         // Draw the currently selected building when the selected tab changes
         tabPane.getSelectionModel().selectedItemProperty().addListener(
-                (observableValue, tab, t1) -> getCurrentCanvas().draw());
+                (observableValue, tab, t1) -> captureAndDraw());
 
         return tabPane;
     }
@@ -438,15 +455,9 @@ public class View {
                     "Please enter the file name to save to", "File name:", "");
             if (filename.isEmpty()) return;
 
-            try {
-                viewModel.save(filename.get());
-            } catch (IOException ioException) {
-                viewModel.createErrorDialog("Error saving buildings to file",
-                        ioException.getMessage());
-                return;
-            }
-            viewModel.createSuccessDialog("Saved file successfully",
-                    "Saved buildings to \"" + filename + "\" successfully.");
+            viewModel.saveInBackground(filename.get()).whenComplete(
+                    (result, exception) -> showSaveResult(filename.get(),
+                            exception));
         });
 
         var resetViewButton = new Button("Reset View");
@@ -457,7 +468,31 @@ public class View {
                 "- Move around the canvas by clicking and dragging with the "
                         + "right mouse button\n"
                         + "- Select a floor or room by clicking on it with the "
-                        + "left mouse button\n"));
+                        + "left mouse button\n"
+                        + "- Drag the timeline slider to see the buildings as "
+                        + "they were at an earlier minute\n"
+                        + "- Choose how many minutes to simulate per second "
+                        + "next to the pause button\n"));
+
+        // Shows the progress of background saves while they are running
+        var saveProgressBar = new ProgressBar();
+        saveProgressBar.progressProperty().bind(
+                viewModel.getSaveProgressProperty());
+        saveProgressBar.visibleProperty().bind(
+                viewModel.getSaveProgressProperty().lessThan(1));
+        saveProgressBar.setMaxHeight(Double.MAX_VALUE);
+        var saveStatusLabel = new Label();
+        saveStatusLabel.textProperty().bind(viewModel.getSaveStatusProperty());
+        saveStatusLabel.setMaxHeight(Double.MAX_VALUE);
+
+        var timelineSlider = createTimelineSlider();
+
+        var speedChoice = new ChoiceBox<String>();
+        speedChoice.getItems().addAll(SPEED_NAMES);
+        speedChoice.setValue(SPEED_NAMES[0]);
+        speedChoice.setMaxHeight(Double.MAX_VALUE);
+        speedChoice.setOnAction(e -> viewModel.setSpeed(SPEEDS[
+                speedChoice.getSelectionModel().getSelectedIndex()]));
 
         var timeElapsedLabel = new Label();
         timeElapsedLabel.textProperty().bind(viewModel.getTimeElapsedProperty());
@@ -466,37 +501,109 @@ public class View {
         timeElapsedLabel.setAlignment(Pos.CENTER);
 
         var buttonContainer = new HBox(10);
-        buttonContainer.getChildren().addAll(pauseButton, saveButton,
-                resetViewButton, helpButton);
+        buttonContainer.getChildren().addAll(pauseButton, speedChoice,
+                saveButton, resetViewButton, helpButton, timelineSlider,
+                saveProgressBar, saveStatusLabel);
         infoBar.setLeft(buttonContainer);
         infoBar.setRight(timeElapsedLabel);
         return infoBar;
     }
 
+    private Slider createTimelineSlider() {
+        // Scrubs through the minutes in the simulation's history
+        var timelineSlider = new Slider();
+        timelineSlider.setPrefWidth(200);
+        timelineSlider.setMaxHeight(Double.MAX_VALUE);
+        timelineSlider.minProperty().bind(viewModel.getHistoryStartProperty());
+        timelineSlider.maxProperty().bind(viewModel.getHistoryEndProperty());
+        timelineSlider.setValue(viewModel.getTicksProperty().get());
+        viewModel.getTicksProperty().addListener((observable, oldMinute,
+                minute) -> {
+            if (!timelineSlider.isValueChanging()) {
+                timelineSlider.setValue(minute.intValue());
+            }
+        });
+        // Only rebuild a minute once the thumb has been let go of
+        timelineSlider.valueProperty().addListener((observable, oldValue,
+                value) -> {
+            if (!timelineSlider.isValueChanging()) {
+                seekTo(value.doubleValue());
+            }
+        });
+        timelineSlider.valueChangingProperty().addListener((observable,
+                wasChanging, changing) -> {
+            if (!changing) {
+                seekTo(timelineSlider.getValue());
+            }
+        });
+        return timelineSlider;
+    }
+
+    private void seekTo(double value) {
+        int minute = (int) Math.round(value);
+        if (minute != viewModel.getTicksProperty().get()) {
+            viewModel.seek(minute);
+        }
+    }
+
+    private void showSaveResult(String filename, Throwable exception) {
+        if (exception != null) {
+            viewModel.createErrorDialog("Error saving buildings to file",
+                    exception.getMessage());
+            return;
+        }
+        viewModel.createSuccessDialog("Saved file successfully",
+                "Saved buildings to \"" + filename + "\" successfully.");
+    }
+
     /**
      * @ass2_given
      */
     public void run() {
+        viewModel.startSimulation();
         new AnimationTimer() {
             @Override
             public void handle(long currentNanoTime) {
-                while (!input.isEmpty()) {
-                    var key = input.pop();
-                    viewModel.accept(key);
+                // The simulation runs on its own thread, so rather than
+                // stutter while it finishes a slow minute, keep showing the
+                // last frame and sample it again on the next one
+                Lock lock = viewModel.getSimulationLock();
+                try {
+                    if (!lock.tryLock(FRAME_LOCK_WAIT_MILLIS,
+                            TimeUnit.MILLISECONDS)) {
+                        return;
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
                 }
-                if (currentNanoTime - lastNanoTime > 1000000000) {
-                    lastNanoTime = currentNanoTime;
-                    viewModel.tick();
+                // Only the state to be shown is copied while holding the
+                // lock; the canvas is drawn from the copy once the
+                // simulation is free to carry on
+                TickEvent tick = null;
+                try {
+                    while (!input.isEmpty()) {
+                        var key = input.pop();
+                        viewModel.accept(key);
+                    }
+                    viewModel.sampleSimulation();
+                    if (viewModel.isChanged()) {
+                        viewModel.notChanged();
+                        tick = updateMetrics.beginTick();
+                        captureUpdate();
+                    }
+                } finally {
+                    lock.unlock();
                 }
-                if (viewModel.isChanged()) {
-                    viewModel.notChanged();
-                    update();
+                if (tick != null) {
+                    getCurrentCanvas().draw();
+                    updateMetrics.endTick(tick);
                 }
             }
         }.start();
 
         this.stage.show();
-        getCurrentCanvas().draw();
+        captureAndDraw();
     }
 
     /**
@@ -532,7 +639,26 @@ public class View {
         return canvas;
     }
 
-    private void update() {
+    /*
+    Draws the current building outside of the animation timer, copying its
+    state first since it may not have been shown since it was last captured
+     */
+    private void captureAndDraw() {
+        Lock lock = viewModel.getSimulationLock();
+        lock.lock();
+        try {
+            getCurrentCanvas().capture();
+        } finally {
+            lock.unlock();
+        }
+        getCurrentCanvas().draw();
+    }
+
+    /*
+    Adds tabs for new buildings and copies the state to be shown, which must
+    be done while holding the simulation lock
+     */
+    private void captureUpdate() {
         // Add a new tab for any newly created buildings
         List<String> tabTitles = new ArrayList<>();
         for (Tab tab : tabPane.getTabs()) {
@@ -548,7 +674,7 @@ public class View {
                 tabPane.getSelectionModel().select(tab);
             }
         }
-        getCurrentCanvas().draw();
+        getCurrentCanvas().capture();
         viewModel.updateInfoText();
     }
 }
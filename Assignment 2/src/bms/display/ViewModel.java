@@ -1,6 +1,12 @@
 package bms.display;
 
+import bms.building.BinaryCodec;
 import bms.building.Building;
+import bms.building.BuildingInitialiser;
+import bms.building.Checkpoint;
+import bms.building.CheckpointHistory;
+import bms.building.Compression;
+import bms.building.MutationJournal;
 import bms.exceptions.*;
 import bms.floor.Floor;
 import bms.hazardevaluation.RuleBasedHazardEvaluator;
@@ -8,15 +14,22 @@ import bms.hazardevaluation.WeightingBasedHazardEvaluator;
 import bms.room.Room;
 import bms.room.RoomType;
 import bms.sensors.*;
+import bms.util.SimulationLoop;
+import bms.util.TickEvent;
+import bms.util.TickMetrics;
 import bms.util.TimedItemManager;
+import javafx.application.Platform;
 import javafx.beans.property.*;
 import javafx.scene.control.Alert;
 import javafx.scene.input.KeyCode;
 
-import java.io.BufferedWriter;
-import java.io.FileWriter;
 import java.io.IOException;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.locks.Lock;
+import java.util.function.DoubleConsumer;
 
 /**
  * View model for the GUI - you will need to implement a few methods here.
@@ -45,11 +58,73 @@ public class ViewModel {
     private BooleanProperty roomSelected = new SimpleBooleanProperty(false);
     private BooleanProperty noSelected = new SimpleBooleanProperty(true);
 
+    private MutationJournal journal;
+
+    /**
+     * Whether a compaction of the journal is waiting for or running on the
+     * background save thread. Only accessed on the JavaFX application
+     * thread.
+     */
+    private boolean compactionPending = false;
+
+    private CheckpointHistory history;
+    private IntegerProperty historyStart = new SimpleIntegerProperty(0);
+    private IntegerProperty historyEnd = new SimpleIntegerProperty(0);
+
+    /**
+     * Runs the simulation on a thread of its own.
+     */
+    private final SimulationLoop simulation =
+            new SimulationLoop(this::simulateMinute);
+
+    /**
+     * Minute the simulation has reached, which the <code>ticks</code>
+     * property catches up with when the simulation is sampled. Only changed
+     * while holding the simulation lock.
+     */
+    private volatile int minute = 0;
+
+    /**
+     * Measures each minute simulated, including recording it in the history.
+     * Registered over JMX once the simulation is started.
+     */
+    private final TickMetrics tickMetrics = new TickMetrics("ViewModel.tick");
+
+    private DoubleProperty saveProgress = new SimpleDoubleProperty(1);
+    private StringProperty saveStatus = new SimpleStringProperty("");
+    private int pendingSaves = 0;
+
+    /**
+     * Runs background saves one at a time, in the order they were requested.
+     */
+    private final ExecutorService saveExecutor =
+            Executors.newSingleThreadExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "Background save");
+                thread.setDaemon(true);
+                return thread;
+            });
+
     /**
      * @ass2_given
      */
     public ViewModel(List<Building> buildings) {
         this.buildings = buildings;
+        this.history = new CheckpointHistory(buildings,
+                TimedItemManager.getInstance());
+        this.history.reset(0);
+    }
+
+    /**
+     * Creates a view model which resumes the simulation saved in the given
+     * checkpoint, with the minutes elapsed it had reached.
+     *
+     * @param checkpoint checkpoint of the simulation to resume
+     */
+    public ViewModel(Checkpoint checkpoint) {
+        this(checkpoint.getBuildings());
+        this.minute = Math.toIntExact(checkpoint.getMinutesElapsed());
+        this.history.reset(minute);
+        sampleSimulation();
     }
 
     /**
@@ -59,10 +134,14 @@ public class ViewModel {
      * <caption>Keyboard input table</caption>
      * <tr><th>Key</th><th>Action</th></tr>
      * <tr><td>P, p</td><td>Toggles whether the simulation is paused</td></tr>
-     * <tr><td>Q, q</td><td>Quits the application entirely</td></tr>
-     * <tr><td>S, s</td><td>Saves the simulation data to "saves/quicksave.txt",
-     * see {@link ViewModel#save(String)}
+     * <tr><td>Q, q</td><td>Quits the application entirely, see
+     * {@link ViewModel#quit()}</td></tr>
+     * <tr><td>S, s</td><td>Saves the simulation data to "saves/quicksave.txt"
+     * in the background, see {@link ViewModel#saveInBackground(String)}
      * </td></tr>
+     * <tr><td>C, c</td><td>Saves a checkpoint of the simulation to
+     * "saves/checkpoint.bmc" in the background, see
+     * {@link ViewModel#saveCheckpointInBackground(String)}</td></tr>
      * </table>
      *
      * @param keyCode key that was pressed
@@ -74,14 +153,14 @@ public class ViewModel {
                 togglePause();
                 break;
             case Q:
-                System.exit(0);
+                quit();
                 break;
             case S:
-                try {
-                    save("saves/quicksave.txt");
-                    break;
-                } catch (IOException e) {
-                }
+                saveInBackground("saves/quicksave.txt");
+                break;
+            case C:
+                saveCheckpointInBackground("saves/checkpoint.bmc");
+                break;
         }
     }
 
@@ -99,6 +178,7 @@ public class ViewModel {
      */
     public void togglePause() {
         paused.set(!paused.get());
+        simulation.setPaused(paused.get());
         if (paused.get() == true) {
             pauseButtonText.set("Paused");
         } else {
@@ -114,6 +194,12 @@ public class ViewModel {
      * stored by the ViewModel, joined by a line separator (see
      * {@link System#lineSeparator()}).
      * <p>
+     * If the filename ends with {@link BinaryCodec#FILE_EXTENSION}, the
+     * buildings are instead saved in the binary format of
+     * {@link BinaryCodec}, which is much faster to write and to load. Either
+     * format is compressed if the filename then ends with the extension of a
+     * {@link Compression}, such as "quicksave.txt.gz".
+     * <p>
      * If an IOException occurs when writing to file, it should be propagated
      * out of this method.
      *
@@ -123,13 +209,178 @@ public class ViewModel {
      * @ass2
      */
     public void save(String filename) throws IOException {
-        BufferedWriter writer = new BufferedWriter(new FileWriter(filename));
-        StringJoiner output = new StringJoiner(System.lineSeparator());
-        for (Building building : buildings) {
-            output.add(building.encode());
+        Lock lock = simulation.getLock();
+        lock.lock();
+        try {
+            BuildingInitialiser.saveBuildings(buildings, filename);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Stops the simulation, releases the readings of its sensors (see
+     * {@link TimedItemManager#close()}) and exits the application.
+     * <p>
+     * Background saves work from their own copy of the buildings and write
+     * to a temporary file, which only replaces the saved file once it is
+     * complete, so a save still being written is abandoned and the previous
+     * file is left as it was.
+     */
+    public void quit() {
+        simulation.stop();
+        Lock lock = simulation.getLock();
+        lock.lock();
+        try {
+            TimedItemManager.getInstance().close();
+        } finally {
+            lock.unlock();
+        }
+        System.exit(0);
+    }
+
+    /**
+     * Saves a checkpoint of the whole simulation to the given file location,
+     * including the state of every sensor, room and maintenance schedule and
+     * the number of minutes elapsed, so that it can be resumed exactly where
+     * it is (see {@link Checkpoint}).
+     *
+     * @param filename path of file to save the checkpoint to
+     * @throws IOException if the file cannot be written
+     */
+    public void saveCheckpoint(String filename) throws IOException {
+        Lock lock = simulation.getLock();
+        lock.lock();
+        try {
+            // Counters of an event driven manager may lag behind its readings
+            TimedItemManager.getInstance().synchronise();
+            new Checkpoint(buildings, minute).save(filename);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Saves the buildings to the given file location on a background thread,
+     * so that the simulation and GUI keep running while the file is written.
+     * <p>
+     * The buildings are captured as they are when this method is called, and
+     * the file contains exactly that state, even if the buildings change
+     * before it has been written. The format and compression are chosen as
+     * for {@link ViewModel#save(String)}, and any compression is done on the
+     * background thread.
+     * <p>
+     * Progress is reported through {@link #getSaveProgressProperty()}, and
+     * the outcome through {@link #getSaveStatusProperty()}. The returned
+     * future is completed on the JavaFX application thread once the file
+     * has been written, or completed exceptionally if it could not be.
+     * <p>
+     * Must be called on the JavaFX application thread.
+     *
+     * @param filename path of file to save to
+     * @return future completed when the save finishes
+     */
+    public CompletableFuture<Void> saveInBackground(String filename) {
+        // Encoding to binary is quick enough to do here, and gives the saving
+        // thread its own copy of the buildings
+        byte[] capture;
+        Lock lock = simulation.getLock();
+        lock.lock();
+        try {
+            capture = BinaryCodec.encode(buildings);
+        } finally {
+            lock.unlock();
         }
-        writer.write(String.valueOf(output));
-        writer.close();
+        return runInBackground(filename, progress -> BuildingInitialiser
+                .saveCapturedBuildings(capture, filename, progress));
+    }
+
+    /**
+     * Saves a checkpoint of the whole simulation to the given file location
+     * on a background thread, as {@link #saveCheckpoint(String)} does.
+     * <p>
+     * The checkpoint is encoded as the simulation is when this method is
+     * called, and only written to the file on the background thread, queued
+     * behind any other background saves. Progress and the outcome are
+     * reported as for {@link #saveInBackground(String)}, so a checkpoint
+     * which cannot be written is reported rather than thrown.
+     * <p>
+     * Must be called on the JavaFX application thread.
+     *
+     * @param filename path of file to save the checkpoint to
+     * @return future completed when the checkpoint has been written
+     */
+    public CompletableFuture<Void> saveCheckpointInBackground(
+            String filename) {
+        byte[] capture;
+        Lock lock = simulation.getLock();
+        lock.lock();
+        try {
+            // Counters of an event driven manager may lag behind its readings
+            TimedItemManager.getInstance().synchronise();
+            capture = new Checkpoint(buildings, minute).encode();
+        } finally {
+            lock.unlock();
+        }
+        return runInBackground(filename, progress -> {
+            Checkpoint.save(capture, filename);
+            progress.accept(1);
+        });
+    }
+
+    /*
+    Runs the save of the given file on the background thread, reporting its
+    progress and outcome on the JavaFX application thread
+     */
+    private CompletableFuture<Void> runInBackground(String filename,
+            BackgroundSave save) {
+        pendingSaves++;
+        if (pendingSaves == 1) {
+            saveProgress.set(0);
+            saveStatus.set("Saving to \"" + filename + "\"");
+        }
+
+        CompletableFuture<Void> result = new CompletableFuture<>();
+        DoubleConsumer progress = new DoubleConsumer() {
+            private int percent = 0;
+
+            @Override
+            public void accept(double fraction) {
+                // Only hand whole percentages over to the JavaFX thread
+                int newPercent = (int) (fraction * 100);
+                if (newPercent != percent) {
+                    percent = newPercent;
+                    Platform.runLater(() -> saveProgress.set(fraction));
+                }
+            }
+        };
+        saveExecutor.execute(() -> {
+            try {
+                save.run(progress);
+            } catch (IOException | FileFormatException | RuntimeException e) {
+                Platform.runLater(() -> {
+                    finishSave("Could not save to \"" + filename + "\": "
+                            + e.getMessage());
+                    result.completeExceptionally(e);
+                });
+                return;
+            }
+            Platform.runLater(() -> {
+                finishSave("Saved to \"" + filename + "\"");
+                result.complete(null);
+            });
+        });
+        return result;
+    }
+
+    /*
+    Reports that a background save has finished, resetting the progress for
+    the next queued save if there is one
+     */
+    private void finishSave(String status) {
+        pendingSaves--;
+        saveProgress.set(pendingSaves == 0 ? 1 : 0);
+        saveStatus.set(status);
     }
 
     /**
@@ -145,18 +396,119 @@ public class ViewModel {
      * X is the number of ticks elapsed.
      * <p>
      * Finally, the <code>registerChange()</code> method should be called.
+     * <p>
+     * The new minute is recorded in the simulation's history, so that it
+     * can be returned to later (see {@link #seek(int)}).
+     * <p>
+     * Once started (see {@link #startSimulation()}), the simulation elapses
+     * minutes on a thread of its own, so this only needs to be called to
+     * step through minutes by hand. Must be called on the JavaFX
+     * application thread.
      *
      * @ass2
      */
     public void tick() {
         if (paused.get() == false) {
-            TimedItemManager.getInstance().elapseOneMinute();
-            ticks.set(ticks.get() + 1);
+            Lock lock = simulation.getLock();
+            lock.lock();
+            try {
+                simulateMinute();
+                sampleSimulation();
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Starts the thread on which the simulation elapses minutes, at the
+     * speed set by {@link #setSpeed(double)}, while it is not paused.
+     * <p>
+     * Any thread other than the simulation's which reads or changes the
+     * buildings while the simulation is running must hold the simulation
+     * lock (see {@link #getSimulationLock()}). The properties shown by the
+     * GUI are not changed by the simulation's thread, but are brought up to
+     * date by {@link #sampleSimulation()}.
+     */
+    public void startSimulation() {
+        tickMetrics.setProfilingInterval(0);
+        tickMetrics.register();
+        simulation.start();
+    }
+
+    /**
+     * Returns the lock which is held while the simulation elapses each
+     * minute, and which must be held while the buildings are read or
+     * changed on any other thread.
+     *
+     * @return the simulation lock
+     */
+    public Lock getSimulationLock() {
+        return simulation.getLock();
+    }
+
+    /**
+     * Returns the number of minutes the simulation elapses per second.
+     *
+     * @return speed of the simulation
+     */
+    public double getSpeed() {
+        return simulation.getSpeed();
+    }
+
+    /**
+     * Sets the number of minutes the simulation elapses per second, from
+     * {@link SimulationLoop#REAL_TIME} up to {@link SimulationLoop#MAX_SPEED}
+     * for as fast as possible.
+     *
+     * @param speed minutes per second
+     * @throws IllegalArgumentException if speed is not greater than zero
+     */
+    public void setSpeed(double speed) {
+        simulation.setSpeed(speed);
+    }
+
+    /**
+     * Brings the <code>ticks</code> and <code>timeElapsed</code> properties,
+     * and the range of the history, up to date with the minute the
+     * simulation has reached, and registers a change if it has moved on
+     * since they were last updated.
+     * <p>
+     * Must be called on the JavaFX application thread, typically once for
+     * each frame drawn. Acquires the simulation lock, so to avoid waiting
+     * for a slow minute to finish, the caller may instead try to acquire the
+     * lock first and skip the frame if it cannot.
+     */
+    public void sampleSimulation() {
+        Lock lock = simulation.getLock();
+        lock.lock();
+        try {
+            if (minute == ticks.get()) {
+                return;
+            }
+            // The range must include the new minute before it is shown
+            updateHistoryRange();
+            ticks.set(minute);
             timeElapsed.set(ticks.get() + " minutes elapsed");
             this.registerChange();
+        } finally {
+            lock.unlock();
         }
     }
 
+    /*
+    Elapses one minute of the simulation and records it in the history.
+    Called while holding the simulation lock, usually on the simulation's
+    thread.
+     */
+    private void simulateMinute() {
+        TickEvent tick = tickMetrics.beginTick();
+        TimedItemManager.getInstance().elapseOneMinute();
+        history.record(minute + 1);
+        minute++;
+        tickMetrics.endTick(tick);
+    }
+
     /**
      * @ass2_given
      */
@@ -164,6 +516,97 @@ public class ViewModel {
         return buildings;
     }
 
+    /**
+     * Returns the history from which past minutes of the simulation are
+     * rebuilt, for example to change its memory limit.
+     *
+     * @return the simulation's history
+     */
+    public CheckpointHistory getHistory() {
+        return history;
+    }
+
+    /**
+     * Takes the simulation back or forward to the given minute in its
+     * history, and pauses it there so that the buildings can be inspected
+     * as they were at that minute.
+     * <p>
+     * If the simulation is unpaused, it carries on from the given minute,
+     * and any later minutes in the history are forgotten.
+     *
+     * @param minute minute of the simulation to show
+     * @throws IllegalArgumentException if the minute is outside the range
+     * given by {@link #getHistoryStartProperty()} and
+     * {@link #getHistoryEndProperty()}
+     */
+    public void seek(int minute) {
+        if (!paused.get()) {
+            togglePause();
+        }
+        Lock lock = simulation.getLock();
+        lock.lock();
+        try {
+            history.seek(minute);
+            this.minute = minute;
+            ticks.set(minute);
+            timeElapsed.set(ticks.get() + " minutes elapsed");
+        } finally {
+            lock.unlock();
+        }
+        this.registerChange();
+    }
+
+    /**
+     * Returns the number of minutes the simulation has run for, which moves
+     * back when the simulation is taken back to an earlier minute.
+     *
+     * @return minute of the simulation being shown
+     */
+    public ReadOnlyIntegerProperty getTicksProperty() {
+        return ticks;
+    }
+
+    /**
+     * Returns the earliest minute the simulation can be taken back to.
+     *
+     * @return earliest minute in the simulation's history
+     */
+    public ReadOnlyIntegerProperty getHistoryStartProperty() {
+        return historyStart;
+    }
+
+    /**
+     * Returns the latest minute the simulation can be taken forward to.
+     *
+     * @return latest minute in the simulation's history
+     */
+    public ReadOnlyIntegerProperty getHistoryEndProperty() {
+        return historyEnd;
+    }
+
+    /*
+    Updates the range of minutes which can be sought to from the history
+     */
+    private void updateHistoryRange() {
+        historyEnd.set(Math.toIntExact(history.getLatestMinute()));
+        historyStart.set(Math.toIntExact(history.getEarliestMinute()));
+    }
+
+    /**
+     * Sets the journal to which changes made to the buildings are recorded.
+     * <p>
+     * Once set, each successful change is appended to the journal, and the
+     * journal is compacted into its snapshot when it grows large enough.
+     * Compaction writes the snapshot on the background save thread, behind
+     * any other background saves, and failures are reported through
+     * {@link #getSaveStatusProperty()}.
+     *
+     * @param journal journal to record changes to, or null to stop recording
+     */
+    public void setJournal(MutationJournal journal) {
+        this.journal = journal;
+    }
+
     /**
      * @ass2_given
      */
@@ -204,6 +647,26 @@ public class ViewModel {
         return pauseButtonText;
     }
 
+    /**
+     * Returns the progress of the most recent background save, as a fraction
+     * between 0 and 1. The value is 1 when no save is in progress.
+     *
+     * @return progress of the most recent background save
+     */
+    public ReadOnlyDoubleProperty getSaveProgressProperty() {
+        return saveProgress;
+    }
+
+    /**
+     * Returns a description of the most recent background save, which is
+     * empty if no background save has been started.
+     *
+     * @return status of the most recent background save
+     */
+    public ReadOnlyStringProperty getSaveStatusProperty() {
+        return saveStatus;
+    }
+
     /**
      * @ass2_given
      */
@@ -375,6 +838,18 @@ public class ViewModel {
                 return;
             }
         }
+        // The simulation must not elapse a minute part way through a change
+        Lock lock = simulation.getLock();
+        lock.lock();
+        try {
+            applyInstruction(option, args);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void applyInstruction(ButtonOptions option,
+            List<Optional<String>> args) {
         switch (option) {
             case ADD_BUILDING:
                 addBuilding(args.get(0).orElse(""));
@@ -432,6 +907,9 @@ public class ViewModel {
             return;
         }
 
+        Floor floor = this.selectedFloor;
+        record(journal -> journal.recordMaintenanceSchedule(
+                currentBuildingIndex.get(), floor));
         this.registerChange();
     }
 
@@ -441,7 +919,9 @@ public class ViewModel {
                     "Building name must contain non-whitespace characters");
             return;
         }
-        this.buildings.add(new Building(buildingName));
+        Building newBuilding = new Building(buildingName);
+        this.buildings.add(newBuilding);
+        record(journal -> journal.recordAddBuilding(newBuilding));
         this.registerChange();
     }
 
@@ -487,6 +967,8 @@ public class ViewModel {
             return;
         }
 
+        record(journal -> journal.recordAddFloor(currentBuildingIndex.get(),
+                newFloor));
         this.registerChange();
     }
 
@@ -531,6 +1013,8 @@ public class ViewModel {
             return;
         }
 
+        record(journal -> journal.recordAddRoom(currentBuildingIndex.get(),
+                currentFloor.getFloorNumber(), newRoom));
         this.registerChange();
     }
 
@@ -549,11 +1033,15 @@ public class ViewModel {
             return;
         }
 
+        history.recordChange(minute);
+        updateHistoryRange();
         this.registerChange();
     }
 
     private void cancelFireDrill() {
         this.getSelectedBuilding().cancelFireDrill();
+        history.recordChange(minute);
+        updateHistoryRange();
         this.registerChange();
     }
 
@@ -584,6 +1072,9 @@ public class ViewModel {
             return;
         }
 
+        record(journal -> journal.recordRenovateFloor(
+                currentBuildingIndex.get(),
+                getSelectedFloor().getFloorNumber(), newWidth, newLength));
         this.registerChange();
     }
 
@@ -603,14 +1094,7 @@ public class ViewModel {
         }
 
         if (sensorType.equals("TemperatureSensor")) {
-            try {
-                getSelectedRoom().addSensor(
-                        new TemperatureSensor(sensorReadings));
-            } catch (DuplicateSensorException e) {
-                createErrorDialog("Could not add sensor", e.getMessage());
-                return;
-            }
-            this.registerChange();
+            addSensorToSelectedRoom(new TemperatureSensor(sensorReadings));
             return;
         }
 
@@ -627,14 +1111,8 @@ public class ViewModel {
         }
 
         if (sensorType.equals("NoiseSensor")) {
-            try {
-                getSelectedRoom().addSensor(new NoiseSensor(sensorReadings,
-                        updateFrequency));
-            } catch (DuplicateSensorException e) {
-                createErrorDialog("Could not add sensor", e.getMessage());
-                return;
-            }
-            this.registerChange();
+            addSensorToSelectedRoom(new NoiseSensor(sensorReadings,
+                    updateFrequency));
             return;
         }
 
@@ -650,14 +1128,8 @@ public class ViewModel {
                         "Sensor capacity must be an integer");
                 return;
             }
-            try {
-                getSelectedRoom().addSensor(new OccupancySensor(sensorReadings,
-                        updateFrequency, capacity));
-            } catch (DuplicateSensorException e) {
-                createErrorDialog("Could not add sensor", e.getMessage());
-                return;
-            }
-            this.registerChange();
+            addSensorToSelectedRoom(new OccupancySensor(sensorReadings,
+                    updateFrequency, capacity));
             return;
         }
 
@@ -679,14 +1151,22 @@ public class ViewModel {
                     "Sensor variation limit must be an integer");
             return;
         }
+        addSensorToSelectedRoom(new CarbonDioxideSensor(sensorReadings,
+                updateFrequency, idealValue, varLimit));
+    }
+
+    private void addSensorToSelectedRoom(Sensor sensor) {
+        Room room = getSelectedRoom();
         try {
-            getSelectedRoom().addSensor(new CarbonDioxideSensor(sensorReadings,
-                    updateFrequency, idealValue, varLimit));
+            room.addSensor(sensor);
         } catch (DuplicateSensorException e) {
             createErrorDialog("Could not add sensor", e.getMessage());
             return;
         }
 
+        record(journal -> journal.recordAddSensor(currentBuildingIndex.get(),
+                getSelectedFloor().getFloorNumber(), room.getRoomNumber(),
+                sensor));
         this.registerChange();
     }
 
@@ -703,6 +1183,7 @@ public class ViewModel {
         if (evaluatorType.equals("Rule Based")) {
             getSelectedRoom().setHazardEvaluator(
                     new RuleBasedHazardEvaluator(hazardSensors));
+            recordHazardEvaluator();
             this.registerChange();
             return;
         }
@@ -731,6 +1212,87 @@ public class ViewModel {
             return;
         }
 
+        recordHazardEvaluator();
         this.registerChange();
     }
+
+    private void recordHazardEvaluator() {
+        Room room = getSelectedRoom();
+        record(journal -> journal.recordHazardEvaluator(
+                currentBuildingIndex.get(),
+                getSelectedFloor().getFloorNumber(), room));
+    }
+
+    /*
+    Appends a change to the journal, if there is one, compacting the journal
+    in the background once it has grown large enough. As the structure of
+    the buildings has changed, the history starts again from the current
+    minute. Failures are reported through the save status, as a dialog
+    cannot be shown while a key press is being handled.
+     */
+    private void record(JournalEntry entry) {
+        history.reset(minute);
+        updateHistoryRange();
+        if (journal == null) {
+            return;
+        }
+        try {
+            entry.writeTo(journal);
+        } catch (IOException e) {
+            saveStatus.set("Could not record change to journal: "
+                    + e.getMessage());
+            return;
+        }
+        if (journal.needsCompaction() && !compactionPending) {
+            compactInBackground(journal);
+        }
+    }
+
+    /*
+    Captures the buildings and compacts them into the journal's snapshot on
+    the background save thread. A compaction overtaken by further changes
+    is dropped, and the next change recorded starts another.
+     */
+    private void compactInBackground(MutationJournal journal) {
+        MutationJournal.Capture capture;
+        Lock lock = simulation.getLock();
+        lock.lock();
+        try {
+            capture = journal.capture(buildings);
+        } finally {
+            lock.unlock();
+        }
+        compactionPending = true;
+        saveExecutor.execute(() -> {
+            String failure = null;
+            try {
+                journal.compact(capture);
+            } catch (IOException | RuntimeException e) {
+                failure = "Could not compact journal: " + e.getMessage();
+            }
+            String status = failure;
+            Platform.runLater(() -> {
+                compactionPending = false;
+                if (status != null) {
+                    saveStatus.set(status);
+                }
+            });
+        });
+    }
+
+    /**
+     * A change which can be recorded to a mutation journal.
+     */
+    private interface JournalEntry {
+        void writeTo(MutationJournal journal) throws IOException;
+    }
+
+    /**
+     * A save run on the background thread, reporting the fraction of it
+     * done so far.
+     */
+    private interface BackgroundSave {
+        void run(DoubleConsumer progress)
+                throws IOException, FileFormatException;
+    }
 }
@@ -7,7 +7,9 @@ import bms.room.Room;
 import bms.room.RoomType;
 import bms.util.Encodable;
 import bms.util.FireDrill;
+import bms.util.TimedItemManager;
 
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -296,6 +298,9 @@ public class Floor implements FireDrill, Encodable {
 
     /**
      * Adds a maintenance schedule to this floor with the given room order.
+     * <p>
+     * Any schedule the floor already has is replaced, and unregistered from
+     * the current thread's timed item manager.
      *
      * @param roomOrder rooms on which to perform maintenance, in order
      * @throws IllegalArgumentException  if the given order is null or empty,
@@ -330,6 +335,10 @@ public class Floor implements FireDrill, Encodable {
         for (Room room : this.getRooms()) {
             room.setMaintenance(false);
         }
+        if (maintenanceSchedule != null) {
+            TimedItemManager.getCurrent().unregisterTimedItem(
+                    maintenanceSchedule);
+        }
         maintenanceSchedule = new MaintenanceSchedule(roomOrder);
     }
 
@@ -401,18 +410,29 @@ public class Floor implements FireDrill, Encodable {
      * @return encoded string representation of this floor
      */
     public String encode() {
-        String output = String.format("%d:%.2f:%.2f:%d", floorNumber, width,
-                length, getRooms().size());
+        return Encodable.encodeToString(this);
+    }
+
+    /**
+     * Appends the machine-readable representation of this floor, and all of
+     * its rooms and sensors, to the given appendable.
+     *
+     * @param out appendable to which to append this floor's representation
+     * @throws IOException if appending to the appendable fails
+     */
+    @Override
+    public void encodeTo(Appendable out) throws IOException {
+        List<Room> rooms = getRooms();
+        out.append(String.format("%d:%.2f:%.2f:%d", floorNumber, width,
+                length, rooms.size()));
 
         if (getMaintenanceSchedule() != null) {
-            output += ":" + maintenanceSchedule.encode() +
-                    System.lineSeparator();
-        } else {
-            output += System.lineSeparator();
+            out.append(':');
+            maintenanceSchedule.encodeTo(out);
         }
-        for (Room room : getRooms()) {
-            output += room.encode() + System.lineSeparator();
+        for (Room room : rooms) {
+            out.append(System.lineSeparator());
+            room.encodeTo(out);
         }
-        return output.stripTrailing();
     }
 }
\ No newline at end of file
@@ -3,9 +3,11 @@ package bms.floor;
 import bms.room.Room;
 import bms.room.RoomState;
 import bms.room.RoomType;
+import bms.sensors.TemperatureSensor;
 import bms.util.Encodable;
 import bms.util.TimedItem;
 import bms.util.TimedItemManager;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.StringJoiner;
 
@@ -25,7 +27,8 @@ public class MaintenanceSchedule implements TimedItem, Encodable {
     private int timeElapsed;
 
     /**
-     * Constructs a maintenance schedule.
+     * Constructs a maintenance schedule, registered with the current
+     * thread's timed item manager.
      *
      * @param roomOrder list of rooms on which to perform maintenance, in order
      */
@@ -33,7 +36,17 @@ public class MaintenanceSchedule implements TimedItem, Encodable {
         this.roomOrder = roomOrder;
         this.roomOrder.get(0).setMaintenance(true);
         this.timeElapsed = 0;
-        TimedItemManager.getInstance().registerTimedItem(this);
+        TimedItemManager.getCurrent().registerTimedItem(this);
+    }
+
+    /**
+     * Returns a new list containing the rooms on which to perform
+     * maintenance, in order.
+     *
+     * @return new list of the rooms in the schedule, in order
+     */
+    public List<Room> getRoomOrder() {
+        return new ArrayList<>(roomOrder);
     }
 
     /**
@@ -85,17 +98,146 @@ public class MaintenanceSchedule implements TimedItem, Encodable {
         return timeElapsed;
     }
 
+    /**
+     * Sets the time elapsed maintaining the current room, for example when
+     * restoring a schedule which had been part way through a room.
+     *
+     * @param timeElapsed minutes elapsed maintaining the current room
+     * @throws IllegalArgumentException if timeElapsed is negative
+     */
+    public void setTimeElapsedCurrentRoom(int timeElapsed) {
+        if (timeElapsed < 0) {
+            throw new IllegalArgumentException(
+                    "Time elapsed must not be negative");
+        }
+        this.timeElapsed = timeElapsed;
+    }
+
     /**
      * Progresses the maintenance schedule by one minute.
      */
     public void elapseOneMinute() {
         if (getCurrentRoom().evaluateRoomState() != RoomState.EVACUATE) {
-            if (getTimeElapsedCurrentRoom() ==
-                    getMaintenanceTime(getCurrentRoom())) {
-                skipCurrentMaintenance();
+            progressCurrentRoom();
+        }
+    }
+
+    /**
+     * Progresses the maintenance schedule by the given number of minutes,
+     * with the same result as calling {@link #elapseOneMinute()} that many
+     * times while the sensors of the rooms elapse one minute before each
+     * call.
+     * <p>
+     * While maintenance is on rooms which cannot be evacuated in the
+     * meantime, the schedule moves a whole room at a time, and skips whole
+     * cycles of the room order if no room can be evacuated. Only while
+     * maintenance is on a room whose temperature sensor may detect a fire is
+     * the schedule progressed minute by minute, to find the minutes for
+     * which it is paused.
+     *
+     * @param minutes number of minutes to elapse
+     * @throws IllegalArgumentException if minutes is negative
+     */
+    @Override
+    public void elapseMinutes(long minutes) {
+        if (minutes < 0) {
+            throw new IllegalArgumentException(
+                    "Number of minutes must not be negative");
+        }
+        long cycleDuration = getCycleDuration();
+        long elapsed = 0;
+        Room checkedRoom = null;
+        TemperatureSensor sensor = null;
+        long pausedMinutes = 0;
+        while (elapsed < minutes) {
+            Room room = getCurrentRoom();
+            if (room.fireDrillOngoing()) {
+                // Paused until the fire drill ends
+                return;
+            }
+            if (room != checkedRoom) {
+                checkedRoom = room;
+                sensor = getFireSensor(room);
+                pausedMinutes = 0;
+            }
+            if (sensor != null) {
+                elapsed++;
+                if (sensor.getHazardLevelAfter(elapsed) == 100) {
+                    pausedMinutes++;
+                    if (pausedMinutes >= sensor.getRotationDuration()) {
+                        // Every reading is a fire, so this never ends
+                        return;
+                    }
+                } else {
+                    pausedMinutes = 0;
+                    progressCurrentRoom();
+                }
+                continue;
+            }
+            long remaining = minutes - elapsed;
+            long untilFinished =
+                    getMaintenanceTime(room) - getTimeElapsedCurrentRoom();
+            if (untilFinished < 0 || remaining <= untilFinished) {
+                this.timeElapsed = (int) (this.timeElapsed + remaining);
+                return;
+            }
+            // Jump to the minute on which maintenance of the room finishes
+            this.timeElapsed += (int) untilFinished;
+            elapsed += untilFinished + 1;
+            progressCurrentRoom();
+            if (cycleDuration > 0) {
+                elapsed += (minutes - elapsed) / cycleDuration
+                        * cycleDuration;
+            }
+        }
+    }
+
+    /*
+    Progresses maintenance of the current room by one minute, moving on to
+    the next room if the current room's maintenance is finished
+     */
+    private void progressCurrentRoom() {
+        if (getTimeElapsedCurrentRoom() ==
+                getMaintenanceTime(getCurrentRoom())) {
+            skipCurrentMaintenance();
+        }
+        this.timeElapsed++;
+    }
+
+    /*
+    Returns the number of minutes taken to maintain every room in order and
+    return to the same point, or zero if maintenance of any room may be
+    paused or never finish
+     */
+    private long getCycleDuration() {
+        long duration = 0;
+        for (Room room : roomOrder) {
+            int maintenanceTime = getMaintenanceTime(room);
+            if (maintenanceTime < 1 || room.fireDrillOngoing()
+                    || getFireSensor(room) != null) {
+                return 0;
+            }
+            duration += maintenanceTime;
+        }
+        return duration;
+    }
+
+    /*
+    Returns the room's temperature sensor if any of its readings would
+    require the room to be evacuated, or null otherwise
+     */
+    private static TemperatureSensor getFireSensor(Room room) {
+        TemperatureSensor sensor =
+                (TemperatureSensor) room.getSensor("TemperatureSensor");
+        if (sensor == null) {
+            return null;
+        }
+        for (int i = 0; i < sensor.getRotationDuration(); ++i) {
+            if (sensor.getHazardLevelAfter(i) == 100) {
+                return sensor;
             }
-            this.timeElapsed++;
         }
+        return null;
     }
 
     /**
@@ -2,6 +2,7 @@ package bms.hazardevaluation;
 
 import bms.sensors.HazardSensor;
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -66,6 +67,15 @@ public class WeightingBasedHazardEvaluator implements HazardEvaluator {
         return weightingList;
     }
 
+    /**
+     * @return new map containing each sensor monitored by this hazard
+     *         evaluator and its weighting, in the order they were given to
+     *         the constructor
+     */
+    public Map<HazardSensor, Integer> getSensorWeightings() {
+        return new LinkedHashMap<>(sensors);
+    }
+
     /**
      * @return string representation of this hazard evaluator
      */
@@ -6,6 +6,7 @@ import bms.hazardevaluation.WeightingBasedHazardEvaluator;
 import bms.sensors.HazardSensor;
 import bms.sensors.Sensor;
 import bms.util.Encodable;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Comparator;
 import java.util.List;
@@ -336,43 +337,40 @@ public class Room implements Encodable {
      * @return encoded string representation of this room
      */
     public String encode() {
-        String output = String.format("%d:%s:%.2f:%d", this.roomNumber,
-                this.type, this.getArea(), this.getSensors().size());
+        return Encodable.encodeToString(this);
+    }
 
-        if (this.getHazardEvaluator() != null) {
-            output += ":" + this.getHazardEvaluator().toString() +
-                    System.lineSeparator();
-        } else {
-            output += System.lineSeparator();
-        }
+    /**
+     * Appends the machine-readable representation of this room, and all of
+     * its sensors, to the given appendable.
+     *
+     * @param out appendable to which to append this room's representation
+     * @throws IOException if appending to the appendable fails
+     */
+    @Override
+    public void encodeTo(Appendable out) throws IOException {
+        List<Sensor> sensors = getSensors();
+        out.append(String.format("%d:%s:%.2f:%d", this.roomNumber,
+                this.type, this.getArea(), sensors.size()));
 
+        List weights = null;
         if (this.getHazardEvaluator() != null) {
+            out.append(':').append(this.getHazardEvaluator().toString());
             if (this.getHazardEvaluator().toString().equals("WeightingBased")) {
-                List weights = ((WeightingBasedHazardEvaluator) hEvaluator)
-                                .getWeightings();
-                for (Sensor sensor : getSensors()) {
-                    if (sensor instanceof Encodable) {
-                        int index = getSensors().indexOf(sensor);
-                        output += ((Encodable) sensor).encode() + "@" +
-                                weights.get(index) + System.lineSeparator();
-                    }
-                }
-            } else {
-                for (Sensor sensor : getSensors()) {
-                    if (sensor instanceof Encodable) {
-                        output += ((Encodable) sensor).encode()
-                                + System.lineSeparator();
-                    }
-                }
+                weights = ((WeightingBasedHazardEvaluator) hEvaluator)
+                        .getWeightings();
             }
-        } else {
-            for (Sensor sensor : getSensors()) {
-                if (sensor instanceof Encodable) {
-                    output += ((Encodable) sensor).encode()
-                            + System.lineSeparator();
+        }
+
+        for (Sensor sensor : sensors) {
+            if (sensor instanceof Encodable) {
+                out.append(System.lineSeparator());
+                ((Encodable) sensor).encodeTo(out);
+                if (weights != null) {
+                    int index = sensors.indexOf(sensor);
+                    out.append('@').append(String.valueOf(weights.get(index)));
                 }
             }
         }
-        return output.stripTrailing();
     }
 }
\ No newline at end of file
@@ -1,5 +1,9 @@
 package bms.sensors;
 
+import bms.util.Encodable;
+
+import java.io.IOException;
+
 /**
  * A sensor that measures levels of carbon dioxide (CO2) in the air, in parts
  * per million (ppm).
@@ -109,7 +113,18 @@ public class CarbonDioxideSensor extends TimedSensor implements HazardSensor,
      */
     @Override
     public int getHazardLevel() {
-        final int currentReading = this.getCurrentReading();
+        return lookupHazardLevel();
+    }
+
+    /**
+     * Returns the hazard level observed with the given CO2 reading.
+     *
+     * @param currentReading CO2 concentration in ppm
+     * @return level of hazard at that concentration, 0 to 100
+     * @see #getHazardLevel()
+     */
+    @Override
+    protected int hazardLevelOf(int currentReading) {
         if (currentReading < 1000) {
             return 0;
         }
@@ -128,7 +143,19 @@ public class CarbonDioxideSensor extends TimedSensor implements HazardSensor,
      * @return comfort level as an integer between 0 and 100
      */
     public int getComfortLevel() {
-        int absDif = Math.abs(getIdealValue() - this.getCurrentReading());
+        return lookupComfortLevel();
+    }
+
+    /**
+     * Returns the comfort level observed with the given CO2 reading.
+     *
+     * @param reading CO2 concentration in ppm
+     * @return level of comfort at that concentration, 0 to 100
+     * @see #getComfortLevel()
+     */
+    @Override
+    protected int comfortLevelOf(int reading) {
+        int absDif = Math.abs(getIdealValue() - reading);
         float ratio = (float) absDif / getVariationLimit();
         if (absDif >= getVariationLimit()) {
             return 0;
@@ -160,7 +187,7 @@ public class CarbonDioxideSensor extends TimedSensor implements HazardSensor,
      */
     @Override
     public int hashCode() {
-        return super.hashCode() + idealValue + variationLimit;
+        return 31 * (31 * super.hashCode() + idealValue) + variationLimit;
     }
 
     /**
@@ -195,8 +222,21 @@ public class CarbonDioxideSensor extends TimedSensor implements HazardSensor,
      */
     @Override
     public String encode() {
-        return String.format("CarbonDioxideSensor:%s:%d:%d:%d",
-                super.encode(), getUpdateFrequency(), getIdealValue(),
-                getVariationLimit()).stripTrailing();
+        return Encodable.encodeToString(this);
+    }
+
+    /**
+     * Appends the encoded representation of this carbon dioxide sensor to the
+     * given appendable.
+     *
+     * @param out appendable to which to append this sensor's representation
+     * @throws IOException if appending to the appendable fails
+     */
+    @Override
+    public void encodeTo(Appendable out) throws IOException {
+        out.append("CarbonDioxideSensor:");
+        super.encodeTo(out);
+        out.append(String.format(":%d:%d:%d", getUpdateFrequency(),
+                getIdealValue(), getVariationLimit()));
     }
 }
@@ -1,5 +1,9 @@
 package bms.sensors;
 
+import bms.util.Encodable;
+
+import java.io.IOException;
+
 /**
  * A sensor that measures the noise levels in a room.
  * @ass1
@@ -49,7 +53,14 @@ public class NoiseSensor extends TimedSensor implements HazardSensor,
      * @ass1
      */
     public double calculateRelativeLoudness() {
-        return Math.pow(2, (this.getCurrentReading() - referenceDB) / 10.0);
+        return relativeLoudness(this.getCurrentReading());
+    }
+
+    /*
+    Returns the relative loudness of the given reading to 70dB
+     */
+    private static double relativeLoudness(int reading) {
+        return Math.pow(2, (reading - referenceDB) / 10.0);
     }
 
     /**
@@ -72,7 +83,19 @@ public class NoiseSensor extends TimedSensor implements HazardSensor,
      */
     @Override
     public int getHazardLevel() {
-        double relativeLoudnessMult100 = this.calculateRelativeLoudness() * 100;
+        return lookupHazardLevel();
+    }
+
+    /**
+     * Returns the hazard level observed with the given loudness reading.
+     *
+     * @param reading loudness in decibels
+     * @return level of hazard at that loudness, 0 to 100
+     * @see #getHazardLevel()
+     */
+    @Override
+    protected int hazardLevelOf(int reading) {
+        double relativeLoudnessMult100 = relativeLoudness(reading) * 100;
         return (int) Math.min(Math.floor(relativeLoudnessMult100), 100);
     }
 
@@ -83,8 +106,20 @@ public class NoiseSensor extends TimedSensor implements HazardSensor,
      * @return level of comfort at sensor location, 0 to 100
      */
     public int getComfortLevel() {
+        return lookupComfortLevel();
+    }
+
+    /**
+     * Returns the comfort level observed with the given loudness reading.
+     *
+     * @param reading loudness in decibels
+     * @return level of comfort at that loudness, 0 to 100
+     * @see #getComfortLevel()
+     */
+    @Override
+    protected int comfortLevelOf(int reading) {
         double comfortDouble =
-                Math.floor((float) (1 - calculateRelativeLoudness()) * 100);
+                Math.floor((float) (1 - relativeLoudness(reading)) * 100);
         int comfortLevel = (int) comfortDouble;
         if (comfortLevel < 0) {
             return 0;
@@ -120,7 +155,20 @@ public class NoiseSensor extends TimedSensor implements HazardSensor,
      */
     @Override
     public String encode() {
-        return String.format("NoiseSensor:%s:%d", super.encode(),
-                getUpdateFrequency()).stripTrailing();
+        return Encodable.encodeToString(this);
+    }
+
+    /**
+     * Appends the encoded representation of this noise sensor to the given
+     * appendable.
+     *
+     * @param out appendable to which to append this sensor's representation
+     * @throws IOException if appending to the appendable fails
+     */
+    @Override
+    public void encodeTo(Appendable out) throws IOException {
+        out.append("NoiseSensor:");
+        super.encodeTo(out);
+        out.append(String.format(":%d", getUpdateFrequency()));
     }
 }
@@ -1,5 +1,9 @@
 package bms.sensors;
 
+import bms.util.Encodable;
+
+import java.io.IOException;
+
 /**
  * A sensor that measures the number of people in a room.
  * @ass1
@@ -66,8 +70,18 @@ public class OccupancySensor extends TimedSensor implements HazardSensor,
      */
     @Override
     public int getHazardLevel() {
-        final int currentReading = this.getCurrentReading();
+        return lookupHazardLevel();
+    }
 
+    /**
+     * Returns the hazard level observed with the given occupancy reading.
+     *
+     * @param currentReading number of people in the room
+     * @return level of hazard at that occupancy, 0 to 100
+     * @see #getHazardLevel()
+     */
+    @Override
+    protected int hazardLevelOf(int currentReading) {
         if (currentReading >= this.capacity) {
             return 100;
         }
@@ -82,10 +96,22 @@ public class OccupancySensor extends TimedSensor implements HazardSensor,
      * @return the current comfort level as an integer between 0 and 100
      */
     public int getComfortLevel() {
+        return lookupComfortLevel();
+    }
+
+    /**
+     * Returns the comfort level observed with the given occupancy reading.
+     *
+     * @param reading number of people in the room
+     * @return level of comfort at that occupancy, 0 to 100
+     * @see #getComfortLevel()
+     */
+    @Override
+    protected int comfortLevelOf(int reading) {
         float complement =
-                100 - (((float) getCurrentReading() / getCapacity()) * 100);
+                100 - (((float) reading / getCapacity()) * 100);
         int comfortLevel = Math.round(complement);
-        if (getCurrentReading() > getCapacity()) {
+        if (reading > getCapacity()) {
             return 0;
         } else {
             return comfortLevel;
@@ -114,7 +140,7 @@ public class OccupancySensor extends TimedSensor implements HazardSensor,
      */
     @Override
     public int hashCode() {
-        return super.hashCode() + getCapacity();
+        return 31 * super.hashCode() + getCapacity();
     }
 
     /**
@@ -147,7 +173,20 @@ public class OccupancySensor extends TimedSensor implements HazardSensor,
      */
     @Override
     public String encode() {
-        return String.format("OccupancySensor:%s:%d:%d", super.encode(),
-                getUpdateFrequency(), capacity).stripTrailing();
+        return Encodable.encodeToString(this);
+    }
+
+    /**
+     * Appends the encoded representation of this occupancy sensor to the
+     * given appendable.
+     *
+     * @param out appendable to which to append this sensor's representation
+     * @throws IOException if appending to the appendable fails
+     */
+    @Override
+    public void encodeTo(Appendable out) throws IOException {
+        out.append("OccupancySensor:");
+        super.encodeTo(out);
+        out.append(String.format(":%d:%d", getUpdateFrequency(), capacity));
     }
 }
@@ -0,0 +1,572 @@
+package bms.sensors;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.util.Arrays;
+
+/**
+ * Sequence of sensor readings in which a {@link SensorStore} keeps the
+ * readings of its sensors, one sequence after another.
+ * <p>
+ * Readings are only ever appended to a pool, never changed, so a pool may
+ * wrap an array of readings which is shared with other sensors.
+ */
+abstract class ReadingPool {
+
+    /**
+     * Returns a pool holding the given readings, using the array itself to
+     * hold them. The array is never written to, since appending to a full
+     * pool replaces it.
+     *
+     * @param readings readings to wrap
+     * @return pool holding the readings
+     */
+    static ReadingPool wrap(int[] readings) {
+        return new HeapPool(readings, readings.length);
+    }
+
+    /**
+     * Returns an empty pool held in the heap, in an int array.
+     *
+     * @return new pool
+     */
+    static ReadingPool onHeap() {
+        return new HeapPool(new int[16], 0);
+    }
+
+    /**
+     * Returns an empty pool held outside the heap, in direct buffers.
+     *
+     * @return new pool
+     */
+    static ReadingPool offHeap() {
+        return new DirectPool();
+    }
+
+    /**
+     * Returns an empty pool held in the heap, with its readings compressed.
+     *
+     * @return new pool
+     * @see #compressedBytes(ReadingPool)
+     */
+    static ReadingPool compressed() {
+        return new CompressedPool();
+    }
+
+    /**
+     * Returns a pool which holds no readings and cannot be appended to, for
+     * a store which has been closed. Reading from it throws an
+     * IllegalStateException.
+     *
+     * @return closed pool
+     */
+    static ReadingPool closed() {
+        return ClosedPool.INSTANCE;
+    }
+
+    /**
+     * Returns the number of bytes the readings of the given pool would take
+     * up if they were compressed, without compressing them.
+     *
+     * @param readings pool of readings to measure
+     * @return approximate size of the compressed readings, in bytes
+     */
+    static long compressedBytes(ReadingPool readings) {
+        int size = readings.size();
+        long bits = 0;
+        for (int start = 0; start + CompressedPool.BLOCK <= size;
+                start += CompressedPool.BLOCK) {
+            int min = Integer.MAX_VALUE;
+            int max = 0;
+            for (int i = start; i < start + CompressedPool.BLOCK; ++i) {
+                min = Math.min(min, readings.get(i));
+                max = Math.max(max, readings.get(i));
+            }
+            bits += (long) CompressedPool.BLOCK
+                    * CompressedPool.widthOf(max - min);
+        }
+        return CompressedPool.bytesOf(size, bits);
+    }
+
+    /**
+     * Returns the reading at the given index of the pool.
+     *
+     * @param index index of the reading
+     * @return reading at the index
+     */
+    abstract int get(int index);
+
+    /**
+     * Returns the number of readings in the pool.
+     *
+     * @return size of the pool
+     */
+    abstract int size();
+
+    /**
+     * Returns the approximate number of bytes taken up by the readings in
+     * the pool, not counting space kept for readings yet to be appended.
+     *
+     * @return size of the readings in bytes
+     */
+    abstract long getMemoryBytes();
+
+    /**
+     * Returns true if the pool is held outside the heap.
+     *
+     * @return true if the readings are held off-heap
+     */
+    abstract boolean isOffHeap();
+
+    /**
+     * Appends the given range of another pool to this pool.
+     *
+     * @param from pool holding the readings to append
+     * @param start index of the first reading to append
+     * @param length number of readings to append
+     * @return index in this pool of the first appended reading
+     */
+    abstract int append(ReadingPool from, int start, int length);
+
+    /**
+     * Releases the memory held by the pool straight away, rather than when
+     * the pool is next garbage collected. The pool must not be used
+     * afterwards.
+     * <p>
+     * This only makes a difference to pools held outside the heap; the
+     * memory of other pools is left to the garbage collector.
+     */
+    void free() {
+    }
+
+    /**
+     * Returns true if the given range of this pool holds the same readings
+     * as the given range of another pool.
+     *
+     * @param start index of the first reading in this pool
+     * @param other pool to compare with
+     * @param otherStart index of the first reading in the other pool
+     * @param length number of readings to compare
+     * @return true if the ranges hold equal readings
+     */
+    boolean rangeEquals(int start, ReadingPool other, int otherStart,
+            int length) {
+        for (int i = 0; i < length; ++i) {
+            if (get(start + i) != other.get(otherStart + i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns a copy of the given range of the pool.
+     *
+     * @param start index of the first reading to copy
+     * @param length number of readings to copy
+     * @return new array holding the readings
+     */
+    int[] copyOf(int start, int length) {
+        int[] readings = new int[length];
+        for (int i = 0; i < length; ++i) {
+            readings[i] = get(start + i);
+        }
+        return readings;
+    }
+
+    /*
+    Pool held in an int array in the heap
+     */
+    private static final class HeapPool extends ReadingPool {
+
+        private int[] values;
+        private int size;
+
+        private HeapPool(int[] values, int size) {
+            this.values = values;
+            this.size = size;
+        }
+
+        @Override
+        int get(int index) {
+            return values[index];
+        }
+
+        @Override
+        int size() {
+            return size;
+        }
+
+        @Override
+        long getMemoryBytes() {
+            return (long) size * Integer.BYTES;
+        }
+
+        @Override
+        boolean isOffHeap() {
+            return false;
+        }
+
+        @Override
+        int append(ReadingPool from, int start, int length) {
+            if (size + length > values.length) {
+                values = Arrays.copyOf(values,
+                        Math.max(size + length, values.length * 2));
+            }
+            if (from instanceof HeapPool) {
+                System.arraycopy(((HeapPool) from).values, start, values, size,
+                        length);
+            } else {
+                for (int i = 0; i < length; ++i) {
+                    values[size + i] = from.get(start + i);
+                }
+            }
+            size += length;
+            return size - length;
+        }
+
+        @Override
+        boolean rangeEquals(int start, ReadingPool other, int otherStart,
+                int length) {
+            if (!(other instanceof HeapPool)) {
+                return super.rangeEquals(start, other, otherStart, length);
+            }
+            return Arrays.equals(values, start, start + length,
+                    ((HeapPool) other).values, otherStart,
+                    otherStart + length);
+        }
+
+        @Override
+        int[] copyOf(int start, int length) {
+            return Arrays.copyOfRange(values, start, start + length);
+        }
+    }
+
+    /*
+    Pool held in direct buffers outside the heap. The buffers double in size
+    from one to the next, so the pool grows without copying its readings,
+    and the chunk holding an index is found from the index's highest bit.
+     */
+    private static final class DirectPool extends ReadingPool {
+
+        /**
+         * Number of bits in the number of readings held by the first chunk.
+         */
+        private static final int FIRST_CHUNK_BITS = 10;
+
+        /**
+         * Number of readings held by the first chunk.
+         */
+        private static final int FIRST_CHUNK = 1 << FIRST_CHUNK_BITS;
+
+        /**
+         * Greatest number of chunks, beyond which a chunk's size in bytes no
+         * longer fits in an int.
+         */
+        private static final int MAX_CHUNKS = 19;
+
+        /**
+         * Frees a direct buffer, or null if this is not supported by the
+         * running JVM, in which case freed buffers are left to the garbage
+         * collector.
+         */
+        private static final Method INVOKE_CLEANER;
+
+        /**
+         * Instance on which {@link #INVOKE_CLEANER} is invoked.
+         */
+        private static final Object UNSAFE;
+
+        static {
+            Method invokeCleaner = null;
+            Object unsafe = null;
+            try {
+                Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+                Field field = unsafeClass.getDeclaredField("theUnsafe");
+                field.setAccessible(true);
+                unsafe = field.get(null);
+                invokeCleaner = unsafeClass.getMethod("invokeCleaner",
+                        ByteBuffer.class);
+            } catch (ReflectiveOperationException | RuntimeException e) {
+                invokeCleaner = null;
+            }
+            INVOKE_CLEANER = invokeCleaner;
+            UNSAFE = unsafe;
+        }
+
+        /*
+        One element per chunk: the direct buffer, which is what is freed,
+        and the view of it as ints
+         */
+        private final ByteBuffer[] buffers = new ByteBuffer[MAX_CHUNKS];
+        private final IntBuffer[] chunks = new IntBuffer[MAX_CHUNKS];
+        private int size;
+
+        @Override
+        int get(int index) {
+            int chunk = chunkOf(index);
+            return chunks[chunk].get(index - startOf(chunk));
+        }
+
+        @Override
+        int size() {
+            return size;
+        }
+
+        @Override
+        long getMemoryBytes() {
+            return (long) size * Integer.BYTES;
+        }
+
+        @Override
+        boolean isOffHeap() {
+            return true;
+        }
+
+        @Override
+        int append(ReadingPool from, int start, int length) {
+            int first = size;
+            for (int i = 0; i < length; ++i) {
+                int chunk = chunkOf(size);
+                if (chunk >= MAX_CHUNKS) {
+                    throw new IllegalStateException("Reading pool is full");
+                }
+                if (chunks[chunk] == null) {
+                    buffers[chunk] = ByteBuffer.allocateDirect(
+                            (FIRST_CHUNK << chunk) * Integer.BYTES);
+                    chunks[chunk] = buffers[chunk]
+                            .order(ByteOrder.nativeOrder()).asIntBuffer();
+                }
+                chunks[chunk].put(size - startOf(chunk), from.get(start + i));
+                size++;
+            }
+            return first;
+        }
+
+        @Override
+        void free() {
+            for (int chunk = 0; chunk < MAX_CHUNKS; ++chunk) {
+                if (buffers[chunk] != null && INVOKE_CLEANER != null) {
+                    try {
+                        INVOKE_CLEANER.invoke(UNSAFE, buffers[chunk]);
+                    } catch (ReflectiveOperationException e) {
+                        // Left to the garbage collector
+                    }
+                }
+                // Any further use fails here rather than in freed memory
+                buffers[chunk] = null;
+                chunks[chunk] = null;
+            }
+            size = 0;
+        }
+
+        private static int chunkOf(int index) {
+            return 31 - Integer.numberOfLeadingZeros(
+                    (index >>> FIRST_CHUNK_BITS) + 1);
+        }
+
+        private static int startOf(int chunk) {
+            return (FIRST_CHUNK << chunk) - FIRST_CHUNK;
+        }
+    }
+
+    /*
+    Pool of a closed store, which holds nothing and refuses to be read or
+    appended to
+     */
+    private static final class ClosedPool extends ReadingPool {
+
+        private static final ClosedPool INSTANCE = new ClosedPool();
+
+        @Override
+        int get(int index) {
+            throw new IllegalStateException("Sensor store is closed");
+        }
+
+        @Override
+        int size() {
+            return 0;
+        }
+
+        @Override
+        long getMemoryBytes() {
+            return 0;
+        }
+
+        @Override
+        boolean isOffHeap() {
+            return false;
+        }
+
+        @Override
+        int append(ReadingPool from, int start, int length) {
+            throw new IllegalStateException("Sensor store is closed");
+        }
+    }
+
+    /*
+    Pool held in the heap in blocks of readings, each block stored as its
+    smallest reading followed by every reading's difference from it, packed
+    into just enough bits for the largest difference. A block of equal
+    readings takes no bits beyond its header, and readings which wander by a
+    few units take a few bits each. The header of each block gives where its
+    bits start, so any reading is found in constant time. Readings are held
+    uncompressed until their block is full.
+     */
+    private static final class CompressedPool extends ReadingPool {
+
+        /**
+         * Number of bits in the number of readings in a block.
+         */
+        private static final int BLOCK_BITS = 5;
+
+        /**
+         * Number of readings in a block.
+         */
+        static final int BLOCK = 1 << BLOCK_BITS;
+
+        /**
+         * Number of bits of a block header which hold the bit width of the
+         * block's differences.
+         */
+        private static final int WIDTH_BITS = 6;
+
+        /**
+         * Size of each block's header: its smallest reading, and where its
+         * bits start together with their width.
+         */
+        private static final int HEADER_BYTES = Integer.BYTES + Long.BYTES;
+
+        /*
+        One element per full block
+         */
+        private int[] minimums = new int[16];
+        private long[] headers = new long[16];
+        private int blockCount;
+
+        /**
+         * Packed differences of every full block, one after another.
+         */
+        private long[] bits = new long[16];
+
+        /**
+         * Number of bits in use at the start of the packed differences.
+         */
+        private long bitCount;
+
+        /**
+         * Readings of the block being filled.
+         */
+        private final int[] pending = new int[BLOCK];
+
+        private int size;
+
+        @Override
+        int get(int index) {
+            int block = index >>> BLOCK_BITS;
+            if (block == blockCount) {
+                return pending[index & (BLOCK - 1)];
+            }
+            long header = headers[block];
+            int width = (int) (header & ((1 << WIDTH_BITS) - 1));
+            if (width == 0) {
+                return minimums[block];
+            }
+            long position = (header >>> WIDTH_BITS)
+                    + (long) (index & (BLOCK - 1)) * width;
+            int word = (int) (position >>> 6);
+            int shift = (int) (position & 63);
+            long value = bits[word] >>> shift;
+            if (shift + width > 64) {
+                value |= bits[word + 1] << (64 - shift);
+            }
+            return minimums[block] + (int) (value & ((1L << width) - 1));
+        }
+
+        @Override
+        int size() {
+            return size;
+        }
+
+        @Override
+        long getMemoryBytes() {
+            return bytesOf(size, bitCount);
+        }
+
+        @Override
+        boolean isOffHeap() {
+            return false;
+        }
+
+        @Override
+        int append(ReadingPool from, int start, int length) {
+            int first = size;
+            for (int i = 0; i < length; ++i) {
+                pending[size & (BLOCK - 1)] = from.get(start + i);
+                size++;
+                if ((size & (BLOCK - 1)) == 0) {
+                    compressPending();
+                }
+            }
+            return first;
+        }
+
+        /*
+        Packs the full block of pending readings after the blocks already
+        packed
+         */
+        private void compressPending() {
+            int min = Integer.MAX_VALUE;
+            int max = 0;
+            for (int reading : pending) {
+                min = Math.min(min, reading);
+                max = Math.max(max, reading);
+            }
+            int width = widthOf(max - min);
+            if (blockCount == minimums.length) {
+                minimums = Arrays.copyOf(minimums, blockCount * 2);
+                headers = Arrays.copyOf(headers, blockCount * 2);
+            }
+            // One spare word, as a difference may straddle two words
+            int words = (int) ((bitCount + (long) BLOCK * width) >>> 6) + 2;
+            if (words > bits.length) {
+                bits = Arrays.copyOf(bits, Math.max(words, bits.length * 2));
+            }
+            for (int i = 0; i < BLOCK && width > 0; ++i) {
+                long value = pending[i] - min;
+                long position = bitCount + (long) i * width;
+                int word = (int) (position >>> 6);
+                int shift = (int) (position & 63);
+                bits[word] |= value << shift;
+                if (shift + width > 64) {
+                    bits[word + 1] |= value >>> (64 - shift);
+                }
+            }
+            minimums[blockCount] = min;
+            headers[blockCount] = bitCount << WIDTH_BITS | width;
+            blockCount++;
+            bitCount += (long) BLOCK * width;
+        }
+
+        /*
+        Returns the number of bits needed to hold differences up to the given
+        one
+         */
+        static int widthOf(int difference) {
+            return Integer.SIZE - Integer.numberOfLeadingZeros(difference);
+        }
+
+        /*
+        Returns the approximate size of a pool of the given number of
+        readings, whose full blocks pack into the given number of bits
+         */
+        static long bytesOf(int size, long bitCount) {
+            return (size >>> BLOCK_BITS) * (long) HEADER_BYTES
+                    + (bitCount + 7) / 8
+                    + (long) (size & (BLOCK - 1)) * Integer.BYTES;
+        }
+    }
+}
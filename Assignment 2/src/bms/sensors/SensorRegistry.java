@@ -0,0 +1,92 @@
+package bms.sensors;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Campus-wide registry giving every timed sensor a unique ID when it is
+ * created, and finding a registered sensor from its ID.
+ * <p>
+ * IDs are handed out in order of creation, starting at 1, and are never
+ * reused while the program runs, whichever manager or building the sensor
+ * belongs to. Unlike {@link TimedSensor#hashCode()}, which equal sensors
+ * share, a sensor's ID tells it apart from every other sensor, so it can key
+ * maps and indexes of sensors regardless of their readings.
+ * <p>
+ * A sensor can only be found from its ID while it is registered with a
+ * {@link bms.util.TimedItemManager}, which adds it to the registry when the
+ * sensor is registered with it, and removes it again when the sensor is
+ * unregistered or the manager is closed. Creating a sensor only takes the
+ * next ID, so sensors created while registrations are deferred, such as
+ * those of a building being parsed in parallel, are only added once their
+ * registration goes ahead.
+ */
+public final class SensorRegistry {
+
+    /**
+     * ID of the next sensor to be created.
+     */
+    private static final AtomicLong nextId = new AtomicLong(1);
+
+    /**
+     * Sensors registered with a timed item manager, by ID.
+     */
+    private static final Map<Long, TimedSensor> sensors =
+            new ConcurrentHashMap<>();
+
+    private SensorRegistry() {
+    }
+
+    /**
+     * Returns the ID to give the next sensor created.
+     *
+     * @return new unique ID
+     */
+    static long newId() {
+        return nextId.getAndIncrement();
+    }
+
+    /**
+     * Adds the given sensor to the registry under its ID, so that it can be
+     * found with {@link #get(long)}. Called by the manager the sensor is
+     * registered with.
+     *
+     * @param sensor sensor to add
+     */
+    public static void register(TimedSensor sensor) {
+        sensors.put(sensor.getId(), sensor);
+    }
+
+    /**
+     * Removes the given sensor from the registry, so that it is no longer
+     * found from its ID. Called by the manager the sensor was registered
+     * with.
+     *
+     * @param sensor sensor to remove
+     */
+    public static void unregister(TimedSensor sensor) {
+        sensors.remove(sensor.getId(), sensor);
+    }
+
+    /**
+     * Returns the sensor with the given ID.
+     *
+     * @param id ID of the sensor, see {@link TimedSensor#getId()}
+     * @return sensor with the ID, or null if no sensor registered with a
+     *         manager has the ID
+     */
+    public static TimedSensor get(long id) {
+        return sensors.get(id);
+    }
+
+    /**
+     * Returns the number of sensors in the registry, which is the number of
+     * sensors registered with a timed item manager.
+     *
+     * @return number of registered sensors
+     */
+    public static int size() {
+        return sensors.size();
+    }
+}
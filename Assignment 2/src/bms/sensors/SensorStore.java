@@ -0,0 +1,670 @@
+package bms.sensors;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.IntStream;
+
+/**
+ * Columnar store holding the state of many timed sensors in contiguous
+ * primitive arrays, one array per field, so that elapsing a minute on all of
+ * them is a scan over a few arrays rather than a walk over scattered sensor
+ * objects.
+ * <p>
+ * Each {@link TimedSensor} is a view of one slot of a store. A sensor starts
+ * in a store of its own, and is moved into a shared store by
+ * {@link #add(TimedSensor)}, such as the store of the
+ * {@link bms.util.TimedItemManager} it is registered with. Removing it again
+ * moves it back into a store of its own, so the sensor keeps its state
+ * wherever it is held.
+ * <p>
+ * The readings of every sensor in a store are kept one after another in a
+ * single pool, and sensors with the same readings share them. The pool may
+ * be kept outside the heap (see {@link #setReadingsOffHeap(boolean)}), so
+ * that long reading histories neither fill the old generation nor lengthen
+ * garbage collection pauses. Readings held in the heap may instead be
+ * compressed (see {@link #setReadingsCompressed(boolean)}), which suits the
+ * long and repetitive histories of most sensors.
+ * <p>
+ * A store holds its pool until the last sensor leaves it or it is
+ * {@link #close() closed}, at which point the pool is released straight
+ * away, even if it is held outside the heap. Giving each building a store
+ * of its own, as a {@link bms.util.TimedItemManager} does, lets a building's
+ * readings be released as soon as the building is finished with.
+ * <p>
+ * A store is not safe for use by several threads at once, except that
+ * {@link #elapseOneMinute()} may spread its own work across threads. Like the
+ * sensors' fields before, the store must be guarded by the lock of whatever
+ * owns it.
+ */
+public class SensorStore implements AutoCloseable {
+
+    /**
+     * Minimum number of sensors for a minute to be elapsed on several
+     * threads. Below this, the cost of handing the slots to other threads
+     * outweighs the time saved.
+     */
+    private static final int PARALLEL_THRESHOLD = 1 << 16;
+
+    /**
+     * Number of slots elapsed by each task when elapsing in parallel.
+     */
+    private static final int PARALLEL_CHUNK = 1 << 14;
+
+    /**
+     * Initial number of slots in an empty shared store.
+     */
+    private static final int INITIAL_CAPACITY = 16;
+
+    /*
+    One element per slot, for the first size slots
+     */
+    private TimedSensor[] sensors;
+    private int[] readingsStarts;
+    private int[] readingsLengths;
+    private int[] updateFrequencies;
+    private int[] timesElapsed;
+    private int[] currentIndices;
+    private int[] currentReadings;
+
+    /**
+     * Number of slots in use.
+     */
+    private int size;
+
+    /**
+     * Readings of every sensor in the store, one sequence after another, or
+     * null if the store is empty.
+     */
+    private ReadingPool pool;
+
+    /**
+     * Whether the pool is kept outside the heap.
+     */
+    private boolean readingsOffHeap;
+
+    /**
+     * Whether the pool is compressed, if it is kept in the heap.
+     */
+    private boolean readingsCompressed;
+
+    /**
+     * Start in the pool of each sequence of readings, by the sequence's hash
+     * code, so that sensors with the same readings share them. Only the
+     * first sequence with each hash code is found here. Null until
+     * readings are added to the store.
+     */
+    private Map<Integer, Integer> poolStarts;
+
+    /**
+     * Number of readings given up by sensors removed since the pool was last
+     * compacted, counting shared readings once per sensor.
+     */
+    private long removedReadings;
+
+    /**
+     * Whether the store has been closed.
+     */
+    private boolean closed;
+
+    /**
+     * Creates an empty store.
+     */
+    public SensorStore() {
+        sensors = new TimedSensor[INITIAL_CAPACITY];
+        readingsStarts = new int[INITIAL_CAPACITY];
+        readingsLengths = new int[INITIAL_CAPACITY];
+        updateFrequencies = new int[INITIAL_CAPACITY];
+        timesElapsed = new int[INITIAL_CAPACITY];
+        currentIndices = new int[INITIAL_CAPACITY];
+        currentReadings = new int[INITIAL_CAPACITY];
+    }
+
+    /*
+    Creates a store holding only the given sensor, whose readings array is
+    used as the pool without being copied. The array is never written to,
+    since adding to a full pool replaces it.
+     */
+    SensorStore(TimedSensor sensor, int[] readings, int updateFrequency,
+            int timeElapsed, int currentIndex, int currentReading) {
+        sensors = new TimedSensor[]{sensor};
+        readingsStarts = new int[]{0};
+        readingsLengths = new int[]{readings.length};
+        updateFrequencies = new int[]{updateFrequency};
+        timesElapsed = new int[]{timeElapsed};
+        currentIndices = new int[]{currentIndex};
+        currentReadings = new int[]{currentReading};
+        size = 1;
+        pool = ReadingPool.wrap(readings);
+    }
+
+    /**
+     * Returns the number of sensors held by the store.
+     *
+     * @return number of sensors in the store
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns the number of readings held in the store's pool, each shared
+     * sequence of readings being counted once.
+     *
+     * @return number of pooled readings
+     */
+    public int getPoolSize() {
+        return pool == null ? 0 : pool.size();
+    }
+
+    /**
+     * Returns true if the store keeps its sensors' readings outside the heap.
+     *
+     * @return true if readings are held off-heap
+     */
+    public boolean isReadingsOffHeap() {
+        return readingsOffHeap;
+    }
+
+    /**
+     * Sets whether the store keeps its sensors' readings outside the heap,
+     * moving the readings already held if this changes.
+     * <p>
+     * Off-heap readings are held in direct buffers, which are released as
+     * soon as every sensor has left the store, for example when a manager's
+     * buildings are unregistered, or the store is closed. Sensors moved out
+     * of the store take a copy of their readings with them into the heap.
+     *
+     * @param offHeap true to keep readings outside the heap, false to keep
+     *                them in the heap
+     * @throws IllegalStateException if the store has been closed
+     */
+    public void setReadingsOffHeap(boolean offHeap) {
+        checkOpen();
+        if (offHeap == readingsOffHeap) {
+            return;
+        }
+        readingsOffHeap = offHeap;
+        if (pool != null) {
+            compactPool();
+        }
+    }
+
+    /**
+     * Returns the store which holds the given sensor.
+     *
+     * @param sensor sensor whose store to return
+     * @return the store of which the sensor is a view, which is a store of
+     *         the sensor's own if it has not been moved into another
+     */
+    public static SensorStore of(TimedSensor sensor) {
+        return sensor.store;
+    }
+
+    /**
+     * Returns true if the given sensor is held by this store.
+     *
+     * @param sensor sensor to look for
+     * @return true if the sensor is a view of one of this store's slots
+     */
+    public boolean contains(TimedSensor sensor) {
+        return sensor.store == this;
+    }
+
+    /**
+     * Returns true if the store compresses its sensors' readings.
+     *
+     * @return true if readings are compressed
+     */
+    public boolean isReadingsCompressed() {
+        return readingsCompressed;
+    }
+
+    /**
+     * Sets whether the store compresses its sensors' readings, moving the
+     * readings already held if this changes.
+     * <p>
+     * Compressed readings are kept in blocks, each of which holds its
+     * smallest reading and every reading's difference from it in as few bits
+     * as the block needs. Any reading can still be found in constant time,
+     * so elapsing minutes stays cheap. Compression only applies to readings
+     * held in the heap; while the readings are held off-heap (see
+     * {@link #setReadingsOffHeap(boolean)}), they are not compressed.
+     *
+     * @param compressed true to compress readings, false to hold each
+     *                   reading in an int
+     * @throws IllegalStateException if the store has been closed
+     */
+    public void setReadingsCompressed(boolean compressed) {
+        checkOpen();
+        if (compressed == readingsCompressed) {
+            return;
+        }
+        readingsCompressed = compressed;
+        if (pool != null && !readingsOffHeap) {
+            compactPool();
+        }
+    }
+
+    /**
+     * Compresses the store's readings if they are held in the heap and would
+     * take up less memory compressed.
+     *
+     * @return true if the readings are now compressed
+     */
+    public boolean compressReadingsIfSmaller() {
+        if (closed || readingsOffHeap || readingsCompressed
+                || pool == null) {
+            return readingsCompressed;
+        }
+        if (ReadingPool.compressedBytes(pool) >= pool.getMemoryBytes()) {
+            return false;
+        }
+        setReadingsCompressed(true);
+        return true;
+    }
+
+    /**
+     * Returns the approximate number of bytes taken up by the readings held
+     * in the store's pool.
+     *
+     * @return size of the pooled readings in bytes
+     */
+    public long getReadingsBytes() {
+        return pool == null ? 0 : pool.getMemoryBytes();
+    }
+
+    /**
+     * Returns the size the pooled readings would take up held as one int
+     * each, divided by the size they take up in the store.
+     *
+     * @return compression ratio of the readings, which is 1 if they are not
+     *         compressed or the store is empty
+     */
+    public double getCompressionRatio() {
+        long bytes = getReadingsBytes();
+        return bytes == 0 ? 1 : (double) getPoolSize() * Integer.BYTES / bytes;
+    }
+
+    /**
+     * Returns the number of sensors in the store whose readings are shared
+     * with a sensor before them in the pool, rather than held again.
+     *
+     * @return number of sensors sharing pooled readings
+     */
+    public int getSharedReadingsCount() {
+        Set<Integer> starts = new HashSet<>();
+        int shared = 0;
+        for (int slot = 0; slot < size; ++slot) {
+            if (!starts.add(readingsStarts[slot])) {
+                shared++;
+            }
+        }
+        return shared;
+    }
+
+    /**
+     * Returns the approximate number of bytes which the readings counted by
+     * {@link #getSharedReadingsCount()} would take up if they were held
+     * again, at the size readings take up in this store.
+     *
+     * @return bytes saved by sharing pooled readings
+     */
+    public long getSharedReadingsBytes() {
+        if (pool == null || pool.size() == 0) {
+            return 0;
+        }
+        Set<Integer> starts = new HashSet<>();
+        long shared = 0;
+        for (int slot = 0; slot < size; ++slot) {
+            if (!starts.add(readingsStarts[slot])) {
+                shared += readingsLengths[slot];
+            }
+        }
+        return shared * getReadingsBytes() / pool.size();
+    }
+
+    /**
+     * Moves the given sensor, with its state, into this store. Does nothing
+     * if the sensor is already held by this store.
+     *
+     * @param sensor sensor to move into this store
+     * @throws IllegalStateException if this store, or the store holding the
+     *                               sensor, has been closed
+     */
+    public void add(TimedSensor sensor) {
+        checkOpen();
+        SensorStore from = sensor.store;
+        if (from == this) {
+            return;
+        }
+        int fromSlot = sensor.slot;
+        int start = addReadings(from.pool, from.readingsStarts[fromSlot],
+                from.readingsLengths[fromSlot]);
+        ensureCapacity(size + 1);
+        sensors[size] = sensor;
+        readingsStarts[size] = start;
+        readingsLengths[size] = from.readingsLengths[fromSlot];
+        updateFrequencies[size] = from.updateFrequencies[fromSlot];
+        timesElapsed[size] = from.timesElapsed[fromSlot];
+        currentIndices[size] = from.currentIndices[fromSlot];
+        currentReadings[size] = from.currentReadings[fromSlot];
+        from.removeSlot(fromSlot);
+        sensor.store = this;
+        sensor.slot = size++;
+    }
+
+    /**
+     * Moves the given sensor, with its state, out of this store into a store
+     * of its own.
+     *
+     * @param sensor sensor to move out of this store
+     * @return true if the sensor was held by this store
+     * @throws IllegalStateException if the store has been closed
+     */
+    public boolean remove(TimedSensor sensor) {
+        if (sensor.store != this) {
+            return false;
+        }
+        int slot = sensor.slot;
+        int start = readingsStarts[slot];
+        int[] readings = pool.copyOf(start, readingsLengths[slot]);
+        sensor.store = new SensorStore(sensor, readings,
+                updateFrequencies[slot], timesElapsed[slot],
+                currentIndices[slot], currentReadings[slot]);
+        sensor.slot = 0;
+        removeSlot(slot);
+        return true;
+    }
+
+    /**
+     * Elapses one minute on every sensor in the store, with the same result
+     * as calling {@link TimedSensor#elapseOneMinute()} on each of them. The
+     * slots are split across several threads when there are enough of them.
+     *
+     * @throws IllegalStateException if the store has been closed
+     */
+    public void elapseOneMinute() {
+        checkOpen();
+        if (size >= PARALLEL_THRESHOLD) {
+            int chunks = (size + PARALLEL_CHUNK - 1) / PARALLEL_CHUNK;
+            IntStream.range(0, chunks).parallel().forEach(chunk ->
+                    elapseOneMinute(chunk * PARALLEL_CHUNK,
+                            Math.min(size, (chunk + 1) * PARALLEL_CHUNK)));
+        } else {
+            elapseOneMinute(0, size);
+        }
+    }
+
+    /*
+    Elapses one minute on the sensors in the given range of slots
+     */
+    private void elapseOneMinute(int from, int to) {
+        int[] timesElapsed = this.timesElapsed;
+        int[] updateFrequencies = this.updateFrequencies;
+        for (int slot = from; slot < to; ++slot) {
+            int timeElapsed = ++timesElapsed[slot];
+            // The reading only moves on when a whole update period has passed
+            if (timeElapsed % updateFrequencies[slot] == 0) {
+                int index = indexAt(slot, timeElapsed);
+                currentIndices[slot] = index;
+                currentReadings[slot] = pool.get(readingsStarts[slot] + index);
+            }
+        }
+    }
+
+    /**
+     * Elapses the given number of minutes on every sensor in the store, with
+     * the same result as calling {@link TimedSensor#elapseMinutes(long)} on
+     * each of them.
+     *
+     * @param minutes number of minutes to elapse
+     * @throws IllegalArgumentException if minutes is negative
+     * @throws IllegalStateException if the store has been closed
+     */
+    public void elapseMinutes(long minutes) {
+        checkOpen();
+        if (minutes < 0) {
+            throw new IllegalArgumentException(
+                    "Number of minutes must not be negative");
+        }
+        for (int slot = 0; slot < size; ++slot) {
+            setTimeElapsed(slot, timeElapsedAfter(slot, minutes));
+        }
+    }
+
+    /**
+     * Closes the store, releasing its pool of readings straight away. Does
+     * nothing if the store is already closed.
+     * <p>
+     * The sensors still held by the store keep their current readings, but
+     * can no longer be elapsed, moved or have their other readings read;
+     * doing so throws an IllegalStateException. Sensors which are to be
+     * used after the store is closed must be moved out of it first.
+     */
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        if (pool != null) {
+            pool.free();
+        }
+        pool = ReadingPool.closed();
+        poolStarts = null;
+    }
+
+    /**
+     * Returns true if the store has been closed.
+     *
+     * @return true if {@link #close()} has been called
+     */
+    public boolean isClosed() {
+        return closed;
+    }
+
+    /*
+    Accessors used by the sensor viewing each slot
+     */
+
+    int getCurrentReading(int slot) {
+        return currentReadings[slot];
+    }
+
+    int getCurrentIndex(int slot) {
+        return currentIndices[slot];
+    }
+
+    int getTimeElapsed(int slot) {
+        return timesElapsed[slot];
+    }
+
+    int getUpdateFrequency(int slot) {
+        return updateFrequencies[slot];
+    }
+
+    int getReadingCount(int slot) {
+        return readingsLengths[slot];
+    }
+
+    int getReading(int slot, int index) {
+        return pool.get(readingsStarts[slot] + index);
+    }
+
+    int[] getReadings(int slot) {
+        return pool.copyOf(readingsStarts[slot], readingsLengths[slot]);
+    }
+
+    boolean readingsEqual(int slot, SensorStore other, int otherSlot) {
+        int start = readingsStarts[slot];
+        int otherStart = other.readingsStarts[otherSlot];
+        if (other == this && start == otherStart) {
+            // Shared readings
+            return true;
+        }
+        return readingsLengths[slot] == other.readingsLengths[otherSlot]
+                && pool.rangeEquals(start, other.pool, otherStart,
+                        readingsLengths[slot]);
+    }
+
+    void setTimeElapsed(int slot, int timeElapsed) {
+        int index = indexAt(slot, timeElapsed);
+        timesElapsed[slot] = timeElapsed;
+        currentIndices[slot] = index;
+        currentReadings[slot] = pool.get(readingsStarts[slot] + index);
+    }
+
+    /*
+    Returns the time elapsed of the sensor in the given slot once the given
+    number of further minutes have elapsed. A time beyond the largest int is
+    reduced modulo the sensor's rotation duration, which leaves the reading
+    observed at that time unchanged
+     */
+    int timeElapsedAfter(int slot, long minutes) {
+        long timeElapsed = timesElapsed[slot] + minutes;
+        if (timeElapsed > Integer.MAX_VALUE) {
+            long rotationDuration =
+                    (long) readingsLengths[slot] * updateFrequencies[slot];
+            timeElapsed = timesElapsed[slot] % rotationDuration
+                    + minutes % rotationDuration;
+        }
+        return (int) timeElapsed;
+    }
+
+    /*
+    Returns the index of the reading observed by the sensor in the given
+    slot when the given number of minutes have elapsed since it was
+    instantiated
+     */
+    int indexAt(int slot, int timeElapsed) {
+        int updateFrequency = updateFrequencies[slot];
+        int rotationDuration = readingsLengths[slot] * updateFrequency;
+        return timeElapsed % rotationDuration / updateFrequency;
+    }
+
+    /*
+    Returns the reading observed by the sensor in the given slot when the
+    given number of minutes have elapsed since it was instantiated
+     */
+    int readingAt(int slot, int timeElapsed) {
+        return pool.get(readingsStarts[slot] + indexAt(slot, timeElapsed));
+    }
+
+    /*
+    Frees the given slot by moving the last slot into it
+     */
+    private void removeSlot(int slot) {
+        removedReadings += readingsLengths[slot];
+        int last = --size;
+        if (slot != last) {
+            sensors[slot] = sensors[last];
+            readingsStarts[slot] = readingsStarts[last];
+            readingsLengths[slot] = readingsLengths[last];
+            updateFrequencies[slot] = updateFrequencies[last];
+            timesElapsed[slot] = timesElapsed[last];
+            currentIndices[slot] = currentIndices[last];
+            currentReadings[slot] = currentReadings[last];
+            sensors[slot].slot = slot;
+        }
+        sensors[last] = null;
+        if (size == 0) {
+            pool.free();
+            pool = null;
+            poolStarts = null;
+            removedReadings = 0;
+            return;
+        }
+        // Compacting takes time proportional to the pool and the slots, so
+        // wait until at least that many readings have been given up
+        if (removedReadings > Math.max(pool.size() / 2, size)) {
+            compactPool();
+        }
+    }
+
+    /*
+    Returns the start in the pool of a sequence equal to the given readings,
+    adding them to the pool if no sequence with the same hash code is there
+     */
+    private int addReadings(ReadingPool readings, int start, int length) {
+        if (pool == null) {
+            pool = readingsOffHeap ? ReadingPool.offHeap()
+                    : readingsCompressed ? ReadingPool.compressed()
+                    : ReadingPool.onHeap();
+        }
+        if (poolStarts == null) {
+            poolStarts = new HashMap<>();
+        }
+        int hash = hashReadings(readings, start, length);
+        Integer existing = poolStarts.get(hash);
+        if (existing != null && existing + length <= pool.size()
+                && pool.rangeEquals(existing, readings, start, length)) {
+            return existing;
+        }
+        int added = pool.append(readings, start, length);
+        poolStarts.putIfAbsent(hash, added);
+        return added;
+    }
+
+    /*
+    Rebuilds the pool with only the readings of the sensors in the store, on
+    or off the heap and compressed or not as set
+     */
+    private void compactPool() {
+        ReadingPool oldPool = pool;
+        Map<Integer, Integer> newStarts = new HashMap<>();
+        pool = null;
+        poolStarts = null;
+        for (int slot = 0; slot < size; ++slot) {
+            int oldStart = readingsStarts[slot];
+            Integer newStart = newStarts.get(oldStart);
+            if (newStart == null) {
+                newStart = addReadings(oldPool, oldStart,
+                        readingsLengths[slot]);
+                newStarts.put(oldStart, newStart);
+            }
+            readingsStarts[slot] = newStart;
+        }
+        if (oldPool != null) {
+            oldPool.free();
+        }
+        removedReadings = 0;
+    }
+
+    /*
+    Throws an IllegalStateException if the store has been closed
+     */
+    private void checkOpen() {
+        if (closed) {
+            throw new IllegalStateException("Sensor store is closed");
+        }
+    }
+
+    /*
+    Makes room for at least the given number of slots
+     */
+    private void ensureCapacity(int capacity) {
+        if (capacity <= sensors.length) {
+            return;
+        }
+        int newCapacity = Math.max(capacity, sensors.length * 2);
+        sensors = Arrays.copyOf(sensors, newCapacity);
+        readingsStarts = Arrays.copyOf(readingsStarts, newCapacity);
+        readingsLengths = Arrays.copyOf(readingsLengths, newCapacity);
+        updateFrequencies = Arrays.copyOf(updateFrequencies, newCapacity);
+        timesElapsed = Arrays.copyOf(timesElapsed, newCapacity);
+        currentIndices = Arrays.copyOf(currentIndices, newCapacity);
+        currentReadings = Arrays.copyOf(currentReadings, newCapacity);
+    }
+
+    private static int hashReadings(ReadingPool readings, int start,
+            int length) {
+        int hash = 1;
+        for (int i = start; i < start + length; ++i) {
+            hash = 31 * hash + readings.get(i);
+        }
+        return hash;
+    }
+}
@@ -1,5 +1,9 @@
 package bms.sensors;
 
+import bms.util.Encodable;
+
+import java.io.IOException;
+
 /**
  * A sensor that measures ambient temperature in a room.
  * @ass1
@@ -36,7 +40,31 @@ public class TemperatureSensor extends TimedSensor implements HazardSensor,
      */
     @Override
     public int getHazardLevel() {
-        if (this.getCurrentReading() >= 68) {
+        return lookupHazardLevel();
+    }
+
+    /**
+     * Returns the hazard level this sensor will detect once the given number
+     * of further minutes have elapsed, without changing the sensor.
+     *
+     * @param minutes number of minutes from now
+     * @return sensor's hazard level after that many minutes, 0 to 100
+     * @see #getHazardLevel()
+     */
+    public int getHazardLevelAfter(long minutes) {
+        return lookupHazardLevelAfter(minutes);
+    }
+
+    /**
+     * Returns the hazard level observed with the given temperature reading.
+     *
+     * @param reading temperature in degrees Celsius
+     * @return level of hazard at that temperature, 0 to 100
+     * @see #getHazardLevel()
+     */
+    @Override
+    protected int hazardLevelOf(int reading) {
+        if (reading >= 68) {
             return 100;
         }
         return 0;
@@ -48,19 +76,31 @@ public class TemperatureSensor extends TimedSensor implements HazardSensor,
      * @return sensor's current comfort level, 0 to 100
      */
     public int getComfortLevel() {
+        return lookupComfortLevel();
+    }
+
+    /**
+     * Returns the comfort level observed with the given temperature reading.
+     *
+     * @param reading temperature in degrees Celsius
+     * @return level of comfort at that temperature, 0 to 100
+     * @see #getComfortLevel()
+     */
+    @Override
+    protected int comfortLevelOf(int reading) {
         int baseLevel = 100;
         int count;
         int comfortLevel = 0;
 
-        if (getCurrentReading() >= 20 && getCurrentReading() <= 26) {
+        if (reading >= 20 && reading <= 26) {
             comfortLevel = 100;
-        } else if (getCurrentReading() <= 15 || getCurrentReading() >= 31) {
+        } else if (reading <= 15 || reading >= 31) {
             comfortLevel = 0;
-        } else if (getCurrentReading() > 26 && getCurrentReading() < 31) {
-            count = getCurrentReading() - 26;
+        } else if (reading > 26 && reading < 31) {
+            count = reading - 26;
             comfortLevel = baseLevel - (count * 20);
-        } else if (getCurrentReading() < 20 && getCurrentReading() > 15) {
-            count = 20 - getCurrentReading();
+        } else if (reading < 20 && reading > 15) {
+            count = 20 - reading;
             comfortLevel = baseLevel - (count * 20);
         }
         return comfortLevel;
@@ -93,7 +133,19 @@ public class TemperatureSensor extends TimedSensor implements HazardSensor,
      */
     @Override
     public String encode() {
-        return String.format("TemperatureSensor:%s",
-                super.encode()).stripTrailing();
+        return Encodable.encodeToString(this);
+    }
+
+    /**
+     * Appends the encoded representation of this temperature sensor to the
+     * given appendable.
+     *
+     * @param out appendable to which to append this sensor's representation
+     * @throws IOException if appending to the appendable fails
+     */
+    @Override
+    public void encodeTo(Appendable out) throws IOException {
+        out.append("TemperatureSensor:");
+        super.encodeTo(out);
     }
 }
@@ -4,37 +4,58 @@ import bms.util.Encodable;
 import bms.util.TimedItem;
 import bms.util.TimedItemManager;
 
+import java.io.IOException;
 import java.util.Arrays;
 
 /**
  * An abstract class to represent a sensor that iterates through observed values
  * on a timer.
+ * <p>
+ * The sensor's readings, current reading, time elapsed and update frequency
+ * are held in a slot of a {@link SensorStore}, alongside those of the other
+ * sensors registered with the same manager, and the sensor is a view of
+ * that slot.
+ * <p>
+ * Since a sensor's readings repeat in a fixed cycle, the hazard and comfort
+ * levels it observes only depend on the index of its current reading. A
+ * subclass which observes such levels gives them for any reading with
+ * {@link #hazardLevelOf(int)} and {@link #comfortLevelOf(int)}, and reads
+ * them with {@link #lookupHazardLevel()} and {@link #lookupComfortLevel()},
+ * which build a table of the level at each index of the readings the first
+ * time they are called and then look the level up in it.
+ * <p>
+ * Every sensor is given a unique ID when it is created, see
+ * {@link #getId()} and {@link SensorRegistry}.
  */
 public abstract class TimedSensor implements TimedItem, Sensor, Encodable {
 
     /**
-     * Data array representing the readings observed by the sensor.
-     * <p>
-     * Readings taken one minute apart.
+     * Store holding the sensor's state. Changed when the sensor is moved
+     * from one store to another.
      */
-    private int[] sensorReadings;
+    SensorStore store;
 
     /**
-     * The current sensor reading observed by the sensor.
+     * Slot of the store holding the sensor's state.
      */
-    private int currentReading;
+    int slot;
 
     /**
-     * The amount of time in minutes that the sensor has been running
-     * (according to the system, not real life).
+     * Unique ID of the sensor, given by the {@link SensorRegistry}.
      */
-    private int timeElapsed;
+    private final long id;
 
     /**
-     * The number of minutes that must pass before the current sensor
-     * reading is updated.
+     * Hash code of the sensor's readings, which never change.
+     */
+    private final int readingsHash;
+
+    /*
+    Hazard and comfort level observed at each index of the readings, or null
+    until first needed
      */
-    private int updateFrequency;
+    private byte[] hazardLevels;
+    private byte[] comfortLevels;
 
     /**
      * Creates a new timed sensor, using the provided list of sensor readings.
@@ -50,7 +71,8 @@ public abstract class TimedSensor implements TimedItem, Sensor, Encodable {
      * to {@link TimedSensor#getCurrentReading()} after calling the
      * constructor must return the first element of the given array.
      * <p>
-     * The sensor should be registered as a timed item, see
+     * The sensor should be registered as a timed item with the current
+     * thread's manager, see {@link TimedItemManager#getCurrent()} and
      * {@link TimedItemManager#registerTimedItem(TimedItem)}.
      *
      * @param sensorReadings a non-empty array of sensor readings
@@ -77,11 +99,26 @@ public abstract class TimedSensor implements TimedItem, Sensor, Encodable {
                         "All sensor readings must be non-negative");
             }
         }
-        this.sensorReadings = sensorReadings;
-        this.currentReading = sensorReadings[0];
-        this.updateFrequency = updateFrequency;
-        this.timeElapsed = 0;
-        TimedItemManager.getInstance().registerTimedItem(this);
+        this.store = new SensorStore(this, sensorReadings, updateFrequency, 0,
+                0, sensorReadings[0]);
+        this.slot = 0;
+        this.readingsHash = Arrays.hashCode(sensorReadings);
+        this.id = SensorRegistry.newId();
+        TimedItemManager.getCurrent().registerTimedItem(this);
+    }
+
+    /**
+     * Returns the ID which this sensor was given when it was created.
+     * <p>
+     * No other sensor has the same ID, even one equal to this sensor, so the
+     * ID identifies this sensor in maps and indexes of sensors. While the
+     * sensor is registered with a manager, it can be found from its ID with
+     * {@link SensorRegistry#get(long)}.
+     *
+     * @return unique ID of the sensor
+     */
+    public long getId() {
+        return id;
     }
 
     /**
@@ -91,7 +128,16 @@ public abstract class TimedSensor implements TimedItem, Sensor, Encodable {
      * @ass1
      */
     public int getCurrentReading() {
-        return this.currentReading;
+        return store.getCurrentReading(slot);
+    }
+
+    /**
+     * Returns a copy of the readings which this sensor iterates through.
+     *
+     * @return new array containing the sensor's readings, in order
+     */
+    public int[] getSensorReadings() {
+        return store.getReadings(slot);
     }
 
     /**
@@ -103,7 +149,7 @@ public abstract class TimedSensor implements TimedItem, Sensor, Encodable {
      * @ass1
      */
     public int getTimeElapsed() {
-        return timeElapsed;
+        return store.getTimeElapsed(slot);
     }
 
     /**
@@ -114,7 +160,7 @@ public abstract class TimedSensor implements TimedItem, Sensor, Encodable {
      * @ass1
      */
     public int getUpdateFrequency() {
-        return updateFrequency;
+        return store.getUpdateFrequency(slot);
     }
 
     /**
@@ -130,21 +176,186 @@ public abstract class TimedSensor implements TimedItem, Sensor, Encodable {
      * @ass1
      * */
     public void elapseOneMinute() {
-        this.timeElapsed++;
+        store.setTimeElapsed(slot, store.getTimeElapsed(slot) + 1);
+    }
+
+    /**
+     * Increments the time elapsed (in minutes) by the given number of
+     * minutes, and updates the current sensor reading to the one observed at
+     * the new time elapsed.
+     * <p>
+     * This takes constant time, and gives the same result as calling
+     * {@link #elapseOneMinute()} the given number of times. If the time
+     * elapsed would then be more than {@link Integer#MAX_VALUE}, it is
+     * reduced modulo the {@link #getRotationDuration() rotation duration},
+     * so the current reading is still the one observed at that time.
+     *
+     * @param minutes number of minutes to elapse
+     * @throws IllegalArgumentException if minutes is negative
+     */
+    @Override
+    public void elapseMinutes(long minutes) {
+        if (minutes < 0) {
+            throw new IllegalArgumentException(
+                    "Number of minutes must not be negative");
+        }
+        store.setTimeElapsed(slot, store.timeElapsedAfter(slot, minutes));
+    }
+
+    /**
+     * Sets the number of minutes that have elapsed since the sensor was
+     * instantiated, and updates the current sensor reading to the one
+     * observed at that time. Unlike {@link #elapseMinutes(long)}, this may
+     * move the sensor back in time, for example when restoring a past state
+     * of the simulation.
+     *
+     * @param timeElapsed the sensor's new time elapsed in minutes
+     * @throws IllegalArgumentException if timeElapsed is negative
+     */
+    public void setTimeElapsed(int timeElapsed) {
+        if (timeElapsed < 0) {
+            throw new IllegalArgumentException(
+                    "Time elapsed must not be negative");
+        }
+        store.setTimeElapsed(slot, timeElapsed);
+    }
+
+    /**
+     * Returns the number of minutes which must elapse before the current
+     * sensor reading changes to a different value, or {@link Long#MAX_VALUE}
+     * if all of the sensor's readings are the same.
+     *
+     * @return minutes until the current reading next changes
+     */
+    @Override
+    public long getMinutesUntilChange() {
+        int updateFrequency = getUpdateFrequency();
+        int readingCount = store.getReadingCount(slot);
+        int currentReading = getCurrentReading();
+        int time = getTimeElapsed() % getRotationDuration();
+        int index = time / updateFrequency;
+        // minutes until the reading after the current one is observed
+        long minutes = updateFrequency - time % updateFrequency;
+        for (int i = 1; i < readingCount; ++i) {
+            int next = store.getReading(slot, (index + i) % readingCount);
+            if (next != currentReading) {
+                return minutes;
+            }
+            minutes += updateFrequency;
+        }
+        return Long.MAX_VALUE;
+    }
+
+    /**
+     * Returns the sensor reading which will be current once the given number
+     * of further minutes have elapsed, without changing the sensor.
+     *
+     * @param minutes number of minutes from now
+     * @return sensor reading observed after that many minutes
+     */
+    public int getReadingAfter(long minutes) {
+        return store.readingAt(slot, store.timeElapsedAfter(slot, minutes));
+    }
+
+    /**
+     * Returns the number of minutes it takes for the sensor to observe all of
+     * its readings and wrap around to the first one again.
+     *
+     * @return length of the cycle of readings in minutes
+     */
+    public int getRotationDuration() {
+        return store.getReadingCount(slot) * getUpdateFrequency();
+    }
+
+    /**
+     * Returns the hazard level observed by the sensor while the given reading
+     * is current. Sensors which detect hazards override this to give their
+     * hazard level as a function of their reading.
+     *
+     * @param reading one of the sensor's readings
+     * @return level of hazard observed with the reading, 0 to 100
+     */
+    protected int hazardLevelOf(int reading) {
+        return 0;
+    }
 
-        // calculate the time taken before wrapping around to the starting value
-        // again
-        int rotationDuration = this.sensorReadings.length
-                * this.updateFrequency;
+    /**
+     * Returns the comfort level observed by the sensor while the given
+     * reading is current. Sensors which detect comfort override this to give
+     * their comfort level as a function of their reading.
+     *
+     * @param reading one of the sensor's readings
+     * @return level of comfort observed with the reading, 0 to 100
+     */
+    protected int comfortLevelOf(int reading) {
+        return 0;
+    }
 
-        // calculate the time remaining in the current rotation
-        int timeRemainingInRotation =  this.timeElapsed % rotationDuration;
+    /**
+     * Returns {@link #hazardLevelOf(int)} of the current reading, looked up
+     * in a table of the hazard level at each index of the readings.
+     *
+     * @return current hazard level, 0 to 100
+     */
+    protected final int lookupHazardLevel() {
+        if (hazardLevels == null) {
+            hazardLevels = tabulate(true);
+        }
+        return hazardLevels[store.getCurrentIndex(slot)];
+    }
+
+    /**
+     * Returns {@link #hazardLevelOf(int)} of the reading which will be current
+     * once the given number of further minutes have elapsed, looked up in a
+     * table of the hazard level at each index of the readings.
+     *
+     * @param minutes number of minutes from now
+     * @return hazard level after that many minutes, 0 to 100
+     */
+    protected final int lookupHazardLevelAfter(long minutes) {
+        if (hazardLevels == null) {
+            hazardLevels = tabulate(true);
+        }
+        return hazardLevels[store.indexAt(slot,
+                store.timeElapsedAfter(slot, minutes))];
+    }
+
+    /**
+     * Returns {@link #comfortLevelOf(int)} of the current reading, looked up
+     * in a table of the comfort level at each index of the readings.
+     *
+     * @return current comfort level, 0 to 100
+     */
+    protected final int lookupComfortLevel() {
+        if (comfortLevels == null) {
+            comfortLevels = tabulate(false);
+        }
+        return comfortLevels[store.getCurrentIndex(slot)];
+    }
 
-        // index is time remaining in the current rotation divided by the update
-        // frequency
-        int index = timeRemainingInRotation / this.updateFrequency;
+    /*
+    Returns a table of the hazard or comfort level at each index of the
+    readings
+     */
+    private byte[] tabulate(boolean hazard) {
+        byte[] levels = new byte[store.getReadingCount(slot)];
+        for (int i = 0; i < levels.length; ++i) {
+            int reading = store.getReading(slot, i);
+            levels[i] = (byte) (hazard ? hazardLevelOf(reading)
+                    : comfortLevelOf(reading));
+        }
+        return levels;
+    }
 
-        this.currentReading = this.sensorReadings[index];
+    /**
+     * Returns true, as elapsing a minute only advances this sensor's own
+     * current reading.
+     *
+     * @return true
+     */
+    @Override
+    public boolean isIndependent() {
+        return true;
     }
 
     /**
@@ -160,24 +371,25 @@ public abstract class TimedSensor implements TimedItem, Sensor, Encodable {
             return false;
         }
         TimedSensor otherSensor = (TimedSensor) obj;
-        return Arrays.equals(this.sensorReadings, otherSensor.sensorReadings) &&
+        return this.readingsHash == otherSensor.readingsHash &&
+                store.readingsEqual(slot, otherSensor.store,
+                        otherSensor.slot) &&
                 this.getClass().getSimpleName().equals(
                         otherSensor.getClass().getSimpleName()) &&
                 this.getUpdateFrequency() == otherSensor.getUpdateFrequency();
     }
 
     /**
+     * Returns the hash code of this timed sensor, which takes constant time
+     * as the hash code of its readings is found when it is created.
+     *
      * @return hash code of this timed sensor.
      */
     @Override
     public int hashCode() {
-        int readingsCode = 1;
-
-        for (int value : sensorReadings) {
-            readingsCode *= value;
-        }
-        return readingsCode + this.getClass().getSimpleName().hashCode() +
-                getUpdateFrequency();
+        return 31 * (31 * readingsHash
+                + this.getClass().getSimpleName().hashCode())
+                + getUpdateFrequency();
     }
 
     /**
@@ -197,8 +409,8 @@ public abstract class TimedSensor implements TimedItem, Sensor, Encodable {
     @Override
     public String toString() {
         return String.format("TimedSensor: freq=%d, readings=%s",
-                this.updateFrequency,
-                String.join(",", Arrays.stream(this.sensorReadings)
+                getUpdateFrequency(),
+                String.join(",", Arrays.stream(getSensorReadings())
                         .mapToObj(String::valueOf)
                         .toArray(String[]::new)));
     }
@@ -207,9 +419,23 @@ public abstract class TimedSensor implements TimedItem, Sensor, Encodable {
      * @return encoded string representation of this timed sensor
      */
     public String encode() {
-        return String.format("%s",
-                String.join(",", Arrays.stream(this.sensorReadings)
-                        .mapToObj(String::valueOf)
-                        .toArray(String[]::new))).stripTrailing();
+        return Encodable.encodeToString(this);
+    }
+
+    /**
+     * Appends the encoded representation of this timed sensor's readings to
+     * the given appendable.
+     *
+     * @param out appendable to which to append the sensor's readings
+     * @throws IOException if appending to the appendable fails
+     */
+    @Override
+    public void encodeTo(Appendable out) throws IOException {
+        for (int i = 0; i < store.getReadingCount(slot); ++i) {
+            if (i > 0) {
+                out.append(',');
+            }
+            out.append(String.valueOf(store.getReading(slot, i)));
+        }
     }
 }
@@ -0,0 +1,275 @@
+package bms.util;
+
+import bms.building.Building;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.Consumer;
+
+/**
+ * Simulation of a list of buildings in which each building's timed items are
+ * elapsed separately, on a pool of worker threads, with every building kept
+ * on the same simulated clock.
+ * <p>
+ * Each building is bound to a timed item manager of its own (see
+ * {@link TimedItemManager#bindBuildings(List)}). When a minute is elapsed,
+ * the buildings are split into groups of about the same number of timed
+ * items, each group is elapsed as a separate task, and the minute only ends
+ * once all of the tasks have finished, so no building is ever a minute ahead
+ * of another when the simulation is observed. A large building is elapsed on
+ * one worker while the others work through groups of smaller buildings, and
+ * the number of threads is set by the pool rather than by the number of
+ * buildings.
+ * <p>
+ * Timed items added to a building after the simulation is created are
+ * registered with the current thread's manager, so the building's own
+ * manager (see {@link #getManager(Building)}) should be made current while
+ * the building is modified.
+ * <p>
+ * Each building's readings are held by its own manager, in a pool of their
+ * own, until the simulation is {@link #close() closed}.
+ */
+public class BuildingSimulation implements TimedItem, AutoCloseable {
+
+    /**
+     * Number of timed items up to which a group of buildings is elapsed as
+     * one task rather than split further, as forking a task for each small
+     * building costs more than elapsing it.
+     */
+    private static final long ITEMS_PER_TASK = 4096;
+
+    /**
+     * Buildings in the simulation, in order.
+     */
+    private final List<Building> buildings;
+
+    /**
+     * Timed item manager of each building, in the same order as the
+     * buildings.
+     */
+    private final List<TimedItemManager> managers;
+
+    /**
+     * Timed item manager of each building, by identity.
+     */
+    private final Map<Building, TimedItemManager> managersByBuilding;
+
+    /**
+     * Pool on which the buildings are elapsed.
+     */
+    private final ForkJoinPool pool;
+
+    /**
+     * Number of minutes which have elapsed since the simulation was created.
+     */
+    private long minutesElapsed;
+
+    /**
+     * Creates a simulation of the given buildings, elapsed on the common
+     * fork/join pool.
+     *
+     * @param buildings buildings to simulate
+     * @see #BuildingSimulation(List, ForkJoinPool)
+     */
+    public BuildingSimulation(List<Building> buildings) {
+        this(buildings, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Creates a simulation of the given buildings, elapsed on the given
+     * pool.
+     * <p>
+     * The timed items of each building are moved from the current thread's
+     * manager to a new manager for the building, so they are no longer
+     * elapsed by the current thread's manager.
+     *
+     * @param buildings buildings to simulate
+     * @param pool pool of worker threads on which to elapse the buildings
+     */
+    public BuildingSimulation(List<Building> buildings, ForkJoinPool pool) {
+        this(buildings, pool, TimedItemManager.getCurrent()
+                .isReadingsOffHeap());
+    }
+
+    /**
+     * Creates a simulation of the given buildings, elapsed on the given
+     * pool, with each building's sensor readings kept in the heap or outside
+     * it (see {@link TimedItemManager#setReadingsOffHeap(boolean)}).
+     *
+     * @param buildings buildings to simulate
+     * @param pool pool of worker threads on which to elapse the buildings
+     * @param offHeapReadings true to keep each building's readings outside
+     *                        the heap, false to keep them in the heap
+     */
+    public BuildingSimulation(List<Building> buildings, ForkJoinPool pool,
+            boolean offHeapReadings) {
+        this.buildings = new ArrayList<>(buildings);
+        this.managers = new ArrayList<>(buildings.size());
+        this.managersByBuilding = new IdentityHashMap<>();
+        this.pool = pool;
+        for (Building building : this.buildings) {
+            TimedItemManager manager = new TimedItemManager();
+            manager.setReadingsOffHeap(offHeapReadings);
+            manager.bindBuildings(List.of(building));
+            this.managers.add(manager);
+            this.managersByBuilding.put(building, manager);
+        }
+    }
+
+    /**
+     * Returns the buildings in the simulation.
+     *
+     * @return unmodifiable list of the buildings, in order
+     */
+    public List<Building> getBuildings() {
+        return Collections.unmodifiableList(buildings);
+    }
+
+    /**
+     * Returns the timed item manager which elapses the given building.
+     *
+     * @param building building in the simulation
+     * @return the building's manager, or null if the building is not in the
+     *         simulation
+     */
+    public TimedItemManager getManager(Building building) {
+        return managersByBuilding.get(building);
+    }
+
+    /**
+     * Elapses one minute in every building, returning once every building
+     * has finished the minute.
+     */
+    @Override
+    public synchronized void elapseOneMinute() {
+        forEachManager(TimedItemManager::elapseOneMinute);
+        minutesElapsed++;
+    }
+
+    /**
+     * Elapses the given number of minutes in every building, returning once
+     * every building has finished them.
+     * <p>
+     * As no building's timed items depend on another building's, each
+     * building elapses all of the minutes at once.
+     *
+     * @param minutes number of minutes to elapse
+     * @throws IllegalArgumentException if minutes is negative
+     */
+    @Override
+    public synchronized void elapseMinutes(long minutes) {
+        if (minutes < 0) {
+            throw new IllegalArgumentException(
+                    "Number of minutes must not be negative");
+        }
+        forEachManager(manager -> manager.elapseMinutes(minutes));
+        minutesElapsed += minutes;
+    }
+
+    /**
+     * Makes every building's manager event driven or not.
+     *
+     * @param eventDriven true to only elapse independent items when their
+     *                    state changes, false to elapse them every minute
+     * @see TimedItemManager#setEventDriven(boolean)
+     */
+    public synchronized void setEventDriven(boolean eventDriven) {
+        forEachManager(manager -> manager.setEventDriven(eventDriven));
+    }
+
+    /**
+     * Brings every timed item of every building up to date.
+     *
+     * @see TimedItemManager#synchronise()
+     */
+    public synchronized void synchronise() {
+        forEachManager(TimedItemManager::synchronise);
+    }
+
+    /**
+     * Returns the number of minutes which have elapsed since the simulation
+     * was created.
+     *
+     * @return number of minutes elapsed
+     */
+    public synchronized long getMinutesElapsed() {
+        return minutesElapsed;
+    }
+
+    /**
+     * Closes every building's manager, releasing the readings of the
+     * buildings' sensors straight away (see {@link TimedItemManager#close()}).
+     * <p>
+     * The simulation and its buildings must not be used once it is closed.
+     */
+    @Override
+    public synchronized void close() {
+        for (TimedItemManager manager : managers) {
+            manager.close();
+        }
+    }
+
+    /*
+    Applies the action to every building's manager on the pool, waiting for
+    all of them to finish
+     */
+    private void forEachManager(Consumer<TimedItemManager> action) {
+        // Number of timed items in the buildings before each index
+        long[] itemsBefore = new long[managers.size() + 1];
+        for (int i = 0; i < managers.size(); ++i) {
+            itemsBefore[i + 1] = itemsBefore[i]
+                    + managers.get(i).getTimedItemCount();
+        }
+        pool.invoke(new ManagerTask(action, itemsBefore, 0, managers.size()));
+    }
+
+    /*
+    Task which applies an action to the managers between two indices,
+    splitting them into two tasks of about the same number of timed items
+    while they hold more than ITEMS_PER_TASK
+     */
+    private class ManagerTask extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        private final Consumer<TimedItemManager> action;
+        private final long[] itemsBefore;
+        private final int start;
+        private final int end;
+
+        private ManagerTask(Consumer<TimedItemManager> action,
+                long[] itemsBefore, int start, int end) {
+            this.action = action;
+            this.itemsBefore = itemsBefore;
+            this.start = start;
+            this.end = end;
+        }
+
+        @Override
+        protected void compute() {
+            long items = itemsBefore[end] - itemsBefore[start];
+            if (end - start <= 1 || items <= ITEMS_PER_TASK) {
+                for (int i = start; i < end; ++i) {
+                    action.accept(managers.get(i));
+                }
+                return;
+            }
+            // Split where half of the items come before, keeping at least
+            // one building on each side
+            long half = (itemsBefore[start] + itemsBefore[end]) / 2;
+            int middle = Arrays.binarySearch(itemsBefore, start, end, half);
+            if (middle < 0) {
+                middle = -middle - 1;
+            }
+            middle = Math.min(Math.max(middle, start + 1), end - 1);
+            invokeAll(new ManagerTask(action, itemsBefore, start, middle),
+                    new ManagerTask(action, itemsBefore, middle, end));
+        }
+    }
+}
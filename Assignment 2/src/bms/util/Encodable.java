@@ -1,5 +1,8 @@
 package bms.util;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+
 /**
  * Interface representing an encodable object.
  */
@@ -9,4 +12,40 @@ public interface Encodable {
      * @return the String representation of the current state of this object.
      */
     String encode();
+
+    /**
+     * Appends the String representation of the current state of this object
+     * to the given appendable.
+     * <p>
+     * The text appended must be exactly the same as that returned by
+     * {@link #encode()}. The default implementation appends the result of
+     * {@link #encode()}; objects with large representations should instead
+     * append their parts directly, so that encoding to a writer does not
+     * require the whole representation to be held in memory.
+     *
+     * @param out appendable to which to append this object's representation
+     * @throws IOException if appending to the appendable fails
+     */
+    default void encodeTo(Appendable out) throws IOException {
+        out.append(encode());
+    }
+
+    /**
+     * Returns the text appended by the given object's
+     * {@link #encodeTo(Appendable)} method, so that {@link #encode()} can be
+     * implemented in terms of {@link #encodeTo(Appendable)}.
+     *
+     * @param encodable object to encode
+     * @return encoded representation of the given object
+     */
+    static String encodeToString(Encodable encodable) {
+        StringBuilder output = new StringBuilder();
+        try {
+            encodable.encodeTo(output);
+        } catch (IOException e) {
+            // Appending to a StringBuilder never throws an IOException
+            throw new UncheckedIOException(e);
+        }
+        return output.toString();
+    }
 }
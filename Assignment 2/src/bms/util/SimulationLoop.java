@@ -0,0 +1,241 @@
+package bms.util;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Runs a simulation on a thread of its own, elapsing minutes at a selectable
+ * speed, so that the rate of the simulation does not depend on how often,
+ * or how quickly, its state is displayed.
+ * <p>
+ * Each minute is elapsed while holding the loop's lock (see
+ * {@link #getLock()}), and any other thread which reads or changes the
+ * simulated objects must hold the lock while it does, so that it never sees
+ * a minute part way through. The lock is fair, so a thread waiting for it is
+ * given it as soon as the current minute has finished, even when the
+ * simulation runs as fast as possible.
+ * <p>
+ * The loop starts paused.
+ */
+public class SimulationLoop {
+
+    /**
+     * Speed at which one minute is simulated per second.
+     */
+    public static final double REAL_TIME = 1;
+
+    /**
+     * Speed at which minutes are simulated one after another, as fast as
+     * they can be.
+     */
+    public static final double MAX_SPEED = Double.POSITIVE_INFINITY;
+
+    /**
+     * Number of nanoseconds in one second.
+     */
+    private static final double NANOS_PER_SECOND = 1_000_000_000.0;
+
+    /**
+     * How far the loop may fall behind its speed before it gives up on
+     * catching up, in nanoseconds. A loop which falls further behind, because
+     * its minutes take longer than its speed allows, carries on at its speed
+     * from where it is rather than elapsing minutes back to back.
+     */
+    private static final long MAX_LAG_NANOS = 1_000_000_000L;
+
+    /**
+     * Elapses one minute of the simulation.
+     */
+    private final Runnable minute;
+
+    /**
+     * Lock held while each minute is elapsed.
+     */
+    private final ReentrantLock lock = new ReentrantLock(true);
+
+    /**
+     * Thread on which minutes are elapsed, or null if the loop has not been
+     * started.
+     */
+    private Thread thread;
+
+    /**
+     * Number of minutes simulated per second.
+     */
+    private double speed = REAL_TIME;
+
+    /**
+     * Whether the loop is paused.
+     */
+    private boolean paused = true;
+
+    /**
+     * Whether the loop has been stopped.
+     */
+    private boolean stopped = false;
+
+    /**
+     * Value of {@link System#nanoTime()} at which the next minute is due.
+     */
+    private long due;
+
+    /**
+     * Creates a paused loop which simulates minutes by running the given
+     * action, at a speed of one minute per second.
+     *
+     * @param minute action which elapses one minute of the simulation
+     */
+    public SimulationLoop(Runnable minute) {
+        this.minute = minute;
+    }
+
+    /**
+     * Returns the lock which is held while each minute is elapsed.
+     *
+     * @return the simulation's lock
+     */
+    public Lock getLock() {
+        return lock;
+    }
+
+    /**
+     * Starts the thread on which minutes are elapsed. The thread is a daemon
+     * thread, so it does not keep the application running.
+     *
+     * @throws IllegalStateException if the loop has already been started
+     */
+    public synchronized void start() {
+        if (thread != null) {
+            throw new IllegalStateException("Loop has already been started");
+        }
+        thread = new Thread(this::run, "Simulation");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Stops the loop once the minute being elapsed, if any, has finished.
+     * A stopped loop cannot be started again.
+     */
+    public synchronized void stop() {
+        stopped = true;
+        notifyAll();
+    }
+
+    /**
+     * Returns true if the loop is paused.
+     *
+     * @return true if no minutes are being elapsed
+     */
+    public synchronized boolean isPaused() {
+        return paused;
+    }
+
+    /**
+     * Pauses or unpauses the loop. A paused loop finishes the minute being
+     * elapsed, if any, and then elapses no more minutes until unpaused, so
+     * once the loop is paused and its lock acquired, the simulation stays at
+     * the same minute.
+     *
+     * @param paused true to pause the loop, false to unpause it
+     */
+    public synchronized void setPaused(boolean paused) {
+        if (this.paused && !paused) {
+            due = System.nanoTime();
+        }
+        this.paused = paused;
+        notifyAll();
+    }
+
+    /**
+     * Returns the number of minutes simulated per second.
+     *
+     * @return speed of the simulation
+     */
+    public synchronized double getSpeed() {
+        return speed;
+    }
+
+    /**
+     * Sets the number of minutes to simulate per second, which takes effect
+     * from the next minute.
+     *
+     * @param speed minutes per second, or {@link #MAX_SPEED} to elapse
+     *              minutes as fast as possible
+     * @throws IllegalArgumentException if speed is not greater than zero
+     */
+    public synchronized void setSpeed(double speed) {
+        if (!(speed > 0)) {
+            throw new IllegalArgumentException(
+                    "Speed must be greater than zero");
+        }
+        this.speed = speed;
+        due = System.nanoTime();
+        notifyAll();
+    }
+
+    /*
+    Elapses minutes on the loop's thread until the loop is stopped
+     */
+    private void run() {
+        try {
+            while (awaitMinute()) {
+                lock.lock();
+                try {
+                    // The loop may have been paused while waiting for the
+                    // lock, by a thread which then expects no more minutes
+                    if (isRunning()) {
+                        minute.run();
+                    }
+                } finally {
+                    lock.unlock();
+                }
+                scheduleNextMinute();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /*
+    Waits until the next minute is due, returning false if the loop is
+    stopped in the meantime
+     */
+    private synchronized boolean awaitMinute() throws InterruptedException {
+        while (!stopped) {
+            if (paused) {
+                wait();
+                continue;
+            }
+            long remaining = due - System.nanoTime();
+            if (speed == MAX_SPEED || remaining <= 0) {
+                return true;
+            }
+            // Woken early if the speed changes or the loop is paused
+            TimeUnit.NANOSECONDS.timedWait(this, remaining);
+        }
+        return false;
+    }
+
+    /*
+    Returns true if the loop is neither paused nor stopped
+     */
+    private synchronized boolean isRunning() {
+        return !paused && !stopped;
+    }
+
+    /*
+    Sets the time at which the minute after the one just elapsed is due
+     */
+    private synchronized void scheduleNextMinute() {
+        if (speed == MAX_SPEED) {
+            return;
+        }
+        due += (long) (NANOS_PER_SECOND / speed);
+        long now = System.nanoTime();
+        if (now - due > MAX_LAG_NANOS) {
+            due = now;
+        }
+    }
+}
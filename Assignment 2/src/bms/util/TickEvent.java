@@ -0,0 +1,72 @@
+package bms.util;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Flight recorder event for one tick of a part of the simulation, such as a
+ * minute elapsed by a timed item manager or an update of the GUI.
+ * <p>
+ * Events are created and committed by {@link TickMetrics#beginTick()} and
+ * {@link TickMetrics#endTick(TickEvent, int, int)}, and are only recorded
+ * while a flight recording is running with the event enabled.
+ */
+@Name("bms.Tick")
+@Label("Simulation Tick")
+@Category("Building Management System")
+@Description("One tick of the simulation or its display")
+@StackTrace(false)
+public class TickEvent extends Event {
+
+    /**
+     * Name of the metrics which recorded the tick.
+     */
+    @Label("Source")
+    String source;
+
+    /**
+     * Number of timed items advanced during the tick.
+     */
+    @Label("Items Advanced")
+    int itemsAdvanced;
+
+    /**
+     * Number of sensors whose reading changed during the tick, or -1 if
+     * they were not counted.
+     */
+    @Label("Items Changed")
+    int itemsChanged;
+
+    /**
+     * Whether the tick was profiled, in which case its items were timed by
+     * type and it took longer than usual.
+     */
+    @Label("Profiled")
+    boolean profiled;
+
+    /**
+     * Type of timed item which took the longest per item to advance over
+     * all profiled ticks so far, or null if no tick has been profiled.
+     */
+    @Label("Slowest Item Type")
+    String slowestItemType;
+
+    /**
+     * Value of {@link System#nanoTime()} when the tick began.
+     */
+    transient long startNanos;
+
+    /**
+     * Returns true if the tick is profiled, so its items should be timed by
+     * type (see {@link TickMetrics#recordItemType(Class, long, int)}).
+     *
+     * @return true if the tick is profiled
+     */
+    public boolean isProfiled() {
+        return profiled;
+    }
+}
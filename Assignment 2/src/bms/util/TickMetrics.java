@@ -0,0 +1,440 @@
+package bms.util;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+/**
+ * Measures the ticks of a part of the simulation, such as the minutes
+ * elapsed by a timed item manager, cheaply enough to be left running in
+ * production.
+ * <p>
+ * The latency of each tick is recorded in a histogram whose buckets are
+ * within about 6% of each other, so percentiles are reported to that
+ * precision without keeping every latency. Each tick is also recorded as a
+ * {@link TickEvent} for the flight recorder, and the metrics can be read
+ * over JMX once registered (see {@link #register()}).
+ * <p>
+ * Timing each item of a tick, and checking whether each sensor's reading
+ * changed, would slow every tick down. Instead, one tick in every
+ * {@link #getProfilingInterval()} is profiled: the caller times the items of
+ * each type on that tick and counts the changed readings, and the tick is
+ * left out of the latency figures.
+ */
+public class TickMetrics implements TickMetricsMXBean {
+
+    /**
+     * Domain of the JMX names under which metrics are registered.
+     */
+    public static final String JMX_DOMAIN = "bms";
+
+    /**
+     * Default number of ticks from one profiled tick to the next.
+     */
+    public static final int DEFAULT_PROFILING_INTERVAL = 100;
+
+    /**
+     * Number of bits of a latency kept within each power of two.
+     */
+    private static final int SUB_BUCKET_BITS = 4;
+
+    /**
+     * Number of buckets within each power of two.
+     */
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+    /**
+     * Number of buckets needed for any non-negative long latency.
+     */
+    private static final int BUCKETS =
+            (Long.SIZE - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+    /**
+     * Name of the part of the simulation whose ticks are measured.
+     */
+    private final String name;
+
+    /**
+     * Number of ticks whose latency fell in each bucket.
+     */
+    private final long[] histogram = new long[BUCKETS];
+
+    /*
+    Latency figures of the ticks which were not profiled
+     */
+    private long tickCount;
+    private long totalNanos;
+    private long maxNanos;
+    private long lastNanos;
+
+    /*
+    Item counts of every tick
+     */
+    private long profiledTickCount;
+    private int lastItemsAdvanced;
+    private long itemsAdvanced;
+    private int lastItemsChanged = -1;
+    private long itemsChanged;
+    private long changeCountedTicks;
+
+    /**
+     * Total time and number of items advanced on profiled ticks, by type.
+     */
+    private final Map<Class<?>, long[]> itemTypeTimes =
+            new IdentityHashMap<>();
+
+    /**
+     * Number of ticks from one profiled tick to the next, or 0 to never
+     * profile ticks.
+     */
+    private int profilingInterval = DEFAULT_PROFILING_INTERVAL;
+
+    /**
+     * Number of ticks until the next profiled tick.
+     */
+    private int untilProfiled = DEFAULT_PROFILING_INTERVAL;
+
+    /**
+     * Creates empty metrics for the part of the simulation with the given
+     * name.
+     *
+     * @param name name of the part of the simulation to measure
+     */
+    public TickMetrics(String name) {
+        this.name = name;
+    }
+
+    /**
+     * Registers these metrics with the platform MBean server, under the name
+     * "bms:type=TickMetrics,name=" followed by the metrics' name, replacing
+     * any metrics already registered under that name.
+     *
+     * @return true if the metrics were registered, false if the platform
+     *         MBean server would not accept them
+     */
+    public boolean register() {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        try {
+            ObjectName objectName = new ObjectName(JMX_DOMAIN
+                    + ":type=TickMetrics,name=" + ObjectName.quote(name));
+            if (server.isRegistered(objectName)) {
+                server.unregisterMBean(objectName);
+            }
+            server.registerMBean(this, objectName);
+            return true;
+        } catch (JMException | SecurityException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Starts timing a tick, deciding whether the tick is to be profiled.
+     *
+     * @return event for the tick, to be passed to
+     *         {@link #endTick(TickEvent, int, int)} when it finishes
+     */
+    public TickEvent beginTick() {
+        TickEvent event = new TickEvent();
+        event.source = name;
+        event.profiled = isNextTickProfiled();
+        event.begin();
+        event.startNanos = System.nanoTime();
+        return event;
+    }
+
+    /**
+     * Finishes timing a tick in which no timed items were advanced, such as
+     * an update of the GUI.
+     *
+     * @param event event returned by {@link #beginTick()} for the tick
+     */
+    public void endTick(TickEvent event) {
+        endTick(event, 0, -1);
+    }
+
+    /**
+     * Finishes timing a tick, recording its latency unless it was profiled,
+     * and commits its flight recorder event.
+     *
+     * @param event event returned by {@link #beginTick()} for the tick
+     * @param advanced number of timed items advanced during the tick
+     * @param changed number of sensors whose reading changed during the
+     *                tick, or -1 if they were not counted
+     */
+    public void endTick(TickEvent event, int advanced, int changed) {
+        long nanos = System.nanoTime() - event.startNanos;
+        event.end();
+        String slowest;
+        synchronized (this) {
+            if (event.profiled) {
+                profiledTickCount++;
+            } else {
+                histogram[bucketOf(nanos)]++;
+                tickCount++;
+                totalNanos += nanos;
+                maxNanos = Math.max(maxNanos, nanos);
+                lastNanos = nanos;
+            }
+            lastItemsAdvanced = advanced;
+            itemsAdvanced += advanced;
+            if (changed >= 0) {
+                lastItemsChanged = changed;
+                itemsChanged += changed;
+                changeCountedTicks++;
+            }
+            slowest = event.profiled && event.shouldCommit()
+                    ? getSlowestItemType() : null;
+        }
+        if (event.shouldCommit()) {
+            event.itemsAdvanced = advanced;
+            event.itemsChanged = changed;
+            event.slowestItemType = slowest;
+            event.commit();
+        }
+    }
+
+    /**
+     * Records the time taken to advance some items of the same type on a
+     * profiled tick.
+     *
+     * @param type type of the items
+     * @param nanos time taken to advance the items, in nanoseconds
+     * @param count number of items advanced
+     */
+    public synchronized void recordItemType(Class<?> type, long nanos,
+            int count) {
+        long[] times = itemTypeTimes.computeIfAbsent(type, t -> new long[2]);
+        times[0] += nanos;
+        times[1] += count;
+    }
+
+    /**
+     * Returns the time within which the given percentage of ticks finished,
+     * to the precision of the histogram's buckets.
+     *
+     * @param percentile percentage of ticks, greater than 0 and at most 100
+     * @return latency of the tick at the percentile, in nanoseconds, or 0 if
+     *         no ticks have been recorded
+     * @throws IllegalArgumentException if percentile is not greater than 0
+     *                                  and at most 100
+     */
+    public synchronized long getPercentileNanos(double percentile) {
+        if (!(percentile > 0 && percentile <= 100)) {
+            throw new IllegalArgumentException(
+                    "Percentile must be greater than 0 and at most 100");
+        }
+        // Allow for percentages such as 99.9 not being exact in binary
+        long rank = (long) Math.ceil(percentile * tickCount / 100 - 1e-9);
+        long seen = 0;
+        for (int bucket = 0; bucket < BUCKETS; ++bucket) {
+            seen += histogram[bucket];
+            if (seen >= rank && seen > 0) {
+                return Math.min(upperBoundOf(bucket), maxNanos);
+            }
+        }
+        return 0;
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public synchronized long getTickCount() {
+        return tickCount;
+    }
+
+    @Override
+    public synchronized long getProfiledTickCount() {
+        return profiledTickCount;
+    }
+
+    @Override
+    public synchronized long getLastTickNanos() {
+        return lastNanos;
+    }
+
+    @Override
+    public synchronized double getMeanTickNanos() {
+        return tickCount == 0 ? 0 : (double) totalNanos / tickCount;
+    }
+
+    @Override
+    public synchronized long getMaxTickNanos() {
+        return maxNanos;
+    }
+
+    @Override
+    public long getP50TickNanos() {
+        return getPercentileNanos(50);
+    }
+
+    @Override
+    public long getP90TickNanos() {
+        return getPercentileNanos(90);
+    }
+
+    @Override
+    public long getP99TickNanos() {
+        return getPercentileNanos(99);
+    }
+
+    @Override
+    public long getP999TickNanos() {
+        return getPercentileNanos(99.9);
+    }
+
+    @Override
+    public synchronized int getLastItemsAdvanced() {
+        return lastItemsAdvanced;
+    }
+
+    @Override
+    public synchronized long getItemsAdvanced() {
+        return itemsAdvanced;
+    }
+
+    @Override
+    public synchronized int getLastItemsChanged() {
+        return lastItemsChanged;
+    }
+
+    @Override
+    public synchronized double getMeanItemsChanged() {
+        return changeCountedTicks == 0 ? 0
+                : (double) itemsChanged / changeCountedTicks;
+    }
+
+    @Override
+    public synchronized String getSlowestItemType() {
+        Class<?> slowest = getSlowestType();
+        return slowest == null ? null : slowest.getSimpleName();
+    }
+
+    @Override
+    public synchronized double getSlowestItemTypeMeanNanos() {
+        Class<?> slowest = getSlowestType();
+        return slowest == null ? 0 : meanNanos(itemTypeTimes.get(slowest));
+    }
+
+    @Override
+    public synchronized int getProfilingInterval() {
+        return profilingInterval;
+    }
+
+    /**
+     * @throws IllegalArgumentException if interval is negative
+     */
+    @Override
+    public synchronized void setProfilingInterval(int interval) {
+        if (interval < 0) {
+            throw new IllegalArgumentException(
+                    "Profiling interval must not be negative");
+        }
+        this.profilingInterval = interval;
+        this.untilProfiled = interval;
+    }
+
+    @Override
+    public synchronized void reset() {
+        Arrays.fill(histogram, 0);
+        tickCount = 0;
+        totalNanos = 0;
+        maxNanos = 0;
+        lastNanos = 0;
+        profiledTickCount = 0;
+        lastItemsAdvanced = 0;
+        itemsAdvanced = 0;
+        lastItemsChanged = -1;
+        itemsChanged = 0;
+        changeCountedTicks = 0;
+        itemTypeTimes.clear();
+        untilProfiled = profilingInterval;
+    }
+
+    /**
+     * Returns the human-readable string representation of these metrics.
+     * <p>
+     * For example: "TickMetrics: name=TimedItemManager, ticks=1000,
+     * mean=41.20us, p50=39.00us, p99=120.00us, max=812.40us, advanced=5200,
+     * changed=1.75, slowest=TemperatureSensor"
+     *
+     * @return string representation of these metrics
+     */
+    @Override
+    public synchronized String toString() {
+        return String.format("TickMetrics: name=%s, ticks=%d, mean=%.2fus, "
+                        + "p50=%.2fus, p99=%.2fus, max=%.2fus, advanced=%d, "
+                        + "changed=%.2f, slowest=%s",
+                name, tickCount, getMeanTickNanos() / 1000,
+                getPercentileNanos(50) / 1000.0,
+                getPercentileNanos(99) / 1000.0, maxNanos / 1000.0,
+                itemsAdvanced, getMeanItemsChanged(), getSlowestItemType());
+    }
+
+    /*
+    Counts down to the next profiled tick, returning true if it is the tick
+    about to begin
+     */
+    private synchronized boolean isNextTickProfiled() {
+        if (profilingInterval == 0) {
+            return false;
+        }
+        if (--untilProfiled > 0) {
+            return false;
+        }
+        untilProfiled = profilingInterval;
+        return true;
+    }
+
+    /*
+    Returns the type of item with the longest mean time to advance on
+    profiled ticks, or null if no items have been timed
+     */
+    private Class<?> getSlowestType() {
+        Class<?> slowest = null;
+        double slowestNanos = -1;
+        for (Map.Entry<Class<?>, long[]> entry : itemTypeTimes.entrySet()) {
+            double nanos = meanNanos(entry.getValue());
+            if (nanos > slowestNanos) {
+                slowest = entry.getKey();
+                slowestNanos = nanos;
+            }
+        }
+        return slowest;
+    }
+
+    private static double meanNanos(long[] times) {
+        return times[1] == 0 ? 0 : (double) times[0] / times[1];
+    }
+
+    /*
+    Returns the index of the histogram bucket holding the given latency
+     */
+    private static int bucketOf(long nanos) {
+        if (nanos < SUB_BUCKETS) {
+            return (int) Math.max(nanos, 0);
+        }
+        int shift = Long.SIZE - 1 - Long.numberOfLeadingZeros(nanos)
+                - SUB_BUCKET_BITS;
+        return (shift + 1) * SUB_BUCKETS
+                + (int) ((nanos >>> shift) - SUB_BUCKETS);
+    }
+
+    /*
+    Returns the largest latency held by the given histogram bucket
+     */
+    private static long upperBoundOf(int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+        int shift = bucket / SUB_BUCKETS - 1;
+        long mantissa = SUB_BUCKETS + bucket % SUB_BUCKETS;
+        return ((mantissa + 1) << shift) - 1;
+    }
+}
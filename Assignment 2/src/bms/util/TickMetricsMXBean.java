@@ -0,0 +1,116 @@
+package bms.util;
+
+/**
+ * Management interface through which the {@link TickMetrics} of a part of
+ * the simulation can be read over JMX.
+ * <p>
+ * Times are in nanoseconds. Profiled ticks, on which items are timed by
+ * type, are not included in the latency figures, as they take longer than
+ * usual.
+ */
+public interface TickMetricsMXBean {
+
+    /**
+     * @return name of the part of the simulation whose ticks are measured
+     */
+    String getName();
+
+    /**
+     * @return number of ticks whose latency has been recorded
+     */
+    long getTickCount();
+
+    /**
+     * @return number of ticks which have been profiled
+     */
+    long getProfiledTickCount();
+
+    /**
+     * @return time taken by the most recent tick
+     */
+    long getLastTickNanos();
+
+    /**
+     * @return mean time taken by a tick
+     */
+    double getMeanTickNanos();
+
+    /**
+     * @return longest time taken by a tick
+     */
+    long getMaxTickNanos();
+
+    /**
+     * @return time within which half of the ticks finished
+     */
+    long getP50TickNanos();
+
+    /**
+     * @return time within which 90% of the ticks finished
+     */
+    long getP90TickNanos();
+
+    /**
+     * @return time within which 99% of the ticks finished
+     */
+    long getP99TickNanos();
+
+    /**
+     * @return time within which 99.9% of the ticks finished
+     */
+    long getP999TickNanos();
+
+    /**
+     * @return number of timed items advanced by the most recent tick
+     */
+    int getLastItemsAdvanced();
+
+    /**
+     * @return total number of timed items advanced by every tick
+     */
+    long getItemsAdvanced();
+
+    /**
+     * @return number of sensors whose reading changed on the most recent
+     *         tick on which they were counted, or -1 if they have never
+     *         been counted
+     */
+    int getLastItemsChanged();
+
+    /**
+     * @return mean number of sensors whose reading changed, over the ticks
+     *         on which they were counted
+     */
+    double getMeanItemsChanged();
+
+    /**
+     * @return simple name of the type of timed item which took the longest
+     *         per item to advance on the profiled ticks, or null if no tick
+     *         has been profiled
+     */
+    String getSlowestItemType();
+
+    /**
+     * @return mean time taken to advance one item of the slowest type
+     */
+    double getSlowestItemTypeMeanNanos();
+
+    /**
+     * @return number of ticks from one profiled tick to the next, or 0 if
+     *         ticks are never profiled
+     */
+    int getProfilingInterval();
+
+    /**
+     * Sets how often ticks are profiled.
+     *
+     * @param interval number of ticks from one profiled tick to the next, or
+     *                 0 to never profile ticks
+     */
+    void setProfilingInterval(int interval);
+
+    /**
+     * Forgets every tick recorded so far.
+     */
+    void reset();
+}
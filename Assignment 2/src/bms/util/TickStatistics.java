@@ -0,0 +1,154 @@
+package bms.util;
+
+import java.util.Arrays;
+
+/**
+ * Records how long each minute of a simulation took to elapse, and reports
+ * the rate at which minutes were elapsed and percentiles of their latency.
+ */
+public class TickStatistics {
+
+    /**
+     * Number of nanoseconds in one second.
+     */
+    private static final double NANOS_PER_SECOND = 1_000_000_000.0;
+
+    /**
+     * Number of nanoseconds in one microsecond.
+     */
+    private static final double NANOS_PER_MICRO = 1_000.0;
+
+    /**
+     * Time taken by each recorded tick, in nanoseconds, in the order they
+     * were recorded until sorted.
+     */
+    private long[] tickNanos;
+
+    /**
+     * Number of ticks recorded.
+     */
+    private int tickCount = 0;
+
+    /**
+     * Total time taken by the recorded ticks, in nanoseconds.
+     */
+    private long totalNanos = 0;
+
+    /**
+     * Whether the recorded times are sorted, so percentiles can be read
+     * directly.
+     */
+    private boolean sorted = true;
+
+    /**
+     * Creates an empty set of tick statistics.
+     */
+    public TickStatistics() {
+        this(1024);
+    }
+
+    /**
+     * Creates an empty set of tick statistics with room for the given number
+     * of ticks before it needs to grow.
+     *
+     * @param expectedTicks number of ticks expected to be recorded
+     * @throws IllegalArgumentException if expectedTicks is negative
+     */
+    public TickStatistics(int expectedTicks) {
+        if (expectedTicks < 0) {
+            throw new IllegalArgumentException(
+                    "Expected number of ticks must not be negative");
+        }
+        this.tickNanos = new long[expectedTicks];
+    }
+
+    /**
+     * Records a tick which took the given time.
+     *
+     * @param nanos time taken by the tick, in nanoseconds
+     */
+    public void record(long nanos) {
+        if (tickCount == tickNanos.length) {
+            tickNanos = Arrays.copyOf(tickNanos,
+                    Math.max(16, tickNanos.length * 2));
+        }
+        if (tickCount > 0 && nanos < tickNanos[tickCount - 1]) {
+            sorted = false;
+        }
+        tickNanos[tickCount++] = nanos;
+        totalNanos += nanos;
+    }
+
+    /**
+     * @return number of ticks recorded
+     */
+    public int getTickCount() {
+        return tickCount;
+    }
+
+    /**
+     * @return total time taken by the recorded ticks, in nanoseconds
+     */
+    public long getTotalNanos() {
+        return totalNanos;
+    }
+
+    /**
+     * @return average number of ticks elapsed per second
+     */
+    public double getTicksPerSecond() {
+        if (totalNanos <= 0) {
+            return 0;
+        }
+        return tickCount * NANOS_PER_SECOND / totalNanos;
+    }
+
+    /**
+     * Returns the time within which the given percentage of ticks finished,
+     * using the nearest-rank method.
+     *
+     * @param percentile percentage of ticks, greater than 0 and at most 100
+     * @return latency of the tick at the percentile, in nanoseconds, or 0 if
+     *         no ticks have been recorded
+     * @throws IllegalArgumentException if percentile is not greater than 0
+     *                                  and at most 100
+     */
+    public long getPercentileNanos(double percentile) {
+        if (!(percentile > 0 && percentile <= 100)) {
+            throw new IllegalArgumentException(
+                    "Percentile must be greater than 0 and at most 100");
+        }
+        if (tickCount == 0) {
+            return 0;
+        }
+        if (!sorted) {
+            Arrays.sort(tickNanos, 0, tickCount);
+            sorted = true;
+        }
+        // Allow for percentages such as 99.9 not being exact in binary
+        int rank = (int) Math.ceil(percentile * tickCount / 100 - 1e-9);
+        return tickNanos[Math.max(rank, 1) - 1];
+    }
+
+    /**
+     * Returns the human-readable string representation of these statistics.
+     * <p>
+     * For example: "TickStatistics: ticks=1000, time=52.10ms,
+     * ticks/s=19193.86, p50=41.20us, p90=60.03us, p99=180.55us,
+     * p99.9=812.40us, max=1502.11us"
+     *
+     * @return string representation of these statistics
+     */
+    @Override
+    public String toString() {
+        return String.format("TickStatistics: ticks=%d, time=%.2fms, "
+                        + "ticks/s=%.2f, p50=%.2fus, p90=%.2fus, "
+                        + "p99=%.2fus, p99.9=%.2fus, max=%.2fus",
+                tickCount, totalNanos / 1_000_000.0, getTicksPerSecond(),
+                getPercentileNanos(50) / NANOS_PER_MICRO,
+                getPercentileNanos(90) / NANOS_PER_MICRO,
+                getPercentileNanos(99) / NANOS_PER_MICRO,
+                getPercentileNanos(99.9) / NANOS_PER_MICRO,
+                getPercentileNanos(100) / NANOS_PER_MICRO);
+    }
+}
@@ -12,4 +12,59 @@ public interface TimedItem {
      * @ass1
      */
     void elapseOneMinute();
+
+    /**
+     * Progresses this item by the given number of minutes, with the same
+     * result as calling {@link #elapseOneMinute()} that many times.
+     * <p>
+     * When {@link TimedItemManager#elapseMinutes(long)} elapses several
+     * minutes at once, items which are not independent are elapsed before
+     * the independent items. An item whose progress depends on the state of
+     * independent items must therefore override this method to look ahead at
+     * the state those items will have on each minute, rather than relying on
+     * this default implementation.
+     *
+     * @param minutes number of minutes to elapse
+     * @throws IllegalArgumentException if minutes is negative
+     */
+    default void elapseMinutes(long minutes) {
+        if (minutes < 0) {
+            throw new IllegalArgumentException(
+                    "Number of minutes must not be negative");
+        }
+        for (long i = 0; i < minutes; ++i) {
+            elapseOneMinute();
+        }
+    }
+
+    /**
+     * Returns true if this item's {@code elapseOneMinute()} method reads and
+     * modifies only the state of this item, and does not register any timed
+     * items.
+     * <p>
+     * Independent items may have their minutes elapsed concurrently with
+     * each other, and before any item which is not independent, by
+     * {@link TimedItemManager#elapseOneMinute()}. By default, items are not
+     * independent.
+     *
+     * @return true if this item can be elapsed independently of other items
+     */
+    default boolean isIndependent() {
+        return false;
+    }
+
+    /**
+     * Returns the number of minutes which must elapse before the observable
+     * state of this independent item next changes, or
+     * {@link Long#MAX_VALUE} if it never will.
+     * <p>
+     * An event driven {@link TimedItemManager} only elapses an independent
+     * item on the minutes its state changes. By default, the state of an
+     * item is assumed to change every minute.
+     *
+     * @return minutes until this item's state next changes, at least one
+     */
+    default long getMinutesUntilChange() {
+        return 1;
+    }
 }
@@ -1,7 +1,24 @@
 package bms.util;
 
+import bms.building.Building;
+import bms.floor.Floor;
+import bms.room.Room;
+import bms.sensors.Sensor;
+import bms.sensors.SensorRegistry;
+import bms.sensors.SensorStore;
+import bms.sensors.TimedSensor;
+
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.function.Predicate;
 
 /**
  * Singleton class which manages all the timed items.
@@ -14,25 +31,142 @@ import java.util.List;
  * {@link TimedItemManager#registerTimedItem(TimedItem)} ()} and passing itself,
  * the manager will ensure that its {@code elapseOneMinute()} method is called
  * at regular intervals.
+ * <p>
+ * Each minute is elapsed in two phases. First, every independent item (see
+ * {@link TimedItem#isIndependent()}), such as a sensor, is elapsed. The state
+ * of the timed sensors registered with a manager is held in the manager's
+ * {@link SensorStore sensor stores}, so they are elapsed by a scan over each
+ * store's arrays, spread across several threads when there are many of
+ * them. Then every other
+ * item, such as a maintenance schedule, is elapsed in the order it was
+ * registered. This gives the same result as elapsing all the items in the
+ * order they were registered, provided that no item which is not independent
+ * reads the state of an independent item registered after it. Buildings are
+ * always loaded with the sensors of a floor registered before its
+ * maintenance schedule.
+ * <p>
+ * The sensors of each building are held in a store of the building's own
+ * once the building is loaded (see {@link #separateBuildings(List)}), so
+ * each building's readings are kept in a pool of their own, which is
+ * released as soon as the building's sensors are unregistered. Other
+ * sensors are held in a store shared by the whole manager. A manager which
+ * is no longer needed should be {@link #close() closed}, which releases
+ * every pool straight away, even those held outside the heap.
+ * <p>
+ * Besides the singleton instance, further managers may be created to run
+ * separate simulations side by side. Timed items register themselves with
+ * the current thread's manager (see {@link #getCurrent()}), which is the
+ * singleton instance unless another manager has been made current with
+ * {@link #setCurrent(TimedItemManager)}.
+ * <p>
+ * A manager may be made event driven (see {@link #setEventDriven(boolean)}),
+ * in which case it only elapses an independent item on the minutes its
+ * observable state changes, as reported by
+ * {@link TimedItem#getMinutesUntilChange()}. A sensor's current reading is
+ * then always up to date, but other counters such as its time elapsed lag
+ * behind until the sensor's reading next changes or the manager is
+ * {@link #synchronise() synchronised}.
+ * <p>
+ * Every minute elapsed by {@link #elapseOneMinute()} is measured by the
+ * manager's {@link TickMetrics} (see {@link #getMetrics()}). The singleton
+ * instance's metrics are registered over JMX under the name
+ * "TimedItemManager".
  * @ass1
  */
-public class TimedItemManager implements TimedItem {
+public class TimedItemManager implements TimedItem, AutoCloseable {
     /**
      * Singleton instance.
      */
     private static TimedItemManager instance = new TimedItemManager();
 
+    static {
+        instance.metrics.register();
+    }
+
+    /**
+     * Manager made current on each thread, or null if the thread uses the
+     * singleton instance.
+     */
+    private static final ThreadLocal<TimedItemManager> current =
+            new ThreadLocal<>();
+
+    /**
+     * Independent timed items currently registered with the manager.
+     */
+    private List<TimedItem> independentItems;
+
+    /**
+     * Minimum number of timed sensors for the manager's stores to be elapsed
+     * on several threads, each store on one thread.
+     */
+    private static final int PARALLEL_THRESHOLD = 1 << 16;
+
+    /**
+     * Holds the state of the timed sensors among the independent items which
+     * are not held in the store of a building.
+     */
+    private final SensorStore sensors = new SensorStore();
+
+    /**
+     * Holds the state of the timed sensors of each building, by identity.
+     */
+    private final Map<Building, SensorStore> buildingStores =
+            new IdentityHashMap<>();
+
+    /**
+     * Every store of the manager: the shared store, then each building's
+     * store in the order it was created.
+     */
+    private final Set<SensorStore> stores = new LinkedHashSet<>();
+
+    /**
+     * Independent items which are not timed sensors, and so are not held in
+     * the sensor store.
+     */
+    private final List<TimedItem> otherIndependentItems = new ArrayList<>();
+
+    /**
+     * Timed items currently registered with the manager which are not
+     * independent, in the order they were registered.
+     */
+    private List<TimedItem> dependentItems;
+
+    /**
+     * Timed items registered by the current thread since it called
+     * {@link #deferRegistrations()}, or null if the current thread is not
+     * deferring its registrations.
+     */
+    private final ThreadLocal<List<TimedItem>> deferredItems =
+            new ThreadLocal<>();
+
     /**
-     * List of timed items currently registered with the manager.
+     * Number of minutes which have elapsed since the manager was created.
      */
-    private List<TimedItem> timedItems;
+    private long minutesElapsed;
+
+    /**
+     * Pending state changes of the independent items, ordered by the minute
+     * on which they happen, or null if the manager is not event driven.
+     */
+    private PriorityQueue<Change> changes;
+
+    /**
+     * Measures each minute elapsed by {@link #elapseOneMinute()}.
+     */
+    private final TickMetrics metrics = new TickMetrics("TimedItemManager");
 
     /**
      * Creates a new timed item manager with an empty list of registered items.
+     * <p>
+     * The new manager runs a simulation separate from the singleton
+     * instance's; the minutes it elapses only affect the items registered
+     * with it.
      * @ass1
      */
-    private TimedItemManager() {
-        this.timedItems = new ArrayList<>();
+    public TimedItemManager() {
+        this.independentItems = new ArrayList<>();
+        this.dependentItems = new ArrayList<>();
+        this.stores.add(this.sensors);
     }
 
     /**
@@ -45,6 +179,40 @@ public class TimedItemManager implements TimedItem {
         return instance;
     }
 
+    /**
+     * Returns the manager with which timed items created on the current
+     * thread register themselves.
+     *
+     * @return manager made current on this thread, or the singleton instance
+     *         if there is none
+     */
+    public static TimedItemManager getCurrent() {
+        TimedItemManager manager = current.get();
+        return manager == null ? instance : manager;
+    }
+
+    /**
+     * Makes the given manager the current thread's manager, so that timed
+     * items created on this thread, for example while loading buildings, are
+     * registered with it.
+     * <p>
+     * The previous manager should be restored once the thread is finished
+     * with the given one, for example in a finally block.
+     *
+     * @param manager manager to make current, or null for the singleton
+     *                instance
+     * @return the thread's previous manager, see {@link #getCurrent()}
+     */
+    public static TimedItemManager setCurrent(TimedItemManager manager) {
+        TimedItemManager previous = getCurrent();
+        if (manager == null || manager == instance) {
+            current.remove();
+        } else {
+            current.set(manager);
+        }
+        return previous;
+    }
+
     /**
      * Registers a timed item with the manager.
      * <p>
@@ -55,17 +223,758 @@ public class TimedItemManager implements TimedItem {
      * @ass1
      */
     public void registerTimedItem(TimedItem timedItem) {
-        this.timedItems.add(timedItem);
+        List<TimedItem> deferred = deferredItems.get();
+        if (deferred != null) {
+            deferred.add(timedItem);
+            return;
+        }
+        synchronized (this) {
+            add(timedItem, this.sensors);
+        }
+    }
+
+    /**
+     * Registers each of the given timed items with the manager, in order.
+     *
+     * @param items timed items to register with the manager
+     */
+    public synchronized void registerTimedItems(List<TimedItem> items) {
+        for (TimedItem timedItem : items) {
+            add(timedItem, this.sensors);
+        }
+    }
+
+    /**
+     * Registers each of the given timed items of a building with the
+     * manager, in order, holding the timed sensors among them in the
+     * building's own store (see {@link #separateBuildings(List)}).
+     *
+     * @param building building to which the items belong
+     * @param items timed items to register with the manager
+     */
+    public synchronized void registerTimedItems(Building building,
+            List<TimedItem> items) {
+        SensorStore store = null;
+        for (TimedItem timedItem : items) {
+            if (store == null && timedItem instanceof TimedSensor) {
+                store = getStore(building);
+            }
+            add(timedItem, store);
+        }
+    }
+
+    /**
+     * Unregisters a timed item from the manager, so that the manager no
+     * longer elapses it.
+     * <p>
+     * If the current thread is deferring its registrations, the item is also
+     * removed from the items held back.
+     *
+     * @param timedItem timed item to unregister
+     * @return true if the item was registered with the manager
+     */
+    public boolean unregisterTimedItem(TimedItem timedItem) {
+        boolean removed = false;
+        List<TimedItem> deferred = deferredItems.get();
+        if (deferred != null) {
+            removed = deferred.removeIf(item -> item == timedItem);
+        }
+        synchronized (this) {
+            removeChanges(item -> item == timedItem);
+            if (!timedItem.isIndependent()) {
+                return this.dependentItems.removeIf(item -> item == timedItem)
+                        || removed;
+            }
+            if (timedItem instanceof TimedSensor) {
+                if (removeSensor((TimedSensor) timedItem)) {
+                    removeEmptyStores();
+                }
+            } else {
+                this.otherIndependentItems.removeIf(item -> item == timedItem);
+            }
+            return this.independentItems.removeIf(item -> item == timedItem)
+                    || removed;
+        }
+    }
+
+    /**
+     * Unregisters each of the given timed items from the manager. This takes
+     * time proportional to the number of registered items, however many are
+     * given.
+     *
+     * @param items timed items to unregister
+     */
+    public synchronized void unregisterTimedItems(
+            Collection<? extends TimedItem> items) {
+        Set<TimedItem> removed =
+                Collections.newSetFromMap(new IdentityHashMap<>());
+        removed.addAll(items);
+        removeChanges(removed::contains);
+        boolean emptiedStore = false;
+        for (TimedItem timedItem : removed) {
+            if (timedItem instanceof TimedSensor) {
+                emptiedStore |= removeSensor((TimedSensor) timedItem);
+            }
+        }
+        if (emptiedStore) {
+            removeEmptyStores();
+        }
+        this.independentItems.removeIf(removed::contains);
+        this.otherIndependentItems.removeIf(removed::contains);
+        this.dependentItems.removeIf(removed::contains);
+    }
+
+    /**
+     * Binds the given buildings to this manager, by moving every timed item
+     * in them from the current thread's manager to this manager. From then
+     * on, the buildings' sensors and maintenance schedules are only elapsed
+     * by this manager, and each building's sensors are held in a store of
+     * its own (see {@link #separateBuildings(List)}).
+     * <p>
+     * The floors of lazily loaded buildings are loaded first.
+     *
+     * @param buildings buildings to bind to this manager
+     */
+    public void bindBuildings(List<Building> buildings) {
+        List<TimedItem> items = getTimedItems(buildings, true);
+        TimedItemManager previous = getCurrent();
+        if (previous != this) {
+            previous.unregisterTimedItems(items);
+            registerTimedItems(items);
+        }
+        separateBuildings(buildings);
+    }
+
+    /**
+     * Moves the timed sensors of each of the given buildings which are
+     * registered with this manager into a store of the building's own, so
+     * that each building's readings are kept in a pool of their own rather
+     * than in one pool which grows with every building loaded. A building's
+     * store, and with it the building's pool, is released as soon as its
+     * last sensor is unregistered.
+     * <p>
+     * The floors of lazily loaded buildings are not loaded by this method;
+     * their sensors are moved into the building's store when they are
+     * registered.
+     *
+     * @param buildings buildings whose sensors to hold separately
+     */
+    public synchronized void separateBuildings(List<Building> buildings) {
+        for (Building building : buildings) {
+            if (!building.floorsLoaded()) {
+                continue;
+            }
+            SensorStore store = null;
+            for (TimedItem timedItem
+                    : getTimedItems(List.of(building), false)) {
+                if (!(timedItem instanceof TimedSensor)) {
+                    continue;
+                }
+                TimedSensor sensor = (TimedSensor) timedItem;
+                if (this.sensors.contains(sensor)) {
+                    if (store == null) {
+                        store = getStore(building);
+                    }
+                    store.add(sensor);
+                }
+            }
+        }
+    }
+
+    /**
+     * Unregisters every timed item in the given buildings from this manager,
+     * for example when the buildings are being replaced by a reload.
+     * <p>
+     * The floors of lazily loaded buildings are not loaded by this method;
+     * their timed items are registered when they are loaded.
+     *
+     * @param buildings buildings whose timed items to unregister
+     */
+    public void unregisterBuildings(List<Building> buildings) {
+        unregisterTimedItems(getTimedItems(buildings, false));
+    }
+
+    /**
+     * Returns the number of timed items registered with the manager.
+     *
+     * @return number of registered timed items
+     */
+    public synchronized int getTimedItemCount() {
+        return this.independentItems.size() + this.dependentItems.size();
+    }
+
+    /*
+    Returns the store of the given building, creating it if it does not
+    exist yet
+     */
+    private SensorStore getStore(Building building) {
+        SensorStore store = this.buildingStores.get(building);
+        if (store == null) {
+            if (this.sensors.isClosed()) {
+                throw new IllegalStateException(
+                        "Timed item manager is closed");
+            }
+            store = new SensorStore();
+            store.setReadingsOffHeap(this.sensors.isReadingsOffHeap());
+            this.buildingStores.put(building, store);
+            this.stores.add(store);
+        }
+        return store;
+    }
+
+    /*
+    Moves the given sensor out of whichever of the manager's stores holds
+    it, if any, and returns true if that left a building's store empty
+     */
+    private boolean removeSensor(TimedSensor sensor) {
+        SensorStore store = SensorStore.of(sensor);
+        if (!this.stores.contains(store)) {
+            return false;
+        }
+        store.remove(sensor);
+        SensorRegistry.unregister(sensor);
+        return store != this.sensors && store.size() == 0;
+    }
+
+    /*
+    Closes and forgets the stores of buildings which no longer hold any
+    sensors, releasing their pools
+     */
+    private void removeEmptyStores() {
+        this.buildingStores.values().removeIf(store -> {
+            if (store.size() > 0) {
+                return false;
+            }
+            store.close();
+            this.stores.remove(store);
+            return true;
+        });
+    }
+
+    /*
+    Elapses one minute on every sensor in the manager's stores, spreading
+    the stores across several threads if there are enough sensors
+     */
+    private void elapseStores() {
+        if (this.stores.size() > 1
+                && this.independentItems.size() >= PARALLEL_THRESHOLD) {
+            this.stores.parallelStream().forEach(SensorStore::elapseOneMinute);
+        } else {
+            for (SensorStore store : this.stores) {
+                store.elapseOneMinute();
+            }
+        }
+    }
+
+    /*
+    Returns the timed items in the buildings in the order they are
+    registered when loaded, skipping unloaded floors unless told to load them
+    and skipping items already found in another room
+     */
+    private static List<TimedItem> getTimedItems(List<Building> buildings,
+            boolean loadFloors) {
+        Set<TimedItem> items =
+                Collections.newSetFromMap(new IdentityHashMap<>());
+        List<TimedItem> orderedItems = new ArrayList<>();
+        for (Building building : buildings) {
+            if (!loadFloors && !building.floorsLoaded()) {
+                continue;
+            }
+            for (Floor floor : building.getFloors()) {
+                for (Room room : floor.getRooms()) {
+                    for (Sensor sensor : room.getSensors()) {
+                        if (sensor instanceof TimedItem
+                                && items.add((TimedItem) sensor)) {
+                            orderedItems.add((TimedItem) sensor);
+                        }
+                    }
+                }
+                if (floor.getMaintenanceSchedule() != null) {
+                    orderedItems.add(floor.getMaintenanceSchedule());
+                }
+            }
+        }
+        return orderedItems;
+    }
+
+    /*
+    Adds the timed item to the list for its phase, holding it in the given
+    store if it is a timed sensor
+     */
+    private void add(TimedItem timedItem, SensorStore store) {
+        if (timedItem.isIndependent()) {
+            this.independentItems.add(timedItem);
+            if (timedItem instanceof TimedSensor) {
+                store.add((TimedSensor) timedItem);
+                SensorRegistry.register((TimedSensor) timedItem);
+            } else {
+                this.otherIndependentItems.add(timedItem);
+            }
+            if (this.changes != null) {
+                this.changes.add(new Change(timedItem, minutesElapsed));
+            }
+        } else {
+            this.dependentItems.add(timedItem);
+        }
+    }
+
+    /**
+     * Defers the registration of timed items created by the current thread.
+     * <p>
+     * Until {@link #takeDeferredRegistrations()} is called on the same
+     * thread, items passed to {@link #registerTimedItem(TimedItem)} by this
+     * thread are held back instead of being registered. This allows items
+     * created concurrently on several threads to be registered in a
+     * deterministic order, or not at all if their creation fails part way.
+     */
+    public void deferRegistrations() {
+        deferredItems.set(new ArrayList<>());
+    }
+
+    /**
+     * Stops deferring registrations on the current thread and returns the
+     * items which were held back, without registering them.
+     *
+     * @return items registered by the current thread since it called
+     *         {@link #deferRegistrations()}, in the order they were registered
+     * @throws IllegalStateException if the current thread is not deferring
+     *                               its registrations
+     */
+    public List<TimedItem> takeDeferredRegistrations() {
+        List<TimedItem> deferred = deferredItems.get();
+        if (deferred == null) {
+            throw new IllegalStateException(
+                    "Registrations are not being deferred on this thread");
+        }
+        deferredItems.remove();
+        return deferred;
     }
 
     /**
      * Calls {@code elapseOneMinute()} on each registered timed item.
+     * <p>
+     * Independent items are elapsed first, the timed sensors among them by a
+     * scan over the manager's sensor store, and every other item is elapsed
+     * afterwards, in the order it was registered.
      * @ass1
      */
     @Override
-    public void elapseOneMinute() {
-        for (TimedItem timedItem : this.timedItems) {
-            timedItem.elapseOneMinute();
+    public synchronized void elapseOneMinute() {
+        TickEvent tick = metrics.beginTick();
+        int advanced;
+        int changed = -1;
+        if (this.changes != null) {
+            // Only the items whose state changes are elapsed
+            advanced = changed = applyChanges(minutesElapsed + 1);
+        } else if (tick.isProfiled()) {
+            advanced = this.independentItems.size();
+            changed = elapseIndependentItemsProfiled();
+        } else {
+            advanced = this.independentItems.size();
+            elapseStores();
+            for (TimedItem timedItem : this.otherIndependentItems) {
+                timedItem.elapseOneMinute();
+            }
+        }
+        for (TimedItem timedItem : this.dependentItems) {
+            if (tick.isProfiled()) {
+                long start = System.nanoTime();
+                timedItem.elapseOneMinute();
+                metrics.recordItemType(timedItem.getClass(),
+                        System.nanoTime() - start, 1);
+            } else {
+                timedItem.elapseOneMinute();
+            }
+        }
+        minutesElapsed++;
+        metrics.endTick(tick, advanced + this.dependentItems.size(),
+                changed);
+    }
+
+    /**
+     * Sets whether the readings of the timed sensors registered with this
+     * manager are kept outside the heap (see
+     * {@link SensorStore#setReadingsOffHeap(boolean)}). Setting this before
+     * the sensors are registered avoids copying their readings.
+     *
+     * @param offHeap true to keep readings outside the heap, false to keep
+     *                them in the heap
+     * @throws IllegalStateException if the manager has been closed
+     */
+    public synchronized void setReadingsOffHeap(boolean offHeap) {
+        for (SensorStore store : this.stores) {
+            store.setReadingsOffHeap(offHeap);
+        }
+    }
+
+    /**
+     * Returns true if the readings of the timed sensors registered with this
+     * manager are kept outside the heap.
+     *
+     * @return true if readings are held off-heap
+     */
+    public synchronized boolean isReadingsOffHeap() {
+        return this.sensors.isReadingsOffHeap();
+    }
+
+    /**
+     * Compresses the readings of the timed sensors registered with this
+     * manager if they are kept in the heap and would take up less memory
+     * compressed (see {@link SensorStore#setReadingsCompressed(boolean)}).
+     * The readings of each store are compressed or not on their own merits.
+     *
+     * @return true if the readings of any store are now compressed
+     */
+    public synchronized boolean compressReadingsIfSmaller() {
+        boolean compressed = false;
+        for (SensorStore store : this.stores) {
+            compressed |= store.compressReadingsIfSmaller();
+        }
+        return compressed;
+    }
+
+    /**
+     * Returns the compression ratio of the readings of the timed sensors
+     * registered with this manager.
+     *
+     * @return size of the readings held as one int each, divided by their
+     *         size as held, or 1 if they are not compressed
+     * @see SensorStore#getCompressionRatio()
+     */
+    public synchronized double getReadingsCompressionRatio() {
+        long readings = 0;
+        long bytes = 0;
+        for (SensorStore store : this.stores) {
+            readings += store.getPoolSize();
+            bytes += store.getReadingsBytes();
+        }
+        return bytes == 0 ? 1 : (double) readings * Integer.BYTES / bytes;
+    }
+
+    /**
+     * Returns the number of sensors of the given buildings whose readings
+     * are shared with another sensor in their building's store, rather than
+     * held again (see {@link SensorStore#getSharedReadingsCount()}).
+     * <p>
+     * Sensors only share readings with sensors in the same store, so only
+     * buildings whose sensors are held separately are counted (see
+     * {@link #separateBuildings(List)}).
+     *
+     * @param buildings buildings whose sensors to count
+     * @return number of sensors sharing readings
+     */
+    public synchronized long getSharedReadingsCount(
+            List<Building> buildings) {
+        long shared = 0;
+        for (Building building : buildings) {
+            SensorStore store = this.buildingStores.get(building);
+            if (store != null) {
+                shared += store.getSharedReadingsCount();
+            }
+        }
+        return shared;
+    }
+
+    /**
+     * Returns the approximate number of bytes saved by the sensors of the
+     * given buildings sharing readings within their building's store (see
+     * {@link SensorStore#getSharedReadingsBytes()}).
+     *
+     * @param buildings buildings whose sensors to count
+     * @return bytes saved by sharing readings
+     * @see #getSharedReadingsCount(List)
+     */
+    public synchronized long getSharedReadingsBytes(
+            List<Building> buildings) {
+        long bytes = 0;
+        for (Building building : buildings) {
+            SensorStore store = this.buildingStores.get(building);
+            if (store != null) {
+                bytes += store.getSharedReadingsBytes();
+            }
+        }
+        return bytes;
+    }
+
+    /**
+     * Returns the number of sensor stores in which the manager holds the
+     * state of its timed sensors: one for each building whose sensors are
+     * held separately, plus one shared by every other sensor.
+     *
+     * @return number of stores
+     * @see #separateBuildings(List)
+     */
+    public synchronized int getStoreCount() {
+        return this.stores.size();
+    }
+
+    /**
+     * Closes the manager, releasing the readings of every timed sensor
+     * registered with it straight away, even those held outside the heap
+     * (see {@link SensorStore#close()}). Does nothing if the manager is
+     * already closed.
+     * <p>
+     * The manager and its sensors must not be used once it is closed, so it
+     * should be closed when its buildings are replaced by a reload or the
+     * program exits, once nothing is reading the buildings any more. Its
+     * sensors are removed from the {@link SensorRegistry}.
+     */
+    @Override
+    public synchronized void close() {
+        for (TimedItem timedItem : this.independentItems) {
+            if (timedItem instanceof TimedSensor) {
+                SensorRegistry.unregister((TimedSensor) timedItem);
+            }
+        }
+        for (SensorStore store : this.stores) {
+            store.close();
+        }
+        this.stores.clear();
+        this.stores.add(this.sensors);
+        this.buildingStores.clear();
+    }
+
+    /**
+     * Returns the metrics which measure the minutes elapsed by this manager.
+     *
+     * @return the manager's tick metrics
+     */
+    public TickMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Calls {@code elapseMinutes(minutes)} on each registered timed item,
+     * with the same result as calling {@link #elapseOneMinute()} the given
+     * number of times.
+     * <p>
+     * Items which are not independent are elapsed first, in the order they
+     * were registered, so that they can look ahead at the state independent
+     * items will have on each minute (see
+     * {@link TimedItem#elapseMinutes(long)}). Independent items are elapsed
+     * afterwards, in parallel if there are enough of them.
+     *
+     * @param minutes number of minutes to elapse
+     * @throws IllegalArgumentException if minutes is negative
+     */
+    @Override
+    public synchronized void elapseMinutes(long minutes) {
+        if (minutes < 0) {
+            throw new IllegalArgumentException(
+                    "Number of minutes must not be negative");
+        }
+        // Dependent items look ahead from the independent items' state
+        synchronise();
+        for (TimedItem timedItem : this.dependentItems) {
+            timedItem.elapseMinutes(minutes);
+        }
+        for (SensorStore store : this.stores) {
+            store.elapseMinutes(minutes);
+        }
+        for (TimedItem timedItem : this.otherIndependentItems) {
+            timedItem.elapseMinutes(minutes);
+        }
+        minutesElapsed += minutes;
+        if (this.changes != null) {
+            scheduleChanges();
+        }
+    }
+
+    /**
+     * Makes the manager event driven or not.
+     * <p>
+     * An event driven manager keeps its independent items in a priority
+     * queue ordered by the minute on which each item's state next changes,
+     * and on each minute only elapses the items whose state changes on it.
+     * Items which are not independent are still elapsed every minute. To an
+     * observer of the items' readings and room states, this gives the same
+     * results as elapsing every item each minute, with much less work when
+     * most sensors' readings do not change from one minute to the next.
+     *
+     * @param eventDriven true to only elapse independent items when their
+     *                    state changes, false to elapse them every minute
+     */
+    public synchronized void setEventDriven(boolean eventDriven) {
+        if (eventDriven && this.changes == null) {
+            scheduleChanges();
+        } else if (!eventDriven && this.changes != null) {
+            synchronise();
+            this.changes = null;
+        }
+    }
+
+    /**
+     * Returns true if the manager is event driven.
+     *
+     * @return true if independent items are only elapsed when their state
+     *         changes
+     * @see #setEventDriven(boolean)
+     */
+    public synchronized boolean isEventDriven() {
+        return this.changes != null;
+    }
+
+    /**
+     * Brings every independent item of an event driven manager up to date,
+     * by elapsing the minutes which have passed since the item's state last
+     * changed. Afterwards, every counter of the items, and not just their
+     * observable state, is the same as if they had been elapsed every
+     * minute.
+     * <p>
+     * This does nothing if the manager is not event driven.
+     */
+    public synchronized void synchronise() {
+        if (this.changes == null) {
+            return;
+        }
+        for (Change change : this.changes) {
+            change.item.elapseMinutes(minutesElapsed - change.updatedMinute);
+            change.updatedMinute = minutesElapsed;
+        }
+    }
+
+    /*
+    Removes the pending changes of the items which match the given test,
+    bringing the items up to date first
+     */
+    private void removeChanges(Predicate<TimedItem> test) {
+        if (this.changes == null) {
+            return;
+        }
+        this.changes.removeIf(change -> {
+            if (!test.test(change.item)) {
+                return false;
+            }
+            change.item.elapseMinutes(minutesElapsed - change.updatedMinute);
+            return true;
+        });
+    }
+
+    /*
+    Queues the next change of every independent item, all of which must be
+    up to date
+     */
+    private void scheduleChanges() {
+        List<Change> pending = new ArrayList<>(this.independentItems.size());
+        for (TimedItem timedItem : this.independentItems) {
+            pending.add(new Change(timedItem, minutesElapsed));
+        }
+        this.changes = new PriorityQueue<>(pending);
+    }
+
+    /*
+    Elapses each independent item whose state changes on or before the given
+    minute up to that minute, queues its next change, and returns the number
+    of items elapsed
+     */
+    private int applyChanges(long minute) {
+        int applied = 0;
+        while (!this.changes.isEmpty()
+                && this.changes.peek().changeMinute <= minute) {
+            Change change = this.changes.poll();
+            change.item.elapseMinutes(minute - change.updatedMinute);
+            change.updatedMinute = minute;
+            change.scheduleNext();
+            this.changes.add(change);
+            applied++;
+        }
+        return applied;
+    }
+
+    /**
+     * Elapses the given number of minutes on each of the given timed items,
+     * which need not be registered, in the same way that
+     * {@link #elapseMinutes(long)} elapses registered items.
+     *
+     * @param items timed items to elapse
+     * @param minutes number of minutes to elapse
+     * @throws IllegalArgumentException if minutes is negative
+     */
+    public static void elapseMinutes(List<TimedItem> items, long minutes) {
+        if (minutes < 0) {
+            throw new IllegalArgumentException(
+                    "Number of minutes must not be negative");
+        }
+        for (TimedItem timedItem : items) {
+            if (!timedItem.isIndependent()) {
+                timedItem.elapseMinutes(minutes);
+            }
+        }
+        for (TimedItem timedItem : items) {
+            if (timedItem.isIndependent()) {
+                timedItem.elapseMinutes(minutes);
+            }
+        }
+    }
+
+    /*
+    Elapses one minute on every independent item on this thread, timing the
+    items of each type separately, and returns the number of sensors whose
+    reading changed
+     */
+    private int elapseIndependentItemsProfiled() {
+        Map<Class<?>, List<TimedItem>> itemsByType = new LinkedHashMap<>();
+        for (TimedItem timedItem : this.independentItems) {
+            itemsByType.computeIfAbsent(timedItem.getClass(),
+                    type -> new ArrayList<>()).add(timedItem);
+        }
+        int changed = 0;
+        for (Map.Entry<Class<?>, List<TimedItem>> items
+                : itemsByType.entrySet()) {
+            long start = System.nanoTime();
+            for (TimedItem timedItem : items.getValue()) {
+                if (timedItem instanceof Sensor) {
+                    Sensor sensor = (Sensor) timedItem;
+                    int reading = sensor.getCurrentReading();
+                    timedItem.elapseOneMinute();
+                    if (sensor.getCurrentReading() != reading) {
+                        changed++;
+                    }
+                } else {
+                    timedItem.elapseOneMinute();
+                }
+            }
+            metrics.recordItemType(items.getKey(), System.nanoTime() - start,
+                    items.getValue().size());
+        }
+        return changed;
+    }
+
+    /**
+     * Returns the number of minutes which have elapsed since the manager was
+     * created, ie. the number of times {@link #elapseOneMinute()} has been
+     * called.
+     *
+     * @return number of minutes elapsed
+     */
+    public synchronized long getMinutesElapsed() {
+        return minutesElapsed;
+    }
+
+    /*
+    The next change of state of an independent item
+     */
+    private static final class Change implements Comparable<Change> {
+
+        private final TimedItem item;
+        private long updatedMinute;
+        private long changeMinute;
+
+        private Change(TimedItem item, long updatedMinute) {
+            this.item = item;
+            this.updatedMinute = updatedMinute;
+            scheduleNext();
+        }
+
+        private void scheduleNext() {
+            long minutes = item.getMinutesUntilChange();
+            changeMinute = minutes >= Long.MAX_VALUE - updatedMinute
+                    ? Long.MAX_VALUE : updatedMinute + minutes;
+        }
+
+        @Override
+        public int compareTo(Change other) {
+            return Long.compare(changeMinute, other.changeMinute);
         }
     }
 }
@@ -0,0 +1,82 @@
+package bms.building;
+
+import bms.exceptions.FileFormatException;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class BinaryCodecTest {
+
+    private List<Building> buildingList;
+
+    @Before
+    public void setup() throws IOException, FileFormatException {
+        buildingList = BuildingInitialiser.loadBuildings("saves/uqstlucia.txt");
+    }
+
+    @Test
+    public void testRoundTrip() throws FileFormatException {
+        byte[] encoded = BinaryCodec.encode(buildingList);
+        List<Building> decoded = BinaryCodec.decode(ByteBuffer.wrap(encoded));
+        assertEquals(buildingList, decoded);
+        for (int i = 0; i < buildingList.size(); i++) {
+            assertEquals(buildingList.get(i).encode(),
+                    decoded.get(i).encode());
+        }
+        assertArrayEquals(encoded, BinaryCodec.encode(decoded));
+    }
+
+    @Test
+    public void testSaveAndLoad() throws IOException, FileFormatException {
+        File file = File.createTempFile("buildings",
+                BinaryCodec.FILE_EXTENSION);
+        file.deleteOnExit();
+        BinaryCodec.save(buildingList, file.getPath());
+
+        assertTrue(BinaryCodec.isBinaryFile(file.getPath()));
+        assertEquals(buildingList,
+                BuildingInitialiser.loadBuildings(file.getPath()));
+        assertEquals(buildingList,
+                BuildingInitialiser.loadBuildingsMapped(file.getPath()));
+    }
+
+    @Test
+    public void testTextIsNotBinary() throws IOException {
+        assertFalse(BinaryCodec.isBinaryFile("saves/uqstlucia.txt"));
+        assertFalse(BinaryCodec.isBinary(ByteBuffer.wrap(
+                "General Purpose South".getBytes(StandardCharsets.UTF_8))));
+    }
+
+    @Test(expected = FileFormatException.class)
+    public void testTruncated() throws FileFormatException {
+        byte[] encoded = BinaryCodec.encode(buildingList);
+        BinaryCodec.decode(ByteBuffer.wrap(
+                Arrays.copyOf(encoded, encoded.length - 1)));
+    }
+
+    @Test(expected = FileFormatException.class)
+    public void testTrailingBytes() throws FileFormatException {
+        byte[] encoded = BinaryCodec.encode(buildingList);
+        BinaryCodec.decode(ByteBuffer.wrap(
+                Arrays.copyOf(encoded, encoded.length + 1)));
+    }
+
+    @Test(expected = FileFormatException.class)
+    public void testCorruptReadingCount() throws FileFormatException {
+        // A noise sensor claiming 2^31 - 1 readings, with none following
+        byte[] bytes = {1, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF,
+                0x07};
+        BinaryCodec.readSensor(new BinaryCodec.Input(bytes, 0, bytes.length));
+    }
+}
@@ -14,12 +14,17 @@ import bms.sensors.TemperatureSensor;
 import org.junit.Before;
 import org.junit.Test;
 
+import java.io.File;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.util.ArrayList;
 import java.util.List;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 public class BuildingInitialiserTest {
 
@@ -77,6 +82,189 @@ public class BuildingInitialiserTest {
         assertTrue(buildingList.size() == 3);
     }
 
+    @Test
+    public void testLoadStatistics() throws IOException, FileFormatException {
+        BuildingInitialiser.loadBuildings("saves/uqstlucia.txt");
+        LoadStatistics stats = BuildingInitialiser.getLastLoadStatistics();
+        assertTrue(stats.getLineCount() > 0);
+        assertTrue(stats.getByteCount() >= stats.getLineCount());
+        assertTrue(stats.getElapsedNanos() > 0);
+        assertTrue(stats.getReadingCompressionRatio() >= 1);
+    }
+
+    @Test
+    public void testIdenticalReadingsShared() throws Exception {
+        Building building = new Building("Repeated Readings");
+        Floor floor = new Floor(1, 10, 10);
+        building.addFloor(floor);
+        int roomCount = 4;
+        for (int i = 1; i <= roomCount; i++) {
+            Room room = new Room(i, RoomType.OFFICE, 20);
+            floor.addRoom(room);
+            room.addSensor(new NoiseSensor(new int[]{50, 60, 70, 80}, 2));
+        }
+        List<Building> repeated = List.of(building);
+        File file = File.createTempFile("repeated", ".txt");
+        file.deleteOnExit();
+        BuildingInitialiser.saveBuildings(repeated, file.getPath());
+
+        assertEquals(repeated,
+                BuildingInitialiser.loadBuildings(file.getPath()));
+        LoadStatistics stats = BuildingInitialiser.getLastLoadStatistics();
+        // Every sensor after the first shares its readings in the
+        // building's store
+        assertEquals(roomCount - 1, stats.getSharedReadingArrays());
+        assertTrue(stats.getReadingBytesSaved() > 0);
+    }
+
+    @Test
+    public void testLoadMapped() throws IOException, FileFormatException {
+        List<Building> mapped =
+                BuildingInitialiser.loadBuildingsMapped("saves/uqstlucia.txt");
+        assertEquals(buildingList, mapped);
+        for (int i = 0; i < buildingList.size(); i++) {
+            assertEquals(buildingList.get(i).encode(), mapped.get(i).encode());
+        }
+    }
+
+    @Test
+    public void testNonAsciiName() throws IOException, FileFormatException {
+        String name = "B\u00e2timent \u03a9";
+        File file = File.createTempFile("named", ".txt");
+        file.deleteOnExit();
+        BuildingInitialiser.saveBuildings(List.of(new Building(name)),
+                file.getPath());
+        // Saved in UTF-8 and read back the same way by every loader,
+        // whatever the platform's default character set
+        assertTrue(new String(Files.readAllBytes(file.toPath()),
+                StandardCharsets.UTF_8).startsWith(name));
+        assertEquals(name, BuildingInitialiser.loadBuildings(file.getPath())
+                .get(0).getName());
+        assertEquals(name, BuildingInitialiser
+                .loadBuildingsMapped(file.getPath()).get(0).getName());
+    }
+
+    @Test(expected = FileFormatException.class)
+    public void testLoadMappedEmptyLine() throws IOException,
+            FileFormatException {
+        BuildingInitialiser.loadBuildingsMapped("saves/46EmptyLine.txt");
+    }
+
+    @Test(expected = FileFormatException.class)
+    public void testLoadMappedNumericParse() throws IOException,
+            FileFormatException {
+        BuildingInitialiser.loadBuildingsMapped("saves/45NumericParse.txt");
+    }
+
+    @Test
+    public void testLoadParallel() throws IOException, FileFormatException {
+        List<Building> parallel = BuildingInitialiser.loadBuildingsParallel(
+                "saves/uqstlucia.txt");
+        assertEquals(buildingList, parallel);
+        for (int i = 0; i < buildingList.size(); i++) {
+            assertEquals(buildingList.get(i).getName(),
+                    parallel.get(i).getName());
+            assertEquals(buildingList.get(i).encode(),
+                    parallel.get(i).encode());
+        }
+    }
+
+    @Test(expected = FileFormatException.class)
+    public void testLoadParallelBadSensorNum() throws IOException,
+            FileFormatException {
+        BuildingInitialiser.loadBuildingsParallel(
+                "saves/6BadSensorNumNotEnough.txt");
+    }
+
+    @Test
+    public void testLoadLazy() throws IOException, FileFormatException {
+        List<Building> lazy = BuildingInitialiser.loadBuildingsLazy(
+                "saves/uqstlucia.txt");
+        assertEquals(buildingList.size(), lazy.size());
+        for (int i = 0; i < buildingList.size(); i++) {
+            assertEquals(buildingList.get(i).getName(), lazy.get(i).getName());
+            assertFalse(lazy.get(i).floorsLoaded());
+        }
+        for (int i = 0; i < buildingList.size(); i++) {
+            assertEquals(buildingList.get(i).encode(), lazy.get(i).encode());
+            assertTrue(lazy.get(i).floorsLoaded());
+        }
+    }
+
+    @Test
+    public void testEncodeToMatchesEncode() throws IOException {
+        for (Building building : buildingList) {
+            StringBuilder output = new StringBuilder();
+            building.encodeTo(output);
+            assertEquals(building.encode(), output.toString());
+        }
+    }
+
+    @Test
+    public void testSaveCapturedBuildings()
+            throws IOException, FileFormatException {
+        byte[] capture = BinaryCodec.encode(buildingList);
+        // Changes after the capture must not be saved
+        buildingList.add(new Building("Added After Capture"));
+
+        File captured = File.createTempFile("captured", ".txt");
+        File direct = File.createTempFile("direct", ".txt");
+        captured.deleteOnExit();
+        direct.deleteOnExit();
+        List<Double> progress = new ArrayList<>();
+        BuildingInitialiser.saveCapturedBuildings(capture, captured.getPath(),
+                progress::add);
+        buildingList.remove(buildingList.size() - 1);
+        BuildingInitialiser.saveBuildings(buildingList, direct.getPath());
+
+        assertEquals(Files.readString(direct.toPath()),
+                Files.readString(captured.toPath()));
+        assertEquals(1.0, progress.get(progress.size() - 1), 0);
+    }
+
+    @Test
+    public void testInterruptedSaveKeepsFile()
+            throws IOException, FileFormatException {
+        File file = File.createTempFile("interrupted", ".txt");
+        file.deleteOnExit();
+        Files.writeString(file.toPath(), "previous");
+        byte[] capture = BinaryCodec.encode(buildingList);
+        try {
+            // Stops the save once part of the file has been written
+            BuildingInitialiser.saveCapturedBuildings(capture, file.getPath(),
+                    fraction -> {
+                        if (fraction > 0 && fraction < 1) {
+                            throw new IllegalStateException("Interrupted");
+                        }
+                    });
+            fail("The save should have been interrupted");
+        } catch (IllegalStateException expected) {
+            // The previous file is left as it was
+        }
+        assertEquals("previous", Files.readString(file.toPath()));
+        assertFalse(new File(file.getPath() + ".tmp").exists());
+    }
+
+    @Test
+    public void testSaveAndLoadCompressed()
+            throws IOException, FileFormatException {
+        for (String extension : new String[] {".txt.gz", ".txt.deflate",
+                ".bms.gz", ".bms.deflate"}) {
+            File file = File.createTempFile("compressed", extension);
+            file.deleteOnExit();
+            BuildingInitialiser.saveBuildings(buildingList, file.getPath());
+
+            assertEquals(Compression.forFilename(extension),
+                    Compression.detectFile(file.getPath()));
+            assertEquals(buildingList,
+                    BuildingInitialiser.loadBuildings(file.getPath()));
+            assertEquals(buildingList,
+                    BuildingInitialiser.loadBuildingsMapped(file.getPath()));
+            assertEquals(buildingList,
+                    BuildingInitialiser.loadBuildingsLazy(file.getPath()));
+        }
+    }
+
     @Test
     public void testBuildingsInstance() {
         assertTrue(building1 instanceof Building);
@@ -0,0 +1,45 @@
+package bms.building;
+
+import bms.floor.Floor;
+import bms.room.Room;
+import bms.sensors.Sensor;
+import bms.sensors.TimedSensor;
+
+import java.util.List;
+
+/**
+ * Describes the simulated state of buildings for tests which compare two
+ * simulations, as {@link Building#encode()} and {@link Building#equals}
+ * leave out the state which changes as minutes elapse.
+ */
+public final class BuildingStates {
+
+    private BuildingStates() {
+    }
+
+    /**
+     * Returns a description of the state of every room in the given
+     * buildings: the room's state, and the current reading and time elapsed
+     * of each of its sensors, along with each floor's maintenance schedule.
+     *
+     * @param buildings buildings to describe
+     * @return description which is equal for buildings in the same state
+     */
+    public static String describe(List<Building> buildings) {
+        StringBuilder state = new StringBuilder();
+        for (Building building : buildings) {
+            for (Floor floor : building.getFloors()) {
+                for (Room room : floor.getRooms()) {
+                    state.append(room.evaluateRoomState()).append(':');
+                    for (Sensor sensor : room.getSensors()) {
+                        state.append(sensor.getCurrentReading()).append('/')
+                                .append(((TimedSensor) sensor)
+                                        .getTimeElapsed()).append(',');
+                    }
+                }
+                state.append(floor.getMaintenanceSchedule()).append('\n');
+            }
+        }
+        return state.toString();
+    }
+}
@@ -7,6 +7,12 @@ import bms.room.RoomType;
 import org.junit.Before;
 import org.junit.Test;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
 import static org.junit.Assert.*;
 
 public class BuildingTest {
@@ -103,6 +109,47 @@ public class BuildingTest {
         assertFalse(buildingGood.hashCode() == (buildingBad.hashCode()));
     }
 
+    @Test
+    public void testConcurrentFirstAccess() throws InterruptedException {
+        AtomicInteger loads = new AtomicInteger();
+        Building lazy = new Building("Lazy", () -> {
+            loads.incrementAndGet();
+            try {
+                // Gives the other threads time to reach the loader
+                Thread.sleep(50);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return List.of(new Floor(1, 20, 20), new Floor(2, 20, 20));
+        });
+        CountDownLatch start = new CountDownLatch(1);
+        List<Integer> results = new CopyOnWriteArrayList<>();
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < 8; ++i) {
+            boolean byNumber = i % 2 == 0;
+            Thread thread = new Thread(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                // Either way, 2 once both floors are loaded
+                results.add(byNumber
+                        ? lazy.getFloorByNumber(2).getFloorNumber()
+                        : lazy.getFloors().size());
+            });
+            threads.add(thread);
+            thread.start();
+        }
+        start.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertEquals(1, loads.get());
+        assertEquals(List.of(2, 2, 2, 2, 2, 2, 2, 2), results);
+        assertEquals(2, lazy.getFloors().size());
+    }
+
 
 
 
@@ -0,0 +1,176 @@
+package bms.building;
+
+import bms.room.RoomType;
+import bms.util.TimedItemManager;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static bms.building.BuildingStates.describe;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class CheckpointHistoryTest {
+
+    private TimedItemManager manager;
+    private List<Building> buildingList;
+
+    @Before
+    public void setup() throws Exception {
+        manager = new TimedItemManager();
+        TimedItemManager previous = TimedItemManager.setCurrent(manager);
+        try {
+            buildingList =
+                    BuildingInitialiser.loadBuildings("saves/uqstlucia.txt");
+        } finally {
+            TimedItemManager.setCurrent(previous);
+        }
+    }
+
+    /*
+    Runs the simulation for the given number of minutes, starting a fire
+    drill part way through and cancelling it later, and returns the state of
+    the buildings at each minute
+     */
+    private List<String> run(CheckpointHistory history, int minutes)
+            throws Exception {
+        List<String> states = new ArrayList<>();
+        history.reset(0);
+        states.add(describe(buildingList));
+        for (int minute = 1; minute <= minutes; minute++) {
+            manager.elapseOneMinute();
+            history.record(minute);
+            if (minute == 37) {
+                buildingList.get(0).fireDrill(RoomType.OFFICE);
+                history.recordChange(minute);
+            } else if (minute == 81) {
+                buildingList.get(0).cancelFireDrill();
+                history.recordChange(minute);
+            }
+            states.add(describe(buildingList));
+        }
+        return states;
+    }
+
+    @Test
+    public void testSeekRebuildsEveryMinute() throws Exception {
+        CheckpointHistory history =
+                new CheckpointHistory(buildingList, manager, 10, 1 << 20);
+        List<String> states = run(history, 200);
+        assertEquals(0, history.getEarliestMinute());
+        assertEquals(200, history.getLatestMinute());
+        for (int minute = 200; minute >= 0; minute -= 7) {
+            history.seek(minute);
+            assertEquals(states.get(minute), describe(buildingList));
+        }
+        // Minutes after the one sought to are kept until time moves on
+        history.seek(150);
+        assertEquals(states.get(150), describe(buildingList));
+    }
+
+    @Test
+    public void testMemoryBounded() throws Exception {
+        CheckpointHistory history =
+                new CheckpointHistory(buildingList, manager, 1, 0);
+        history.reset(0);
+        long checkpointSize = history.getMemoryUsed();
+        history.setMemoryLimit(checkpointSize * 8);
+        List<String> states = run(history, 300);
+
+        assertTrue(history.getMemoryUsed() <= checkpointSize * 8);
+        assertTrue(history.getInterval() > 1);
+        // Thinning keeps the start of the history, and the fire drill's
+        // checkpoints, while periodic checkpoints remain
+        assertEquals(0, history.getEarliestMinute());
+        for (int minute = 0; minute <= 300; minute += 13) {
+            history.seek(minute);
+            assertEquals(states.get(minute), describe(buildingList));
+        }
+    }
+
+    @Test
+    public void testOldestDroppedWhenNothingToThin() throws Exception {
+        CheckpointHistory history =
+                new CheckpointHistory(buildingList, manager, 1, 0);
+        run(history, 100);
+        assertEquals(1, history.getCheckpointCount());
+        assertEquals(100, history.getEarliestMinute());
+        history.seek(100);
+    }
+
+    @Test
+    public void testCarryingOnForgetsLaterMinutes() throws Exception {
+        CheckpointHistory history =
+                new CheckpointHistory(buildingList, manager, 10, 1 << 20);
+        List<String> states = run(history, 60);
+        history.seek(20);
+        manager.elapseOneMinute();
+        history.record(21);
+        assertEquals(21, history.getLatestMinute());
+        assertEquals(states.get(21), describe(buildingList));
+        history.seek(21);
+        assertEquals(states.get(21), describe(buildingList));
+    }
+
+    @Test
+    public void testSeekLeavesBuildingsLoadedSinceCheckpoint()
+            throws Exception {
+        manager = new TimedItemManager();
+        TimedItemManager previous = TimedItemManager.setCurrent(manager);
+        List<Building> lazy;
+        try {
+            lazy = BuildingInitialiser.loadBuildingsLazy(
+                    "saves/uqstlucia.txt");
+        } finally {
+            TimedItemManager.setCurrent(previous);
+        }
+        List<Building> first = lazy.subList(0, 1);
+        List<Building> later = lazy.subList(1, 2);
+        CheckpointHistory history =
+                new CheckpointHistory(lazy, manager, 10, 1 << 20);
+        // Loads the first building's floors before the history starts
+        List<String> states = new ArrayList<>();
+        states.add(describe(first));
+        history.reset(0);
+        List<String> laterStates = new ArrayList<>();
+        for (int minute = 1; minute <= 60; minute++) {
+            manager.elapseOneMinute();
+            history.record(minute);
+            states.add(describe(first));
+            // The second building's floors are loaded part way through
+            laterStates.add(minute < 35 ? null : describe(later));
+        }
+        String laterState = describe(later);
+
+        for (int minute : new int[] {25, 12, 34}) {
+            history.seek(minute);
+            assertEquals(states.get(minute), describe(first));
+            assertEquals(laterState, describe(later));
+            assertEquals(60, manager.getMinutesElapsed());
+        }
+        // Checkpoints taken since it was loaded record the second building
+        history.seek(50);
+        assertEquals(states.get(50), describe(first));
+        assertEquals(laterStates.get(49), describe(later));
+        assertEquals(60, manager.getMinutesElapsed());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testSeekPastLatest() throws Exception {
+        CheckpointHistory history =
+                new CheckpointHistory(buildingList, manager);
+        run(history, 5);
+        history.seek(6);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testSeekBeforeReset() throws Exception {
+        CheckpointHistory history =
+                new CheckpointHistory(buildingList, manager);
+        run(history, 5);
+        history.reset(5);
+        history.seek(4);
+    }
+}
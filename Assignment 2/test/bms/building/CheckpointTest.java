@@ -0,0 +1,115 @@
+package bms.building;
+
+import bms.exceptions.FileFormatException;
+import bms.room.RoomType;
+import bms.util.TimedItemManager;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.List;
+
+import static bms.building.BuildingStates.describe;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class CheckpointTest {
+
+    private TimedItemManager manager;
+    private TimedItemManager restoredManager;
+    private List<Building> buildingList;
+    private File file;
+
+    @Before
+    public void setup() throws Exception {
+        manager = new TimedItemManager();
+        restoredManager = new TimedItemManager();
+        TimedItemManager previous = TimedItemManager.setCurrent(manager);
+        try {
+            buildingList =
+                    BuildingInitialiser.loadBuildings("saves/uqstlucia.txt");
+        } finally {
+            TimedItemManager.setCurrent(previous);
+        }
+        manager.elapseMinutes(1234);
+        buildingList.get(0).fireDrill(RoomType.OFFICE);
+        manager.elapseMinutes(5);
+        file = File.createTempFile("simulation", Checkpoint.FILE_EXTENSION);
+    }
+
+    @After
+    public void tearDown() {
+        file.delete();
+    }
+
+    private Checkpoint restore(byte[] bytes) throws FileFormatException {
+        TimedItemManager previous =
+                TimedItemManager.setCurrent(restoredManager);
+        try {
+            return Checkpoint.decode(ByteBuffer.wrap(bytes));
+        } finally {
+            TimedItemManager.setCurrent(previous);
+        }
+    }
+
+    @Test
+    public void testRestore() throws FileFormatException {
+        Checkpoint restored =
+                restore(new Checkpoint(buildingList, 1239).encode());
+        assertEquals(1239, restored.getMinutesElapsed());
+        assertEquals(buildingList, restored.getBuildings());
+        assertEquals(describe(buildingList),
+                describe(restored.getBuildings()));
+        assertEquals(manager.getTimedItemCount(),
+                restoredManager.getTimedItemCount());
+
+        // The restored simulation carries on exactly as the original does
+        manager.elapseMinutes(100);
+        restoredManager.elapseMinutes(100);
+        for (int i = 0; i < 20; i++) {
+            manager.elapseOneMinute();
+            restoredManager.elapseOneMinute();
+        }
+        assertEquals(describe(buildingList),
+                describe(restored.getBuildings()));
+    }
+
+    @Test
+    public void testSaveAndLoad() throws IOException, FileFormatException {
+        new Checkpoint(buildingList, 1239).save(file.getPath());
+        assertTrue(Checkpoint.isCheckpointFile(file.getPath()));
+        assertFalse(Checkpoint.isCheckpointFile("saves/uqstlucia.txt"));
+        Checkpoint loaded = Checkpoint.load(file.getPath());
+        assertEquals(describe(buildingList), describe(loaded.getBuildings()));
+    }
+
+    @Test
+    public void testSaveEncoded() throws IOException, FileFormatException {
+        byte[] capture = new Checkpoint(buildingList, 1239).encode();
+        String state = describe(buildingList);
+        // Changes after the capture are not saved
+        manager.elapseMinutes(7);
+        Checkpoint.save(capture, file.getPath());
+        assertFalse(new File(file.getPath() + ".tmp").exists());
+        Checkpoint loaded = Checkpoint.load(file.getPath());
+        assertEquals(1239, loaded.getMinutesElapsed());
+        assertEquals(state, describe(loaded.getBuildings()));
+    }
+
+    @Test(expected = FileFormatException.class)
+    public void testTruncated() throws FileFormatException {
+        byte[] bytes = new Checkpoint(buildingList, 1239).encode();
+        byte[] truncated = new byte[bytes.length - 1];
+        System.arraycopy(bytes, 0, truncated, 0, truncated.length);
+        restore(truncated);
+    }
+
+    @Test(expected = FileFormatException.class)
+    public void testNotCheckpoint() throws FileFormatException {
+        restore(BinaryCodec.encode(buildingList));
+    }
+}
@@ -0,0 +1,165 @@
+package bms.building;
+
+import bms.exceptions.FileFormatException;
+import bms.floor.Floor;
+import bms.room.Room;
+import bms.room.RoomType;
+import bms.sensors.NoiseSensor;
+import bms.sensors.Sensor;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class MutationJournalTest {
+
+    private File snapshot;
+    private File journalFile;
+    private List<Building> buildingList;
+
+    @Before
+    public void setup() throws IOException, FileFormatException {
+        buildingList = BuildingInitialiser.loadBuildings("saves/uqstlucia.txt");
+        snapshot = File.createTempFile("buildings", ".txt");
+        journalFile = new File(snapshot.getPath()
+                + MutationJournal.FILE_EXTENSION);
+        BuildingInitialiser.saveBuildings(buildingList, snapshot.getPath());
+    }
+
+    @After
+    public void tearDown() {
+        snapshot.delete();
+        journalFile.delete();
+    }
+
+    private List<Building> reopen() throws IOException, FileFormatException {
+        List<Building> buildings =
+                BuildingInitialiser.loadBuildings(snapshot.getPath());
+        MutationJournal.open(snapshot.getPath(), buildings).close();
+        return buildings;
+    }
+
+    private void makeChanges(MutationJournal journal) throws Exception {
+        Building building = buildingList.get(0);
+        Floor top = building.getFloors().get(building.getFloors().size() - 1);
+        Floor floor = new Floor(top.getFloorNumber() + 1, top.getWidth(),
+                top.getLength());
+        building.addFloor(floor);
+        journal.recordAddFloor(0, floor);
+
+        Room room = new Room(999, RoomType.OFFICE, 10);
+        floor.addRoom(room);
+        journal.recordAddRoom(0, floor.getFloorNumber(), room);
+
+        Sensor sensor = new NoiseSensor(new int[]{50, 60, 70}, 2);
+        room.addSensor(sensor);
+        journal.recordAddSensor(0, floor.getFloorNumber(), 999, sensor);
+
+        Building newBuilding = new Building("Journalled Building");
+        buildingList.add(newBuilding);
+        journal.recordAddBuilding(newBuilding);
+    }
+
+    @Test
+    public void testReplay() throws Exception {
+        try (MutationJournal journal = MutationJournal.open(
+                snapshot.getPath(), buildingList)) {
+            makeChanges(journal);
+            assertEquals(4, journal.getRecordCount());
+        }
+        List<Building> replayed = reopen();
+        assertEquals(buildingList, replayed);
+        for (int i = 0; i < buildingList.size(); i++) {
+            assertEquals(buildingList.get(i).encode(),
+                    replayed.get(i).encode());
+        }
+    }
+
+    @Test
+    public void testTornRecord() throws Exception {
+        try (MutationJournal journal = MutationJournal.open(
+                snapshot.getPath(), buildingList)) {
+            makeChanges(journal);
+        }
+        // Cut the final record short, as if the program crashed mid-write
+        try (FileChannel channel = FileChannel.open(journalFile.toPath(),
+                StandardOpenOption.WRITE)) {
+            channel.truncate(channel.size() - 1);
+        }
+        List<Building> replayed = reopen();
+        assertEquals(buildingList.size() - 1, replayed.size());
+        assertEquals(buildingList.get(0).encode(), replayed.get(0).encode());
+    }
+
+    @Test
+    public void testCompact() throws Exception {
+        try (MutationJournal journal = MutationJournal.open(
+                snapshot.getPath(), buildingList)) {
+            makeChanges(journal);
+            journal.compact(buildingList);
+            assertEquals(0, journal.getRecordCount());
+        }
+        assertEquals(buildingList,
+                BuildingInitialiser.loadBuildings(snapshot.getPath()));
+        assertEquals(buildingList, reopen());
+    }
+
+    @Test
+    public void testCompactOvertakenCapture() throws Exception {
+        try (MutationJournal journal = MutationJournal.open(
+                snapshot.getPath(), buildingList)) {
+            MutationJournal.Capture capture = journal.capture(buildingList);
+            makeChanges(journal);
+            // The capture does not contain the changes, so is dropped
+            assertFalse(journal.compact(capture));
+            assertEquals(4, journal.getRecordCount());
+            assertTrue(journal.compact(journal.capture(buildingList)));
+            assertEquals(0, journal.getRecordCount());
+        }
+        assertFalse(new File(snapshot.getPath() + ".tmp").exists());
+        assertEquals(buildingList,
+                BuildingInitialiser.loadBuildings(snapshot.getPath()));
+        assertEquals(buildingList, reopen());
+    }
+
+    @Test
+    public void testCompactKeepsCompression() throws Exception {
+        File compressed = new File(snapshot.getPath() + ".gz");
+        compressed.deleteOnExit();
+        new File(compressed.getPath() + MutationJournal.FILE_EXTENSION)
+                .deleteOnExit();
+        BuildingInitialiser.saveBuildings(buildingList, compressed.getPath());
+        try (MutationJournal journal = MutationJournal.open(
+                compressed.getPath(), buildingList)) {
+            makeChanges(journal);
+            journal.compact(buildingList);
+        }
+        assertEquals(Compression.GZIP,
+                Compression.detectFile(compressed.getPath()));
+        assertEquals(buildingList,
+                BuildingInitialiser.loadBuildings(compressed.getPath()));
+    }
+
+    @Test
+    public void testStaleJournalDiscarded() throws Exception {
+        List<Building> original =
+                BuildingInitialiser.loadBuildings(snapshot.getPath());
+        try (MutationJournal journal = MutationJournal.open(
+                snapshot.getPath(), buildingList)) {
+            makeChanges(journal);
+        }
+        // Overwrite the snapshot without emptying the journal
+        original.remove(original.size() - 1);
+        BuildingInitialiser.saveBuildings(original, snapshot.getPath());
+        assertEquals(original, reopen());
+    }
+}
@@ -119,6 +119,49 @@ public class MaintenanceScheduleTest {
         assertEquals(room3, ms.getCurrentRoom());
     }
 
+    @Test
+    public void testElapseMinutesPausesForFire() {
+        // room1's temperature sensor reads 85 degrees on minutes 3, 7 and 11
+        ms.elapseMinutes(13);
+        assertEquals(room1, ms.getCurrentRoom());
+        assertEquals(10, ms.getTimeElapsedCurrentRoom());
+        // Another fire on minute 15, then room1 is finished on minute 17
+        ((TimedSensor) sensor1).elapseMinutes(13);
+        ms.elapseMinutes(4);
+        assertEquals(room3, ms.getCurrentRoom());
+        assertEquals(1, ms.getTimeElapsedCurrentRoom());
+    }
+
+    @Test
+    public void testElapseMinutesSkipsCycles() {
+        ms.skipCurrentMaintenance();
+        room1.setFireDrill(false);
+        Room room5 = new Room(5, RoomType.STUDY, 15.6);
+        List<Room> order = new ArrayList<>();
+        order.add(room3);
+        order.add(room5);
+        MaintenanceSchedule schedule = new MaintenanceSchedule(order);
+        // 19 minutes for room3 and 7 for room5, repeated many times
+        schedule.elapseMinutes(26L * 1000000 + 20);
+        assertEquals(room5, schedule.getCurrentRoom());
+        assertEquals(1, schedule.getTimeElapsedCurrentRoom());
+    }
+
+    @Test
+    public void testElapseMinutesDuringFireDrill() {
+        ms.skipCurrentMaintenance();
+        ms.skipCurrentMaintenance();
+        ms.skipCurrentMaintenance();
+        ms.elapseMinutes(1000);
+        assertEquals(room4, ms.getCurrentRoom());
+        assertEquals(0, ms.getTimeElapsedCurrentRoom());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testElapseNegativeMinutes() {
+        ms.elapseMinutes(-1);
+    }
+
     @Test
     public void testSkipCurrentMaintenance() {
         assertEquals(room1, ms.getCurrentRoom());
@@ -0,0 +1,103 @@
+package bms.sensors;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ReadingPoolTest {
+
+    private static int[] randomReadings(int count, int bound, long seed) {
+        Random random = new Random(seed);
+        int[] readings = new int[count];
+        for (int i = 0; i < count; ++i) {
+            readings[i] = random.nextInt(bound);
+        }
+        return readings;
+    }
+
+    private static void assertHolds(int[] expected, ReadingPool pool) {
+        assertEquals(expected.length, pool.size());
+        for (int i = 0; i < expected.length; ++i) {
+            assertEquals(expected[i], pool.get(i));
+        }
+        assertArrayEquals(expected, pool.copyOf(0, expected.length));
+    }
+
+    @Test
+    public void testWrap() {
+        int[] readings = {3, 1, 4};
+        ReadingPool pool = ReadingPool.wrap(readings);
+        assertHolds(readings, pool);
+        pool.append(ReadingPool.wrap(new int[]{1, 5}), 0, 2);
+        assertHolds(new int[]{3, 1, 4, 1, 5}, pool);
+        // The wrapped array is never written to
+        assertArrayEquals(new int[]{3, 1, 4}, readings);
+    }
+
+    @Test
+    public void testOffHeap() {
+        int[] readings = randomReadings(5000, 1000, 1);
+        ReadingPool pool = ReadingPool.offHeap();
+        assertTrue(pool.isOffHeap());
+        assertEquals(0, pool.append(ReadingPool.wrap(readings), 0, 2000));
+        assertEquals(2000, pool.append(ReadingPool.wrap(readings), 2000,
+                3000));
+        assertHolds(readings, pool);
+        assertTrue(pool.rangeEquals(1500, ReadingPool.wrap(readings), 1500,
+                2000));
+    }
+
+    @Test
+    public void testCompressed() {
+        // Wide, narrow and flat blocks, and a block left partly filled
+        int[] readings = new int[32 * 6 + 7];
+        int[] wide = randomReadings(64, Integer.MAX_VALUE, 2);
+        int[] narrow = randomReadings(64, 3, 3);
+        for (int i = 0; i < readings.length; ++i) {
+            if (i < 64) {
+                readings[i] = wide[i];
+            } else if (i < 128) {
+                readings[i] = 400 + narrow[i - 64];
+            } else {
+                readings[i] = 420;
+            }
+        }
+        ReadingPool pool = ReadingPool.compressed();
+        assertFalse(pool.isOffHeap());
+        for (int start = 0; start < readings.length; start += 10) {
+            pool.append(ReadingPool.wrap(readings), start,
+                    Math.min(10, readings.length - start));
+        }
+        assertHolds(readings, pool);
+        assertEquals(pool.getMemoryBytes(),
+                ReadingPool.compressedBytes(ReadingPool.wrap(readings)));
+    }
+
+    @Test
+    public void testCompressedSmaller() {
+        // Temperatures which wander by a degree at a time
+        int[] readings = new int[10000];
+        Random random = new Random(4);
+        readings[0] = 22;
+        for (int i = 1; i < readings.length; ++i) {
+            readings[i] = Math.max(0, readings[i - 1] + random.nextInt(3) - 1);
+        }
+        ReadingPool heap = ReadingPool.wrap(readings);
+        ReadingPool pool = ReadingPool.compressed();
+        pool.append(heap, 0, readings.length);
+        assertHolds(readings, pool);
+        assertTrue(pool.getMemoryBytes() * 3 < heap.getMemoryBytes());
+    }
+
+    @Test
+    public void testCompressedNotSmaller() {
+        int[] readings = randomReadings(1000, Integer.MAX_VALUE, 5);
+        assertTrue(ReadingPool.compressedBytes(ReadingPool.wrap(readings))
+                >= ReadingPool.wrap(readings).getMemoryBytes());
+    }
+}
@@ -0,0 +1,107 @@
+package bms.sensors;
+
+import bms.util.TimedItem;
+import bms.util.TimedItemManager;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class SensorRegistryTest {
+
+    private TimedItemManager previous;
+
+    @Before
+    public void setup() {
+        // Keep the sensors out of the singleton manager
+        previous = TimedItemManager.setCurrent(new TimedItemManager());
+    }
+
+    @After
+    public void tearDown() {
+        // Closing the manager removes its sensors from the registry
+        TimedItemManager.setCurrent(previous).close();
+    }
+
+    @Test
+    public void testUniqueIds() {
+        NoiseSensor first = new NoiseSensor(new int[]{40, 50}, 1);
+        NoiseSensor second = new NoiseSensor(new int[]{40, 50}, 1);
+        // Equal sensors still have their own IDs
+        assertEquals(first, second);
+        assertNotEquals(first.getId(), second.getId());
+        assertTrue(second.getId() > first.getId());
+    }
+
+    @Test
+    public void testGet() {
+        TemperatureSensor sensor = new TemperatureSensor(new int[]{20, 21});
+        assertSame(sensor, SensorRegistry.get(sensor.getId()));
+        assertNull(SensorRegistry.get(-1));
+        assertTrue(SensorRegistry.size() > 0);
+    }
+
+    @Test
+    public void testUnregister() {
+        NoiseSensor sensor = new NoiseSensor(new int[]{40, 50}, 1);
+        TimedItemManager.getCurrent().unregisterTimedItem(sensor);
+        // Unregistered sensors are no longer held by the registry
+        assertNull(SensorRegistry.get(sensor.getId()));
+        TimedItemManager.getCurrent().registerTimedItem(sensor);
+        assertSame(sensor, SensorRegistry.get(sensor.getId()));
+    }
+
+    @Test
+    public void testDeferredRegistration() {
+        TimedItemManager manager = TimedItemManager.getCurrent();
+        manager.deferRegistrations();
+        NoiseSensor sensor;
+        List<TimedItem> deferred;
+        try {
+            sensor = new NoiseSensor(new int[]{40, 50}, 1);
+            assertNull(SensorRegistry.get(sensor.getId()));
+        } finally {
+            deferred = manager.takeDeferredRegistrations();
+        }
+        manager.registerTimedItems(deferred);
+        assertSame(sensor, SensorRegistry.get(sensor.getId()));
+    }
+
+    @Test
+    public void testClosedManager() {
+        NoiseSensor sensor = new NoiseSensor(new int[]{40, 50}, 1);
+        TimedItemManager.getCurrent().close();
+        assertNull(SensorRegistry.get(sensor.getId()));
+    }
+
+    @Test
+    public void testIdStaysWithSensor() {
+        NoiseSensor sensor = new NoiseSensor(new int[]{40, 50}, 1);
+        long id = sensor.getId();
+        // Moving the sensor between stores does not change its ID
+        TimedItemManager.getCurrent().unregisterTimedItem(sensor);
+        new TimedItemManager().registerTimedItem(sensor);
+        assertEquals(id, sensor.getId());
+        assertSame(sensor, SensorRegistry.get(id));
+    }
+
+    @Test
+    public void testMapById() {
+        Map<Long, TimedSensor> byId = new HashMap<>();
+        for (int i = 0; i < 100; ++i) {
+            NoiseSensor sensor = new NoiseSensor(new int[]{0, 50}, 1);
+            byId.put(sensor.getId(), sensor);
+        }
+        // Sensors with the same readings are all kept apart
+        assertEquals(100, byId.size());
+    }
+}
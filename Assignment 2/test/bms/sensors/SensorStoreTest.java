@@ -0,0 +1,296 @@
+package bms.sensors;
+
+import bms.util.TimedItemManager;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class SensorStoreTest {
+
+    private TimedItemManager previous;
+    private SensorStore store;
+
+    @Before
+    public void setup() {
+        // Keep the sensors out of the singleton manager
+        previous = TimedItemManager.setCurrent(new TimedItemManager());
+        store = new SensorStore();
+    }
+
+    @After
+    public void tearDown() {
+        TimedItemManager.setCurrent(previous);
+    }
+
+    @Test
+    public void testAddKeepsState() {
+        NoiseSensor sensor = new NoiseSensor(new int[]{40, 50, 60}, 2);
+        sensor.elapseMinutes(3);
+        store.add(sensor);
+        assertTrue(store.contains(sensor));
+        assertEquals(1, store.size());
+        assertEquals(3, sensor.getTimeElapsed());
+        assertEquals(50, sensor.getCurrentReading());
+        assertEquals(2, sensor.getUpdateFrequency());
+        assertArrayEquals(new int[]{40, 50, 60}, sensor.getSensorReadings());
+    }
+
+    @Test
+    public void testElapseOneMinute() {
+        List<NoiseSensor> stored = new ArrayList<>();
+        List<NoiseSensor> alone = new ArrayList<>();
+        for (int frequency = 1; frequency <= 5; ++frequency) {
+            int[] readings = {40, 50, 50, 60 + frequency};
+            stored.add(new NoiseSensor(readings, frequency));
+            alone.add(new NoiseSensor(readings, frequency));
+        }
+        stored.forEach(store::add);
+        for (int minute = 0; minute < 50; ++minute) {
+            store.elapseOneMinute();
+            alone.forEach(NoiseSensor::elapseOneMinute);
+            for (int i = 0; i < stored.size(); ++i) {
+                assertEquals(alone.get(i).getTimeElapsed(),
+                        stored.get(i).getTimeElapsed());
+                assertEquals(alone.get(i).getCurrentReading(),
+                        stored.get(i).getCurrentReading());
+            }
+        }
+    }
+
+    @Test
+    public void testElapseMinutes() {
+        NoiseSensor stored = new NoiseSensor(new int[]{40, 50, 60}, 3);
+        NoiseSensor alone = new NoiseSensor(new int[]{40, 50, 60}, 3);
+        store.add(stored);
+        store.elapseMinutes(17);
+        alone.elapseMinutes(17);
+        assertEquals(17, stored.getTimeElapsed());
+        assertEquals(alone.getCurrentReading(), stored.getCurrentReading());
+    }
+
+    @Test
+    public void testElapseMinutesBeyondInt() {
+        NoiseSensor stored = new NoiseSensor(new int[]{40, 50, 60}, 3);
+        NoiseSensor alone = new NoiseSensor(new int[]{40, 50, 60}, 3);
+        store.add(stored);
+        long minutes = 3L * Integer.MAX_VALUE;
+        store.elapseMinutes(minutes);
+        alone.elapseMinutes(minutes % 9);
+        assertEquals(alone.getCurrentReading(), stored.getCurrentReading());
+        assertTrue(stored.getTimeElapsed() >= 0);
+    }
+
+    @Test
+    public void testRemove() {
+        NoiseSensor first = new NoiseSensor(new int[]{40, 50}, 1);
+        NoiseSensor second = new NoiseSensor(new int[]{45, 55}, 1);
+        store.add(first);
+        store.add(second);
+        store.elapseOneMinute();
+
+        assertTrue(store.remove(first));
+        assertFalse(store.remove(first));
+        assertFalse(store.contains(first));
+        assertEquals(1, store.size());
+        // Both sensors keep their state, wherever it is held
+        assertEquals(1, first.getTimeElapsed());
+        assertEquals(50, first.getCurrentReading());
+        assertEquals(55, second.getCurrentReading());
+
+        store.elapseOneMinute();
+        assertEquals(1, first.getTimeElapsed());
+        assertEquals(2, second.getTimeElapsed());
+        assertEquals(45, second.getCurrentReading());
+    }
+
+    @Test
+    public void testSharedReadings() {
+        for (int i = 0; i < 10; ++i) {
+            store.add(new NoiseSensor(new int[]{40, 50, 60}, 1));
+        }
+        store.add(new NoiseSensor(new int[]{41, 51}, 1));
+        assertEquals(11, store.size());
+        assertEquals(5, store.getPoolSize());
+    }
+
+    @Test
+    public void testPoolCompacted() {
+        List<NoiseSensor> sensors = new ArrayList<>();
+        for (int i = 0; i < 100; ++i) {
+            NoiseSensor sensor = new NoiseSensor(new int[]{i, i + 1}, 1);
+            sensors.add(sensor);
+            store.add(sensor);
+        }
+        for (int i = 0; i < 90; ++i) {
+            store.remove(sensors.get(i));
+        }
+        assertTrue(store.getPoolSize() < 100);
+        for (int i = 0; i < 100; ++i) {
+            assertArrayEquals(new int[]{i, i + 1},
+                    sensors.get(i).getSensorReadings());
+        }
+    }
+
+    @Test
+    public void testEqualsAcrossStores() {
+        NoiseSensor stored = new NoiseSensor(new int[]{40, 50}, 1);
+        NoiseSensor alone = new NoiseSensor(new int[]{40, 50}, 1);
+        store.add(stored);
+        assertEquals(alone, stored);
+        assertEquals(alone.hashCode(), stored.hashCode());
+    }
+
+    @Test
+    public void testOffHeapReadings() {
+        store.setReadingsOffHeap(true);
+        assertTrue(store.isReadingsOffHeap());
+        // Enough readings to fill several of the off-heap buffers
+        List<NoiseSensor> stored = new ArrayList<>();
+        List<NoiseSensor> alone = new ArrayList<>();
+        for (int i = 0; i < 3000; ++i) {
+            int[] readings = {i, i + 1, i + 2};
+            stored.add(new NoiseSensor(readings, 1 + i % 5));
+            alone.add(new NoiseSensor(readings, 1 + i % 5));
+        }
+        stored.forEach(store::add);
+        assertEquals(9000, store.getPoolSize());
+        for (int minute = 0; minute < 10; ++minute) {
+            store.elapseOneMinute();
+            alone.forEach(NoiseSensor::elapseOneMinute);
+        }
+        for (int i = 0; i < stored.size(); ++i) {
+            assertEquals(alone.get(i).getCurrentReading(),
+                    stored.get(i).getCurrentReading());
+            assertEquals(alone.get(i), stored.get(i));
+        }
+        assertArrayEquals(new int[]{2999, 3000, 3001},
+                stored.get(2999).getSensorReadings());
+    }
+
+    @Test
+    public void testSwitchReadingsOffHeap() {
+        NoiseSensor sensor = new NoiseSensor(new int[]{40, 50, 60}, 1);
+        store.add(sensor);
+        store.setReadingsOffHeap(true);
+        store.elapseOneMinute();
+        assertEquals(50, sensor.getCurrentReading());
+        assertArrayEquals(new int[]{40, 50, 60}, sensor.getSensorReadings());
+
+        store.setReadingsOffHeap(false);
+        assertFalse(store.isReadingsOffHeap());
+        store.elapseOneMinute();
+        assertEquals(60, sensor.getCurrentReading());
+
+        store.setReadingsOffHeap(true);
+        // Removed sensors take their readings with them
+        store.remove(sensor);
+        sensor.elapseOneMinute();
+        assertEquals(40, sensor.getCurrentReading());
+        assertEquals(0, store.getPoolSize());
+    }
+
+    @Test
+    public void testCompressReadings() {
+        List<NoiseSensor> stored = new ArrayList<>();
+        List<NoiseSensor> alone = new ArrayList<>();
+        for (int i = 0; i < 50; ++i) {
+            int[] readings = new int[100];
+            for (int j = 0; j < readings.length; ++j) {
+                readings[j] = 50 + i + j / 20;
+            }
+            stored.add(new NoiseSensor(readings, 1 + i % 5));
+            alone.add(new NoiseSensor(readings, 1 + i % 5));
+        }
+        stored.forEach(store::add);
+        assertTrue(store.compressReadingsIfSmaller());
+        assertTrue(store.isReadingsCompressed());
+        assertTrue(store.getCompressionRatio() > 4);
+        for (int minute = 0; minute < 300; ++minute) {
+            store.elapseOneMinute();
+            alone.forEach(NoiseSensor::elapseOneMinute);
+        }
+        for (int i = 0; i < stored.size(); ++i) {
+            assertEquals(alone.get(i).getCurrentReading(),
+                    stored.get(i).getCurrentReading());
+            assertArrayEquals(alone.get(i).getSensorReadings(),
+                    stored.get(i).getSensorReadings());
+        }
+
+        store.setReadingsCompressed(false);
+        assertEquals(1, store.getCompressionRatio(), 0);
+    }
+
+    @Test
+    public void testIncompressibleReadings() {
+        store.add(new NoiseSensor(new int[]{0, Integer.MAX_VALUE, 7, 1 << 30},
+                1));
+        assertFalse(store.compressReadingsIfSmaller());
+        store.setReadingsOffHeap(true);
+        assertFalse(store.compressReadingsIfSmaller());
+    }
+
+    @Test
+    public void testClose() {
+        store.setReadingsOffHeap(true);
+        NoiseSensor sensor = new NoiseSensor(new int[]{40, 50, 60}, 1);
+        NoiseSensor kept = new NoiseSensor(new int[]{70, 80}, 1);
+        store.add(sensor);
+        store.add(kept);
+        store.elapseOneMinute();
+        // Sensors moved out first stay usable
+        store.remove(kept);
+        store.close();
+        assertTrue(store.isClosed());
+        assertEquals(0, store.getPoolSize());
+        assertEquals(0, store.getReadingsBytes());
+        assertEquals(50, sensor.getCurrentReading());
+        kept.elapseOneMinute();
+        assertEquals(70, kept.getCurrentReading());
+        // Closing again does nothing
+        store.close();
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testElapseClosed() {
+        store.setReadingsOffHeap(true);
+        store.add(new NoiseSensor(new int[]{40, 50}, 1));
+        store.close();
+        store.elapseOneMinute();
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testReadClosed() {
+        store.setReadingsOffHeap(true);
+        NoiseSensor sensor = new NoiseSensor(new int[]{40, 50}, 1);
+        store.add(sensor);
+        store.close();
+        sensor.getSensorReadings();
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testAddClosed() {
+        store.close();
+        store.add(new NoiseSensor(new int[]{40, 50}, 1));
+    }
+
+    @Test
+    public void testManagerHoldsSensors() {
+        TimedItemManager manager = TimedItemManager.getCurrent();
+        NoiseSensor sensor = new NoiseSensor(new int[]{40, 50}, 1);
+        manager.elapseOneMinute();
+        assertEquals(50, sensor.getCurrentReading());
+
+        // Unregistering moves the sensor out of the manager's store
+        manager.unregisterTimedItem(sensor);
+        manager.elapseOneMinute();
+        assertEquals(1, sensor.getTimeElapsed());
+    }
+}
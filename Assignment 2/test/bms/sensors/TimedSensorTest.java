@@ -2,6 +2,10 @@ package bms.sensors;
 
 import org.junit.Before;
 import org.junit.Test;
+
+import java.util.HashSet;
+import java.util.Set;
+
 import static org.junit.Assert.*;
 
 public class TimedSensorTest {
@@ -29,9 +33,106 @@ public class TimedSensorTest {
         assertTrue(cdSensor instanceof TimedSensor);
     }
 
+    @Test
+    public void testElapseMinutes() {
+        for (int i = 0; i < 13; i++) {
+            cdSensor2.elapseOneMinute();
+        }
+        cdSensor.elapseMinutes(13);
+        assertEquals(13, cdSensor.getTimeElapsed());
+        assertEquals(cdSensor2.getCurrentReading(),
+                cdSensor.getCurrentReading());
+        assertEquals(2001, cdSensor.getCurrentReading());
+    }
+
+    @Test
+    public void testElapseMinutesBeyondInt() {
+        long minutes = Integer.MAX_VALUE + 5L;
+        cdSensor.elapseMinutes(1);
+        assertEquals(2001, cdSensor.getReadingAfter(minutes));
+        assertEquals(50, cdSensor.lookupHazardLevelAfter(minutes));
+        cdSensor.elapseMinutes(minutes);
+        // 2^31 minutes is a whole number of 8 minute rotations
+        cdSensor2.elapseMinutes((1 + minutes) % 8);
+        assertEquals(cdSensor2.getCurrentReading(),
+                cdSensor.getCurrentReading());
+        assertEquals(2001, cdSensor.getCurrentReading());
+        assertTrue(cdSensor.getTimeElapsed() >= 0);
+
+        cdSensor.elapseMinutes(Long.MAX_VALUE);
+        cdSensor2.elapseMinutes(Long.MAX_VALUE % 8);
+        assertEquals(cdSensor2.getCurrentReading(),
+                cdSensor.getCurrentReading());
+    }
+
+    @Test
+    public void testGetReadingAfter() {
+        assertEquals(1001, cdSensor.getReadingAfter(3));
+        assertEquals(420, cdSensor.getReadingAfter(8));
+        assertEquals(0, cdSensor.getTimeElapsed());
+        assertEquals(420, cdSensor.getCurrentReading());
+    }
+
+    @Test
+    public void testSetTimeElapsed() {
+        cdSensor.elapseMinutes(13);
+        cdSensor.setTimeElapsed(3);
+        assertEquals(3, cdSensor.getTimeElapsed());
+        assertEquals(cdSensor.getReadingAfter(0), cdSensor.getCurrentReading());
+        assertEquals(1001, cdSensor.getCurrentReading());
+    }
+
     @Test
     public void testEquals() {
         assertTrue(cdSensor.equals(cdSensor2));
         assertFalse(cdSensor.equals(cdSensorBad));
     }
+
+    @Test
+    public void testLevelsFollowReadings() {
+        TimedSensor[] sensors = {
+                cdSensor,
+                new NoiseSensor(new int[]{40, 66, 70, 74, 81, 95}, 2),
+                new OccupancySensor(new int[]{0, 3, 7, 10, 14}, 3, 10),
+                new TemperatureSensor(new int[]{12, 17, 22, 28, 35, 70})};
+        for (int minute = 0; minute < 40; ++minute) {
+            for (TimedSensor sensor : sensors) {
+                int reading = sensor.getCurrentReading();
+                assertEquals(sensor.hazardLevelOf(reading),
+                        ((HazardSensor) sensor).getHazardLevel());
+                assertEquals(sensor.comfortLevelOf(reading),
+                        ((ComfortSensor) sensor).getComfortLevel());
+                sensor.elapseOneMinute();
+            }
+        }
+        // Levels follow the reading wherever the time is set
+        cdSensor.setTimeElapsed(5);
+        assertEquals(50, cdSensor.getHazardLevel());
+        cdSensor.setTimeElapsed(1);
+        assertEquals(0, cdSensor.getHazardLevel());
+        assertEquals(20, cdSensor.getComfortLevel());
+    }
+
+    @Test
+    public void testHazardLevelAfter() {
+        TemperatureSensor sensor =
+                new TemperatureSensor(new int[]{20, 70, 25});
+        sensor.elapseMinutes(3);
+        assertEquals(0, sensor.getHazardLevel());
+        assertEquals(0, sensor.getHazardLevelAfter(0));
+        assertEquals(100, sensor.getHazardLevelAfter(1));
+        assertEquals(0, sensor.getHazardLevelAfter(2));
+        assertEquals(100, sensor.getHazardLevelAfter(301));
+    }
+
+    @Test
+    public void testHashCodesSpread() {
+        Set<Integer> hashCodes = new HashSet<>();
+        for (int i = 0; i < 1000; ++i) {
+            // A zero reading used to give every sensor the same hash code
+            hashCodes.add(new NoiseSensor(new int[]{0, i, i / 7}, 1)
+                    .hashCode());
+        }
+        assertEquals(1000, hashCodes.size());
+    }
 }
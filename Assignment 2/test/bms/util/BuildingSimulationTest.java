@@ -0,0 +1,103 @@
+package bms.util;
+
+import bms.building.Building;
+import bms.building.BuildingInitialiser;
+import bms.exceptions.FileFormatException;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import static bms.building.BuildingStates.describe;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+public class BuildingSimulationTest {
+
+    private TimedItemManager manager;
+    private List<Building> expected;
+    private List<Building> simulated;
+
+    @Before
+    public void setup() throws IOException, FileFormatException {
+        manager = new TimedItemManager();
+        TimedItemManager previous = TimedItemManager.setCurrent(manager);
+        try {
+            expected = BuildingInitialiser.loadBuildings("saves/uqstlucia.txt");
+        } finally {
+            TimedItemManager.setCurrent(previous);
+        }
+        simulated = BuildingInitialiser.loadBuildings("saves/uqstlucia.txt");
+    }
+
+    @Test
+    public void testMatchesSingleManager() {
+        BuildingSimulation simulation = new BuildingSimulation(simulated,
+                new ForkJoinPool(3));
+        for (int minute = 0; minute < 30; minute++) {
+            manager.elapseOneMinute();
+            simulation.elapseOneMinute();
+            assertEquals(describe(expected), describe(simulated));
+        }
+        manager.elapseMinutes(1000);
+        simulation.elapseMinutes(1000);
+        assertEquals(describe(expected), describe(simulated));
+        assertEquals(1030, simulation.getMinutesElapsed());
+    }
+
+    @Test
+    public void testManyBuildings() throws IOException, FileFormatException {
+        // Enough buildings for their items to be split over several tasks
+        List<Building> manyExpected = new ArrayList<>();
+        List<Building> many = new ArrayList<>();
+        String filename = "saves/uqstlucia.txt";
+        TimedItemManager previous = TimedItemManager.setCurrent(manager);
+        try {
+            for (int i = 0; i < 500; i++) {
+                manyExpected.addAll(
+                        BuildingInitialiser.loadBuildings(filename));
+            }
+        } finally {
+            TimedItemManager.setCurrent(previous);
+        }
+        for (int i = 0; i < 500; i++) {
+            many.addAll(BuildingInitialiser.loadBuildings(filename));
+        }
+        BuildingSimulation simulation = new BuildingSimulation(many,
+                new ForkJoinPool(4));
+        for (int minute = 0; minute < 5; minute++) {
+            manager.elapseOneMinute();
+            simulation.elapseOneMinute();
+        }
+        assertEquals(describe(manyExpected), describe(many));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testClose() {
+        BuildingSimulation simulation = new BuildingSimulation(simulated,
+                new ForkJoinPool(2), true);
+        simulation.elapseOneMinute();
+        simulation.close();
+        // Each building's readings have been released
+        simulation.elapseOneMinute();
+    }
+
+    @Test
+    public void testBuildingsUnregistered() {
+        TimedItemManager singleton = TimedItemManager.getInstance();
+        int registered = singleton.getTimedItemCount();
+        BuildingSimulation simulation = new BuildingSimulation(simulated);
+        int moved = 0;
+        for (Building building : simulated) {
+            TimedItemManager buildingManager = simulation.getManager(building);
+            moved += buildingManager.getTimedItemCount();
+        }
+        assertEquals(registered - moved, singleton.getTimedItemCount());
+        assertSame(simulated.get(0), simulation.getBuildings().get(0));
+        assertNull(simulation.getManager(new Building("Elsewhere")));
+    }
+}
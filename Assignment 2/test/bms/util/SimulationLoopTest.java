@@ -0,0 +1,94 @@
+package bms.util;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Lock;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class SimulationLoopTest {
+
+    private AtomicInteger minutes;
+    private SimulationLoop loop;
+
+    @Before
+    public void setup() {
+        minutes = new AtomicInteger();
+        loop = new SimulationLoop(minutes::incrementAndGet);
+        loop.start();
+    }
+
+    @After
+    public void tearDown() {
+        loop.stop();
+    }
+
+    private void awaitMinutes(int count) throws InterruptedException {
+        long deadline = System.nanoTime() + 10_000_000_000L;
+        while (minutes.get() < count && System.nanoTime() < deadline) {
+            Thread.sleep(1);
+        }
+        assertTrue(minutes.get() >= count);
+    }
+
+    @Test
+    public void testStartsPaused() throws InterruptedException {
+        assertTrue(loop.isPaused());
+        assertEquals(SimulationLoop.REAL_TIME, loop.getSpeed(), 0);
+        Thread.sleep(50);
+        assertEquals(0, minutes.get());
+    }
+
+    @Test
+    public void testMaxSpeed() throws InterruptedException {
+        loop.setSpeed(SimulationLoop.MAX_SPEED);
+        loop.setPaused(false);
+        awaitMinutes(10000);
+
+        loop.setPaused(true);
+        // Let the minute being elapsed, if any, finish
+        Lock lock = loop.getLock();
+        lock.lock();
+        lock.unlock();
+        int paused = minutes.get();
+        Thread.sleep(50);
+        assertEquals(paused, minutes.get());
+    }
+
+    @Test
+    public void testLockHoldsMinutes() throws InterruptedException {
+        loop.setSpeed(SimulationLoop.MAX_SPEED);
+        loop.setPaused(false);
+        awaitMinutes(1);
+        Lock lock = loop.getLock();
+        lock.lock();
+        try {
+            int held = minutes.get();
+            Thread.sleep(50);
+            assertEquals(held, minutes.get());
+        } finally {
+            lock.unlock();
+        }
+        awaitMinutes(minutes.get() + 1);
+    }
+
+    @Test
+    public void testPacedSpeed() throws InterruptedException {
+        loop.setSpeed(100);
+        loop.setPaused(false);
+        Thread.sleep(200);
+        loop.setPaused(true);
+        // About 20 minutes, allowing for a slow machine
+        assertTrue(minutes.get() >= 1);
+        assertTrue(minutes.get() <= 40);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidSpeed() {
+        loop.setSpeed(0);
+    }
+}
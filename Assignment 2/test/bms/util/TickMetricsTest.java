@@ -0,0 +1,143 @@
+package bms.util;
+
+import bms.floor.MaintenanceSchedule;
+import bms.room.Room;
+import bms.room.RoomType;
+import bms.sensors.NoiseSensor;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class TickMetricsTest {
+
+    private TickMetrics metrics;
+
+    @Before
+    public void setup() {
+        metrics = new TickMetrics("Test");
+        metrics.setProfilingInterval(0);
+    }
+
+    @Test
+    public void testEmpty() {
+        assertEquals(0, metrics.getTickCount());
+        assertEquals(0, metrics.getPercentileNanos(50));
+        assertEquals(0, metrics.getMeanTickNanos(), 0);
+        assertEquals(-1, metrics.getLastItemsChanged());
+        assertNull(metrics.getSlowestItemType());
+    }
+
+    @Test
+    public void testTickCounts() {
+        for (int i = 0; i < 10; ++i) {
+            metrics.endTick(metrics.beginTick(), 5, i % 2 == 0 ? 2 : -1);
+        }
+        assertEquals(10, metrics.getTickCount());
+        assertEquals(5, metrics.getLastItemsAdvanced());
+        assertEquals(50, metrics.getItemsAdvanced());
+        assertEquals(2, metrics.getLastItemsChanged());
+        assertEquals(2, metrics.getMeanItemsChanged(), 0);
+        assertTrue(metrics.getMaxTickNanos() >= metrics.getLastTickNanos());
+        assertTrue(metrics.getPercentileNanos(100)
+                <= metrics.getMaxTickNanos());
+        assertTrue(metrics.getPercentileNanos(50)
+                <= metrics.getPercentileNanos(100));
+    }
+
+    @Test
+    public void testPercentilePrecision() throws InterruptedException {
+        for (int i = 0; i < 20; ++i) {
+            TickEvent tick = metrics.beginTick();
+            Thread.sleep(1);
+            metrics.endTick(tick);
+        }
+        long max = metrics.getMaxTickNanos();
+        long p100 = metrics.getPercentileNanos(100);
+        // Buckets are within 1/16 of each other
+        assertTrue(p100 <= max);
+        assertTrue(p100 >= max - max / 16);
+        assertTrue(metrics.getPercentileNanos(50) >= 1_000_000);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidPercentile() {
+        metrics.getPercentileNanos(0);
+    }
+
+    @Test
+    public void testProfiledTicks() {
+        metrics.setProfilingInterval(4);
+        int profiled = 0;
+        for (int i = 0; i < 12; ++i) {
+            TickEvent tick = metrics.beginTick();
+            if (tick.isProfiled()) {
+                profiled++;
+            }
+            metrics.endTick(tick);
+        }
+        assertEquals(3, profiled);
+        assertEquals(3, metrics.getProfiledTickCount());
+        // Profiled ticks are left out of the latency figures
+        assertEquals(9, metrics.getTickCount());
+    }
+
+    @Test
+    public void testSlowestItemType() {
+        metrics.recordItemType(NoiseSensor.class, 1000, 10);
+        metrics.recordItemType(MaintenanceSchedule.class, 500, 1);
+        metrics.recordItemType(NoiseSensor.class, 1000, 10);
+        assertEquals("MaintenanceSchedule", metrics.getSlowestItemType());
+        assertEquals(500, metrics.getSlowestItemTypeMeanNanos(), 0);
+
+        metrics.reset();
+        assertNull(metrics.getSlowestItemType());
+    }
+
+    @Test
+    public void testManagerProfiling() {
+        TimedItemManager manager = new TimedItemManager();
+        manager.registerTimedItem(new NoiseSensor(new int[]{40, 50}, 1));
+        manager.registerTimedItem(new NoiseSensor(new int[]{40, 50}, 2));
+        manager.registerTimedItem(new MaintenanceSchedule(List.of(
+                new Room(1, RoomType.STUDY, 10))));
+        TickMetrics managerMetrics = manager.getMetrics();
+        managerMetrics.setProfilingInterval(1);
+
+        manager.elapseOneMinute();
+        assertEquals(3, managerMetrics.getLastItemsAdvanced());
+        // Only the sensor which changes every minute has changed
+        assertEquals(1, managerMetrics.getLastItemsChanged());
+        manager.elapseOneMinute();
+        assertEquals(2, managerMetrics.getLastItemsChanged());
+        assertEquals(2, managerMetrics.getProfiledTickCount());
+        assertTrue(managerMetrics.getSlowestItemType() != null);
+    }
+
+    @Test
+    public void testEventDrivenChanges() {
+        TimedItemManager manager = new TimedItemManager();
+        manager.registerTimedItem(new NoiseSensor(new int[]{40, 50}, 1));
+        manager.registerTimedItem(new NoiseSensor(new int[]{40, 50}, 2));
+        manager.setEventDriven(true);
+        TickMetrics managerMetrics = manager.getMetrics();
+        managerMetrics.setProfilingInterval(0);
+
+        manager.elapseOneMinute();
+        assertEquals(1, managerMetrics.getLastItemsChanged());
+        manager.elapseOneMinute();
+        assertEquals(2, managerMetrics.getLastItemsChanged());
+        assertEquals(2, managerMetrics.getTickCount());
+    }
+
+    @Test
+    public void testRegister() {
+        assertTrue(metrics.register());
+        // Registering again replaces the earlier registration
+        assertTrue(new TickMetrics("Test").register());
+    }
+}
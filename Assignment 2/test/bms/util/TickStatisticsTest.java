@@ -0,0 +1,64 @@
+package bms.util;
+
+import bms.BatchRunner;
+import bms.sensors.NoiseSensor;
+import bms.sensors.TimedSensor;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class TickStatisticsTest {
+
+    @Test
+    public void testPercentiles() {
+        TickStatistics statistics = new TickStatistics(0);
+        // Recorded out of order, 1000 down to 1 nanoseconds
+        for (int nanos = 1000; nanos >= 1; nanos--) {
+            statistics.record(nanos);
+        }
+        assertEquals(1000, statistics.getTickCount());
+        assertEquals(500500, statistics.getTotalNanos());
+        assertEquals(500, statistics.getPercentileNanos(50));
+        assertEquals(990, statistics.getPercentileNanos(99));
+        assertEquals(999, statistics.getPercentileNanos(99.9));
+        assertEquals(1000, statistics.getPercentileNanos(100));
+        assertEquals(1, statistics.getPercentileNanos(0.01));
+
+        statistics.record(5000);
+        assertEquals(5000, statistics.getPercentileNanos(100));
+    }
+
+    @Test
+    public void testTicksPerSecond() {
+        TickStatistics statistics = new TickStatistics();
+        assertEquals(0, statistics.getTicksPerSecond(), 0);
+        assertEquals(0, statistics.getPercentileNanos(50));
+        for (int i = 0; i < 4; i++) {
+            statistics.record(250_000_000);
+        }
+        assertEquals(4, statistics.getTicksPerSecond(), 1e-9);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidPercentile() {
+        new TickStatistics().getPercentileNanos(0);
+    }
+
+    @Test
+    public void testRun() {
+        TimedItemManager manager = new TimedItemManager();
+        TimedItemManager previous = TimedItemManager.setCurrent(manager);
+        TimedSensor sensor;
+        try {
+            sensor = new NoiseSensor(new int[]{40, 50, 60}, 1);
+        } finally {
+            TimedItemManager.setCurrent(previous);
+        }
+        TickStatistics statistics = BatchRunner.run(manager, 25);
+        assertEquals(25, statistics.getTickCount());
+        assertEquals(25, sensor.getTimeElapsed());
+        assertTrue(statistics.getPercentileNanos(50)
+                <= statistics.getPercentileNanos(100));
+    }
+}
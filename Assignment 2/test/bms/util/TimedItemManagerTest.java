@@ -0,0 +1,259 @@
+package bms.util;
+
+import bms.building.Building;
+import bms.building.BuildingInitialiser;
+import bms.exceptions.DuplicateRoomException;
+import bms.exceptions.DuplicateSensorException;
+import bms.exceptions.FileFormatException;
+import bms.exceptions.InsufficientSpaceException;
+import bms.floor.Floor;
+import bms.floor.MaintenanceSchedule;
+import bms.room.Room;
+import bms.room.RoomType;
+import bms.sensors.NoiseSensor;
+import bms.sensors.TemperatureSensor;
+import bms.sensors.TimedSensor;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class TimedItemManagerTest {
+
+    private static final int SENSOR_COUNT = 10000;
+
+    private static int expectedReading(int[] readings, int frequency,
+            int minutes) {
+        return readings[minutes % (readings.length * frequency) / frequency];
+    }
+
+    @Test
+    public void testParallelTickMatchesSerial() {
+        List<TimedSensor> sensors = new ArrayList<>();
+        for (int i = 0; i < SENSOR_COUNT; i++) {
+            sensors.add(new NoiseSensor(new int[]{i % 7, i % 11, i % 13},
+                    i % 5 + 1));
+        }
+        TimedItemManager manager = TimedItemManager.getInstance();
+        for (int minute = 1; minute <= 20; minute++) {
+            manager.elapseOneMinute();
+            for (int i = 0; i < SENSOR_COUNT; i++) {
+                TimedSensor sensor = sensors.get(i);
+                assertEquals(minute, sensor.getTimeElapsed());
+                assertEquals(expectedReading(sensor.getSensorReadings(),
+                        sensor.getUpdateFrequency(), minute),
+                        sensor.getCurrentReading());
+            }
+        }
+    }
+
+    @Test
+    public void testScheduleSeesTickedSensors()
+            throws DuplicateSensorException {
+        for (int i = 0; i < SENSOR_COUNT; i++) {
+            new NoiseSensor(new int[]{50}, 1);
+        }
+        Room room1 = new Room(1, RoomType.STUDY, 10);
+        Room room2 = new Room(2, RoomType.STUDY, 10);
+        room1.addSensor(new TemperatureSensor(new int[]{20, 70, 20}));
+        List<Room> roomOrder = new ArrayList<>();
+        roomOrder.add(room1);
+        roomOrder.add(room2);
+        MaintenanceSchedule schedule = new MaintenanceSchedule(roomOrder);
+
+        TimedItemManager manager = TimedItemManager.getInstance();
+        // The sensor reaches 70 degrees on the first minute, so the room is
+        // evacuated before the schedule is elapsed and maintenance pauses
+        manager.elapseOneMinute();
+        assertEquals(0, schedule.getTimeElapsedCurrentRoom());
+        manager.elapseOneMinute();
+        assertEquals(1, schedule.getTimeElapsedCurrentRoom());
+        assertTrue(room1.maintenanceOngoing());
+    }
+
+    @Test
+    public void testElapseMinutes() {
+        TimedSensor sensor = new NoiseSensor(new int[]{40, 50, 60}, 4);
+        TimedItemManager manager = TimedItemManager.getInstance();
+        long minutes = manager.getMinutesElapsed();
+        manager.elapseMinutes(43200);
+        assertEquals(minutes + 43200, manager.getMinutesElapsed());
+        assertEquals(43200, sensor.getTimeElapsed());
+        assertEquals(expectedReading(sensor.getSensorReadings(), 4, 43200),
+                sensor.getCurrentReading());
+    }
+
+    @Test
+    public void testSensorsAreIndependent() {
+        assertTrue(new NoiseSensor(new int[]{50}, 1).isIndependent());
+        assertFalse(new MaintenanceSchedule(List.of(
+                new Room(1, RoomType.STUDY, 10))).isIndependent());
+    }
+
+    @Test
+    public void testSeparateManager() {
+        TimedItemManager manager = new TimedItemManager();
+        TimedItemManager previous = TimedItemManager.setCurrent(manager);
+        TimedSensor sensor;
+        try {
+            assertSame(manager, TimedItemManager.getCurrent());
+            sensor = new NoiseSensor(new int[]{40, 50}, 1);
+        } finally {
+            TimedItemManager.setCurrent(previous);
+        }
+        assertSame(previous, TimedItemManager.getCurrent());
+        assertEquals(1, manager.getTimedItemCount());
+
+        TimedItemManager.getInstance().elapseOneMinute();
+        assertEquals(0, sensor.getTimeElapsed());
+        manager.elapseOneMinute();
+        assertEquals(1, sensor.getTimeElapsed());
+        assertEquals(50, sensor.getCurrentReading());
+    }
+
+    @Test
+    public void testUnregister() {
+        TimedItemManager manager = new TimedItemManager();
+        TimedSensor sensor = new NoiseSensor(new int[]{40, 50}, 1);
+        MaintenanceSchedule schedule = new MaintenanceSchedule(List.of(
+                new Room(1, RoomType.STUDY, 10)));
+        manager.registerTimedItem(sensor);
+        manager.registerTimedItem(schedule);
+        assertEquals(2, manager.getTimedItemCount());
+
+        assertTrue(manager.unregisterTimedItem(sensor));
+        assertFalse(manager.unregisterTimedItem(sensor));
+        manager.elapseOneMinute();
+        assertEquals(0, sensor.getTimeElapsed());
+        assertEquals(1, schedule.getTimeElapsedCurrentRoom());
+
+        manager.unregisterTimedItems(List.of(sensor, schedule));
+        assertEquals(0, manager.getTimedItemCount());
+    }
+
+    @Test
+    public void testReplacedScheduleUnregistered()
+            throws DuplicateRoomException, InsufficientSpaceException {
+        TimedItemManager manager = new TimedItemManager();
+        TimedItemManager previous = TimedItemManager.setCurrent(manager);
+        try {
+            Floor floor = new Floor(1, 10, 10);
+            Room room1 = new Room(1, RoomType.STUDY, 10);
+            Room room2 = new Room(2, RoomType.STUDY, 10);
+            floor.addRoom(room1);
+            floor.addRoom(room2);
+            floor.createMaintenanceSchedule(List.of(room1, room2));
+            floor.createMaintenanceSchedule(List.of(room2, room1));
+            assertEquals(1, manager.getTimedItemCount());
+        } finally {
+            TimedItemManager.setCurrent(previous);
+        }
+    }
+
+    @Test
+    public void testBindBuildings() throws IOException, FileFormatException {
+        TimedItemManager singleton = TimedItemManager.getInstance();
+        int registered = singleton.getTimedItemCount();
+        List<Building> buildings =
+                BuildingInitialiser.loadBuildings("saves/uqstlucia.txt");
+        int loaded = singleton.getTimedItemCount() - registered;
+
+        TimedItemManager manager = new TimedItemManager();
+        manager.bindBuildings(buildings);
+        assertEquals(loaded, manager.getTimedItemCount());
+        assertEquals(registered, singleton.getTimedItemCount());
+        // A store for each building with sensors, of which there are two,
+        // plus the shared one
+        assertEquals(3, manager.getStoreCount());
+
+        manager.unregisterBuildings(buildings);
+        assertEquals(0, manager.getTimedItemCount());
+        assertEquals(1, manager.getStoreCount());
+    }
+
+    @Test
+    public void testClose() throws IOException, FileFormatException {
+        TimedItemManager manager = new TimedItemManager();
+        TimedItemManager previous = TimedItemManager.setCurrent(manager);
+        try {
+            manager.setReadingsOffHeap(true);
+            BuildingInitialiser.loadBuildings("saves/uqstlucia.txt");
+        } finally {
+            TimedItemManager.setCurrent(previous);
+        }
+        assertEquals(3, manager.getStoreCount());
+        manager.elapseOneMinute();
+
+        manager.close();
+        assertEquals(1, manager.getStoreCount());
+        try {
+            manager.elapseOneMinute();
+            fail("A closed manager must not elapse its sensors");
+        } catch (IllegalStateException expected) {
+            // Readings have been released
+        }
+    }
+
+    private static List<TimedSensor> createSensors(TimedItemManager manager) {
+        TimedItemManager previous = TimedItemManager.setCurrent(manager);
+        try {
+            List<TimedSensor> sensors = new ArrayList<>();
+            for (int i = 0; i < 100; i++) {
+                sensors.add(new NoiseSensor(new int[]{i % 3, i % 3, i % 4,
+                        i % 2, 7}, i % 5 + 1));
+            }
+            sensors.add(new NoiseSensor(new int[]{5, 5}, 1));
+            return sensors;
+        } finally {
+            TimedItemManager.setCurrent(previous);
+        }
+    }
+
+    @Test
+    public void testEventDrivenMatchesPerMinute() {
+        TimedItemManager perMinute = new TimedItemManager();
+        TimedItemManager eventDriven = new TimedItemManager();
+        List<TimedSensor> expected = createSensors(perMinute);
+        List<TimedSensor> actual = createSensors(eventDriven);
+        eventDriven.setEventDriven(true);
+        assertTrue(eventDriven.isEventDriven());
+
+        for (int minute = 1; minute <= 200; minute++) {
+            if (minute % 50 == 0) {
+                perMinute.elapseMinutes(minute);
+                eventDriven.elapseMinutes(minute);
+            } else {
+                perMinute.elapseOneMinute();
+                eventDriven.elapseOneMinute();
+            }
+            for (int i = 0; i < expected.size(); i++) {
+                assertEquals(expected.get(i).getCurrentReading(),
+                        actual.get(i).getCurrentReading());
+            }
+        }
+        eventDriven.synchronise();
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(expected.get(i).getTimeElapsed(),
+                    actual.get(i).getTimeElapsed());
+        }
+    }
+
+    @Test
+    public void testMinutesUntilChange() {
+        TimedSensor sensor = new NoiseSensor(new int[]{40, 40, 50}, 2);
+        assertEquals(4, sensor.getMinutesUntilChange());
+        sensor.elapseMinutes(3);
+        assertEquals(1, sensor.getMinutesUntilChange());
+        sensor.elapseOneMinute();
+        assertEquals(2, sensor.getMinutesUntilChange());
+        assertEquals(Long.MAX_VALUE,
+                new NoiseSensor(new int[]{40, 40}, 1).getMinutesUntilChange());
+    }
+}